@@ -0,0 +1,166 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.AttributeList;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.heliosapm.asyncjmx.client.AsyncJMXClient;
+import com.heliosapm.asyncjmx.client.SyncMBeanServerConnection;
+import com.heliosapm.asyncjmx.server.AsyncJMXServer;
+
+/**
+ * <p>Title: LoopbackRoundTripBenchmark</p>
+ * <p>Description: Measures full request/response round trips from a {@link SyncMBeanServerConnection} (or for comparison, an
+ * async connection used synchronously) through an in-process {@link AsyncJMXServer} over a loopback socket.</p>
+ * <p>The server listens on its fixed port, so one server is started per JVM and shared by every trial run in it.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.bench.LoopbackRoundTripBenchmark</code></p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+public class LoopbackRoundTripBenchmark {
+	/** The port the server listens on */
+	public static final int PORT = 9061;
+	/** The server */
+	private static AsyncJMXServer server = null;
+	/** The client */
+	private static AsyncJMXClient client = null;
+	
+	/** The connection type */
+	@Param({"sync", "async"})
+	public String connection;
+	
+	/** The connection to the server */
+	protected MBeanServerConnection conn;
+	/** The runtime MXBean object name */
+	protected final ObjectName runtime = objectName(ManagementFactory.RUNTIME_MXBEAN_NAME);
+	/** The memory MXBean object name */
+	protected final ObjectName memory = objectName(ManagementFactory.MEMORY_MXBEAN_NAME);
+	/** The threading MXBean object name */
+	protected final ObjectName threading = objectName(ManagementFactory.THREAD_MXBEAN_NAME);
+	/** The threading attribute names read in one request */
+	protected final String[] threadingAttributes = {"ThreadCount", "PeakThreadCount", "DaemonThreadCount", "TotalStartedThreadCount"};
+	
+	/**
+	 * Starts the server and client if not started, and connects
+	 */
+	@Setup
+	public void setup() {
+		synchronized(LoopbackRoundTripBenchmark.class) {
+			if(server==null) {
+				server = new AsyncJMXServer();
+				client = new AsyncJMXClient();
+			}
+		}
+		conn = client.connectMBeanServerConnection("localhost", PORT, "async".equals(connection));
+	}
+	
+	/**
+	 * Creates an ObjectName
+	 * @param name The object name string
+	 * @return the ObjectName
+	 */
+	private static ObjectName objectName(String name) {
+		try {
+			return new ObjectName(name);
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/**
+	 * Reads a string attribute
+	 * @return the attribute value
+	 * @throws Exception thrown on any remote error
+	 */
+	@Benchmark
+	public Object getAttribute() throws Exception {
+		return conn.getAttribute(runtime, "Name");
+	}
+	
+	/**
+	 * Reads a CompositeData attribute
+	 * @return the attribute value
+	 * @throws Exception thrown on any remote error
+	 */
+	@Benchmark
+	public Object getCompositeAttribute() throws Exception {
+		return conn.getAttribute(memory, "HeapMemoryUsage");
+	}
+	
+	/**
+	 * Reads a TabularData attribute
+	 * @return the attribute value
+	 * @throws Exception thrown on any remote error
+	 */
+	@Benchmark
+	public Object getTabularAttribute() throws Exception {
+		return conn.getAttribute(runtime, "SystemProperties");
+	}
+	
+	/**
+	 * Reads several attributes in one request
+	 * @return the attribute values
+	 * @throws Exception thrown on any remote error
+	 */
+	@Benchmark
+	public AttributeList getAttributes() throws Exception {
+		return conn.getAttributes(threading, threadingAttributes);
+	}
+	
+	/**
+	 * Reads a string attribute from several threads sharing the connection, so requests are pipelined
+	 * @return the attribute value
+	 * @throws Exception thrown on any remote error
+	 */
+	@Benchmark
+	@Threads(4)
+	public Object getAttributeConcurrent() throws Exception {
+		return conn.getAttribute(runtime, "Name");
+	}
+}
@@ -0,0 +1,147 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.heliosapm.asyncjmx.shared.JMXOpCode;
+import com.heliosapm.asyncjmx.shared.serialization.HistogramKeyProvider;
+import com.heliosapm.asyncjmx.shared.serialization.PayloadSizeHistogram;
+
+/**
+ * <p>Title: PayloadSizeHistogramBenchmark</p>
+ * <p>Description: Measures the {@link PayloadSizeHistogram} buffer size estimate taken for every encoded frame, 
+ * the sampling of the encoded sizes, and the two running together as they do when encoder threads share a histogram.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.bench.PayloadSizeHistogramBenchmark</code></p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class PayloadSizeHistogramBenchmark {
+	/** The number of pre-generated sample sizes, a power of 2 */
+	protected static final int SIZES = 4096;
+	
+	/** The histogram */
+	protected PayloadSizeHistogram<JMXOpCode> histogram;
+	/** The histogram key provider */
+	protected HistogramKeyProvider<JMXOpCode> keyProvider;
+	/** The pre-generated sample sizes, log normally distributed around a few hundred bytes */
+	protected int[] sizes;
+	
+	/**
+	 * <p>Title: Cursor</p>
+	 * <p>Description: A per thread index into the sample sizes</p> 
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+		/** The next sample size index */
+		protected int index = 0;
+	}
+	
+	/**
+	 * Creates and primes the histogram
+	 */
+	@Setup
+	public void setup() {
+		histogram = new PayloadSizeHistogram<JMXOpCode>();
+		keyProvider = new HistogramKeyProvider<JMXOpCode>() {
+			@Override
+			public JMXOpCode getHistogramKey() {
+				return JMXOpCode.GETATTRIBUTE;
+			}
+			@Override
+			public int getVoidHistogramSize() {
+				return 0;
+			}
+		};
+		final Random random = new Random(SIZES);
+		sizes = new int[SIZES];
+		for(int i = 0; i < SIZES; i++) {
+			sizes[i] = (int)Math.exp(6 + random.nextGaussian());
+		}
+		for(int size: sizes) {
+			histogram.sample(keyProvider, size);
+		}
+	}
+	
+	/**
+	 * Estimates the buffer size
+	 * @return the estimate
+	 */
+	@Benchmark
+	public int estimateSize() {
+		return histogram.estimateSize(keyProvider);
+	}
+	
+	/**
+	 * Samples an encoded size
+	 * @param cursor The thread's sample size cursor
+	 */
+	@Benchmark
+	public void sample(Cursor cursor) {
+		histogram.sample(keyProvider, sizes[cursor.index++ & (SIZES-1)]);
+	}
+	
+	/**
+	 * Estimates the buffer size while another thread samples
+	 * @return the estimate
+	 */
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(3)
+	public int mixedEstimateSize() {
+		return histogram.estimateSize(keyProvider);
+	}
+	
+	/**
+	 * Samples encoded sizes while other threads estimate
+	 * @param cursor The thread's sample size cursor
+	 */
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(1)
+	public void mixedSample(Cursor cursor) {
+		histogram.sample(keyProvider, sizes[cursor.index++ & (SIZES-1)]);
+	}
+}
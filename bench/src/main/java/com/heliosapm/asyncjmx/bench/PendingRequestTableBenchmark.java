@@ -0,0 +1,159 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.heliosapm.asyncjmx.shared.util.PendingRequestTable;
+
+/**
+ * <p>Title: PendingRequestTableBenchmark</p>
+ * <p>Description: Measures the {@link PendingRequestTable} the synchronous connection parks its callers on, 
+ * completing each request either on the waiting thread or from a separate thread standing in for the IO worker.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.bench.PendingRequestTableBenchmark</code></p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class PendingRequestTableBenchmark {
+	/** The table size, as used by the synchronous connection */
+	protected static final int TABLE_SIZE = 1024;
+	/** The timeout in ms. */
+	protected static final long TIMEOUT = 10000;
+	/** The response handed over */
+	protected static final Object RESPONSE = new Object();
+	
+	/** The table for requests completed on the waiting thread */
+	protected PendingRequestTable table;
+	/** The request id serial */
+	protected final AtomicInteger serial = new AtomicInteger();
+	
+	/**
+	 * <p>Title: Handoff</p>
+	 * <p>Description: A table whose requests are completed by a separate completer thread</p> 
+	 */
+	@State(Scope.Benchmark)
+	public static class Handoff {
+		/** The table */
+		protected PendingRequestTable table;
+		/** The most recent request id published to the completer */
+		protected final AtomicInteger published = new AtomicInteger();
+		/** The thread completing the published requests */
+		protected Thread completer;
+		/** Set to false to stop the completer */
+		protected volatile boolean running = true;
+		
+		/**
+		 * Creates the table and starts the completer thread
+		 */
+		@Setup
+		public void setup() {
+			table = new PendingRequestTable(TABLE_SIZE);
+			running = true;
+			completer = new Thread("PendingRequestTableCompleter") {
+				@Override
+				public void run() {
+					int completed = 0;
+					while(running) {
+						final int requestId = published.get();
+						if(requestId!=completed && table.complete(requestId, RESPONSE)) {
+							completed = requestId;
+						} else {
+							Thread.yield();
+						}
+					}
+				}
+			};
+			completer.setDaemon(true);
+			completer.start();
+		}
+		
+		/**
+		 * Stops the completer thread
+		 * @throws InterruptedException thrown if interrupted while joining the completer
+		 */
+		@TearDown
+		public void tearDown() throws InterruptedException {
+			running = false;
+			completer.join();
+		}
+	}
+	
+	/**
+	 * Creates the table
+	 */
+	@Setup
+	public void setup() {
+		table = new PendingRequestTable(TABLE_SIZE);
+	}
+	
+	/**
+	 * Registers, completes and takes a request on the calling thread
+	 * @return the response
+	 * @throws Exception thrown on a timeout, which should not happen
+	 */
+	@Benchmark
+	public Object registerCompleteTake() throws Exception {
+		final int requestId = serial.incrementAndGet();
+		table.register(requestId, TIMEOUT);
+		table.complete(requestId, RESPONSE);
+		return table.waitFor(requestId, TIMEOUT);
+	}
+	
+	/**
+	 * Registers a request and waits for the completer thread to complete it.
+	 * The completer follows a single published request id, so this runs on one thread.
+	 * @param handoff The completer thread's table
+	 * @return the response
+	 * @throws Exception thrown on a timeout, which should not happen
+	 */
+	@Benchmark
+	@Threads(1)
+	public Object handoff(Handoff handoff) throws Exception {
+		final int requestId = serial.incrementAndGet();
+		handoff.table.register(requestId, TIMEOUT);
+		handoff.published.set(requestId);
+		return handoff.table.waitFor(requestId, TIMEOUT);
+	}
+}
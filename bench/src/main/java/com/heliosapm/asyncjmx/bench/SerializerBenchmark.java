@@ -0,0 +1,208 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.local.DefaultLocalClientChannelFactory;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.JavaSerializer;
+import com.heliosapm.asyncjmx.shared.JMXOp;
+import com.heliosapm.asyncjmx.shared.JMXOpCode;
+import com.heliosapm.asyncjmx.shared.KryoFactory;
+
+/**
+ * <p>Title: SerializerBenchmark</p>
+ * <p>Description: Compares the asyncJMX kryo serializers for {@link JMXOp}s, MBeanInfos, CompositeData and TabularData 
+ * against plain java serialization through kryo's {@link JavaSerializer}.
+ * A JMXOp is not serializable, so its java baseline is the serialized op argument array.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.bench.SerializerBenchmark</code></p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+public class SerializerBenchmark {
+	/** The payload to serialize */
+	@Param({"JMXOp", "MBeanInfo", "CompositeData", "TabularData"})
+	public String payload;
+	/** The codec, being the asyncJMX serializers or java serialization */
+	@Param({"kryo", "java"})
+	public String codec;
+	
+	/** The java serializer */
+	protected static final JavaSerializer JAVA = new JavaSerializer();
+	
+	/** The stateless kryo */
+	protected Kryo kryo;
+	/** The writing side kryo of a channel, with the per-channel dictionaries installed */
+	protected Kryo writeKryo;
+	/** The reading side kryo of a channel, with the per-channel dictionaries installed */
+	protected Kryo readKryo;
+	/** The object serialized */
+	protected Object object;
+	/** The pre-encoded object */
+	protected byte[] encoded;
+	/** The reusable output */
+	protected final Output output = new Output(1024, -1);
+	/** The reusable input */
+	protected final Input input = new Input();
+	
+	/**
+	 * Creates the kryos and the payload and pre-encodes it
+	 * @throws Exception thrown on any error acquiring the payload
+	 */
+	@Setup
+	public void setup() throws Exception {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if("JMXOp".equals(payload)) {
+			final Channel channel = new DefaultLocalClientChannelFactory().newChannel(Channels.pipeline());
+			final JMXOp op = JMXOp.newOp(channel, JMXOpCode.GETATTRIBUTE, new ObjectName(ManagementFactory.MEMORY_MXBEAN_NAME), "HeapMemoryUsage");
+			object = isJava() ? op.getOpArguments() : op;
+		} else if("MBeanInfo".equals(payload)) {
+			object = server.getMBeanInfo(new ObjectName(ManagementFactory.THREAD_MXBEAN_NAME));
+		} else if("CompositeData".equals(payload)) {
+			object = server.getAttribute(new ObjectName(ManagementFactory.MEMORY_MXBEAN_NAME), "HeapMemoryUsage");
+		} else if("TabularData".equals(payload)) {
+			object = server.getAttribute(new ObjectName(ManagementFactory.RUNTIME_MXBEAN_NAME), "SystemProperties");
+		} else {
+			throw new IllegalArgumentException("Unknown payload [" + payload + "]");
+		}
+		if(isJava()) {
+			kryo = new Kryo();
+			kryo.setReferences(false);
+			kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+			writeKryo = kryo;
+			readKryo = kryo;
+		} else {
+			kryo = KryoFactory.getInstance().newKryo();
+			writeKryo = KryoFactory.getInstance().newChannelKryo();
+			readKryo = KryoFactory.getInstance().newChannelKryo();
+		}
+		encoded = encode(kryo);
+	}
+	
+	/**
+	 * Indicates if the codec is java serialization
+	 * @return true for java serialization, false for the asyncJMX serializers
+	 */
+	protected boolean isJava() {
+		return "java".equals(codec);
+	}
+	
+	/**
+	 * Encodes the payload into a byte array
+	 * @param k The kryo to encode with
+	 * @return the encoded bytes
+	 */
+	protected byte[] encode(Kryo k) {
+		output.clear();
+		write(k);
+		return output.toBytes();
+	}
+	
+	/**
+	 * Writes the payload to the reusable output
+	 * @param k The kryo to write with
+	 */
+	protected void write(Kryo k) {
+		if(isJava()) {
+			k.writeObject(output, object, JAVA);
+		} else {
+			k.writeClassAndObject(output, object);
+		}
+	}
+	
+	/**
+	 * Reads a payload from the reusable input
+	 * @param k The kryo to read with
+	 * @return the read payload
+	 */
+	protected Object read(Kryo k) {
+		if(isJava()) {
+			return k.readObject(input, Object.class, JAVA);
+		}
+		return k.readClassAndObject(input);
+	}
+	
+	/**
+	 * Serializes the payload
+	 * @return the encoded size
+	 */
+	@Benchmark
+	public int encode() {
+		output.clear();
+		write(kryo);
+		return output.position();
+	}
+	
+	/**
+	 * Deserializes the pre-encoded payload
+	 * @return the read payload
+	 */
+	@Benchmark
+	public Object decode() {
+		input.setBuffer(encoded);
+		return read(kryo);
+	}
+	
+	/**
+	 * Serializes and deserializes the payload through the kryos of a channel, so repeated ObjectNames and 
+	 * OpenTypes are sent as dictionary references as they are on a live connection
+	 * @return the read payload
+	 */
+	@Benchmark
+	public Object channelRoundTrip() {
+		output.clear();
+		write(writeKryo);
+		input.setBuffer(output.getBuffer(), 0, output.position());
+		return read(readKryo);
+	}
+}
@@ -39,6 +39,7 @@ import javax.management.ObjectName;
 
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.buffer.DirectChannelBufferFactory;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelEvent;
 import org.jboss.netty.channel.ChannelFactory;
@@ -53,6 +54,7 @@ import org.jboss.netty.logging.InternalLoggerFactory;
 import org.jboss.netty.logging.JdkLoggerFactory;
 
 import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
+import com.heliosapm.asyncjmx.shared.util.ConfigurationHelper;
 
 /**
  * <p>Title: AsyncJMXClient</p>
@@ -78,6 +80,11 @@ public class AsyncJMXClient implements ChannelUpstreamHandler {
 	/** Instance logger */
 	protected final Logger log = Logger.getLogger(getClass().getName());
 	
+	/** The config property name indicating if inbound channel buffers should be direct. Heap buffers let the JMXResponseDecoder read frames without copying. */
+	public static final String CONFIG_DIRECT_BUFFERS = "com.heliosapm.asyncjmx.client.buffers.direct";
+	/** The default inbound channel buffer type */
+	public static final boolean DEFAULT_DIRECT_BUFFERS = false;
+	
 	static {
 		InputStream is = null;
 		try {
@@ -104,7 +111,11 @@ public class AsyncJMXClient implements ChannelUpstreamHandler {
 		clientBootstrap.setOption("tcpNoDelay", true);
 		clientBootstrap.setOption("receiveBufferSize", 1048576);
 		clientBootstrap.setOption("sendBufferSize", 1048576);
-		clientBootstrap.setOption("bufferFactory", new DirectChannelBufferFactory(2048));
+		if(ConfigurationHelper.getBooleanSystemThenEnvProperty(CONFIG_DIRECT_BUFFERS, DEFAULT_DIRECT_BUFFERS)) {
+			clientBootstrap.setOption("bufferFactory", new DirectChannelBufferFactory(2048));
+		} else {
+			clientBootstrap.setOption("bufferFactory", HeapChannelBufferFactory.getInstance());
+		}
 	}
 	
 	public MBeanServerConnection connectMBeanServerConnection(String host, int port, boolean async) {
@@ -112,8 +123,18 @@ public class AsyncJMXClient implements ChannelUpstreamHandler {
 		if(!async) {
 			return new SyncMBeanServerConnection(channel, 300000);
 		}
-		throw new RuntimeException("No async yet");
-		
+		return new AsyncMBeanServerConnection(channel, 300000);
+	}
+	
+	/**
+	 * Connects a callback driven JMX client to the JMX server at the passed host and port
+	 * @param host The JMX server host
+	 * @param port The JMX server port
+	 * @return the callback connection
+	 */
+	public CallbackMBeanServerConnection connectCallbackConnection(String host, int port) {
+		Channel channel = clientBootstrap.connect(new InetSocketAddress(host, port)).awaitUninterruptibly().getChannel();
+		return new CallbackMBeanServerConnection(channel);
 	}
 	
 	public static void log(String format, Object...args) {
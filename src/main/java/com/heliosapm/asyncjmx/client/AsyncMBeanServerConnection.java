@@ -25,8 +25,12 @@
 package com.heliosapm.asyncjmx.client;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.management.Attribute;
 import javax.management.AttributeList;
@@ -41,6 +45,7 @@ import javax.management.MBeanInfo;
 import javax.management.MBeanRegistrationException;
 import javax.management.MBeanServerConnection;
 import javax.management.NotCompliantMBeanException;
+import javax.management.Notification;
 import javax.management.NotificationFilter;
 import javax.management.NotificationListener;
 import javax.management.ObjectInstance;
@@ -49,247 +54,827 @@ import javax.management.QueryExp;
 import javax.management.ReflectionException;
 
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
+
+import com.heliosapm.asyncjmx.client.notifications.ListenerRegistration;
+import com.heliosapm.asyncjmx.client.notifications.MBeanNameMirror;
+import com.heliosapm.asyncjmx.shared.JMXCallback;
+import com.heliosapm.asyncjmx.shared.JMXOp;
+import com.heliosapm.asyncjmx.shared.JMXOpCode;
+import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
+import com.heliosapm.asyncjmx.shared.serialization.PlaceHolder;
+import com.heliosapm.asyncjmx.unsafe.UnsafeAdapter;
+import com.heliosapm.asyncjmx.unsafe.collections.ConcurrentIntObjectHashMap;
+import com.stumbleupon.async.Callback;
+import com.stumbleupon.async.Deferred;
 
 /**
  * <p>Title: AsyncMBeanServerConnection</p>
- * <p>Description: </p> 
+ * <p>Description: A non-blocking MBeanServerConnection implementation. Each JMX op is written to the server
+ * and a {@link Deferred} is returned which is completed directly from the decoded {@link JMXOpResponse} event
+ * on the netty I/O thread. Remote exceptions are delivered through the deferred's errback chain.
+ * The standard {@link MBeanServerConnection} methods are also implemented by joining on the deferred for up to the configured timeout.</p>
+ * <p>A deferred whose response has not arrived within the timeout is failed with a {@link TimeoutException} by the timer shared with
+ * {@link CallbackMBeanServerConnection}, so a lost response never leaves a callback chain waiting until the channel closes.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>com.heliosapm.asyncjmx.client.AsyncMBeanServerConnection</code></p>
  */
 
-public class AsyncMBeanServerConnection implements MBeanServerConnection {
+public class AsyncMBeanServerConnection implements MBeanServerConnection, ChannelUpstreamHandler {
 	/** The connection to the JMX server */
 	protected final Channel channel;
-	/** Indicates if the client is synchronous */
-	protected final boolean sync;
 	/** The timeout for JMX invocations in ms */
 	protected final long timeout;
-	/** The request id serial number factory */
-	protected final AtomicInteger serial = new AtomicInteger(0);
-	
-	
-	
-	
+	/** The ops awaiting a response keyed by the request id */
+	protected final ConcurrentIntObjectHashMap<PendingOp> pending = new ConcurrentIntObjectHashMap<PendingOp>();
+	/** Instance logger */
+	protected final JMXLogger log = JMXLogger.getLogger(getClass());
+	/** The channel's metadata cache, null if metadata is not cached */
+	protected final MetadataCache metadataCache;
 	
 	/**
 	 * Creates a new AsyncMBeanServerConnection
 	 * @param channel The netty channel connection to the JMX server
-	 * @param sync true for a sync client, false for async
-	 * @param timeout The timeout in ms.
+	 * @param timeout The timeout in ms. applied to the blocking {@link MBeanServerConnection} methods and after which a deferred with no response is failed
 	 */
-	public AsyncMBeanServerConnection(Channel channel, boolean sync, long timeout) {
+	public AsyncMBeanServerConnection(Channel channel, long timeout) {
 		this.channel = channel;
-		this.sync = sync;
 		this.timeout = timeout;
+		metadataCache = MetadataCache.get(channel);
+		this.channel.getPipeline().addLast(SyncMBeanServerConnection.RESPONSE_HANDLER_NAME, this);
 	}
-
+	
 	/**
 	 * Writes the JMX invocation request to the remote server
-	 * @param opCode The op code for the jmx operation being invoked
-	 * @param args The arguments to the invocation
-	 * @return the response to the request if sync, or null if async
+	 * @param op The JMX invocation to send to the remote
+	 * @return the deferred result of the invocation
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T> Deferred<T> writeRequest(final JMXOp op) {
+		final Deferred<Object> def = new Deferred<Object>();
+		final int rId = op.getOpSeq();
+		final PendingOp p = new PendingOp(rId, op.getJmxOpCode(), def);
+		pending.put(rId, p);
+		p.timeout = CallbackMBeanServerConnection.getTimer().newTimeout(p, timeout, TimeUnit.MILLISECONDS);
+		channel.write(op).addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				if(!future.isSuccess()) {
+					PendingOp d = take(rId);
+					if(d!=null) {
+						d.def.callback(new IOException("Failed to write op [" + op.getJmxOpCode().name() + "]--[" + rId + "]", future.getCause()));
+					}
+				}
+			}
+		});
+		return (Deferred<T>)(Deferred<?>)def;
+	}
+	
+	/**
+	 * Removes the pending op with the passed request id and cancels its timeout
+	 * @param rId The request id
+	 * @return the removed pending op, or null if it was already completed by a response, failure, timeout or close
+	 */
+	protected PendingOp take(final int rId) {
+		final PendingOp p = pending.remove(rId);
+		if(p!=null) p.cancelTimeout();
+		return p;
+	}
+	
+	/**
+	 * Waits on the passed deferred for up to the configured timeout and returns the result, rethrowing any remote exception
+	 * @param op The op the deferred is waiting on
+	 * @param def The deferred to wait on
+	 * @return the result of the invocation
+	 */
+	protected <T> T join(final JMXOp op, final Deferred<T> def) {
+		try {
+			return def.join(timeout);
+		} catch (TimeoutException tex) {
+			take(op.getOpSeq());
+			if(metadataCache!=null) metadataCache.cancel(op.getOpSeq());
+			UnsafeAdapter.throwException(new IOException("Timed out waiting on op [" + op.getJmxOpCode().name() + "]--[" + op.getOpSeq() + "]", tex));
+		} catch (InterruptedException iex) {
+			take(op.getOpSeq());
+			if(metadataCache!=null) metadataCache.cancel(op.getOpSeq());
+			Thread.currentThread().interrupt();
+			final InterruptedIOException iioe = new InterruptedIOException("Interrupted waiting on op [" + op.getJmxOpCode().name() + "]--[" + op.getOpSeq() + "]");
+			iioe.initCause(iex);
+			UnsafeAdapter.throwException(iioe);
+		} catch (Exception ex) {
+			UnsafeAdapter.throwException(ex);
+		}
+		return null;
+	}
+	
+	/**
+	 * Writes the JMX invocation request to the remote server and waits for the response
+	 * @param op The JMX invocation to send to the remote
+	 * @return the response
+	 */
+	protected <T> T invokeAndWait(final JMXOp op) {
+		return join(op, this.<T>writeRequest(op));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.ChannelUpstreamHandler#handleUpstream(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelEvent)
+	 */
+	@Override
+	public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent e) throws Exception {
+		if(e instanceof MessageEvent) {
+			Object obj = ((MessageEvent)e).getMessage();
+			if(obj instanceof JMXOpResponse) {
+				JMXOpResponse jmxResponse = (JMXOpResponse)obj;
+				PendingOp p = take(jmxResponse.getRequestId());
+				if(p==null) {
+					log.warn("No pending request for response [%s]", jmxResponse);
+					return;
+				}
+				Object response = jmxResponse.getResponse();
+				if(response instanceof PlaceHolder) {
+					response = null;
+				} else if(response instanceof Throwable && !(response instanceof Exception)) {
+					response = new RuntimeException((Throwable)response);
+				}
+				p.def.callback(response);
+			} else if(obj instanceof JMXCallback) {
+				JMXCallback callback = (JMXCallback)obj;
+				if(callback.isNotification()) {
+					ListenerRegistration.handleNotification(e.getChannel(), callback.getTarget(), (Notification)callback.getCallback());
+				}
+			} else {
+				ctx.sendUpstream(e);
+			}
+		} else {
+			if(e instanceof ChannelStateEvent && !e.getChannel().isOpen()) {
+				failPending();
+			}
+			ctx.sendUpstream(e);
+		}
+	}
+	
+	/**
+	 * Fails all pending deferreds when the channel closes
+	 */
+	protected void failPending() {
+		for(PendingOp p: pending.drain()) {
+			p.cancelTimeout();
+			p.def.callback(new ClosedChannelException());
+		}
+	}
+	
+	//===============================================================================================================================
+	//		Deferred JMX Op Impls
+	//===============================================================================================================================
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#createMBean(String, ObjectName)}
+	 * @param className The class name of the MBean to be instantiated
+	 * @param name The object name of the MBean. May be null.
+	 * @return the deferred ObjectInstance of the created MBean
+	 */
+	public Deferred<ObjectInstance> createMBeanAsync(String className, ObjectName name) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.CREATEMBEAN_SO, className, name));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#createMBean(String, ObjectName, ObjectName)}
+	 * @param className The class name of the MBean to be instantiated
+	 * @param name The object name of the MBean. May be null.
+	 * @param loaderName The object name of the class loader to be used
+	 * @return the deferred ObjectInstance of the created MBean
+	 */
+	public Deferred<ObjectInstance> createMBeanAsync(String className, ObjectName name, ObjectName loaderName) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.CREATEMBEAN_SOO, className, name, loaderName));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#createMBean(String, ObjectName, Object[], String[])}
+	 * @param className The class name of the MBean to be instantiated
+	 * @param name The object name of the MBean. May be null.
+	 * @param params The constructor parameters
+	 * @param signature The constructor signature
+	 * @return the deferred ObjectInstance of the created MBean
+	 */
+	public Deferred<ObjectInstance> createMBeanAsync(String className, ObjectName name, Object[] params, String[] signature) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.CREATEMBEAN_SOOS, className, name, params, signature));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#createMBean(String, ObjectName, ObjectName, Object[], String[])}
+	 * @param className The class name of the MBean to be instantiated
+	 * @param name The object name of the MBean. May be null.
+	 * @param loaderName The object name of the class loader to be used
+	 * @param params The constructor parameters
+	 * @param signature The constructor signature
+	 * @return the deferred ObjectInstance of the created MBean
+	 */
+	public Deferred<ObjectInstance> createMBeanAsync(String className, ObjectName name, ObjectName loaderName, Object[] params, String[] signature) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.CREATEMBEAN_SOOOS, className, name, loaderName, params, signature));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#unregisterMBean(ObjectName)}
+	 * @param name The object name of the MBean to unregister
+	 * @return a deferred completed with null when the MBean is unregistered
+	 */
+	public Deferred<Object> unregisterMBeanAsync(ObjectName name) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.UNREGISTERMBEAN, name));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#getObjectInstance(ObjectName)}
+	 * @param name The object name of the MBean
+	 * @return the deferred ObjectInstance
+	 */
+	public Deferred<ObjectInstance> getObjectInstanceAsync(ObjectName name) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.GETOBJECTINSTANCE, name));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#queryMBeans(ObjectName, QueryExp)}
+	 * @param name The object name pattern. May be null.
+	 * @param query The query expression. May be null.
+	 * @return the deferred set of matching ObjectInstances
+	 */
+	public Deferred<Set<ObjectInstance>> queryMBeansAsync(ObjectName name, QueryExp query) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.QUERYMBEANS, name, query));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#queryNames(ObjectName, QueryExp)}
+	 * @param name The object name pattern. May be null.
+	 * @param query The query expression. May be null.
+	 * @return the deferred set of matching ObjectNames
+	 */
+	public Deferred<Set<ObjectName>> queryNamesAsync(ObjectName name, QueryExp query) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.QUERYNAMES, name, query));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#isRegistered(ObjectName)}
+	 * @param name The object name of the MBean
+	 * @return the deferred registration state
+	 */
+	public Deferred<Boolean> isRegisteredAsync(ObjectName name) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.ISREGISTERED, name));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#getMBeanCount()}
+	 * @return the deferred MBean count
+	 */
+	public Deferred<Integer> getMBeanCountAsync() {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.GETMBEANCOUNT));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#getAttribute(ObjectName, String)}
+	 * @param name The object name of the MBean
+	 * @param attribute The attribute name
+	 * @return the deferred attribute value
+	 */
+	public Deferred<Object> getAttributeAsync(ObjectName name, String attribute) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.GETATTRIBUTE, name, attribute));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#getAttributes(ObjectName, String[])}
+	 * @param name The object name of the MBean
+	 * @param attributes The attribute names
+	 * @return the deferred attribute list
+	 */
+	public Deferred<AttributeList> getAttributesAsync(ObjectName name, String[] attributes) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.GETATTRIBUTES, name, attributes));
+	}
+	
+	/**
+	 * Asynchronous batch of {@link MBeanServerConnection#getAttributes(ObjectName, String[])} sent in one request frame
+	 * @param names The object names of the MBeans
+	 * @param attributes The attribute names for the MBean at the same index in <code>names</code>
+	 * @return the deferred array of the AttributeList, or the exception thrown, for each MBean
+	 */
+	public Deferred<Object[]> getAttributesBatchAsync(ObjectName[] names, String[][] attributes) {
+		if(names.length!=attributes.length) throw new IllegalArgumentException("ObjectName count [" + names.length + "] does not match attribute name set count [" + attributes.length + "]");
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.GETATTRIBUTES_BATCH, names, attributes));
+	}
+	
+	/**
+	 * Asynchronous server side query and getAttributes on each matching MBean in one round trip
+	 * @param name The object name pattern
+	 * @param query The optional query expression
+	 * @param attributes The attribute names
+	 * @return the deferred map of attribute values keyed by attribute name, keyed by ObjectName
+	 * @see com.heliosapm.asyncjmx.shared.util.JMXHelper#getMBeanAttributeMap(MBeanServerConnection, ObjectName, QueryExp, String, String...)
+	 */
+	public Deferred<Map<ObjectName, Map<String, Object>>> getAttributesAsync(ObjectName name, QueryExp query, String...attributes) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.GETATTRIBUTES_QUERY, name, query, attributes));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#setAttribute(ObjectName, Attribute)}
+	 * @param name The object name of the MBean
+	 * @param attribute The attribute to set
+	 * @return a deferred completed with null when the attribute is set
+	 */
+	public Deferred<Object> setAttributeAsync(ObjectName name, Attribute attribute) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.SETATTRIBUTE, name, attribute));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#setAttributes(ObjectName, AttributeList)}
+	 * @param name The object name of the MBean
+	 * @param attributes The attributes to set
+	 * @return the deferred list of attributes that were set
+	 */
+	public Deferred<AttributeList> setAttributesAsync(ObjectName name, AttributeList attributes) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.SETATTRIBUTES, name, attributes));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#invoke(ObjectName, String, Object[], String[])}
+	 * @param name The object name of the MBean
+	 * @param operationName The name of the operation to invoke
+	 * @param params The operation parameters
+	 * @param signature The operation signature
+	 * @return the deferred operation return value
+	 */
+	public Deferred<Object> invokeAsync(ObjectName name, String operationName, Object[] params, String[] signature) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.INVOKE, name, operationName, params, signature));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#getDefaultDomain()}
+	 * @return the deferred default domain
+	 */
+	public Deferred<String> getDefaultDomainAsync() {
+		if(metadataCache!=null) {
+			final String defaultDomain = metadataCache.getDefaultDomain();
+			if(defaultDomain!=null) return Deferred.fromResult(defaultDomain);
+		}
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.GETDEFAULTDOMAIN));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#getDomains()}
+	 * @return the deferred domains
+	 */
+	public Deferred<String[]> getDomainsAsync() {
+		if(metadataCache!=null) {
+			final String[] domains = metadataCache.getDomains();
+			if(domains!=null) return Deferred.fromResult(domains);
+		}
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.GETDOMAINS));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#addNotificationListener(ObjectName, NotificationListener, NotificationFilter, Object)}
+	 * @param name The object name of the MBean to listen on
+	 * @param listener The listener
+	 * @param filter The optional filter
+	 * @param handback The optional handback
+	 * @return a deferred completed with null when the listener is registered
+	 */
+	public Deferred<Object> addNotificationListenerAsync(ObjectName name, NotificationListener listener, NotificationFilter filter, Object handback) {
+		final ListenerRegistration lr = ListenerRegistration.getInstance(channel, listener, filter, handback);
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.ADDNOTIFICATIONLISTENER_ONNO, name, lr, null, null));
+	}
+	
+	/**
+	 * Subscribes to the ObjectNames matching the passed pattern. The matching names are returned once and the server then pushes
+	 * only registration and unregistration deltas, which keep the returned mirror current.
+	 * @param pattern The ObjectName pattern to mirror, null for all
+	 * @return a deferred completed with the initialized mirror
+	 */
+	public Deferred<MBeanNameMirror> subscribeNamesAsync(ObjectName pattern) {
+		final MBeanNameMirror mirror = new MBeanNameMirror(channel, pattern);
+		final ListenerRegistration lr = ListenerRegistration.getInstance(channel, mirror, null, null);
+		return this.<Set<ObjectName>>writeRequest(JMXOp.newOp(channel, JMXOpCode.SUBSCRIBE_NAMES, pattern, lr)).addCallbacks(new Callback<MBeanNameMirror, Set<ObjectName>>() {
+			@Override
+			public MBeanNameMirror call(Set<ObjectName> names) throws Exception {
+				return mirror.initialize(names);
+			}
+		}, new Callback<Exception, Exception>() {
+			@Override
+			public Exception call(Exception ex) throws Exception {
+				ListenerRegistration.remove(channel, lr);
+				return ex;
+			}
+		});
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#addNotificationListener(ObjectName, ObjectName, NotificationFilter, Object)}
+	 * @param name The object name of the MBean to listen on
+	 * @param listener The object name of the listener
+	 * @param filter The optional filter
+	 * @param handback The optional handback
+	 * @return a deferred completed with null when the listener is registered
+	 */
+	public Deferred<Object> addNotificationListenerAsync(ObjectName name, ObjectName listener, NotificationFilter filter, Object handback) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.ADDNOTIFICATIONLISTENER_OONO, name, listener, filter, handback));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#removeNotificationListener(ObjectName, ObjectName)}
+	 * @param name The object name of the MBean listened on
+	 * @param listener The object name of the listener
+	 * @return a deferred completed with null when the listener is removed
+	 */
+	public Deferred<Object> removeNotificationListenerAsync(ObjectName name, ObjectName listener) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.REMOVENOTIFICATIONLISTENER_OO, name, listener));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#removeNotificationListener(ObjectName, ObjectName, NotificationFilter, Object)}
+	 * @param name The object name of the MBean listened on
+	 * @param listener The object name of the listener
+	 * @param filter The filter specified when the listener was added
+	 * @param handback The handback specified when the listener was added
+	 * @return a deferred completed with null when the listener is removed
+	 */
+	public Deferred<Object> removeNotificationListenerAsync(ObjectName name, ObjectName listener, NotificationFilter filter, Object handback) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.REMOVENOTIFICATIONLISTENER_OONO, name, listener, filter, handback));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#removeNotificationListener(ObjectName, NotificationListener)}
+	 * @param name The object name of the MBean listened on
+	 * @param listener The listener
+	 * @return a deferred completed with null when the listener is removed
+	 */
+	public Deferred<Object> removeNotificationListenerAsync(ObjectName name, NotificationListener listener) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.REMOVENOTIFICATIONLISTENER_ON, name, listener));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#removeNotificationListener(ObjectName, NotificationListener, NotificationFilter, Object)}
+	 * @param name The object name of the MBean listened on
+	 * @param listener The listener
+	 * @param filter The filter specified when the listener was added
+	 * @param handback The handback specified when the listener was added
+	 * @return a deferred completed with null when the listener is removed
+	 */
+	public Deferred<Object> removeNotificationListenerAsync(ObjectName name, NotificationListener listener, NotificationFilter filter, Object handback) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.REMOVENOTIFICATIONLISTENER_ONNO, name, listener, filter, handback));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#getMBeanInfo(ObjectName)}
+	 * @param name The object name of the MBean
+	 * @return the deferred MBeanInfo
+	 */
+	public Deferred<MBeanInfo> getMBeanInfoAsync(ObjectName name) {
+		if(metadataCache!=null) {
+			final MBeanInfo info = metadataCache.getMBeanInfo(name);
+			if(info!=null) return Deferred.fromResult(info);
+		}
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.GETMBEANINFO, name));
+	}
+	
+	/**
+	 * Asynchronous {@link MBeanServerConnection#isInstanceOf(ObjectName, String)}
+	 * @param name The object name of the MBean
+	 * @param className The class name to test
+	 * @return the deferred instance-of state
 	 */
-	protected Object writeRequest(byte opCode, Object...args) {
-		int rId = serial.incrementAndGet();
-		channel.write(new Object[] {opCode, rId, args});
-		return rId;
+	public Deferred<Boolean> isInstanceOfAsync(ObjectName name, String className) {
+		if(metadataCache!=null) {
+			final Boolean instanceOf = metadataCache.isInstanceOf(name, className);
+			if(instanceOf!=null) return Deferred.fromResult(instanceOf);
+		}
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.ISINSTANCEOF, name, className));
 	}
+	
+	//===============================================================================================================================
+	//		MBeanServerConnection Method Impls
+	//===============================================================================================================================
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#createMBean(java.lang.String, javax.management.ObjectName)
+	 */
 	@Override
-	public ObjectInstance createMBean(String className, ObjectName name)
-			throws ReflectionException, InstanceAlreadyExistsException,
-			MBeanRegistrationException, MBeanException,
-			NotCompliantMBeanException, IOException {
-		// TODO Auto-generated method stub
-		return null;
+	public ObjectInstance createMBean(String className, ObjectName name) throws ReflectionException, InstanceAlreadyExistsException, MBeanRegistrationException, MBeanException, NotCompliantMBeanException, IOException {
+		return invokeAndWait(JMXOp.newOp(channel, JMXOpCode.CREATEMBEAN_SO, className, name));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#createMBean(java.lang.String, javax.management.ObjectName, javax.management.ObjectName)
+	 */
 	@Override
-	public ObjectInstance createMBean(String className, ObjectName name,
-			ObjectName loaderName) throws ReflectionException,
-			InstanceAlreadyExistsException, MBeanRegistrationException,
-			MBeanException, NotCompliantMBeanException,
-			InstanceNotFoundException, IOException {
-		// TODO Auto-generated method stub
-		return null;
+	public ObjectInstance createMBean(String className, ObjectName name, ObjectName loaderName) throws ReflectionException, InstanceAlreadyExistsException, MBeanRegistrationException, MBeanException, NotCompliantMBeanException, InstanceNotFoundException, IOException {
+		return invokeAndWait(JMXOp.newOp(channel, JMXOpCode.CREATEMBEAN_SOO, className, name, loaderName));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#createMBean(java.lang.String, javax.management.ObjectName, java.lang.Object[], java.lang.String[])
+	 */
 	@Override
-	public ObjectInstance createMBean(String className, ObjectName name,
-			Object[] params, String[] signature) throws ReflectionException,
-			InstanceAlreadyExistsException, MBeanRegistrationException,
-			MBeanException, NotCompliantMBeanException, IOException {
-		// TODO Auto-generated method stub
-		return null;
+	public ObjectInstance createMBean(String className, ObjectName name, Object[] params, String[] signature) throws ReflectionException, InstanceAlreadyExistsException, MBeanRegistrationException, MBeanException, NotCompliantMBeanException, IOException {
+		return invokeAndWait(JMXOp.newOp(channel, JMXOpCode.CREATEMBEAN_SOOS, className, name, params, signature));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#createMBean(java.lang.String, javax.management.ObjectName, javax.management.ObjectName, java.lang.Object[], java.lang.String[])
+	 */
 	@Override
-	public ObjectInstance createMBean(String className, ObjectName name,
-			ObjectName loaderName, Object[] params, String[] signature)
-			throws ReflectionException, InstanceAlreadyExistsException,
-			MBeanRegistrationException, MBeanException,
-			NotCompliantMBeanException, InstanceNotFoundException, IOException {
-		// TODO Auto-generated method stub
-		return null;
+	public ObjectInstance createMBean(String className, ObjectName name, ObjectName loaderName, Object[] params, String[] signature) throws ReflectionException, InstanceAlreadyExistsException, MBeanRegistrationException, MBeanException, NotCompliantMBeanException, InstanceNotFoundException, IOException {
+		return invokeAndWait(JMXOp.newOp(channel, JMXOpCode.CREATEMBEAN_SOOOS, className, name, loaderName, params, signature));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#unregisterMBean(javax.management.ObjectName)
+	 */
 	@Override
-	public void unregisterMBean(ObjectName name)
-			throws InstanceNotFoundException, MBeanRegistrationException,
-			IOException {
-		// TODO Auto-generated method stub
-		
+	public void unregisterMBean(ObjectName name) throws InstanceNotFoundException, MBeanRegistrationException, IOException {
+		invokeAndWait(JMXOp.newOp(channel, JMXOpCode.UNREGISTERMBEAN, name));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#getObjectInstance(javax.management.ObjectName)
+	 */
 	@Override
-	public ObjectInstance getObjectInstance(ObjectName name)
-			throws InstanceNotFoundException, IOException {
-		// TODO Auto-generated method stub
-		return null;
+	public ObjectInstance getObjectInstance(ObjectName name) throws InstanceNotFoundException, IOException {
+		return invokeAndWait(JMXOp.newOp(channel, JMXOpCode.GETOBJECTINSTANCE, name));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#queryMBeans(javax.management.ObjectName, javax.management.QueryExp)
+	 */
 	@Override
-	public Set<ObjectInstance> queryMBeans(ObjectName name, QueryExp query)
-			throws IOException {
-		// TODO Auto-generated method stub
-		return null;
+	public Set<ObjectInstance> queryMBeans(ObjectName name, QueryExp query) throws IOException {
+		return invokeAndWait(JMXOp.newOp(channel, JMXOpCode.QUERYMBEANS, name, query));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#queryNames(javax.management.ObjectName, javax.management.QueryExp)
+	 */
 	@Override
-	public Set<ObjectName> queryNames(ObjectName name, QueryExp query)
-			throws IOException {
-		// TODO Auto-generated method stub
-		return null;
+	public Set<ObjectName> queryNames(ObjectName name, QueryExp query) throws IOException {
+		return invokeAndWait(JMXOp.newOp(channel, JMXOpCode.QUERYNAMES, name, query));
+	}
+	
+	/**
+	 * Subscribes to the ObjectNames matching the passed pattern and waits for the mirror to be initialized
+	 * @param pattern The ObjectName pattern to mirror, null for all
+	 * @return the initialized mirror
+	 * @throws IOException thrown on an IO remoting error
+	 * @see #subscribeNamesAsync(ObjectName)
+	 */
+	public MBeanNameMirror subscribeNames(ObjectName pattern) throws IOException {
+		final MBeanNameMirror mirror = new MBeanNameMirror(channel, pattern);
+		final ListenerRegistration lr = ListenerRegistration.getInstance(channel, mirror, null, null);
+		boolean subscribed = false;
+		try {
+			final Set<ObjectName> names = invokeAndWait(JMXOp.newOp(channel, JMXOpCode.SUBSCRIBE_NAMES, pattern, lr));
+			subscribed = true;
+			return mirror.initialize(names);
+		} finally {
+			if(!subscribed) ListenerRegistration.remove(channel, lr);
+		}
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#isRegistered(javax.management.ObjectName)
+	 */
 	@Override
 	public boolean isRegistered(ObjectName name) throws IOException {
-		// TODO Auto-generated method stub
-		return false;
+		Boolean b = invokeAndWait(JMXOp.newOp(channel, JMXOpCode.ISREGISTERED, name));
+		return b!=null && b;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#getMBeanCount()
+	 */
 	@Override
 	public Integer getMBeanCount() throws IOException {
-		// TODO Auto-generated method stub
-		return null;
+		return invokeAndWait(JMXOp.newOp(channel, JMXOpCode.GETMBEANCOUNT));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#getAttribute(javax.management.ObjectName, java.lang.String)
+	 */
 	@Override
-	public Object getAttribute(ObjectName name, String attribute)
-			throws MBeanException, AttributeNotFoundException,
-			InstanceNotFoundException, ReflectionException, IOException {
-		// TODO Auto-generated method stub
-		return null;
+	public Object getAttribute(ObjectName name, String attribute) throws MBeanException, AttributeNotFoundException, InstanceNotFoundException, ReflectionException, IOException {
+		return invokeAndWait(JMXOp.newOp(channel, JMXOpCode.GETATTRIBUTE, name, attribute));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#getAttributes(javax.management.ObjectName, java.lang.String[])
+	 */
 	@Override
-	public AttributeList getAttributes(ObjectName name, String[] attributes)
-			throws InstanceNotFoundException, ReflectionException, IOException {
-		// TODO Auto-generated method stub
-		return null;
+	public AttributeList getAttributes(ObjectName name, String[] attributes) throws InstanceNotFoundException, ReflectionException, IOException {
+		return invokeAndWait(JMXOp.newOp(channel, JMXOpCode.GETATTRIBUTES, name, attributes));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#setAttribute(javax.management.ObjectName, javax.management.Attribute)
+	 */
 	@Override
-	public void setAttribute(ObjectName name, Attribute attribute)
-			throws InstanceNotFoundException, AttributeNotFoundException,
-			InvalidAttributeValueException, MBeanException,
-			ReflectionException, IOException {
-		// TODO Auto-generated method stub
-		
+	public void setAttribute(ObjectName name, Attribute attribute) throws InstanceNotFoundException, AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException, IOException {
+		invokeAndWait(JMXOp.newOp(channel, JMXOpCode.SETATTRIBUTE, name, attribute));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#setAttributes(javax.management.ObjectName, javax.management.AttributeList)
+	 */
 	@Override
-	public AttributeList setAttributes(ObjectName name, AttributeList attributes)
-			throws InstanceNotFoundException, ReflectionException, IOException {
-		// TODO Auto-generated method stub
-		return null;
+	public AttributeList setAttributes(ObjectName name, AttributeList attributes) throws InstanceNotFoundException, ReflectionException, IOException {
+		return invokeAndWait(JMXOp.newOp(channel, JMXOpCode.SETATTRIBUTES, name, attributes));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#invoke(javax.management.ObjectName, java.lang.String, java.lang.Object[], java.lang.String[])
+	 */
 	@Override
-	public Object invoke(ObjectName name, String operationName,
-			Object[] params, String[] signature)
-			throws InstanceNotFoundException, MBeanException,
-			ReflectionException, IOException {
-		// TODO Auto-generated method stub
-		return null;
+	public Object invoke(ObjectName name, String operationName, Object[] params, String[] signature) throws InstanceNotFoundException, MBeanException, ReflectionException, IOException {
+		return invokeAndWait(JMXOp.newOp(channel, JMXOpCode.INVOKE, name, operationName, params, signature));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#getDefaultDomain()
+	 */
 	@Override
 	public String getDefaultDomain() throws IOException {
-		// TODO Auto-generated method stub
-		return null;
+		if(metadataCache!=null) {
+			final String defaultDomain = metadataCache.getDefaultDomain();
+			if(defaultDomain!=null) return defaultDomain;
+		}
+		return invokeAndWait(JMXOp.newOp(channel, JMXOpCode.GETDEFAULTDOMAIN));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#getDomains()
+	 */
 	@Override
 	public String[] getDomains() throws IOException {
-		// TODO Auto-generated method stub
-		return null;
+		if(metadataCache!=null) {
+			final String[] domains = metadataCache.getDomains();
+			if(domains!=null) return domains;
+		}
+		return invokeAndWait(JMXOp.newOp(channel, JMXOpCode.GETDOMAINS));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#addNotificationListener(javax.management.ObjectName, javax.management.NotificationListener, javax.management.NotificationFilter, java.lang.Object)
+	 */
 	@Override
-	public void addNotificationListener(ObjectName name,
-			NotificationListener listener, NotificationFilter filter,
-			Object handback) throws InstanceNotFoundException, IOException {
-		// TODO Auto-generated method stub
-		
+	public void addNotificationListener(ObjectName name, NotificationListener listener, NotificationFilter filter, Object handback) throws InstanceNotFoundException, IOException {
+		final ListenerRegistration lr = ListenerRegistration.getInstance(channel, listener, filter, handback);
+		invokeAndWait(JMXOp.newOp(channel, JMXOpCode.ADDNOTIFICATIONLISTENER_ONNO, name, lr, null, null));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#addNotificationListener(javax.management.ObjectName, javax.management.ObjectName, javax.management.NotificationFilter, java.lang.Object)
+	 */
 	@Override
-	public void addNotificationListener(ObjectName name, ObjectName listener,
-			NotificationFilter filter, Object handback)
-			throws InstanceNotFoundException, IOException {
-		// TODO Auto-generated method stub
-		
+	public void addNotificationListener(ObjectName name, ObjectName listener, NotificationFilter filter, Object handback) throws InstanceNotFoundException, IOException {
+		invokeAndWait(JMXOp.newOp(channel, JMXOpCode.ADDNOTIFICATIONLISTENER_OONO, name, listener, filter, handback));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#removeNotificationListener(javax.management.ObjectName, javax.management.ObjectName)
+	 */
 	@Override
-	public void removeNotificationListener(ObjectName name, ObjectName listener)
-			throws InstanceNotFoundException, ListenerNotFoundException,
-			IOException {
-		// TODO Auto-generated method stub
-		
+	public void removeNotificationListener(ObjectName name, ObjectName listener) throws InstanceNotFoundException, ListenerNotFoundException, IOException {
+		invokeAndWait(JMXOp.newOp(channel, JMXOpCode.REMOVENOTIFICATIONLISTENER_OO, name, listener));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#removeNotificationListener(javax.management.ObjectName, javax.management.ObjectName, javax.management.NotificationFilter, java.lang.Object)
+	 */
 	@Override
-	public void removeNotificationListener(ObjectName name,
-			ObjectName listener, NotificationFilter filter, Object handback)
-			throws InstanceNotFoundException, ListenerNotFoundException,
-			IOException {
-		// TODO Auto-generated method stub
-		
+	public void removeNotificationListener(ObjectName name, ObjectName listener, NotificationFilter filter, Object handback) throws InstanceNotFoundException, ListenerNotFoundException, IOException {
+		invokeAndWait(JMXOp.newOp(channel, JMXOpCode.REMOVENOTIFICATIONLISTENER_OONO, name, listener, filter, handback));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#removeNotificationListener(javax.management.ObjectName, javax.management.NotificationListener)
+	 */
 	@Override
-	public void removeNotificationListener(ObjectName name,
-			NotificationListener listener) throws InstanceNotFoundException,
-			ListenerNotFoundException, IOException {
-		// TODO Auto-generated method stub
-		
+	public void removeNotificationListener(ObjectName name, NotificationListener listener) throws InstanceNotFoundException, ListenerNotFoundException, IOException {
+		invokeAndWait(JMXOp.newOp(channel, JMXOpCode.REMOVENOTIFICATIONLISTENER_ON, name, listener));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#removeNotificationListener(javax.management.ObjectName, javax.management.NotificationListener, javax.management.NotificationFilter, java.lang.Object)
+	 */
 	@Override
-	public void removeNotificationListener(ObjectName name,
-			NotificationListener listener, NotificationFilter filter,
-			Object handback) throws InstanceNotFoundException,
-			ListenerNotFoundException, IOException {
-		// TODO Auto-generated method stub
-		
+	public void removeNotificationListener(ObjectName name, NotificationListener listener, NotificationFilter filter, Object handback) throws InstanceNotFoundException, ListenerNotFoundException, IOException {
+		invokeAndWait(JMXOp.newOp(channel, JMXOpCode.REMOVENOTIFICATIONLISTENER_ONNO, name, listener, filter, handback));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#getMBeanInfo(javax.management.ObjectName)
+	 */
 	@Override
-	public MBeanInfo getMBeanInfo(ObjectName name)
-			throws InstanceNotFoundException, IntrospectionException,
-			ReflectionException, IOException {
-		// TODO Auto-generated method stub
-		return null;
+	public MBeanInfo getMBeanInfo(ObjectName name) throws InstanceNotFoundException, IntrospectionException, ReflectionException, IOException {
+		if(metadataCache!=null) {
+			final MBeanInfo info = metadataCache.getMBeanInfo(name);
+			if(info!=null) return info;
+		}
+		return invokeAndWait(JMXOp.newOp(channel, JMXOpCode.GETMBEANINFO, name));
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.MBeanServerConnection#isInstanceOf(javax.management.ObjectName, java.lang.String)
+	 */
 	@Override
-	public boolean isInstanceOf(ObjectName name, String className)
-			throws InstanceNotFoundException, IOException {
-		// TODO Auto-generated method stub
-		return false;
+	public boolean isInstanceOf(ObjectName name, String className) throws InstanceNotFoundException, IOException {
+		if(metadataCache!=null) {
+			final Boolean instanceOf = metadataCache.isInstanceOf(name, className);
+			if(instanceOf!=null) return instanceOf;
+		}
+		Boolean b = invokeAndWait(JMXOp.newOp(channel, JMXOpCode.ISINSTANCEOF, name, className));
+		return b!=null && b;
 	}
 
+	/**
+	 * <p>Title: PendingOp</p>
+	 * <p>Description: An op awaiting its response, which fails the op's deferred with a {@link TimeoutException} if it is still pending when its timeout fires</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.asyncjmx.client.AsyncMBeanServerConnection.PendingOp</code></p>
+	 */
+	protected class PendingOp implements TimerTask {
+		/** The request id */
+		protected final int rId;
+		/** The op code */
+		protected final JMXOpCode opCode;
+		/** The deferred to complete with the response */
+		protected final Deferred<Object> def;
+		/** The pending timeout */
+		protected volatile Timeout timeout = null;
+		
+		/**
+		 * Creates a new PendingOp
+		 * @param rId The request id
+		 * @param opCode The op code
+		 * @param def The deferred to complete with the response
+		 */
+		protected PendingOp(int rId, JMXOpCode opCode, Deferred<Object> def) {
+			this.rId = rId;
+			this.opCode = opCode;
+			this.def = def;
+		}
+		
+		/**
+		 * Cancels the pending timeout
+		 */
+		protected void cancelTimeout() {
+			final Timeout t = timeout;
+			if(t!=null) t.cancel();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.util.TimerTask#run(org.jboss.netty.util.Timeout)
+		 */
+		@Override
+		public void run(Timeout t) throws Exception {
+			if(pending.remove(rId, this)) {
+				if(metadataCache!=null) metadataCache.cancel(rId);
+				try {
+					def.callback(new TimeoutException("Timed out waiting on op [" + opCode.name() + "]--[" + rId + "]"));
+				} catch (Exception ex) {
+					log.error("Timeout callback for op [%s]--[%s] failed", opCode, rId, ex);
+				}
+			}
+		}
+	}
 }
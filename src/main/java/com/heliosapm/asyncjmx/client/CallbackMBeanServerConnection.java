@@ -0,0 +1,818 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2007, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.client;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MBeanInfo;
+import javax.management.Notification;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+import javax.management.QueryExp;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import com.heliosapm.asyncjmx.client.notifications.ListenerRegistration;
+import com.heliosapm.asyncjmx.shared.JMXCallback;
+import com.heliosapm.asyncjmx.shared.JMXOp;
+import com.heliosapm.asyncjmx.shared.JMXOpCode;
+import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
+import com.heliosapm.asyncjmx.shared.serialization.PlaceHolder;
+import com.heliosapm.asyncjmx.shared.util.ConfigurationHelper;
+import com.heliosapm.asyncjmx.unsafe.collections.ConcurrentIntObjectHashMap;
+
+/**
+ * <p>Title: CallbackMBeanServerConnection</p>
+ * <p>Description: A push style JMX client where each op is passed a {@link MBeanServerConnectionCallback}
+ * and the response is dispatched to the callback method matching the response's {@link JMXOpCode} on the netty I/O thread.</p>
+ * <p>The callback and op code of an in-flight op are held together in an {@link InFlight} keyed by the op's request id 
+ * in a primitive int keyed map, so no thread ever blocks or is handed off to. Whichever of the response, a write failure, the op's timeout 
+ * or the channel closing removes the in-flight op first dispatches to its callback, so each op is completed exactly once.
+ * An op written while the maximum number of ops are in flight is rejected with an {@link IllegalStateException}. 
+ * Callbacks should be quick and never block.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.client.CallbackMBeanServerConnection</code></p>
+ */
+
+public class CallbackMBeanServerConnection implements ChannelUpstreamHandler {
+	/** The connection to the JMX server */
+	protected final Channel channel;
+	/** The in-flight ops keyed by request id */
+	protected final ConcurrentIntObjectHashMap<InFlight> inFlight = new ConcurrentIntObjectHashMap<InFlight>();
+	/** The number of in-flight ops */
+	protected final AtomicInteger inFlightCount = new AtomicInteger(0);
+	/** The maximum number of in-flight ops */
+	protected final int maxInFlight;
+	/** The time in ms. after which an op with no response is failed with a {@link TimeoutException} */
+	protected final long timeout;
+	/** Instance logger */
+	protected final JMXLogger log = JMXLogger.getLogger(getClass());
+	/** The channel's metadata cache, null if metadata is not cached */
+	protected final MetadataCache metadataCache;
+	
+	/** The conf property name for the maximum number of in-flight callback ops */
+	public static final String CONFIG_CALLBACK_SLOTS = "com.heliosapm.asyncjmx.client.callback.slots";
+	/** The default maximum number of in-flight callback ops */
+	public static final int DEFAULT_CALLBACK_SLOTS = 4096;
+	/** The conf property name for the time in ms. after which an op with no response is failed */
+	public static final String CONFIG_CALLBACK_TIMEOUT = "com.heliosapm.asyncjmx.client.callback.timeout";
+	/** The default time in ms. after which an op with no response is failed */
+	public static final long DEFAULT_CALLBACK_TIMEOUT = 300000L;
+	
+	/** The timer used to time out in-flight ops, shared with {@link AsyncMBeanServerConnection} */
+	private static volatile Timer timer = null;
+	/** The timer ctor lock */
+	private static final Object lock = new Object();
+	
+	/**
+	 * Creates a new CallbackMBeanServerConnection
+	 * @param channel The netty channel connection to the JMX server
+	 * @param maxInFlight The maximum number of in-flight ops
+	 * @param timeout The time in ms. after which an op with no response is failed with a {@link TimeoutException}
+	 */
+	public CallbackMBeanServerConnection(Channel channel, int maxInFlight, long timeout) {
+		if(maxInFlight<1) throw new IllegalArgumentException("Invalid max in-flight [" + maxInFlight + "]");
+		if(timeout<1) throw new IllegalArgumentException("Invalid timeout [" + timeout + "]");
+		this.channel = channel;
+		this.maxInFlight = maxInFlight;
+		this.timeout = timeout;
+		metadataCache = MetadataCache.get(channel);
+		this.channel.getPipeline().addLast(SyncMBeanServerConnection.RESPONSE_HANDLER_NAME, this);
+	}
+	
+	/**
+	 * Creates a new CallbackMBeanServerConnection with the configured op timeout
+	 * @param channel The netty channel connection to the JMX server
+	 * @param maxInFlight The maximum number of in-flight ops
+	 */
+	public CallbackMBeanServerConnection(Channel channel, int maxInFlight) {
+		this(channel, maxInFlight, ConfigurationHelper.getLongSystemThenEnvProperty(CONFIG_CALLBACK_TIMEOUT, DEFAULT_CALLBACK_TIMEOUT));
+	}
+	
+	/**
+	 * Creates a new CallbackMBeanServerConnection with the configured maximum number of in-flight ops and op timeout
+	 * @param channel The netty channel connection to the JMX server
+	 */
+	public CallbackMBeanServerConnection(Channel channel) {
+		this(channel, ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_CALLBACK_SLOTS, DEFAULT_CALLBACK_SLOTS));
+	}
+	
+	/**
+	 * Returns the shared timer used to time out in-flight ops, creating it if necessary
+	 * @return the shared timer
+	 */
+	protected static Timer getTimer() {
+		if(timer==null) {
+			synchronized(lock) {
+				if(timer==null) {
+					timer = new HashedWheelTimer(new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "JMXOpTimeoutTimer");
+							t.setDaemon(true);
+							return t;
+						}
+					}, 100, TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+		return timer;
+	}
+	
+	/**
+	 * Writes the JMX invocation request to the remote server 
+	 * @param op The JMX invocation to send to the remote
+	 * @param callback The callback to dispatch the response to
+	 * @return the request id of the op
+	 */
+	protected int writeRequest(final JMXOp op, final MBeanServerConnectionCallback callback) {
+		if(callback==null) throw new IllegalArgumentException("The passed callback was null");
+		final int rId = op.getOpSeq();
+		if(inFlightCount.incrementAndGet() > maxInFlight) {
+			inFlightCount.decrementAndGet();
+			throw new IllegalStateException("Too many ops in flight. Rejected request [" + rId + "]. Max in-flight is [" + maxInFlight + "]");
+		}
+		final InFlight f = new InFlight(rId, op.getJmxOpCode(), callback);
+		inFlight.put(rId, f);
+		f.timeout = getTimer().newTimeout(f, timeout, TimeUnit.MILLISECONDS);
+		channel.write(op).addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				if(!future.isSuccess()) {
+					InFlight failed = take(rId);
+					if(failed!=null) dispatchFail(failed.opCode, failed.callback, rId, future.getCause());
+				}
+			}
+		});
+		return rId;
+	}
+	
+	/**
+	 * Dispatches a value answered from the metadata cache to the callback on the calling thread, without writing the op
+	 * @param op The op answered from the cache
+	 * @param callback The callback to dispatch the value to
+	 * @param value The cached value
+	 * @return the request id of the op
+	 */
+	protected int dispatchCached(final JMXOp op, final MBeanServerConnectionCallback callback, final Object value) {
+		if(callback==null) throw new IllegalArgumentException("The passed callback was null");
+		dispatch(op.getJmxOpCode(), callback, op.getOpSeq(), value);
+		return op.getOpSeq();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.ChannelUpstreamHandler#handleUpstream(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelEvent)
+	 */
+	@Override
+	public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent e) throws Exception {
+		if(e instanceof MessageEvent) {
+			Object obj = ((MessageEvent)e).getMessage();
+			if(obj instanceof JMXOpResponse) {
+				JMXOpResponse jmxResponse = (JMXOpResponse)obj;
+				final int rId = jmxResponse.getRequestId();
+				final InFlight f = take(rId);
+				if(f==null) {
+					log.warn("No callback for response [%s]", jmxResponse);
+					return;
+				}
+				Object response = jmxResponse.getResponse();
+				try {
+					if(response instanceof Throwable) {
+						dispatchFail(f.opCode, f.callback, rId, (Throwable)response);
+					} else {
+						dispatch(f.opCode, f.callback, rId, response instanceof PlaceHolder ? null : response);
+					}
+				} catch (Exception ex) {
+					log.error("Callback for response [%s] failed", jmxResponse, ex);
+				}
+			} else if(obj instanceof JMXCallback) {
+				JMXCallback callback = (JMXCallback)obj;
+				if(callback.isNotification()) {
+					ListenerRegistration.handleNotification(e.getChannel(), callback.getTarget(), (Notification)callback.getCallback());
+				}
+			} else {
+				ctx.sendUpstream(e);
+			}
+		} else {
+			if(e instanceof ChannelStateEvent && !e.getChannel().isOpen()) {
+				failInFlight();
+			}
+			ctx.sendUpstream(e);
+		}
+	}
+	
+	/**
+	 * Fails all in-flight ops when the channel closes
+	 */
+	protected void failInFlight() {
+		for(InFlight f: inFlight.drain()) {
+			inFlightCount.decrementAndGet();
+			f.cancelTimeout();
+			dispatchFail(f.opCode, f.callback, f.rId, new ClosedChannelException());
+		}
+	}
+	
+	/**
+	 * Removes the in-flight op with the passed request id and cancels its timeout
+	 * @param rId The request id
+	 * @return the removed in-flight op, or null if it was already completed by a response, failure, timeout or close
+	 */
+	protected InFlight take(final int rId) {
+		final InFlight f = inFlight.remove(rId);
+		if(f!=null) {
+			inFlightCount.decrementAndGet();
+			f.cancelTimeout();
+		}
+		return f;
+	}
+	
+	/**
+	 * Returns the number of in-flight ops
+	 * @return the number of in-flight ops
+	 */
+	public int getInFlightCount() {
+		return inFlightCount.get();
+	}
+	
+	/**
+	 * <p>Title: InFlight</p>
+	 * <p>Description: An op awaiting its response, which fails the op with a {@link TimeoutException} if it is still in flight when its timeout fires</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.asyncjmx.client.CallbackMBeanServerConnection.InFlight</code></p>
+	 */
+	protected class InFlight implements TimerTask {
+		/** The request id */
+		protected final int rId;
+		/** The op code */
+		protected final JMXOpCode opCode;
+		/** The callback to dispatch the response to */
+		protected final MBeanServerConnectionCallback callback;
+		/** The pending timeout */
+		protected volatile Timeout timeout = null;
+		
+		/**
+		 * Creates a new InFlight
+		 * @param rId The request id
+		 * @param opCode The op code
+		 * @param callback The callback to dispatch the response to
+		 */
+		protected InFlight(int rId, JMXOpCode opCode, MBeanServerConnectionCallback callback) {
+			this.rId = rId;
+			this.opCode = opCode;
+			this.callback = callback;
+		}
+		
+		/**
+		 * Cancels the pending timeout
+		 */
+		protected void cancelTimeout() {
+			final Timeout t = timeout;
+			if(t!=null) t.cancel();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.util.TimerTask#run(org.jboss.netty.util.Timeout)
+		 */
+		@Override
+		public void run(Timeout t) throws Exception {
+			if(inFlight.remove(rId)==this) {
+				inFlightCount.decrementAndGet();
+				if(metadataCache!=null) metadataCache.cancel(rId);
+				try {
+					dispatchFail(opCode, callback, rId, new TimeoutException("Timed out waiting on op [" + opCode.name() + "]--[" + rId + "]"));
+				} catch (Exception ex) {
+					log.error("Timeout callback for op [%s]--[%s] failed", opCode, rId, ex);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Dispatches a successful response to the callback method for the passed op code
+	 * @param opCode The op code of the response
+	 * @param cb The callback to dispatch to
+	 * @param rId The request id
+	 * @param response The response value
+	 */
+	@SuppressWarnings("unchecked")
+	protected void dispatch(final JMXOpCode opCode, final MBeanServerConnectionCallback cb, final int rId, final Object response) {
+		switch(opCode) {
+			case QUERYMBEANS:
+				cb.onQueryMBeans(rId, (Set<ObjectInstance>)response);
+				break;
+			case QUERYNAMES:
+				cb.onQueryNames(rId, (Set<ObjectName>)response);
+				break;
+			case GETMBEANCOUNT:
+				cb.onGetMBeanCount(rId, (Integer)response);
+				break;
+			case GETDEFAULTDOMAIN:
+				cb.onGetDefaultDomain(rId, (String)response);
+				break;
+			case GETDOMAINS:
+				cb.onGetDomains(rId, (String[])response);
+				break;
+			case ADDNOTIFICATIONLISTENER_OONO:
+			case ADDNOTIFICATIONLISTENER_ONNO:
+				cb.onAddNotificationListener(rId);
+				break;
+			case REMOVENOTIFICATIONLISTENER_ONNO:
+			case REMOVENOTIFICATIONLISTENER_OONO:
+			case REMOVENOTIFICATIONLISTENER_OO:
+			case REMOVENOTIFICATIONLISTENER_ON:
+				cb.onRemoveNotificationListener(rId);
+				break;
+			case GETMBEANINFO:
+				cb.onGetMBeanInfo(rId, (MBeanInfo)response);
+				break;
+			case CREATEMBEAN_SOOOS:
+			case CREATEMBEAN_SOOS:
+			case CREATEMBEAN_SOO:
+			case CREATEMBEAN_SO:
+				cb.onCreateMBean(rId, (ObjectInstance)response);
+				break;
+			case UNREGISTERMBEAN:
+				cb.onUnregisterMBean(rId);
+				break;
+			case GETOBJECTINSTANCE:
+				cb.onGetObjectInstance(rId, (ObjectInstance)response);
+				break;
+			case INVOKE:
+				cb.onInvoke(rId, response);
+				break;
+			case ISREGISTERED:
+				cb.onIsRegistered(rId, response!=null && (Boolean)response);
+				break;
+			case GETATTRIBUTES:
+				cb.onGetAttributes(rId, (AttributeList)response);
+				break;
+			case GETATTRIBUTE:
+				cb.onGetAttribute(rId, response);
+				break;
+			case SETATTRIBUTE:
+				cb.onSetAttribute(rId);
+				break;
+			case ISINSTANCEOF:
+				cb.onIsInstanceOf(rId, response!=null && (Boolean)response);
+				break;
+			case SETATTRIBUTES:
+				cb.onSetAttributes(rId, (AttributeList)response);
+				break;
+			case GETATTRIBUTES_BATCH:
+				cb.onGetAttributesBatch(rId, (Object[])response);
+				break;
+			case GETATTRIBUTES_QUERY:
+				cb.onGetAttributesQuery(rId, (Map<ObjectName, Map<String, Object>>)response);
+				break;
+			default:
+				log.warn("No callback dispatch for op code [%s]", opCode);
+		}
+	}
+	
+	/**
+	 * Dispatches a failed response to the fail callback method for the passed op code
+	 * @param opCode The op code of the response
+	 * @param cb The callback to dispatch to
+	 * @param rId The request id
+	 * @param t The failure cause
+	 */
+	protected void dispatchFail(final JMXOpCode opCode, final MBeanServerConnectionCallback cb, final int rId, final Throwable t) {
+		switch(opCode) {
+			case QUERYMBEANS:
+				cb.onQueryMBeansFail(rId, t);
+				break;
+			case QUERYNAMES:
+				cb.onQueryNamesFail(rId, t);
+				break;
+			case GETMBEANCOUNT:
+				cb.onGetMBeanCountFail(rId, t);
+				break;
+			case GETDEFAULTDOMAIN:
+				cb.onGetDefaultDomainFail(rId, t);
+				break;
+			case GETDOMAINS:
+				cb.onGetDomainsFail(rId, t);
+				break;
+			case ADDNOTIFICATIONLISTENER_OONO:
+			case ADDNOTIFICATIONLISTENER_ONNO:
+				cb.onAddNotificationListenerFail(rId, t);
+				break;
+			case REMOVENOTIFICATIONLISTENER_ONNO:
+			case REMOVENOTIFICATIONLISTENER_OONO:
+			case REMOVENOTIFICATIONLISTENER_OO:
+			case REMOVENOTIFICATIONLISTENER_ON:
+				cb.onRemoveNotificationListenerFail(rId, t);
+				break;
+			case GETMBEANINFO:
+				cb.onGetMBeanInfoFail(rId, t);
+				break;
+			case CREATEMBEAN_SOOOS:
+			case CREATEMBEAN_SOOS:
+			case CREATEMBEAN_SOO:
+			case CREATEMBEAN_SO:
+				cb.onCreateMBeanFail(rId, t);
+				break;
+			case UNREGISTERMBEAN:
+				cb.onUnregisterMBeanFail(rId, t);
+				break;
+			case GETOBJECTINSTANCE:
+				cb.onGetObjectInstanceFail(rId, t);
+				break;
+			case INVOKE:
+				cb.onInvokeFail(rId, t);
+				break;
+			case ISREGISTERED:
+				cb.onIsRegisteredFail(rId, t);
+				break;
+			case GETATTRIBUTES:
+				cb.onGetAttributesFail(rId, t);
+				break;
+			case GETATTRIBUTE:
+				cb.onGetAttributeFail(rId, t);
+				break;
+			case SETATTRIBUTE:
+				cb.onSetAttributeFail(rId, t);
+				break;
+			case ISINSTANCEOF:
+				cb.onIsInstanceOfFail(rId, t);
+				break;
+			case SETATTRIBUTES:
+				cb.onSetAttributesFail(rId, t);
+				break;
+			case GETATTRIBUTES_BATCH:
+				cb.onGetAttributesBatchFail(rId, t);
+				break;
+			case GETATTRIBUTES_QUERY:
+				cb.onGetAttributesQueryFail(rId, t);
+				break;
+			default:
+				log.warn("No callback fail dispatch for op code [%s]", opCode, t);
+		}
+	}
+	
+	//===============================================================================================================================
+	//		Callback JMX Op Impls
+	//===============================================================================================================================
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#createMBean(String, ObjectName)}
+	 * @param className The class name of the MBean to be instantiated
+	 * @param name The object name of the MBean. May be null.
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int createMBean(String className, ObjectName name, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.CREATEMBEAN_SO, className, name), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#createMBean(String, ObjectName, ObjectName)}
+	 * @param className The class name of the MBean to be instantiated
+	 * @param name The object name of the MBean. May be null.
+	 * @param loaderName The object name of the class loader to be used
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int createMBean(String className, ObjectName name, ObjectName loaderName, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.CREATEMBEAN_SOO, className, name, loaderName), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#createMBean(String, ObjectName, Object[], String[])}
+	 * @param className The class name of the MBean to be instantiated
+	 * @param name The object name of the MBean. May be null.
+	 * @param params The constructor parameters
+	 * @param signature The constructor signature
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int createMBean(String className, ObjectName name, Object[] params, String[] signature, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.CREATEMBEAN_SOOS, className, name, params, signature), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#createMBean(String, ObjectName, ObjectName, Object[], String[])}
+	 * @param className The class name of the MBean to be instantiated
+	 * @param name The object name of the MBean. May be null.
+	 * @param loaderName The object name of the class loader to be used
+	 * @param params The constructor parameters
+	 * @param signature The constructor signature
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int createMBean(String className, ObjectName name, ObjectName loaderName, Object[] params, String[] signature, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.CREATEMBEAN_SOOOS, className, name, loaderName, params, signature), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#unregisterMBean(ObjectName)}
+	 * @param name The object name of the MBean to unregister
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int unregisterMBean(ObjectName name, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.UNREGISTERMBEAN, name), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#getObjectInstance(ObjectName)}
+	 * @param name The object name of the MBean
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int getObjectInstance(ObjectName name, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.GETOBJECTINSTANCE, name), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#queryMBeans(ObjectName, QueryExp)}
+	 * @param name The object name pattern. May be null.
+	 * @param query The query expression. May be null.
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int queryMBeans(ObjectName name, QueryExp query, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.QUERYMBEANS, name, query), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#queryNames(ObjectName, QueryExp)}
+	 * @param name The object name pattern. May be null.
+	 * @param query The query expression. May be null.
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int queryNames(ObjectName name, QueryExp query, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.QUERYNAMES, name, query), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#isRegistered(ObjectName)}
+	 * @param name The object name of the MBean
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int isRegistered(ObjectName name, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.ISREGISTERED, name), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#getMBeanCount()}
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int getMBeanCount(MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.GETMBEANCOUNT), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#getAttribute(ObjectName, String)}
+	 * @param name The object name of the MBean
+	 * @param attribute The attribute name
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int getAttribute(ObjectName name, String attribute, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.GETATTRIBUTE, name, attribute), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#getAttributes(ObjectName, String[])}
+	 * @param name The object name of the MBean
+	 * @param attributes The attribute names
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int getAttributes(ObjectName name, String[] attributes, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.GETATTRIBUTES, name, attributes), cb);
+	}
+	
+	/**
+	 * Callback batch of {@link javax.management.MBeanServerConnection#getAttributes(ObjectName, String[])} sent in one request frame
+	 * @param names The object names of the MBeans
+	 * @param attributes The attribute names for the MBean at the same index in <code>names</code>
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int getAttributesBatch(ObjectName[] names, String[][] attributes, MBeanServerConnectionCallback cb) {
+		if(names.length!=attributes.length) throw new IllegalArgumentException("ObjectName count [" + names.length + "] does not match attribute name set count [" + attributes.length + "]");
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.GETATTRIBUTES_BATCH, names, attributes), cb);
+	}
+	
+	/**
+	 * Callback server side query and getAttributes on each matching MBean in one round trip
+	 * @param name The object name pattern
+	 * @param query The optional query expression
+	 * @param attributes The attribute names
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int getAttributes(ObjectName name, QueryExp query, String[] attributes, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.GETATTRIBUTES_QUERY, name, query, attributes), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#setAttribute(ObjectName, Attribute)}
+	 * @param name The object name of the MBean
+	 * @param attribute The attribute to set
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int setAttribute(ObjectName name, Attribute attribute, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.SETATTRIBUTE, name, attribute), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#setAttributes(ObjectName, AttributeList)}
+	 * @param name The object name of the MBean
+	 * @param attributes The attributes to set
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int setAttributes(ObjectName name, AttributeList attributes, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.SETATTRIBUTES, name, attributes), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#invoke(ObjectName, String, Object[], String[])}
+	 * @param name The object name of the MBean
+	 * @param operationName The name of the operation to invoke
+	 * @param params The operation parameters
+	 * @param signature The operation signature
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int invoke(ObjectName name, String operationName, Object[] params, String[] signature, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.INVOKE, name, operationName, params, signature), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#getDefaultDomain()}
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int getDefaultDomain(MBeanServerConnectionCallback cb) {
+		final JMXOp op = JMXOp.newOp(channel, JMXOpCode.GETDEFAULTDOMAIN);
+		final String defaultDomain = metadataCache==null ? null : metadataCache.getDefaultDomain();
+		return defaultDomain!=null ? dispatchCached(op, cb, defaultDomain) : writeRequest(op, cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#getDomains()}
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int getDomains(MBeanServerConnectionCallback cb) {
+		final JMXOp op = JMXOp.newOp(channel, JMXOpCode.GETDOMAINS);
+		final String[] domains = metadataCache==null ? null : metadataCache.getDomains();
+		return domains!=null ? dispatchCached(op, cb, domains) : writeRequest(op, cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#addNotificationListener(ObjectName, NotificationListener, NotificationFilter, Object)}
+	 * @param name The object name of the MBean to listen on
+	 * @param listener The listener
+	 * @param filter The optional filter
+	 * @param handback The optional handback
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int addNotificationListener(ObjectName name, NotificationListener listener, NotificationFilter filter, Object handback, MBeanServerConnectionCallback cb) {
+		final ListenerRegistration lr = ListenerRegistration.getInstance(channel, listener, filter, handback);
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.ADDNOTIFICATIONLISTENER_ONNO, name, lr, null, null), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#addNotificationListener(ObjectName, ObjectName, NotificationFilter, Object)}
+	 * @param name The object name of the MBean to listen on
+	 * @param listener The object name of the listener
+	 * @param filter The optional filter
+	 * @param handback The optional handback
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int addNotificationListener(ObjectName name, ObjectName listener, NotificationFilter filter, Object handback, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.ADDNOTIFICATIONLISTENER_OONO, name, listener, filter, handback), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#removeNotificationListener(ObjectName, ObjectName)}
+	 * @param name The object name of the MBean listened on
+	 * @param listener The object name of the listener
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int removeNotificationListener(ObjectName name, ObjectName listener, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.REMOVENOTIFICATIONLISTENER_OO, name, listener), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#removeNotificationListener(ObjectName, ObjectName, NotificationFilter, Object)}
+	 * @param name The object name of the MBean listened on
+	 * @param listener The object name of the listener
+	 * @param filter The filter specified when the listener was added
+	 * @param handback The handback specified when the listener was added
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int removeNotificationListener(ObjectName name, ObjectName listener, NotificationFilter filter, Object handback, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.REMOVENOTIFICATIONLISTENER_OONO, name, listener, filter, handback), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#removeNotificationListener(ObjectName, NotificationListener)}
+	 * @param name The object name of the MBean listened on
+	 * @param listener The listener
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int removeNotificationListener(ObjectName name, NotificationListener listener, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.REMOVENOTIFICATIONLISTENER_ON, name, listener), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#removeNotificationListener(ObjectName, NotificationListener, NotificationFilter, Object)}
+	 * @param name The object name of the MBean listened on
+	 * @param listener The listener
+	 * @param filter The filter specified when the listener was added
+	 * @param handback The handback specified when the listener was added
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int removeNotificationListener(ObjectName name, NotificationListener listener, NotificationFilter filter, Object handback, MBeanServerConnectionCallback cb) {
+		return writeRequest(JMXOp.newOp(channel, JMXOpCode.REMOVENOTIFICATIONLISTENER_ONNO, name, listener, filter, handback), cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#getMBeanInfo(ObjectName)}
+	 * @param name The object name of the MBean
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int getMBeanInfo(ObjectName name, MBeanServerConnectionCallback cb) {
+		final JMXOp op = JMXOp.newOp(channel, JMXOpCode.GETMBEANINFO, name);
+		final MBeanInfo info = metadataCache==null ? null : metadataCache.getMBeanInfo(name);
+		return info!=null ? dispatchCached(op, cb, info) : writeRequest(op, cb);
+	}
+	
+	/**
+	 * Callback {@link javax.management.MBeanServerConnection#isInstanceOf(ObjectName, String)}
+	 * @param name The object name of the MBean
+	 * @param className The class name to test
+	 * @param cb The callback to dispatch the response to
+	 * @return the request id
+	 */
+	public int isInstanceOf(ObjectName name, String className, MBeanServerConnectionCallback cb) {
+		final JMXOp op = JMXOp.newOp(channel, JMXOpCode.ISINSTANCEOF, name, className);
+		final Boolean instanceOf = metadataCache==null ? null : metadataCache.isInstanceOf(name, className);
+		return instanceOf!=null ? dispatchCached(op, cb, instanceOf) : writeRequest(op, cb);
+	}
+
+}
@@ -32,6 +32,7 @@ import org.jboss.netty.handler.logging.LoggingHandler;
 import org.jboss.netty.logging.InternalLogLevel;
 
 import com.heliosapm.asyncjmx.shared.JMXResponseType;
+import com.heliosapm.asyncjmx.shared.WriteCoalescingHandler;
 
 /**
  * <p>Title: JMXClientPipelineFactory</p>
@@ -46,6 +47,10 @@ public class JMXClientPipelineFactory implements ChannelPipelineFactory {
 	protected final JMXOpEncoder opEncoder = new JMXOpEncoder();
 	/** The new connection handler */
 	protected final ChannelUpstreamHandler connectionHandler;
+	/** Indicates if outbound frames should be coalesced */
+	protected final boolean coalesceWrites = WriteCoalescingHandler.isEnabled();
+	/** Indicates if metadata should be cached client side */
+	protected final boolean cacheMetadata = MetadataCache.isEnabled();
 
 	
 	//===========================================================================================
@@ -55,6 +60,10 @@ public class JMXClientPipelineFactory implements ChannelPipelineFactory {
 	public static final String NEWCONN_HANDLER = "connHandler";
 	/** The JMX Op Encoder  */
 	public static final String JMXOP_ENCODER = "opEncoder";
+	/** The write coalescing handler  */
+	public static final String COALESCE_HANDLER = "coalescer";
+	/** The client metadata cache  */
+	public static final String METADATA_CACHE = "metadataCache";
 	
 	
 	
@@ -74,9 +83,15 @@ public class JMXClientPipelineFactory implements ChannelPipelineFactory {
 	public ChannelPipeline getPipeline() throws Exception {
 		ChannelPipeline pipeline = Channels.pipeline();
 		//pipeline.addLast("log", new LoggingHandler(InternalLogLevel.INFO, true));
+		if(coalesceWrites) {
+			pipeline.addLast(COALESCE_HANDLER, new WriteCoalescingHandler());
+		}
 		pipeline.addLast(NEWCONN_HANDLER, connectionHandler);
 		pipeline.addLast(JMXOP_ENCODER, opEncoder);
 		pipeline.addLast(JMXResponseType.JMX_RESPONSE.handlerName, new JMXResponseDecoder());
+		if(cacheMetadata) {
+			pipeline.addLast(METADATA_CACHE, new MetadataCache());
+		}
 		return pipeline;
 	}
 
@@ -33,8 +33,11 @@ import org.jboss.netty.buffer.ChannelBufferOutputStream;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.buffer.HeapChannelBufferFactory;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
 import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
 
 import com.esotericsoftware.kryo.Kryo;
@@ -44,8 +47,10 @@ import com.heliosapm.asyncjmx.shared.JMXOp;
 import com.heliosapm.asyncjmx.shared.JMXOpCode;
 import com.heliosapm.asyncjmx.shared.KryoFactory;
 import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
+import com.heliosapm.asyncjmx.shared.serialization.ChannelDictionary;
+import com.heliosapm.asyncjmx.shared.serialization.DirectFrameEncoder;
+import com.heliosapm.asyncjmx.shared.serialization.DirectFrameEncoder.EncodedFrame;
 import com.heliosapm.asyncjmx.shared.serialization.PayloadSizeHistogram;
-import com.heliosapm.asyncjmx.unsafe.collections.ConcurrentLongSlidingWindow;
 
 /**
  * <p>Title: JMXOpEncoder</p>
@@ -62,6 +67,39 @@ public class JMXOpEncoder extends OneToOneEncoder {
 	protected final JMXLogger log = JMXLogger.getLogger(getClass());
 	/** The JMX Op payload size estimator */
 	protected final PayloadSizeHistogram<JMXOpCode> payloadSizeEstimator = new PayloadSizeHistogram<JMXOpCode>(); 
+	/** The pooled direct memory frame encoder */
+	protected final DirectFrameEncoder directEncoder = DirectFrameEncoder.getInstance();
+	
+	/**
+	 * Encodes ops expected to fit in a pooled direct slab straight into the slab, falling back to {@link #encode(ChannelHandlerContext, Channel, Object)}
+	 * for everything else.
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.handler.codec.oneone.OneToOneEncoder#handleDownstream(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelEvent)
+	 */
+	@Override
+	public void handleDownstream(ChannelHandlerContext ctx, ChannelEvent evt) throws Exception {
+		if(evt instanceof MessageEvent && ((MessageEvent)evt).getMessage() instanceof JMXOp) {
+			final MessageEvent e = (MessageEvent)evt;
+			final JMXOp jmxOp = (JMXOp)e.getMessage();
+			// held until the frame is passed downstream so frames reach the wire in the order their dictionary ids were assigned
+			synchronized(KryoFactory.getInstance().getWriteKryo(ctx.getChannel())) {
+				if(directEncoder.accepts(payloadSizeEstimator.estimateSize(jmxOp))) {
+					final EncodedFrame frame = directEncoder.encode(ctx.getChannel(), jmxOp, 4);
+					if(frame!=null) {
+						final int size = frame.getBuffer().writerIndex();
+						log.info("------->REQUID [%s] Sending Direct Encoded Op with [%s] bytes.  Total Payload: [%s].  Op: %s", jmxOp.getOpSeq(), size - 4, size, jmxOp);
+						payloadSizeEstimator.sample(jmxOp, size);
+						e.getFuture().addListener(frame);
+						Channels.write(ctx, e.getFuture(), frame.getBuffer(), e.getRemoteAddress());
+						return;
+					}
+				}
+				super.handleDownstream(ctx, evt);
+			}
+			return;
+		}
+		super.handleDownstream(ctx, evt);
+	}
 
 	/**
 	 * {@inheritDoc}
@@ -77,9 +115,17 @@ public class JMXOpEncoder extends OneToOneEncoder {
 				ChannelBuffer body = ChannelBuffers.dynamicBuffer(payloadSizeEstimator.estimateSize(jmxOp), bufferFactory);
 				body.writeInt(0);
 				out = new ChannelBufferOutputStream(body);			
-				Kryo kryo = KryoFactory.getInstance().getKryo(channel);			
+				Kryo kryo = KryoFactory.getInstance().getWriteKryo(channel);			
 				kout = new UnsafeOutput(out);
-				kryo.writeObject(kout, jmxOp);
+				synchronized(kryo) {
+					ChannelDictionary.markAll(kryo);
+					try {
+						kryo.writeObject(kout, jmxOp);
+					} catch (RuntimeException rex) {
+						ChannelDictionary.rollbackAll(kryo);
+						throw rex;
+					}
+				}
 				kout.flush();
 				int payloadSize = body.writerIndex() - 4;
 				body.setInt(0, payloadSize);
@@ -24,8 +24,6 @@
  */
 package com.heliosapm.asyncjmx.client;
 
-import org.jboss.netty.buffer.ChannelBuffer;
-
 import com.esotericsoftware.kryo.DefaultSerializer;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
@@ -33,8 +31,8 @@ import com.esotericsoftware.kryo.io.Output;
 import com.heliosapm.asyncjmx.shared.JMXOpCode;
 import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
 import com.heliosapm.asyncjmx.shared.serialization.BaseSerializer;
+import com.heliosapm.asyncjmx.shared.serialization.EncodedResult;
 import com.heliosapm.asyncjmx.shared.serialization.HistogramKeyProvider;
-import com.heliosapm.asyncjmx.unsafe.UnsafeAdapter;
 
 /**
  * <p>Title: JMXOpResponse</p>
@@ -103,6 +101,7 @@ public class JMXOpResponse implements HistogramKeyProvider<Class<?>> {
 	 */
 	@Override
 	public Class<?> getHistogramKey() {
+		if(response instanceof EncodedResult) return ((EncodedResult)response).getType();
 		return response==null ? null : response.getClass();
 	}
 
@@ -191,35 +190,11 @@ public class JMXOpResponse implements HistogramKeyProvider<Class<?>> {
 		/** Static class logger */
 		protected static final JMXLogger log = JMXLogger.getLogger(JMXOpResponseSerializer.class);
 		
-		/** A replay error instance */
-		public static final Error REPLAY_ERROR;
-		
-		static {
-			try {
-				Class<Error> clazz = (Class<Error>) Class.forName("org.jboss.netty.handler.codec.replay.ReplayError");			
-				REPLAY_ERROR = (Error)UnsafeAdapter.allocateInstance(clazz);
-			} catch (Exception ex) {
-				throw new RuntimeException("Failed to initialize replay error", ex);
-			}
-		}
-		
-		/** The parent replaying decoder */
-		private final JMXResponseDecoder replay;
-		
-		/**
-		 * Creates a new JMXResponseDecoder with a reference to the currently running replaying decoder
-		 * @param replay The replaying decoder to callback on as a step is complete
-		 */
-		public JMXOpResponseSerializer(JMXResponseDecoder replay) {
-			super();
-			this.replay = replay;
-		}
-		
 		/**
 		 * Creates a new JMXOpResponseSerializer 
 		 */
 		public JMXOpResponseSerializer() {
-			this.replay = null;
+			super();
 		}
 
 		
@@ -232,7 +207,11 @@ public class JMXOpResponse implements HistogramKeyProvider<Class<?>> {
 			output.writeByte(jmxOpResp.opCode.opCode);
 			output.writeInt(jmxOpResp.requestId);
 			int pre = output.position();
-			kryo.writeClassAndObject(output, jmxOpResp.response);
+			if(jmxOpResp.response instanceof EncodedResult) {
+				((EncodedResult)jmxOpResp.response).writeTo(output);
+			} else {
+				kryo.writeClassAndObject(output, jmxOpResp.response);
+			}
 			int objSize = output.position()-pre;
 			log.debug("---->Response Written. Size:[%s]", objSize);			
 		}
@@ -244,71 +223,12 @@ public class JMXOpResponse implements HistogramKeyProvider<Class<?>> {
 		 */
 		@Override
 		protected JMXOpResponse doRead(Kryo kryo, Input input, Class<JMXOpResponse> type) {
-			if(replay==null) {
-				return doReadWithNoReplay(kryo, input, type);
-			}
-			return doReadWithReplay(kryo, input, type);
-		}
-		
-		/**
-		 * Reads a JMXOpResponse without a parent replaying decoder
-		 * @param kryo The kryo instance
-		 * @param input THe kryo input stream
-		 * @param type The decoding type
-		 * @return the read JMXOpResponse
-		 */
-		protected JMXOpResponse doReadWithNoReplay(Kryo kryo, Input input, Class<JMXOpResponse> type) {
 			JMXOpResponse jmxOpResp = new JMXOpResponse();
 			jmxOpResp.opCode = JMXOpCode.decode(input.readByte());
 			jmxOpResp.requestId = input.readInt();
 			jmxOpResp.response = kryo.readClassAndObject(input);
 			return jmxOpResp;
 		}
-		
-		/**
-		 * Reads a JMXOpResponse with the parent replaying decoder
-		 * @param kryo The kryo instance
-		 * @param input THe kryo input stream
-		 * @param type The decoding type
-		 * @return the read JMXOpResponse
-		 */
-		protected JMXOpResponse doReadWithReplay(Kryo kryo, Input input, Class<JMXOpResponse> type) {
-			JMXOpResponse state = (JMXOpResponse)kryo.getContext().get("JMXOpResponse");
-			if(state==null) {
-				state = new JMXOpResponse();
-				kryo.getContext().put("JMXOpResponse", state);
-			}
-			ChannelBuffer buff = replay.getBuff();
-			//buff.markReaderIndex();
-			try {				
-				log.debug("Readable Bytes: [%s], Index: [%s]", buff.readableBytes(), buff.readerIndex());
-				switch(replay.getState()) {
-					case OPCODE:					
-						byte opCode = input.readByte();
-						state.opCode = JMXOpCode.decode(opCode);
-						replay.checkpoint(JMXResponseDecodeStep.REQUESTID);
-						//$FALL-THROUGH$
-					case REQUESTID:
-						state.requestId = input.readInt();
-						replay.checkpoint(JMXResponseDecodeStep.RESPONSE);
-						//$FALL-THROUGH$						
-					case RESPONSE:
-						log.debug("Pre-ReadResponse: Avail:[%s], Index:[%s] InputPos:[%s]", buff.readableBytes(), buff.readerIndex(), input.position());
-						state.response = kryo.readClassAndObject(input);
-						replay.checkpoint(JMXResponseDecodeStep.RESPTYPE);
-						replay.clean();
-						kryo.getContext().remove("JMXOpResponse");
-						
-						return state;
-					default:
-						throw new Error("Should not reach here");
-				}
-			} catch (Throwable ex) {	
-				ex.printStackTrace(System.out);
-				replay.reset();
-				throw REPLAY_ERROR;
-			}
-		}		
 	}
 	
 
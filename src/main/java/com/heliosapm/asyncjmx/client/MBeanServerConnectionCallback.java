@@ -24,6 +24,7 @@
  */
 package com.heliosapm.asyncjmx.client;
 
+import java.util.Map;
 import java.util.Set;
 
 import javax.management.AttributeList;
@@ -290,4 +291,32 @@ public interface MBeanServerConnectionCallback {
 	 * @param t The thrown exception from the remote call
 	 */ 
 	public void onSetAttributesFail(int rId, Throwable t);
+
+	/**
+	 * Asynch response handler for a batch of {@link MBeanServerConnection#getAttributes(javax.management.ObjectName,java.lang.String[])} calls 
+	 * @param rId The serial number of the request
+	 * @param ret The {@link AttributeList} or thrown exception for each requested ObjectName
+	 */ 
+	public void onGetAttributesBatch(int rId, Object[] ret);
+
+	/**
+	 * Asynch exception handler for a batch of {@link MBeanServerConnection#getAttributes(javax.management.ObjectName,java.lang.String[])} calls 
+	 * @param rId The serial number of the request
+	 * @param t The thrown exception from the remote call
+	 */ 
+	public void onGetAttributesBatchFail(int rId, Throwable t);
+
+	/**
+	 * Asynch response handler for a server side query and getAttributes on each matching MBean 
+	 * @param rId The serial number of the request
+	 * @param ret The attribute values keyed by attribute name, keyed by the ObjectName of each matching MBean
+	 */ 
+	public void onGetAttributesQuery(int rId, Map<ObjectName, Map<String, Object>> ret);
+
+	/**
+	 * Asynch exception handler for a server side query and getAttributes on each matching MBean 
+	 * @param rId The serial number of the request
+	 * @param t The thrown exception from the remote call
+	 */ 
+	public void onGetAttributesQueryFail(int rId, Throwable t);
 }
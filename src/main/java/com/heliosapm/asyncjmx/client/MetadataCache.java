@@ -0,0 +1,368 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.client;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanInfo;
+import javax.management.MBeanServerNotification;
+import javax.management.ObjectName;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+
+import com.heliosapm.asyncjmx.shared.JMXCallback;
+import com.heliosapm.asyncjmx.shared.JMXOp;
+import com.heliosapm.asyncjmx.shared.JMXOpCode;
+import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
+import com.heliosapm.asyncjmx.shared.util.ConfigurationHelper;
+import com.heliosapm.asyncjmx.unsafe.collections.ConcurrentIntObjectHashMap;
+
+/**
+ * <p>Title: MetadataCache</p>
+ * <p>Description: A per-connection client side cache of MBeanInfos, <code>isInstanceOf</code> results, the domains and the default domain,
+ * kept coherent by the {@link com.heliosapm.asyncjmx.shared.JMXResponseType#CACHE_OP} callbacks the server pushes when MBeans are registered or unregistered.</p>
+ * <p>When the channel connects the cache subscribes to the server's cache ops with a {@link JMXOpCode#SUBSCRIBE_CACHE} op, and serves nothing until the 
+ * subscription is acknowledged. It is filled from the responses to the cacheable ops the connection writes. A response is only cached if no cache op
+ * arrived while its request was in flight, since the server may have read the value before the change the cache op reports. A request's pending
+ * fill is discarded if the request fails to write or the connection stops waiting for it (see {@link #cancel(int)}), so lost responses do not accumulate.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.client.MetadataCache</code></p>
+ */
+
+public class MetadataCache extends SimpleChannelHandler {
+	/** The conf property name to enable the client metadata cache */
+	public static final String CONFIG_ENABLED = "com.heliosapm.asyncjmx.client.cache.enabled";
+	/** The default client metadata cache enablement */
+	public static final boolean DEFAULT_ENABLED = true;
+	/** The conf property name for the maximum number of MBeans the cache holds MBeanInfos and isInstanceOf results for */
+	public static final String CONFIG_SIZE = "com.heliosapm.asyncjmx.client.cache.size";
+	/** The default maximum number of MBeans the cache holds MBeanInfos and isInstanceOf results for */
+	public static final int DEFAULT_SIZE = 4096;
+	
+	/** Instance logger */
+	protected final JMXLogger log = JMXLogger.getLogger(getClass());
+	/** The maximum number of MBeans the cache holds entries for */
+	protected final int maxSize;
+	/** The cached MBeanInfos */
+	protected final Map<ObjectName, MBeanInfo> infos = new ConcurrentHashMap<ObjectName, MBeanInfo>();
+	/** The cached isInstanceOf results keyed by class name, keyed by ObjectName */
+	protected final Map<ObjectName, ConcurrentMap<String, Boolean>> instanceOf = new ConcurrentHashMap<ObjectName, ConcurrentMap<String, Boolean>>();
+	/** The cached domains */
+	protected volatile String[] domains = null;
+	/** The cached default domain */
+	protected volatile String defaultDomain = null;
+	/** Indicates if the server has acknowledged the cache op subscription */
+	protected volatile boolean active = false;
+	/** The request id of the subscription op */
+	protected volatile int subscriptionId = 0;
+	/** The number of cache ops received, guarded by this cache */
+	protected long generation = 0L;
+	/** The cacheable requests in flight keyed by request id */
+	protected final ConcurrentIntObjectHashMap<PendingFill> pending = new ConcurrentIntObjectHashMap<PendingFill>();
+	
+	/**
+	 * Indicates if the client metadata cache is enabled
+	 * @return true if the client metadata cache is enabled
+	 */
+	public static boolean isEnabled() {
+		return ConfigurationHelper.getBooleanSystemThenEnvProperty(CONFIG_ENABLED, DEFAULT_ENABLED);
+	}
+	
+	/**
+	 * Returns the metadata cache installed in the passed channel's pipeline
+	 * @param channel The channel
+	 * @return the channel's metadata cache or null if it does not have one
+	 */
+	public static MetadataCache get(Channel channel) {
+		return channel.getPipeline().get(MetadataCache.class);
+	}
+	
+	/**
+	 * Creates a new MetadataCache
+	 * @param maxSize The maximum number of MBeans the cache holds entries for
+	 */
+	public MetadataCache(int maxSize) {
+		this.maxSize = maxSize;
+	}
+	
+	/**
+	 * Creates a new MetadataCache configured from system properties or the environment
+	 */
+	public MetadataCache() {
+		this(ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_SIZE, DEFAULT_SIZE));
+	}
+	
+	/**
+	 * Returns the cached MBeanInfo of the passed MBean
+	 * @param objectName The ObjectName of the MBean
+	 * @return the cached MBeanInfo or null on a miss
+	 */
+	public MBeanInfo getMBeanInfo(ObjectName objectName) {
+		return active ? infos.get(objectName) : null;
+	}
+	
+	/**
+	 * Returns the cached result of an isInstanceOf call
+	 * @param objectName The ObjectName of the MBean
+	 * @param className The tested class name
+	 * @return the cached result or null on a miss
+	 */
+	public Boolean isInstanceOf(ObjectName objectName, String className) {
+		if(!active) return null;
+		final Map<String, Boolean> results = instanceOf.get(objectName);
+		return results==null ? null : results.get(className);
+	}
+	
+	/**
+	 * Returns a copy of the cached domains
+	 * @return the cached domains or null on a miss
+	 */
+	public String[] getDomains() {
+		final String[] d = active ? domains : null;
+		return d==null ? null : d.clone();
+	}
+	
+	/**
+	 * Returns the cached default domain
+	 * @return the cached default domain or null on a miss
+	 */
+	public String getDefaultDomain() {
+		return active ? defaultDomain : null;
+	}
+	
+	/**
+	 * Indicates if the cache is serving entries
+	 * @return true if the server has acknowledged the cache op subscription
+	 */
+	public boolean isActive() {
+		return active;
+	}
+	
+	/**
+	 * Subscribes to the server's cache ops
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.SimpleChannelHandler#channelConnected(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelStateEvent)
+	 */
+	@Override
+	public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		final Channel channel = ctx.getChannel();
+		final JMXOp op = JMXOp.newOp(channel, JMXOpCode.SUBSCRIBE_CACHE);
+		subscriptionId = op.getOpSeq();
+		Channels.write(ctx, Channels.future(channel), op);
+		super.channelConnected(ctx, e);
+	}
+	
+	/**
+	 * Clears the cache when the channel closes
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.SimpleChannelHandler#channelClosed(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelStateEvent)
+	 */
+	@Override
+	public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		synchronized(this) {
+			active = false;
+			generation++;
+			clear();
+		}
+		pending.clear();
+		super.channelClosed(ctx, e);
+	}
+	
+	/**
+	 * Records the cacheable requests written while the cache is active
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.SimpleChannelHandler#writeRequested(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+	 */
+	@Override
+	public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+		final Object msg = e.getMessage();
+		if(active && msg instanceof JMXOp) {
+			final JMXOp op = (JMXOp)msg;
+			switch(op.getJmxOpCode()) {
+				case GETMBEANINFO:
+				case ISINSTANCEOF:
+				case GETDOMAINS:
+				case GETDEFAULTDOMAIN:
+					final long gen;
+					synchronized(this) {
+						gen = generation;
+					}
+					final int rId = op.getOpSeq();
+					pending.put(rId, new PendingFill(op.getJmxOpCode(), op.getOpArguments(), gen));
+					e.getFuture().addListener(new ChannelFutureListener() {
+						@Override
+						public void operationComplete(ChannelFuture future) throws Exception {
+							if(!future.isSuccess()) pending.remove(rId);
+						}
+					});
+					break;
+				default:
+			}
+		}
+		super.writeRequested(ctx, e);
+	}
+	
+	/**
+	 * Fills the cache from responses, consumes the subscription acknowledgement and applies cache ops
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.SimpleChannelHandler#messageReceived(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+	 */
+	@Override
+	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+		final Object msg = e.getMessage();
+		if(msg instanceof JMXOpResponse) {
+			final JMXOpResponse response = (JMXOpResponse)msg;
+			if(response.getOpCode()==JMXOpCode.SUBSCRIBE_CACHE && response.getRequestId()==subscriptionId) {
+				if(response.getResponse() instanceof Throwable) {
+					log.warn("Server declined the cache op subscription. Metadata will not be cached: %s", response.getResponse());
+				} else {
+					active = true;
+				}
+				return;
+			}
+			final PendingFill fill = pending.remove(response.getRequestId());
+			if(fill!=null) fill(fill, response.getResponse());
+		} else if(msg instanceof JMXCallback && ((JMXCallback)msg).isCacheOp()) {
+			final Object op = ((JMXCallback)msg).getCallback();
+			if(op instanceof MBeanServerNotification) {
+				invalidate((MBeanServerNotification)op);
+			}
+			return;
+		}
+		super.messageReceived(ctx, e);
+	}
+	
+	/**
+	 * Discards the pending fill of a request whose response will not be waited for, e.g. because the request timed out.
+	 * A response that arrives afterwards is passed on without being cached.
+	 * @param requestId The request id
+	 */
+	public void cancel(int requestId) {
+		pending.remove(requestId);
+	}
+	
+	/**
+	 * Caches a response if no cache op arrived while its request was in flight
+	 * @param fill The pending fill of the request
+	 * @param value The response value
+	 */
+	protected synchronized void fill(PendingFill fill, Object value) {
+		if(!active || fill.generation!=generation || value==null || value instanceof Throwable) return;
+		switch(fill.opCode) {
+			case GETMBEANINFO:
+				if(value instanceof MBeanInfo && infos.size() < maxSize) {
+					infos.put((ObjectName)fill.args[0], (MBeanInfo)value);
+				}
+				break;
+			case ISINSTANCEOF:
+				if(value instanceof Boolean) {
+					final ObjectName objectName = (ObjectName)fill.args[0];
+					ConcurrentMap<String, Boolean> results = instanceOf.get(objectName);
+					if(results==null) {
+						if(instanceOf.size() >= maxSize) break;
+						results = new ConcurrentHashMap<String, Boolean>(4);
+						instanceOf.put(objectName, results);
+					}
+					results.put((String)fill.args[1], (Boolean)value);
+				}
+				break;
+			case GETDOMAINS:
+				if(value instanceof String[]) domains = ((String[])value).clone();
+				break;
+			case GETDEFAULTDOMAIN:
+				if(value instanceof String) defaultDomain = (String)value;
+				break;
+			default:
+		}
+	}
+	
+	/**
+	 * Drops the entries made stale by an MBean registration or unregistration
+	 * @param notification The server's registration notification
+	 */
+	protected synchronized void invalidate(MBeanServerNotification notification) {
+		generation++;
+		final ObjectName objectName = notification.getMBeanName();
+		infos.remove(objectName);
+		instanceOf.remove(objectName);
+		final String[] d = domains;
+		if(d!=null) {
+			// a registration can only add a domain we have not seen, an unregistration may have emptied one
+			if(!MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(notification.getType()) || !Arrays.asList(d).contains(objectName.getDomain())) {
+				domains = null;
+			}
+		}
+		log.debug("Cache op [%s] for [%s]", notification.getType(), objectName);
+	}
+	
+	/**
+	 * Clears all cached entries
+	 */
+	public synchronized void clear() {
+		infos.clear();
+		instanceOf.clear();
+		domains = null;
+		defaultDomain = null;
+	}
+	
+	/**
+	 * <p>Title: PendingFill</p>
+	 * <p>Description: A cacheable request in flight</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.asyncjmx.client.MetadataCache.PendingFill</code></p>
+	 */
+	protected static class PendingFill {
+		/** The request's op code */
+		final JMXOpCode opCode;
+		/** The request's arguments */
+		final Object[] args;
+		/** The cache generation when the request was written */
+		final long generation;
+		
+		/**
+		 * Creates a new PendingFill
+		 * @param opCode The request's op code
+		 * @param args The request's arguments
+		 * @param generation The cache generation when the request was written
+		 */
+		PendingFill(JMXOpCode opCode, Object[] args, long generation) {
+			this.opCode = opCode;
+			this.args = args;
+			this.generation = generation;
+		}
+	}
+}
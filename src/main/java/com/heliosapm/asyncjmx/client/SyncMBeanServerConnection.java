@@ -25,9 +25,12 @@
 package com.heliosapm.asyncjmx.client;
 
 import java.io.IOException;
-import java.util.Arrays;
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.management.Attribute;
 import javax.management.AttributeList;
@@ -57,22 +60,31 @@ import org.jboss.netty.channel.ChannelEvent;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.ChannelUpstreamHandler;
 import org.jboss.netty.channel.UpstreamMessageEvent;
 
 import com.heliosapm.asyncjmx.client.notifications.ListenerRegistration;
+import com.heliosapm.asyncjmx.client.notifications.MBeanNameMirror;
 import com.heliosapm.asyncjmx.shared.JMXCallback;
 import com.heliosapm.asyncjmx.shared.JMXOp;
 import com.heliosapm.asyncjmx.shared.JMXOpCode;
 import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
 import com.heliosapm.asyncjmx.shared.serialization.PlaceHolder;
 import com.heliosapm.asyncjmx.shared.serialization.VoidResult;
-import com.heliosapm.asyncjmx.shared.util.IndexedBlockingResultQueue;
+import com.heliosapm.asyncjmx.shared.util.ConfigurationHelper;
+import com.heliosapm.asyncjmx.shared.util.PendingRequestTable;
 import com.heliosapm.asyncjmx.unsafe.UnsafeAdapter;
 
 /**
  * <p>Title: SyncMBeanServerConnection</p>
- * <p>Description: A synchronous MBeanServerConnection implementation</p> 
+ * <p>Description: A synchronous MBeanServerConnection implementation.</p>
+ * <p>Requests are pipelined: any number of threads may invoke ops concurrently on the same connection,
+ * each op is written as soon as it is issued and the calling thread waits only on the response matching its own op sequence,
+ * so responses may complete in any order and a slow op does not hold up the ops behind it.
+ * The number of ops in flight on a connection is bounded by {@link #CONFIG_MAX_INFLIGHT} (default {@link #DEFAULT_MAX_INFLIGHT}). 
+ * Once the bound is reached, callers block until an in-flight op completes, and fail with an {@link IOException}
+ * if no slot frees up within the invocation timeout.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>com.heliosapm.asyncjmx.client.SyncMBeanServerConnection</code></p>
@@ -83,27 +95,51 @@ public class SyncMBeanServerConnection implements MBeanServerConnection, Channel
 	protected final Channel channel;
 	/** The timeout for JMX invocations in ms */
 	protected final long timeout;
-	/** The synchnonous queue on which the requesting thread waits on a response */
-	protected final IndexedBlockingResultQueue timeoutQueue;
-	/** The current rid we're waiting on */
-	protected final AtomicInteger currentRid = new AtomicInteger(0);
+	/** The pending request table in which the requesting thread waits on a response */
+	protected final PendingRequestTable pendingRequests;
+	/** The in-flight op permits */
+	protected final Semaphore inFlight;
+	/** The maximum number of in-flight ops */
+	protected final int maxInFlight;
+	/** The channel's metadata cache, null if metadata is not cached */
+	protected final MetadataCache metadataCache;
 	/** Instance logger */
 	protected final JMXLogger log = JMXLogger.getLogger(getClass());
 	/** The name of the handler in the pipeline */
 	public static final String RESPONSE_HANDLER_NAME = "responseHandler";
 	
+	/** The conf property name for the maximum number of in-flight ops per connection */
+	public static final String CONFIG_MAX_INFLIGHT = "com.heliosapm.asyncjmx.client.sync.maxinflight";
+	/** The default maximum number of in-flight ops per connection */
+	public static final int DEFAULT_MAX_INFLIGHT = 1024;
+	
 	/**
-	 * Creates a new AsyncMBeanServerConnection
+	 * Creates a new SyncMBeanServerConnection
 	 * @param channel The netty channel connection to the JMX server
 	 * @param timeout The timeout in ms.
+	 * @param maxInFlight The maximum number of in-flight ops
 	 */
-	public SyncMBeanServerConnection(Channel channel, long timeout) {
+	public SyncMBeanServerConnection(Channel channel, long timeout, int maxInFlight) {
+		if(maxInFlight<1) throw new IllegalArgumentException("Invalid max in-flight [" + maxInFlight + "]");
 		this.channel = channel;
 		this.timeout = timeout;
-		timeoutQueue = new IndexedBlockingResultQueue(timeout);
+		this.maxInFlight = maxInFlight;
+		inFlight = new Semaphore(maxInFlight);
+		// twice the in-flight depth so a long running op rarely holds up a later op mapping to its slot
+		pendingRequests = new PendingRequestTable(maxInFlight * 2);
+		metadataCache = MetadataCache.get(channel);
 		this.channel.getPipeline().addLast(RESPONSE_HANDLER_NAME, this);
 	}
 	
+	/**
+	 * Creates a new SyncMBeanServerConnection with the configured maximum number of in-flight ops
+	 * @param channel The netty channel connection to the JMX server
+	 * @param timeout The timeout in ms.
+	 */
+	public SyncMBeanServerConnection(Channel channel, long timeout) {
+		this(channel, timeout, ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_MAX_INFLIGHT, DEFAULT_MAX_INFLIGHT));
+	}
+	
 	/**
 	 * Writes the JMX invocation request to the remote server to invoke a void return operation
 	 * @param op The JMX invocation to send to the remote
@@ -112,45 +148,66 @@ public class SyncMBeanServerConnection implements MBeanServerConnection, Channel
 		writeRequest(VoidResult.class, op);
 	}
 	
-	
-	protected final AtomicInteger _concurrency_ = new AtomicInteger(0);
-	
 	/**
-	 * Writes the JMX invocation request to the remote server
+	 * Writes the JMX invocation request to the remote server and waits for the matching response.
+	 * Blocks while the maximum number of ops are in flight.
 	 * @param returnType The expected return type, defaults to {@link VoidResult} if null.
 	 * @param op The JMX invocation to send to the remote
 	 */
 	@SuppressWarnings("unchecked")
 	protected <T> T writeRequest(Class<T> returnType, final JMXOp op) {
-		final int concurrency = _concurrency_.incrementAndGet();
-		if(concurrency>1) {
-			//log.warn("\n\t!!!!!!!!!!!!!!!\n\tConcurrency:[%s]\n\t!!!!!!!!!!!!!!!\n", concurrency);
+		final int rId = op.getOpSeq();
+		try {
+			if(!inFlight.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+				UnsafeAdapter.throwException(new IOException("Timed out waiting for one of [" + maxInFlight + "] in-flight slots for op [" + op.getJmxOpCode().name() + "]--[" + rId + "]"));
+			}
+		} catch (InterruptedException iex) {
+			throw new RuntimeException(iex);
 		}
 		try {
-			currentRid.set(op.getOpSeq());
+			pendingRequests.register(rId, timeout);
 			channel.write(op).addListener(new ChannelFutureListener() {
 				@Override
 				public void operationComplete(ChannelFuture future) throws Exception {
-					log.info("Write for op [%s]--[%s]--[%s] complete", op.getJmxOpCode().name(), op.getOpSeq(), Arrays.toString(op.getOpArguments()));
+					if(!future.isSuccess()) {
+						pendingRequests.complete(rId, new IOException("Failed to write op [" + op.getJmxOpCode().name() + "]--[" + rId + "]", future.getCause()));
+					}
 				}
 			});
-			Object retValue = null;
-			try {
-				JMXOpResponse response = timeoutQueue.registerAndWait(op.getOpSeq());
-				retValue = response.getResponse();
-				if(retValue instanceof PlaceHolder) return null;
-				if(retValue instanceof Throwable) {
-					UnsafeAdapter.throwException((Throwable)retValue);
-				}
-				return (T)retValue;
-			} catch (InterruptedException e) {
-				throw new RuntimeException(e);
+			Object retValue = pendingRequests.waitFor(rId, timeout);
+			if(retValue instanceof PlaceHolder) return null;
+			if(retValue instanceof Throwable) {
+				UnsafeAdapter.throwException((Throwable)retValue);
 			}
+			return (T)retValue;
+		} catch (TimeoutException tex) {
+			if(metadataCache!=null) metadataCache.cancel(rId);
+			UnsafeAdapter.throwException(new IOException("Timed out waiting on op [" + op.getJmxOpCode().name() + "]--[" + rId + "]", tex));
+			return null;
+		} catch (InterruptedException e) {
+			if(metadataCache!=null) metadataCache.cancel(rId);
+			throw new RuntimeException(e);
 		} finally {
-			_concurrency_.decrementAndGet();
+			inFlight.release();
 		}
 	}
 	
+	/**
+	 * Returns the number of ops currently in flight on this connection
+	 * @return the number of in-flight ops
+	 */
+	public int getInFlightCount() {
+		return maxInFlight - inFlight.availablePermits();
+	}
+	
+	/**
+	 * Returns the maximum number of ops that may be in flight on this connection
+	 * @return the maximum number of in-flight ops
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see org.jboss.netty.channel.ChannelUpstreamHandler#handleUpstream(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelEvent)
@@ -165,11 +222,8 @@ public class SyncMBeanServerConnection implements MBeanServerConnection, Channel
 					if(obj instanceof JMXOpResponse) {
 						JMXOpResponse jmxResponse = (JMXOpResponse)obj;
 						log.info("<-------REQID:[%s] Response: %s", jmxResponse.getRequestId(), jmxResponse);
-						Object response = jmxResponse.getResponse();
-						if(response instanceof Throwable) {
-							timeoutQueue.depositResponse(jmxResponse.getRequestId(), (Throwable)response);
-						} else {
-							timeoutQueue.depositResponse(jmxResponse);
+						if(!pendingRequests.complete(jmxResponse.getRequestId(), jmxResponse.getResponse())) {
+							log.warn("Discarding response to abandoned request [%s]", jmxResponse.getRequestId());
 						}
 					} else if(obj instanceof JMXCallback) {
 						log.info("JMXCallback:[%s]", obj);
@@ -187,7 +241,9 @@ public class SyncMBeanServerConnection implements MBeanServerConnection, Channel
 			} catch (IllegalStateException ise) {
 				// nobody listening....
 			}
-		}		
+		} else if(e instanceof ChannelStateEvent && !e.getChannel().isOpen()) {
+			pendingRequests.completeAll(new ClosedChannelException());
+		}
 	}
 	
 	//===============================================================================================================================
@@ -540,6 +596,27 @@ public class SyncMBeanServerConnection implements MBeanServerConnection, Channel
     	log.info("ObjectNames:%s", objectNames);
     	return objectNames;
     }
+    
+    /**
+     * Subscribes to the ObjectNames matching the passed pattern. The matching names are returned once and the server then pushes
+     * only registration and unregistration deltas, which keep the returned mirror current.
+     * @param pattern The ObjectName pattern to mirror, null for all
+     * @return the initialized mirror
+     * @throws IOException thrown on an IO remoting error
+     */
+    @SuppressWarnings("unchecked")
+	public MBeanNameMirror subscribeNames(ObjectName pattern) throws IOException {
+    	final MBeanNameMirror mirror = new MBeanNameMirror(channel, pattern);
+    	final ListenerRegistration lr = ListenerRegistration.getInstance(channel, mirror, null, null);
+    	boolean subscribed = false;
+    	try {
+    		final Set<ObjectName> names = (Set<ObjectName>) writeRequest(JMXOpCode.SUBSCRIBE_NAMES.returnType, JMXOp.newOp(channel, JMXOpCode.SUBSCRIBE_NAMES, pattern, lr));
+    		subscribed = true;
+    		return mirror.initialize(names);
+    	} finally {
+    		if(!subscribed) ListenerRegistration.remove(channel, lr);
+    	}
+    }
 
 
 
@@ -642,6 +719,40 @@ public class SyncMBeanServerConnection implements MBeanServerConnection, Channel
     	return writeRequest(AttributeList.class, JMXOp.newOp(channel, JMXOpCode.GETATTRIBUTES, name, attributes));
     }
 
+    /**
+     * Retrieves the values of several attributes from each of several named MBeans
+     * in a single request frame.
+     *
+     * @param names The object names of the MBeans from which the attributes are retrieved.
+     * @param attributes The names of the attributes to be retrieved from the MBean at the same index in <code>names</code>.
+     * @return an array holding, for each MBean, either the {@link AttributeList} of retrieved
+     * attributes or the exception the MBean server threw when retrieving them.
+     * @exception IOException A communication problem occurred when talking to the MBean server.
+     * @see #getAttributes
+     */
+    public Object[] getAttributesBatch(ObjectName[] names, String[][] attributes) throws IOException {
+    	if(names.length!=attributes.length) throw new IllegalArgumentException("ObjectName count [" + names.length + "] does not match attribute name set count [" + attributes.length + "]");
+    	return writeRequest(Object[].class, JMXOp.newOp(channel, JMXOpCode.GETATTRIBUTES_BATCH, names, attributes));
+    }
+
+    /**
+     * Queries the MBean server for the MBeans matching the passed pattern and query
+     * and retrieves the named attributes from each of them in a single round trip.
+     * MBeans whose attributes cannot be read are omitted from the result.
+     *
+     * @param name The object name pattern identifying the MBeans to read.
+     * @param query The query expression to be applied for selecting MBeans. If null no query expression is applied.
+     * @param attributes The names of the attributes to be retrieved. Compound names for composite
+     * type attributes are delimited with {@link com.heliosapm.asyncjmx.shared.util.JMXHelper#DEFAULT_COMPOUND_DELIMITER}.
+     * @return a map of attribute values keyed by attribute name, keyed by the ObjectName of the MBean.
+     * @exception IOException A communication problem occurred when talking to the MBean server.
+     * @see com.heliosapm.asyncjmx.shared.util.JMXHelper#getMBeanAttributeMap(MBeanServerConnection, ObjectName, QueryExp, String, String...)
+     */
+    @SuppressWarnings("unchecked")
+	public Map<ObjectName, Map<String, Object>> getAttributes(ObjectName name, QueryExp query, String...attributes) throws IOException {
+    	return (Map<ObjectName, Map<String, Object>>) writeRequest(JMXOpCode.GETATTRIBUTES_QUERY.returnType, JMXOp.newOp(channel, JMXOpCode.GETATTRIBUTES_QUERY, name, query, attributes));
+    }
+
     /**
      * Sets the value of a specific attribute of a named MBean. The MBean
      * is identified by its object name.
@@ -758,6 +869,10 @@ public class SyncMBeanServerConnection implements MBeanServerConnection, Channel
      */
     public String getDefaultDomain()
 	    throws IOException {
+    	if(metadataCache!=null) {
+    		final String defaultDomain = metadataCache.getDefaultDomain();
+    		if(defaultDomain!=null) return defaultDomain;
+    	}
     	return writeRequest(String.class, JMXOp.newOp(channel, JMXOpCode.GETDEFAULTDOMAIN));
     }
 
@@ -778,6 +893,10 @@ public class SyncMBeanServerConnection implements MBeanServerConnection, Channel
      */
     public String[] getDomains()
 	    throws IOException {
+    	if(metadataCache!=null) {
+    		final String[] domains = metadataCache.getDomains();
+    		if(domains!=null) return domains;
+    	}
     	return writeRequest(String[].class, JMXOp.newOp(channel, JMXOpCode.GETDOMAINS));
     }
 
@@ -1027,6 +1146,10 @@ public class SyncMBeanServerConnection implements MBeanServerConnection, Channel
     public MBeanInfo getMBeanInfo(ObjectName name)
 	    throws InstanceNotFoundException, IntrospectionException,
 	    	   ReflectionException, IOException {
+    	if(metadataCache!=null) {
+    		final MBeanInfo info = metadataCache.getMBeanInfo(name);
+    		if(info!=null) return info;
+    	}
     	return writeRequest(MBeanInfo.class, JMXOp.newOp(channel, JMXOpCode.GETMBEANINFO, name));
     }
 
@@ -1069,6 +1192,10 @@ public class SyncMBeanServerConnection implements MBeanServerConnection, Channel
      */
     public boolean isInstanceOf(ObjectName name, String className)
 	    throws InstanceNotFoundException, IOException {
+    	if(metadataCache!=null) {
+    		final Boolean instanceOf = metadataCache.isInstanceOf(name, className);
+    		if(instanceOf!=null) return instanceOf;
+    	}
     	return writeRequest(Boolean.class, JMXOp.newOp(channel, JMXOpCode.ISINSTANCEOF, name, className));
     }
 
@@ -25,9 +25,7 @@
 package com.heliosapm.asyncjmx.client.notifications;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 
@@ -44,6 +42,7 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
 import com.heliosapm.asyncjmx.shared.serialization.ListenerRegistrationSerializer;
+import com.heliosapm.asyncjmx.unsafe.collections.ConcurrentIntObjectHashMap;
 
 /**
  * <p>Title: ListenerRegistration</p>
@@ -71,10 +70,10 @@ public class ListenerRegistration implements NotificationListener {
 	protected final Set<ObjectName> subscribedObjectNames = new CopyOnWriteArraySet<ObjectName>();
 	
 	/** A channel local containing a map of listener registrations keyed by the registration id */
-	protected static final ChannelLocal<Map<Integer, ListenerRegistration>> registrations = new ChannelLocal<Map<Integer, ListenerRegistration>>(true) {
+	protected static final ChannelLocal<ConcurrentIntObjectHashMap<ListenerRegistration>> registrations = new ChannelLocal<ConcurrentIntObjectHashMap<ListenerRegistration>>(true) {
 		@Override
-		protected Map<Integer, ListenerRegistration> initialValue(Channel channel) {
-			return new HashMap<Integer, ListenerRegistration>();
+		protected ConcurrentIntObjectHashMap<ListenerRegistration> initialValue(Channel channel) {
+			return new ConcurrentIntObjectHashMap<ListenerRegistration>(4, 16);
 		}
 	};
 	
@@ -116,12 +115,8 @@ public class ListenerRegistration implements NotificationListener {
 	 */
 	public static ListenerRegistration getInstance(Channel channel, NotificationListener listener, NotificationFilter filter, Object handback) {
 		ListenerRegistration lr = new ListenerRegistration(listener, filter, handback);
-		ListenerRegistration registered = registrations.get(channel).get(lr.getRegistrationId());
-		if(registered!=null) {
-			return registered;
-		} 
-		registrations.get(channel).put(lr.getRegistrationId(), lr);
-		return lr;
+		ListenerRegistration registered = registrations.get(channel).putIfAbsent(lr.getRegistrationId(), lr);
+		return registered!=null ? registered : lr;
 	}
 	
 	/**
@@ -134,15 +129,21 @@ public class ListenerRegistration implements NotificationListener {
 	 */
 	public static ListenerRegistration getInstance(Channel channel, ObjectName listener, NotificationFilter filter, Object handback) {
 		ListenerRegistration lr = new ListenerRegistration(listener, filter, handback);
-		ListenerRegistration registered = registrations.get(channel).get(lr.getRegistrationId());
-		if(registered!=null) {
-			return registered;
-		} 
-		registrations.get(channel).put(lr.getRegistrationId(), lr);
-		return lr;
+		ListenerRegistration registered = registrations.get(channel).putIfAbsent(lr.getRegistrationId(), lr);
+		return registered!=null ? registered : lr;
 	}
 	
 	
+	/**
+	 * Removes the passed registration from the channel's registrations, e.g. when the op registering it failed
+	 * @param channel The channel under which the listener was registered
+	 * @param lr The registration to remove
+	 * @return true if the registration was removed, false if it was not registered
+	 */
+	public static boolean remove(Channel channel, ListenerRegistration lr) {
+		return registrations.get(channel).remove(lr.getRegistrationId(), lr);
+	}
+	
 	/**
 	 * Creates a new ListenerRegistration
 	 * @param listener The listener object which will handle the notifications emitted by the registered MBean.
@@ -0,0 +1,239 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.client.notifications;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+
+import com.heliosapm.asyncjmx.shared.JMXOpCode;
+import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
+
+/**
+ * <p>Title: MBeanNameMirror</p>
+ * <p>Description: A live, locally queryable mirror of the ObjectNames registered in a remote MBeanServer.</p>
+ * <p>The mirror is seeded once with the set returned by a {@link JMXOpCode#SUBSCRIBE_NAMES} op and from then on is kept current
+ * by the registration and unregistration {@link MBeanServerNotification}s the server pushes over the channel's notification path.
+ * Deltas that arrive before the seed are buffered and replayed over it, so the mirror converges regardless of ordering.
+ * The mirror stops tracking when its channel closes.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.client.notifications.MBeanNameMirror</code></p>
+ */
+
+public class MBeanNameMirror implements NotificationListener {
+	/** Static class logger */
+	protected static final JMXLogger LOG = JMXLogger.getLogger(MBeanNameMirror.class);
+	
+	/** The pattern of the mirrored ObjectNames, null for all */
+	protected final ObjectName pattern;
+	/** The mirrored ObjectNames */
+	protected final Set<ObjectName> names = Collections.newSetFromMap(new ConcurrentHashMap<ObjectName, Boolean>());
+	/** A read only view of the mirrored ObjectNames */
+	protected final Set<ObjectName> namesView = Collections.unmodifiableSet(names);
+	/** Deltas received before the initial set, replayed over it when it arrives */
+	protected final List<MBeanServerNotification> earlyDeltas = new ArrayList<MBeanServerNotification>();
+	/** Dropped when the initial set has been applied */
+	protected final CountDownLatch initLatch = new CountDownLatch(1);
+	/** Incremented each time the mirrored set changes */
+	protected final AtomicLong version = new AtomicLong(0L);
+	/** Indicates if the mirror is still tracking the remote MBeanServer */
+	protected volatile boolean live = true;
+	
+	/**
+	 * Creates a new MBeanNameMirror
+	 * @param channel The channel the mirror's deltas are delivered on
+	 * @param pattern The pattern of the mirrored ObjectNames, null for all
+	 */
+	public MBeanNameMirror(final Channel channel, final ObjectName pattern) {
+		this.pattern = pattern;
+		channel.getCloseFuture().addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				live = false;
+			}
+		});
+	}
+	
+	/**
+	 * Seeds the mirror with the initial set of ObjectNames and replays any deltas that arrived ahead of it
+	 * @param initialNames The ObjectNames registered when the subscription was made
+	 * @return this mirror
+	 */
+	public synchronized MBeanNameMirror initialize(final Set<ObjectName> initialNames) {
+		if(initLatch.getCount()==0) throw new IllegalStateException("The mirror has already been initialized");
+		if(initialNames!=null) names.addAll(initialNames);
+		for(MBeanServerNotification delta: earlyDeltas) {
+			apply(delta);
+		}
+		earlyDeltas.clear();
+		version.incrementAndGet();
+		initLatch.countDown();
+		return this;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.NotificationListener#handleNotification(javax.management.Notification, java.lang.Object)
+	 */
+	@Override
+	public synchronized void handleNotification(final Notification notification, final Object handback) {
+		if(!(notification instanceof MBeanServerNotification)) {
+			LOG.warn("Unexpected notification [%s]", notification);
+			return;
+		}
+		final MBeanServerNotification delta = (MBeanServerNotification)notification;
+		if(initLatch.getCount()!=0) {
+			earlyDeltas.add(delta);
+		} else if(apply(delta)) {
+			version.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Applies a registration delta to the mirrored set
+	 * @param delta The delta to apply
+	 * @return true if the mirrored set changed
+	 */
+	protected boolean apply(final MBeanServerNotification delta) {
+		final ObjectName name = delta.getMBeanName();
+		if(pattern!=null && !pattern.apply(name)) return false;
+		if(MBeanServerNotification.REGISTRATION_NOTIFICATION.equals(delta.getType())) {
+			return names.add(name);
+		} else if(MBeanServerNotification.UNREGISTRATION_NOTIFICATION.equals(delta.getType())) {
+			return names.remove(name);
+		}
+		return false;
+	}
+	
+	/**
+	 * Waits for the initial set to be applied
+	 * @param timeout The maximum time to wait
+	 * @param unit The unit of the timeout
+	 * @return true if the mirror was initialized, false if the wait timed out
+	 * @throws InterruptedException thrown if the calling thread is interrupted while waiting
+	 */
+	public boolean awaitInitialized(final long timeout, final TimeUnit unit) throws InterruptedException {
+		return initLatch.await(timeout, unit);
+	}
+	
+	/**
+	 * Returns a live, read only view of the mirrored ObjectNames
+	 * @return the mirrored ObjectNames
+	 */
+	public Set<ObjectName> getNames() {
+		return namesView;
+	}
+	
+	/**
+	 * Queries the mirrored ObjectNames locally
+	 * @param name The ObjectName pattern to match, null to match all
+	 * @return a new set of the matching mirrored ObjectNames
+	 */
+	public Set<ObjectName> queryNames(final ObjectName name) {
+		if(name==null) return new HashSet<ObjectName>(names);
+		if(!name.isPattern()) return names.contains(name) ? Collections.singleton(name) : Collections.<ObjectName>emptySet();
+		final Set<ObjectName> matches = new HashSet<ObjectName>();
+		for(ObjectName on: names) {
+			if(name.apply(on)) matches.add(on);
+		}
+		return matches;
+	}
+	
+	/**
+	 * Indicates if the passed ObjectName is in the mirror
+	 * @param name The ObjectName to test
+	 * @return true if the name is mirrored, false otherwise
+	 */
+	public boolean isRegistered(final ObjectName name) {
+		return names.contains(name);
+	}
+	
+	/**
+	 * Returns the number of mirrored ObjectNames
+	 * @return the number of mirrored ObjectNames
+	 */
+	public int getMBeanCount() {
+		return names.size();
+	}
+	
+	/**
+	 * Returns the mirror's version, incremented each time the mirrored set changes.
+	 * Pollers can compare versions to skip work when nothing has been registered or unregistered.
+	 * @return the mirror version
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+	
+	/**
+	 * Returns the pattern of the mirrored ObjectNames
+	 * @return the pattern, null if all names are mirrored
+	 */
+	public ObjectName getPattern() {
+		return pattern;
+	}
+	
+	/**
+	 * Indicates if the initial set has been applied
+	 * @return true if the mirror is initialized, false otherwise
+	 */
+	public boolean isInitialized() {
+		return initLatch.getCount()==0;
+	}
+	
+	/**
+	 * Indicates if the mirror is still tracking the remote MBeanServer. Once the channel closes the mirror is frozen.
+	 * @return true if the mirror is live, false otherwise
+	 */
+	public boolean isLive() {
+		return live;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "MBeanNameMirror [pattern=" + pattern + ", names=" + names.size() + ", version=" + version.get() + ", live=" + live + "]";
+	}
+
+}
@@ -36,6 +36,7 @@ import java.util.logging.Logger;
 
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.buffer.DirectChannelBufferFactory;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelEvent;
 import org.jboss.netty.channel.ChannelFactory;
@@ -53,6 +54,7 @@ import org.jboss.netty.logging.JdkLoggerFactory;
 import com.heliosapm.asyncjmx.client.AsyncJMXClient;
 import com.heliosapm.asyncjmx.shared.KryoFactory;
 import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
+import com.heliosapm.asyncjmx.shared.util.ConfigurationHelper;
 
 /**
  * <p>Title: AsyncJMXServer</p>
@@ -87,6 +89,11 @@ public class AsyncJMXServer implements ChannelUpstreamHandler {
 	/** Instance logger */
 	protected final Logger log = Logger.getLogger(getClass().getName());
 	
+	/** The config property name indicating if inbound channel buffers should be direct. Heap buffers let the JMXOpDecoder read frames without copying. */
+	public static final String CONFIG_DIRECT_BUFFERS = "com.heliosapm.asyncjmx.server.buffers.direct";
+	/** The default inbound channel buffer type */
+	public static final boolean DEFAULT_DIRECT_BUFFERS = false;
+	
 	static {
 		InputStream is = null;
 		try {
@@ -113,7 +120,11 @@ public class AsyncJMXServer implements ChannelUpstreamHandler {
 		serverBootstrap.setOption("child.tcpNoDelay", true);
 		serverBootstrap.setOption("child.receiveBufferSize", 1048576);
 		serverBootstrap.setOption("child.sendBufferSize", 1048576);
-		serverBootstrap.setOption("child.bufferFactory", new DirectChannelBufferFactory(2048));
+		if(ConfigurationHelper.getBooleanSystemThenEnvProperty(CONFIG_DIRECT_BUFFERS, DEFAULT_DIRECT_BUFFERS)) {
+			serverBootstrap.setOption("child.bufferFactory", new DirectChannelBufferFactory(2048));
+		} else {
+			serverBootstrap.setOption("child.bufferFactory", HeapChannelBufferFactory.getInstance());
+		}
 		 		
 		
 		socketAddress = new InetSocketAddress(bindInterface, port);
@@ -0,0 +1,521 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanException;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.MalformedObjectNameException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.relation.MBeanServerNotificationFilter;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.heliosapm.asyncjmx.shared.KryoFactory;
+import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
+import com.heliosapm.asyncjmx.shared.serialization.EncodedResult;
+import com.heliosapm.asyncjmx.shared.util.ConfigurationHelper;
+import com.heliosapm.asyncjmx.unsafe.UnsafeAdapter;
+
+/**
+ * <p>Title: AttributeValueCache</p>
+ * <p>Description: A bounded, least recently used, read-through cache of the encoded results of <code>getAttribute</code> and 
+ * <code>getAttributes</code> calls against one MBeanServer, with a time to live per ObjectName pattern and attribute.</p>
+ * <p>Concurrent misses for the same MBean and attributes are collapsed into a single read of the MBeanServer, whose result or 
+ * exception is shared by every waiting caller. Values are encoded by a kryo with no channel dictionaries so the cached bytes can 
+ * be sent on any channel without being serialized again. Exceptions and null values are never cached, and entries are dropped 
+ * when the MBeanServerDelegate reports their MBean registered or unregistered.</p> 
+ * <p>Because the cached bytes bypass the channel dictionaries, a cache hit sends the full OpenType graph of every composite or tabular
+ * value and the full string of every ObjectName, where an uncached result would send dictionary references once the channel has seen them.
+ * Caching open data values therefore trades wire size for skipping the MBeanServer read and the encoding, which pays off for attributes 
+ * that are expensive to read rather than for small values polled at a high rate.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.server.AttributeValueCache</code></p>
+ */
+
+public class AttributeValueCache implements NotificationListener {
+	/** The conf property name for the attribute TTL rules, formatted as <b><code>&lt;ObjectName pattern&gt;|&lt;attribute&gt;[,&lt;attribute&gt;]=&lt;ttl ms&gt;[;...]</code></b>.
+	 * An attribute of <b><code>*</code></b> matches all attributes. The first matching rule applies. An empty value disables the cache. */
+	public static final String CONFIG_TTLS = "com.heliosapm.asyncjmx.server.attrcache.ttls";
+	/** The default attribute TTL rules, which cache nothing */
+	public static final String DEFAULT_TTLS = "";
+	/** The conf property name for the maximum number of results cached per MBeanServer. Zero or less disables the cache. */
+	public static final String CONFIG_CACHE_SIZE = "com.heliosapm.asyncjmx.server.attrcache.size";
+	/** The default maximum number of results cached per MBeanServer */
+	public static final int DEFAULT_CACHE_SIZE = 4096;
+	
+	/** Static class logger */
+	private static final JMXLogger log = JMXLogger.getLogger(AttributeValueCache.class);
+	
+	/** The MBeanServer the attributes are read from */
+	protected final MBeanServerConnection mbeanServer;
+	/** The TTL rules in match order */
+	protected final TTLRule[] rules;
+	/** The maximum number of cached results */
+	protected final int maxSize;
+	/** The encoded results in access order, guarded by itself */
+	protected final LinkedHashMap<CacheKey, CachedValue> cache;
+	/** The in-flight reads keyed by the MBean and attributes being read */
+	protected final ConcurrentHashMap<CacheKey, Flight> flights = new ConcurrentHashMap<CacheKey, Flight>();
+	/** Incremented on every invalidation so results read concurrently with one are not cached */
+	protected final AtomicLong invalidations = new AtomicLong(0L);
+	/** The kryo the results are encoded with, guarded by itself */
+	protected final Kryo kryo = KryoFactory.getInstance().newKryo();
+	
+	/**
+	 * Creates a new AttributeValueCache for the passed MBeanServer, if TTL rules are configured and the MBeanServer's 
+	 * registration notifications can be subscribed to
+	 * @param mbeanServer The MBeanServer to cache attribute values for
+	 * @return the new cache or null if attribute values should not be cached
+	 */
+	public static AttributeValueCache newCache(MBeanServerConnection mbeanServer) {
+		final int maxSize = ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_CACHE_SIZE, DEFAULT_CACHE_SIZE);
+		if(maxSize < 1) return null;
+		final TTLRule[] rules = parseRules(ConfigurationHelper.getSystemThenEnvProperty(CONFIG_TTLS, DEFAULT_TTLS));
+		if(rules.length==0) return null;
+		final AttributeValueCache cache = new AttributeValueCache(mbeanServer, rules, maxSize);
+		final MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+		filter.enableAllObjectNames();
+		try {
+			mbeanServer.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, cache, filter, null);
+			return cache;
+		} catch (Exception ex) {
+			log.warn("Failed to subscribe to MBeanServer registration events. Attribute values will not be cached: %s", ex.toString());
+			return null;
+		}
+	}
+	
+	/**
+	 * Parses TTL rules in the format of {@link #CONFIG_TTLS}
+	 * @param definitions The TTL rule definitions
+	 * @return the parsed rules in match order
+	 */
+	public static TTLRule[] parseRules(String definitions) {
+		final List<TTLRule> rules = new ArrayList<TTLRule>();
+		if(definitions==null || definitions.trim().isEmpty()) return new TTLRule[0];
+		for(String def: definitions.split(";")) {
+			if(def.trim().isEmpty()) continue;
+			final int eq = def.lastIndexOf('=');
+			final int bar = def.lastIndexOf('|', eq);
+			if(eq<1 || bar<1) throw new IllegalArgumentException("Invalid attribute TTL rule [" + def + "]");
+			try {
+				final ObjectName pattern = new ObjectName(def.substring(0, bar).trim());
+				final long ttl = Long.parseLong(def.substring(eq+1).trim());
+				final Set<String> attributes = new HashSet<String>();
+				for(String attr: ConfigurationHelper.COMMA_SPLITTER.split(def.substring(bar+1, eq))) {
+					if(!attr.trim().isEmpty()) attributes.add(attr.trim());
+				}
+				rules.add(new TTLRule(pattern, attributes.contains("*") ? null : attributes, ttl));
+			} catch (MalformedObjectNameException mex) {
+				throw new IllegalArgumentException("Invalid ObjectName pattern in attribute TTL rule [" + def + "]", mex);
+			} catch (NumberFormatException nex) {
+				throw new IllegalArgumentException("Invalid TTL in attribute TTL rule [" + def + "]", nex);
+			}
+		}
+		return rules.toArray(new TTLRule[rules.size()]);
+	}
+	
+	/**
+	 * Creates a new AttributeValueCache
+	 * @param mbeanServer The MBeanServer the attributes are read from
+	 * @param rules The TTL rules in match order
+	 * @param maxSize The maximum number of cached results
+	 */
+	protected AttributeValueCache(MBeanServerConnection mbeanServer, TTLRule[] rules, final int maxSize) {
+		this.mbeanServer = mbeanServer;
+		this.rules = rules;
+		this.maxSize = maxSize;
+		cache = new LinkedHashMap<CacheKey, CachedValue>(Math.min(maxSize, 1024), 0.75f, true) {
+			private static final long serialVersionUID = 2954367402446117285L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedValue> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the value of an MBean attribute, encoded, from the cache if a live entry exists
+	 * @param objectName The ObjectName of the MBean
+	 * @param attribute The attribute name
+	 * @return the encoded value, or the value itself if it is not cacheable or could not be encoded
+	 * @throws MBeanException Wraps an exception thrown by the MBean's getter
+	 * @throws AttributeNotFoundException thrown if the attribute does not exist
+	 * @throws InstanceNotFoundException thrown if the MBean is not registered
+	 * @throws ReflectionException thrown on a reflection failure invoking the getter
+	 * @throws IOException thrown on an IO remoting error
+	 */
+	public Object getAttribute(final ObjectName objectName, final String attribute) throws MBeanException, AttributeNotFoundException, InstanceNotFoundException, ReflectionException, IOException {
+		return get(new CacheKey(objectName, attribute), new Loader() {
+			@Override
+			public Object load() throws Exception {
+				return mbeanServer.getAttribute(objectName, attribute);
+			}
+		});
+	}
+	
+	/**
+	 * Returns the values of a set of MBean attributes, encoded, from the cache if a live entry exists
+	 * @param objectName The ObjectName of the MBean
+	 * @param attributes The attribute names
+	 * @return the encoded AttributeList, or the AttributeList itself if it is not cacheable or could not be encoded
+	 * @throws InstanceNotFoundException thrown if the MBean is not registered
+	 * @throws ReflectionException thrown on a reflection failure invoking a getter
+	 * @throws IOException thrown on an IO remoting error
+	 */
+	public Object getAttributes(final ObjectName objectName, final String[] attributes) throws InstanceNotFoundException, ReflectionException, IOException {
+		return get(new CacheKey(objectName, attributes==null ? null : Arrays.asList(attributes.clone())), new Loader() {
+			@Override
+			public Object load() throws Exception {
+				return mbeanServer.getAttributes(objectName, attributes);
+			}
+		});
+	}
+	
+	/**
+	 * Returns the live cached result for the passed key, or reads it through the loader, collapsing concurrent reads of the same key
+	 * @param key The cache key
+	 * @param loader Reads the value from the MBeanServer
+	 * @return the encoded result or the raw value
+	 */
+	protected Object get(final CacheKey key, final Loader loader) {
+		synchronized(cache) {
+			final CachedValue cached = cache.get(key);
+			if(cached!=null) {
+				if(cached.expiresAt > System.currentTimeMillis()) return cached.encoded;
+				cache.remove(key);
+			}
+		}
+		final long ttl = getTTL(key);
+		try {
+			if(ttl < 1) return loader.load();
+			final Flight flight = new Flight();
+			final Flight leader = flights.putIfAbsent(key, flight);
+			if(leader!=null) return leader.await();
+			final long invalidation = invalidations.get();
+			try {
+				final Object result = encode(key, loader.load());
+				if(result instanceof EncodedResult) {
+					synchronized(cache) {
+						if(invalidations.get()==invalidation) cache.put(key, new CachedValue((EncodedResult)result, System.currentTimeMillis() + ttl));
+					}
+				}
+				flight.complete(result, null);
+				return result;
+			} catch (Throwable t) {
+				flight.complete(null, t);
+				throw t;
+			} finally {
+				flights.remove(key, flight);
+			}
+		} catch (Throwable t) {
+			UnsafeAdapter.throwException(t);
+			return null;
+		}
+	}
+	
+	/**
+	 * Encodes a value read from the MBeanServer
+	 * @param key The key the value was read for
+	 * @param value The value
+	 * @return the encoded value, or the value itself if it is null or could not be encoded
+	 */
+	protected Object encode(final CacheKey key, final Object value) {
+		if(value==null) return null;
+		try {
+			synchronized(kryo) {
+				return EncodedResult.encode(kryo, value);
+			}
+		} catch (Exception ex) {
+			log.warn("Failed to encode attribute value for [%s]: %s", key, ex.toString());
+			return value;
+		}
+	}
+	
+	/**
+	 * Resolves the TTL for the passed key from the rules. A key for several attributes gets the shortest of their TTLs.
+	 * @param key The cache key
+	 * @return the TTL in ms. Zero or less means the key is not cached.
+	 */
+	protected long getTTL(final CacheKey key) {
+		if(key.attributes instanceof String) return getTTL(key.objectName, (String)key.attributes);
+		if(key.attributes==null) return 0L;
+		long ttl = Long.MAX_VALUE;
+		for(Object attribute: (List<?>)key.attributes) {
+			ttl = Math.min(ttl, getTTL(key.objectName, (String)attribute));
+			if(ttl < 1) return 0L;
+		}
+		return ttl==Long.MAX_VALUE ? 0L : ttl;
+	}
+	
+	/**
+	 * Resolves the TTL for one attribute from the first matching rule
+	 * @param objectName The ObjectName of the MBean
+	 * @param attribute The attribute name
+	 * @return the TTL in ms, zero if no rule matches
+	 */
+	protected long getTTL(final ObjectName objectName, final String attribute) {
+		for(TTLRule rule: rules) {
+			if(rule.matches(objectName, attribute)) return rule.ttl;
+		}
+		return 0L;
+	}
+	
+	/**
+	 * Drops the cached results of MBeans registered or unregistered in the MBeanServer
+	 * {@inheritDoc}
+	 * @see javax.management.NotificationListener#handleNotification(javax.management.Notification, java.lang.Object)
+	 */
+	@Override
+	public void handleNotification(Notification notification, Object handback) {
+		if(notification instanceof MBeanServerNotification) {
+			final ObjectName objectName = ((MBeanServerNotification)notification).getMBeanName();
+			synchronized(cache) {
+				invalidations.incrementAndGet();
+				for(Iterator<CacheKey> iter = cache.keySet().iterator(); iter.hasNext();) {
+					if(iter.next().objectName.equals(objectName)) iter.remove();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of cached results
+	 * @return the number of cached results
+	 */
+	public int size() {
+		synchronized(cache) {
+			return cache.size();
+		}
+	}
+	
+	/**
+	 * Returns the maximum number of cached results
+	 * @return the maximum number of cached results
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+	
+	/**
+	 * Returns the TTL rules in match order
+	 * @return the TTL rules
+	 */
+	public List<TTLRule> getRules() {
+		return Collections.unmodifiableList(Arrays.asList(rules));
+	}
+	
+	/**
+	 * <p>Title: TTLRule</p>
+	 * <p>Description: Assigns a time to live to the attributes of MBeans matching an ObjectName pattern</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.asyncjmx.server.AttributeValueCache.TTLRule</code></p>
+	 */
+	public static class TTLRule {
+		/** The ObjectName pattern the rule applies to */
+		public final ObjectName pattern;
+		/** The attribute names the rule applies to, null for all */
+		public final Set<String> attributes;
+		/** The time to live in ms */
+		public final long ttl;
+		
+		/**
+		 * Creates a new TTLRule
+		 * @param pattern The ObjectName pattern the rule applies to
+		 * @param attributes The attribute names the rule applies to, null for all
+		 * @param ttl The time to live in ms
+		 */
+		public TTLRule(ObjectName pattern, Set<String> attributes, long ttl) {
+			this.pattern = pattern;
+			this.attributes = attributes;
+			this.ttl = ttl;
+		}
+		
+		/**
+		 * Indicates if this rule applies to the passed attribute
+		 * @param objectName The ObjectName of the MBean
+		 * @param attribute The attribute name
+		 * @return true if the rule applies, false otherwise
+		 */
+		public boolean matches(ObjectName objectName, String attribute) {
+			return (attributes==null || attributes.contains(attribute)) && pattern.apply(objectName);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return "TTLRule [pattern=" + pattern + ", attributes=" + (attributes==null ? "*" : attributes) + ", ttl=" + ttl + "]";
+		}
+	}
+	
+	/**
+	 * <p>Title: Loader</p>
+	 * <p>Description: Reads a value from the MBeanServer on a cache miss</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.asyncjmx.server.AttributeValueCache.Loader</code></p>
+	 */
+	protected static interface Loader {
+		/**
+		 * Reads the value
+		 * @return the value
+		 * @throws Exception thrown if the read fails
+		 */
+		public Object load() throws Exception;
+	}
+	
+	/**
+	 * <p>Title: CacheKey</p>
+	 * <p>Description: Identifies a cached result by MBean and the attribute name, or list of attribute names, read from it</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.asyncjmx.server.AttributeValueCache.CacheKey</code></p>
+	 */
+	protected static class CacheKey {
+		/** The ObjectName of the MBean */
+		final ObjectName objectName;
+		/** The attribute name for a getAttribute, or the list of attribute names for a getAttributes */
+		final Object attributes;
+		/** The precomputed hash code */
+		final int hashCode;
+		
+		/**
+		 * Creates a new CacheKey
+		 * @param objectName The ObjectName of the MBean
+		 * @param attributes The attribute name or list of attribute names
+		 */
+		CacheKey(ObjectName objectName, Object attributes) {
+			this.objectName = objectName;
+			this.attributes = attributes;
+			hashCode = 31 * (objectName==null ? 0 : objectName.hashCode()) + (attributes==null ? 0 : attributes.hashCode());
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this==obj) return true;
+			if(!(obj instanceof CacheKey)) return false;
+			final CacheKey other = (CacheKey)obj;
+			return hashCode==other.hashCode 
+					&& (objectName==null ? other.objectName==null : objectName.equals(other.objectName))
+					&& (attributes==null ? other.attributes==null : attributes.equals(other.attributes));
+		}
+
+		@Override
+		public String toString() {
+			return objectName + "/" + attributes;
+		}
+	}
+	
+	/**
+	 * <p>Title: CachedValue</p>
+	 * <p>Description: An encoded result and the time it expires</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.asyncjmx.server.AttributeValueCache.CachedValue</code></p>
+	 */
+	protected static class CachedValue {
+		/** The encoded result */
+		final EncodedResult encoded;
+		/** The time the result expires in ms */
+		final long expiresAt;
+		
+		/**
+		 * Creates a new CachedValue
+		 * @param encoded The encoded result
+		 * @param expiresAt The time the result expires in ms
+		 */
+		CachedValue(EncodedResult encoded, long expiresAt) {
+			this.encoded = encoded;
+			this.expiresAt = expiresAt;
+		}
+	}
+	
+	/**
+	 * <p>Title: Flight</p>
+	 * <p>Description: A read of the MBeanServer in progress, whose result or exception is handed to every caller that missed on the same key while it ran</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.asyncjmx.server.AttributeValueCache.Flight</code></p>
+	 */
+	protected static class Flight {
+		/** Dropped when the read completes */
+		final CountDownLatch latch = new CountDownLatch(1);
+		/** The result of the read, published by the latch */
+		Object result = null;
+		/** The exception thrown by the read, published by the latch */
+		Throwable error = null;
+		
+		/**
+		 * Completes the flight
+		 * @param result The result of the read
+		 * @param error The exception thrown by the read
+		 */
+		void complete(Object result, Throwable error) {
+			this.result = result;
+			this.error = error;
+			latch.countDown();
+		}
+		
+		/**
+		 * Waits for the read to complete
+		 * @return the result of the read
+		 * @throws Throwable the exception thrown by the read
+		 */
+		Object await() throws Throwable {
+			latch.await();
+			if(error!=null) throw error;
+			return result;
+		}
+	}
+}
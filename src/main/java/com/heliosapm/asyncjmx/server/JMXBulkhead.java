@@ -0,0 +1,216 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.server;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.heliosapm.asyncjmx.shared.JMXOpCode;
+import com.heliosapm.asyncjmx.shared.util.ConfigurationHelper;
+
+/**
+ * <p>Title: JMXBulkhead</p>
+ * <p>Description: A named, bounded executor that a set of op codes is isolated in, so that expensive ops 
+ * cannot starve cheap ones of invocation threads. When the bulkhead's threads are busy and its queue is full,
+ * submissions are handled according to the bulkhead's {@link RejectionPolicy}.
+ * Ops executed in a bulkhead are not kept in channel order.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.server.JMXBulkhead</code></p>
+ */
+
+public class JMXBulkhead {
+	/** The bulkhead name */
+	protected final String name;
+	/** The op codes isolated in this bulkhead */
+	protected final Set<JMXOpCode> opCodes;
+	/** The rejection policy */
+	protected final RejectionPolicy policy;
+	/** The bulkhead executor */
+	protected final ThreadPoolExecutor executor;
+	/** The number of rejected submissions */
+	protected final AtomicLong rejections = new AtomicLong(0L);
+	
+	/** The config property name prefix for bulkhead properties. Suffixed with <b><code>&lt;name&gt;.threads</code></b>, <b><code>&lt;name&gt;.queue</code></b> or <b><code>&lt;name&gt;.policy</code></b> */
+	public static final String CONFIG_BULKHEAD_PREFIX = "com.heliosapm.asyncjmx.server.bulkhead.";
+	/** The default number of threads in a bulkhead */
+	public static final int DEFAULT_BULKHEAD_THREADS = 4;
+	/** The default queue size of a bulkhead */
+	public static final int DEFAULT_BULKHEAD_QUEUE = 128;
+	/** The default rejection policy of a bulkhead */
+	public static final RejectionPolicy DEFAULT_BULKHEAD_POLICY = RejectionPolicy.BUSY;
+	
+	/**
+	 * <p>Title: RejectionPolicy</p>
+	 * <p>Description: Enumerates what happens to an op submitted to a saturated bulkhead</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.asyncjmx.server.JMXBulkhead.RejectionPolicy</code></p>
+	 */
+	public static enum RejectionPolicy {
+		/** The op is not executed and the caller is immediately sent a {@link com.heliosapm.asyncjmx.shared.ServerBusyException} */
+		BUSY,
+		/** The op is executed on the submitting I/O thread */
+		CALLER_RUNS;
+		
+		/**
+		 * Decodes the passed name to a RejectionPolicy, ignoring case
+		 * @param name The name to decode
+		 * @param defaultPolicy The policy to return if the name is null or not a valid policy
+		 * @return the decoded RejectionPolicy
+		 */
+		public static RejectionPolicy decode(String name, RejectionPolicy defaultPolicy) {
+			if(name==null || name.trim().isEmpty()) return defaultPolicy;
+			try {
+				return RejectionPolicy.valueOf(name.trim().toUpperCase());
+			} catch (Exception ex) {
+				return defaultPolicy;
+			}
+		}
+	}
+	
+	/**
+	 * Creates a new JMXBulkhead configured from system properties or environment
+	 * @param name The bulkhead name
+	 * @param opCodes The op codes isolated in this bulkhead
+	 */
+	public JMXBulkhead(String name, Set<JMXOpCode> opCodes) {
+		this(name, opCodes, 
+				ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_BULKHEAD_PREFIX + name + ".threads", DEFAULT_BULKHEAD_THREADS),
+				ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_BULKHEAD_PREFIX + name + ".queue", DEFAULT_BULKHEAD_QUEUE),
+				RejectionPolicy.decode(ConfigurationHelper.getSystemThenEnvProperty(CONFIG_BULKHEAD_PREFIX + name + ".policy", DEFAULT_BULKHEAD_POLICY.name()), DEFAULT_BULKHEAD_POLICY)
+		);
+	}
+	
+	/**
+	 * Creates a new JMXBulkhead
+	 * @param name The bulkhead name
+	 * @param opCodes The op codes isolated in this bulkhead
+	 * @param threads The number of threads in the bulkhead
+	 * @param queueSize The maximum number of ops queued waiting for a thread
+	 * @param policy The rejection policy
+	 */
+	public JMXBulkhead(String name, Set<JMXOpCode> opCodes, int threads, int queueSize, RejectionPolicy policy) {
+		if(name==null || name.trim().isEmpty()) throw new IllegalArgumentException("The passed bulkhead name was null or empty");
+		if(opCodes==null || opCodes.isEmpty()) throw new IllegalArgumentException("The passed op code set for bulkhead [" + name + "] was null or empty");
+		if(policy==null) throw new IllegalArgumentException("The passed rejection policy for bulkhead [" + name + "] was null");
+		this.name = name.trim();
+		this.opCodes = Collections.unmodifiableSet(EnumSet.copyOf(opCodes));
+		this.policy = policy;
+		executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), 
+				new JMXInvocationExecutor.InvocationThreadFactory("Bulkhead-" + this.name), new ThreadPoolExecutor.AbortPolicy());
+		executor.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * Submits the passed runnable for execution in this bulkhead
+	 * @param command The runnable to execute
+	 * @return true if the runnable was accepted or run by the caller, 
+	 * false if it was rejected and the caller should be told the server is busy
+	 */
+	public boolean execute(Runnable command) {
+		try {
+			executor.execute(command);
+			return true;
+		} catch (RejectedExecutionException rex) {
+			rejections.incrementAndGet();
+			if(policy==RejectionPolicy.CALLER_RUNS && !executor.isShutdown()) {
+				command.run();
+				return true;
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * Returns the bulkhead name
+	 * @return the bulkhead name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the op codes isolated in this bulkhead
+	 * @return the op codes isolated in this bulkhead
+	 */
+	public Set<JMXOpCode> getOpCodes() {
+		return opCodes;
+	}
+
+	/**
+	 * Returns the rejection policy
+	 * @return the rejection policy
+	 */
+	public RejectionPolicy getPolicy() {
+		return policy;
+	}
+	
+	/**
+	 * Returns the number of ops waiting for a thread
+	 * @return the queue depth
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+	
+	/**
+	 * Returns the number of threads executing ops
+	 * @return the active thread count
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+	
+	/**
+	 * Returns the number of rejected submissions
+	 * @return the number of rejected submissions
+	 */
+	public long getRejectionCount() {
+		return rejections.get();
+	}
+	
+	/**
+	 * Shuts down the bulkhead executor
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "JMXBulkhead [name=" + name + ", policy=" + policy + ", threads=" + executor.getMaximumPoolSize() + ", ops=" + opCodes + "]";
+	}
+}
@@ -0,0 +1,391 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.server;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.execution.ChannelEventRunnable;
+import org.jboss.netty.handler.execution.MemoryAwareThreadPoolExecutor;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+
+import com.heliosapm.asyncjmx.client.JMXOpResponse;
+import com.heliosapm.asyncjmx.shared.JMXOp;
+import com.heliosapm.asyncjmx.shared.JMXOpCode;
+import com.heliosapm.asyncjmx.shared.ServerBusyException;
+import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
+import com.heliosapm.asyncjmx.shared.util.ConfigurationHelper;
+
+/**
+ * <p>Title: JMXInvocationExecutor</p>
+ * <p>Description: The executor behind the server's invocation stage which takes MBeanServer invocations off the Netty I/O threads.
+ * Depending on the configured {@link InvocationMode}, events are executed in per channel order, without ordering, or routed 
+ * by op code so that only ops whose semantics depend on the channel's request order are serialized.
+ * Op codes assigned to a {@link JMXBulkhead} bypass the mode and are executed in their bulkhead, except for the {@link #ORDERED_OPS},
+ * which are only isolated in a bulkhead in {@link InvocationMode#UNORDERED} mode since bulkheads do not keep channel order.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.server.JMXInvocationExecutor</code></p>
+ */
+
+public class JMXInvocationExecutor implements Executor {
+	/** Instance logger */
+	private final JMXLogger log = JMXLogger.getLogger(getClass());
+	/** The configured invocation mode */
+	protected final InvocationMode mode;
+	/** The per channel ordered executor. Null in {@link InvocationMode#UNORDERED} mode */
+	protected final OrderedMemoryAwareThreadPoolExecutor orderedExecutor;
+	/** The unordered executor. Null in {@link InvocationMode#ORDERED} mode */
+	protected final MemoryAwareThreadPoolExecutor unorderedExecutor;
+	/** The bulkheads keyed by the op codes they isolate */
+	protected final Map<JMXOpCode, JMXBulkhead> bulkheads = new EnumMap<JMXOpCode, JMXBulkhead>(JMXOpCode.class);
+	/** The bulkheads keyed by name */
+	protected final Map<String, JMXBulkhead> namedBulkheads = new LinkedHashMap<String, JMXBulkhead>();
+	
+	/** The op codes which must be executed in the order they were received on their channel when routing by op code */
+	public static final Set<JMXOpCode> ORDERED_OPS = Collections.unmodifiableSet(EnumSet.of(
+			JMXOpCode.ADDNOTIFICATIONLISTENER_OONO, JMXOpCode.ADDNOTIFICATIONLISTENER_ONNO,
+			JMXOpCode.REMOVENOTIFICATIONLISTENER_ONNO, JMXOpCode.REMOVENOTIFICATIONLISTENER_OONO,
+			JMXOpCode.REMOVENOTIFICATIONLISTENER_OO, JMXOpCode.REMOVENOTIFICATIONLISTENER_ON, JMXOpCode.SUBSCRIBE_NAMES,
+			JMXOpCode.CREATEMBEAN_SOOOS, JMXOpCode.CREATEMBEAN_SOOS, JMXOpCode.CREATEMBEAN_SOO, JMXOpCode.CREATEMBEAN_SO,
+			JMXOpCode.UNREGISTERMBEAN, JMXOpCode.SETATTRIBUTE, JMXOpCode.SETATTRIBUTES, JMXOpCode.INVOKE
+	));
+	
+	/** The config property name for the invocation mode */
+	public static final String CONFIG_EXEC_MODE = "com.heliosapm.asyncjmx.server.exec.mode";
+	/** The default invocation mode */
+	public static final InvocationMode DEFAULT_EXEC_MODE = InvocationMode.ROUTED;
+	/** The config property name for the number of threads in each invocation pool */
+	public static final String CONFIG_EXEC_THREADS = "com.heliosapm.asyncjmx.server.exec.threads";
+	/** The default number of threads in each invocation pool */
+	public static final int DEFAULT_EXEC_THREADS = 16;
+	/** The config property name for the maximum bytes of queued events per channel */
+	public static final String CONFIG_EXEC_CHANNEL_MEMORY = "com.heliosapm.asyncjmx.server.exec.channelmemory";
+	/** The default maximum bytes of queued events per channel */
+	public static final int DEFAULT_EXEC_CHANNEL_MEMORY = 1048576;
+	/** The config property name for the maximum bytes of queued events in each invocation pool */
+	public static final String CONFIG_EXEC_TOTAL_MEMORY = "com.heliosapm.asyncjmx.server.exec.totalmemory";
+	/** The default maximum bytes of queued events in each invocation pool */
+	public static final int DEFAULT_EXEC_TOTAL_MEMORY = 1048576 * 16;
+	/** The config property name for the bulkhead definitions, formatted as <b><code>&lt;name&gt;:&lt;OPCODE&gt;,&lt;OPCODE&gt;[;&lt;name&gt;:&lt;OPCODE&gt;,...]</code></b>. An empty value disables bulkheads. Bulkheads are not used in {@link InvocationMode#IO} mode. */
+	public static final String CONFIG_BULKHEADS = "com.heliosapm.asyncjmx.server.bulkheads";
+	/** The default bulkhead definitions which isolate the expensive ops. INVOKE is ordered so it is not isolated by default. */
+	public static final String DEFAULT_BULKHEADS = "heavy:QUERYMBEANS,QUERYNAMES,GETMBEANINFO,GETATTRIBUTES_BATCH,GETATTRIBUTES_QUERY";
+	
+	/**
+	 * <p>Title: InvocationMode</p>
+	 * <p>Description: Enumerates the server's invocation stage threading options</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.asyncjmx.server.JMXInvocationExecutor.InvocationMode</code></p>
+	 */
+	public static enum InvocationMode {
+		/** Invocations are executed directly on the Netty I/O worker thread */
+		IO,
+		/** All events are executed in the order they were received on their channel */
+		ORDERED,
+		/** Events are executed as soon as a thread is available, regardless of their channel */
+		UNORDERED,
+		/** Ops in {@link JMXInvocationExecutor#ORDERED_OPS} and channel state events are executed in channel order, all other ops are unordered */
+		ROUTED;
+		
+		/**
+		 * Decodes the passed name to an InvocationMode, ignoring case
+		 * @param name The name to decode
+		 * @param defaultMode The mode to return if the name is null or not a valid mode
+		 * @return the decoded InvocationMode
+		 */
+		public static InvocationMode decode(String name, InvocationMode defaultMode) {
+			if(name==null || name.trim().isEmpty()) return defaultMode;
+			try {
+				return InvocationMode.valueOf(name.trim().toUpperCase());
+			} catch (Exception ex) {
+				return defaultMode;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the invocation mode configured through {@link #CONFIG_EXEC_MODE}
+	 * @return the configured invocation mode
+	 */
+	public static InvocationMode getConfiguredMode() {
+		return InvocationMode.decode(ConfigurationHelper.getSystemThenEnvProperty(CONFIG_EXEC_MODE, DEFAULT_EXEC_MODE.name()), DEFAULT_EXEC_MODE);
+	}
+	
+	/**
+	 * Parses bulkhead definitions in the format of {@link #CONFIG_BULKHEADS}
+	 * @param definitions The bulkhead definitions
+	 * @return a map of op code sets keyed by bulkhead name
+	 */
+	public static Map<String, Set<JMXOpCode>> parseBulkheads(String definitions) {
+		Map<String, Set<JMXOpCode>> map = new LinkedHashMap<String, Set<JMXOpCode>>();
+		if(definitions==null || definitions.trim().isEmpty()) return map;
+		for(String def: definitions.split(";")) {
+			if(def.trim().isEmpty()) continue;
+			int index = def.indexOf(':');
+			if(index<1) throw new IllegalArgumentException("Invalid bulkhead definition [" + def + "]");
+			String name = def.substring(0, index).trim();
+			Set<JMXOpCode> ops = EnumSet.noneOf(JMXOpCode.class);
+			for(String op: ConfigurationHelper.COMMA_SPLITTER.split(def.substring(index+1))) {
+				if(op.trim().isEmpty()) continue;
+				ops.add(JMXOpCode.valueOf(op.trim().toUpperCase()));
+			}
+			if(!ops.isEmpty()) map.put(name, ops);
+		}
+		return map;
+	}
+	
+	/**
+	 * Creates the bulkheads defined through {@link #CONFIG_BULKHEADS}
+	 * @return a collection of bulkheads
+	 */
+	public static Collection<JMXBulkhead> getConfiguredBulkheads() {
+		Map<String, Set<JMXOpCode>> defs = parseBulkheads(ConfigurationHelper.getSystemThenEnvProperty(CONFIG_BULKHEADS, DEFAULT_BULKHEADS));
+		Map<String, JMXBulkhead> bulkheads = new LinkedHashMap<String, JMXBulkhead>(defs.size());
+		for(Map.Entry<String, Set<JMXOpCode>> def: defs.entrySet()) {
+			bulkheads.put(def.getKey(), new JMXBulkhead(def.getKey(), def.getValue()));
+		}
+		return bulkheads.values();
+	}
+	
+	/**
+	 * Creates a new JMXInvocationExecutor configured from system properties or environment
+	 * @param mode The invocation mode. Should not be {@link InvocationMode#IO}, which has no executor.
+	 */
+	public JMXInvocationExecutor(InvocationMode mode) {
+		this(mode, 
+				ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_EXEC_THREADS, DEFAULT_EXEC_THREADS),
+				ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_EXEC_CHANNEL_MEMORY, DEFAULT_EXEC_CHANNEL_MEMORY),
+				ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_EXEC_TOTAL_MEMORY, DEFAULT_EXEC_TOTAL_MEMORY),
+				getConfiguredBulkheads()
+		);
+	}
+	
+	/**
+	 * Creates a new JMXInvocationExecutor
+	 * @param mode The invocation mode. Should not be {@link InvocationMode#IO}, which has no executor.
+	 * @param threads The number of threads in each invocation pool
+	 * @param maxChannelMemory The maximum bytes of queued events per channel before the channel stops reading
+	 * @param maxTotalMemory The maximum bytes of queued events in each invocation pool before submitters block
+	 * @param bulkheads The bulkheads to isolate op codes in. Ignored if null.
+	 */
+	public JMXInvocationExecutor(InvocationMode mode, int threads, long maxChannelMemory, long maxTotalMemory, Collection<JMXBulkhead> bulkheads) {
+		if(mode==null || mode==InvocationMode.IO) throw new IllegalArgumentException("Invalid invocation executor mode [" + mode + "]");
+		this.mode = mode;
+		orderedExecutor = mode==InvocationMode.UNORDERED ? null : 
+			new OrderedMemoryAwareThreadPoolExecutor(threads, maxChannelMemory, maxTotalMemory, 30, TimeUnit.SECONDS, new InvocationThreadFactory("Ordered"));
+		unorderedExecutor = mode==InvocationMode.ORDERED ? null : 
+			new MemoryAwareThreadPoolExecutor(threads, maxChannelMemory, maxTotalMemory, 30, TimeUnit.SECONDS, new InvocationThreadFactory("Unordered"));
+		if(bulkheads!=null) {
+			for(JMXBulkhead bulkhead: bulkheads) {
+				namedBulkheads.put(bulkhead.getName(), bulkhead);
+				for(JMXOpCode opCode: bulkhead.getOpCodes()) {
+					if(mode!=InvocationMode.UNORDERED && ORDERED_OPS.contains(opCode)) {
+						log.warn("Op code [%s] in bulkhead [%s] must be executed in channel order in mode [%s]. It will not be isolated.", opCode, bulkhead.getName(), mode);
+						continue;
+					}
+					JMXBulkhead prior = this.bulkheads.put(opCode, bulkhead);
+					if(prior!=null) throw new IllegalArgumentException("Op code [" + opCode + "] assigned to bulkheads [" + prior.getName() + "] and [" + bulkhead.getName() + "]");
+				}
+				log.info("Installed %s", bulkhead);
+			}
+		}
+		log.info("Created JMXInvocationExecutor. Mode:[%s], Threads:[%s], Bulkheads:%s", mode, threads, namedBulkheads.keySet());
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+	 */
+	@Override
+	public void execute(Runnable command) {
+		if(!bulkheads.isEmpty()) {
+			JMXOp op = getOp(command);
+			if(op!=null) {
+				JMXBulkhead bulkhead = bulkheads.get(op.getJmxOpCode());
+				if(bulkhead!=null) {
+					if(!bulkhead.execute(command)) {
+						rejectBusy(((ChannelEventRunnable)command).getEvent().getChannel(), op, bulkhead);
+					}
+					return;
+				}
+			}
+		}
+		switch(mode) {
+			case ORDERED:
+				orderedExecutor.execute(command);
+				break;
+			case UNORDERED:
+				unorderedExecutor.execute(command);
+				break;
+			default:
+				if(isOrdered(command)) {
+					orderedExecutor.execute(command);
+				} else {
+					unorderedExecutor.execute(command);
+				}
+		}
+	}
+	
+	/**
+	 * Determines if the passed runnable must be executed in channel order when routing by op code
+	 * @param command The runnable submitted by the execution handler
+	 * @return true if the runnable is a channel state event or an op in {@link #ORDERED_OPS}, false otherwise
+	 */
+	protected boolean isOrdered(Runnable command) {
+		JMXOp op = getOp(command);
+		return op==null || ORDERED_OPS.contains(op.getJmxOpCode());
+	}
+	
+	/**
+	 * Extracts the JMXOp from the passed runnable
+	 * @param command The runnable submitted by the execution handler
+	 * @return the JMXOp carried by the runnable's message event, or null if it does not carry one
+	 */
+	protected JMXOp getOp(Runnable command) {
+		if(command instanceof ChannelEventRunnable) {
+			ChannelEvent e = ((ChannelEventRunnable)command).getEvent();
+			if(e instanceof MessageEvent) {
+				Object msg = ((MessageEvent)e).getMessage();
+				if(msg instanceof JMXOp) {
+					return (JMXOp)msg;
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Responds to an op rejected by a saturated bulkhead with a {@link ServerBusyException}
+	 * @param channel The channel the op was received on
+	 * @param op The rejected op
+	 * @param bulkhead The bulkhead that rejected the op
+	 */
+	protected void rejectBusy(Channel channel, JMXOp op, JMXBulkhead bulkhead) {
+		log.debug("Bulkhead [%s] saturated. Rejected op [%s]", bulkhead.getName(), op.getJmxOpCode());
+		channel.write(new JMXOpResponse(op.getJmxOpCode(), op.getOpSeq(), 
+				new ServerBusyException("Server busy: bulkhead [" + bulkhead.getName() + "] rejected op [" + op.getJmxOpCode() + "]")));
+	}
+	
+	/**
+	 * Returns the invocation mode
+	 * @return the invocation mode
+	 */
+	public InvocationMode getMode() {
+		return mode;
+	}
+	
+	/**
+	 * Returns the ordered executor
+	 * @return the ordered executor or null if the mode is {@link InvocationMode#UNORDERED}
+	 */
+	public ThreadPoolExecutor getOrderedExecutor() {
+		return orderedExecutor;
+	}
+
+	/**
+	 * Returns the unordered executor
+	 * @return the unordered executor or null if the mode is {@link InvocationMode#ORDERED}
+	 */
+	public ThreadPoolExecutor getUnorderedExecutor() {
+		return unorderedExecutor;
+	}
+	
+	/**
+	 * Returns the bulkhead with the passed name
+	 * @param name The bulkhead name
+	 * @return the named bulkhead or null if no bulkhead has that name
+	 */
+	public JMXBulkhead getBulkhead(String name) {
+		return namedBulkheads.get(name);
+	}
+	
+	/**
+	 * Returns the bulkhead the passed op code is isolated in
+	 * @param opCode The op code
+	 * @return the op code's bulkhead or null if the op code is not isolated
+	 */
+	public JMXBulkhead getBulkhead(JMXOpCode opCode) {
+		return bulkheads.get(opCode);
+	}
+	
+	/**
+	 * Shuts down the invocation pools and bulkheads
+	 */
+	public void shutdown() {
+		if(orderedExecutor!=null) orderedExecutor.shutdownNow();
+		if(unorderedExecutor!=null) unorderedExecutor.shutdownNow();
+		for(JMXBulkhead bulkhead: namedBulkheads.values()) {
+			bulkhead.shutdown();
+		}
+	}
+	
+	/**
+	 * <p>Title: InvocationThreadFactory</p>
+	 * <p>Description: Thread factory for the invocation pools' daemon threads</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.asyncjmx.server.JMXInvocationExecutor.InvocationThreadFactory</code></p>
+	 */
+	protected static class InvocationThreadFactory implements ThreadFactory {
+		/** The thread name prefix */
+		protected final String prefix;
+		/** The thread serial number factory */
+		protected final AtomicInteger serial = new AtomicInteger(0);
+		
+		/**
+		 * Creates a new InvocationThreadFactory
+		 * @param name The name of the pool
+		 */
+		protected InvocationThreadFactory(String name) {
+			prefix = "JMXInvocation" + name + "Thread#";
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+		 */
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix + serial.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
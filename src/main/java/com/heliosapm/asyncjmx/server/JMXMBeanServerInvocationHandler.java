@@ -26,26 +26,33 @@ package com.heliosapm.asyncjmx.server;
 
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import javax.management.Attribute;
 import javax.management.AttributeList;
 import javax.management.InstanceNotFoundException;
+import javax.management.ListenerNotFoundException;
 import javax.management.MBeanServer;
 import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
 import javax.management.MBeanServerFactory;
 import javax.management.Notification;
 import javax.management.NotificationFilter;
 import javax.management.NotificationListener;
 import javax.management.ObjectName;
 import javax.management.QueryExp;
+import javax.management.relation.MBeanServerNotificationFilter;
 
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandler;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelLocal;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.DownstreamMessageEvent;
 import org.jboss.netty.channel.ExceptionEvent;
@@ -59,6 +66,7 @@ import com.heliosapm.asyncjmx.shared.JMXOp;
 import com.heliosapm.asyncjmx.shared.JMXOp.DynamicTypedIterator;
 import com.heliosapm.asyncjmx.shared.JMXResponseType;
 import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
+import com.heliosapm.asyncjmx.shared.util.JMXHelper;
 import com.heliosapm.asyncjmx.shared.serialization.VoidResult;
 
 /**
@@ -78,6 +86,17 @@ public class JMXMBeanServerInvocationHandler extends SimpleChannelHandler {
 	private final JMXLogger log = JMXLogger.getLogger(getClass());
 	/** A map of the known MBeanServerConnections keyed by either the server's default domain or by the JMXServiceURL */
 	protected final Map<String, MBeanServerConnection> knownMBeanServers = new ConcurrentHashMap<String, MBeanServerConnection>();
+	/** The encoded MBeanInfo caches of the known MBeanServers that have one, keyed by the same id */
+	protected final Map<String, MBeanInfoCache> mbeanInfoCaches = new ConcurrentHashMap<String, MBeanInfoCache>();
+	/** The attribute value caches of the known MBeanServers keyed by MBeanServer id */
+	protected final Map<String, AttributeValueCache> attributeValueCaches = new ConcurrentHashMap<String, AttributeValueCache>();
+	/** The MBeanServers each channel has subscribed to cache ops from */
+	protected final ChannelLocal<Set<MBeanServerConnection>> cacheOpSubscriptions = new ChannelLocal<Set<MBeanServerConnection>>(true) {
+		@Override
+		protected Set<MBeanServerConnection> initialValue(Channel channel) {
+			return Collections.newSetFromMap(new ConcurrentHashMap<MBeanServerConnection, Boolean>(4));
+		}
+	};
 	
 	
 	/**
@@ -101,6 +120,7 @@ public class JMXMBeanServerInvocationHandler extends SimpleChannelHandler {
 	private JMXMBeanServerInvocationHandler() {
 		log.info("Initializing JMXMBeanServerInvocationHandler");
 		knownMBeanServers.put(JMXOpInvocation.DEFAULT_MBEANSERVER_DOMAIN, ManagementFactory.getPlatformMBeanServer());
+		addCaches(JMXOpInvocation.DEFAULT_MBEANSERVER_DOMAIN, ManagementFactory.getPlatformMBeanServer());
 		for(MBeanServer mbeanServer: MBeanServerFactory.findMBeanServer(null)) {
 			String domain = mbeanServer.getDefaultDomain();
 			registerMBeanServer(domain, mbeanServer);
@@ -124,6 +144,7 @@ public class JMXMBeanServerInvocationHandler extends SimpleChannelHandler {
 				synchronized(knownMBeanServers) {
 					if(!knownMBeanServers.containsKey(id)) {
 						knownMBeanServers.put(id, mbeanServer);
+						addCaches(id, mbeanServer);
 					}
 				}				
 			} else {
@@ -134,6 +155,18 @@ public class JMXMBeanServerInvocationHandler extends SimpleChannelHandler {
 		}		
 	}
 
+	/**
+	 * Creates and registers the MBeanInfo and attribute value caches for a known MBeanServer where caching is enabled
+	 * @param id The MBeanServer's assigned id
+	 * @param mbeanServer The MBeanServer
+	 */
+	protected void addCaches(String id, MBeanServerConnection mbeanServer) {
+		final MBeanInfoCache cache = MBeanInfoCache.newCache(mbeanServer);
+		if(cache!=null) mbeanInfoCaches.put(id, cache);
+		final AttributeValueCache attributeValueCache = AttributeValueCache.newCache(mbeanServer);
+		if(attributeValueCache!=null) attributeValueCaches.put(id, attributeValueCache);
+	}
+
 	/**
 	 * <p>Receives and processes {@link JMXOpInvocation} instances.</p>
 	 * {@inheritDoc}
@@ -201,9 +234,15 @@ public class JMXMBeanServerInvocationHandler extends SimpleChannelHandler {
 			case CREATEMBEAN_SOOS:
 				return mbeanServer.createMBean(argIter.next(String.class), argIter.next(ObjectName.class), argIter.next(Object[].class), argIter.next(String[].class));
 			case GETATTRIBUTE:
-				return mbeanServer.getAttribute(argIter.next(ObjectName.class), argIter.next(String.class));
+				final AttributeValueCache getAttributeCache = attributeValueCaches.get(id);
+				return getAttributeCache!=null ? getAttributeCache.getAttribute(argIter.next(ObjectName.class), argIter.next(String.class)) : mbeanServer.getAttribute(argIter.next(ObjectName.class), argIter.next(String.class));
 			case GETATTRIBUTES:
-				return mbeanServer.getAttributes(argIter.next(ObjectName.class), argIter.next(String[].class));
+				final AttributeValueCache getAttributesCache = attributeValueCaches.get(id);
+				return getAttributesCache!=null ? getAttributesCache.getAttributes(argIter.next(ObjectName.class), argIter.next(String[].class)) : mbeanServer.getAttributes(argIter.next(ObjectName.class), argIter.next(String[].class));
+			case GETATTRIBUTES_BATCH:
+				return getAttributesBatch(mbeanServer, argIter.next(ObjectName[].class), argIter.next(String[][].class));
+			case GETATTRIBUTES_QUERY:
+				return JMXHelper.getMBeanAttributeMap(mbeanServer, argIter.next(ObjectName.class), argIter.next(QueryExp.class), JMXHelper.DEFAULT_COMPOUND_DELIMITER, argIter.next(String[].class));
 			case GETDEFAULTDOMAIN:
 				return mbeanServer.getDefaultDomain();
 			case GETDOMAINS:
@@ -211,7 +250,8 @@ public class JMXMBeanServerInvocationHandler extends SimpleChannelHandler {
 			case GETMBEANCOUNT:
 				return mbeanServer.getMBeanCount();
 			case GETMBEANINFO:
-				return mbeanServer.getMBeanInfo(argIter.next(ObjectName.class));
+				final MBeanInfoCache mbeanInfoCache = mbeanInfoCaches.get(id);
+				return mbeanInfoCache!=null ? mbeanInfoCache.getMBeanInfo(argIter.next(ObjectName.class)) : mbeanServer.getMBeanInfo(argIter.next(ObjectName.class));
 			case GETOBJECTINSTANCE:
 				return mbeanServer.getObjectInstance(argIter.next(ObjectName.class));
 			case INVOKE:
@@ -244,6 +284,11 @@ public class JMXMBeanServerInvocationHandler extends SimpleChannelHandler {
 			case UNREGISTERMBEAN:
 				mbeanServer.unregisterMBean(argIter.next(ObjectName.class));
 				return VoidResult.Instance;
+			case SUBSCRIBE_CACHE:
+				subscribeCacheOps(channel, mbeanServer);
+				return VoidResult.Instance;
+			case SUBSCRIBE_NAMES:
+				return subscribeNames(channel, argIter.next(ObjectName.class), argIter.next(NotificationListener.class), mbeanServer);
 			default:
 				return new IOException("Failed to match JMXOp to MBeanServer operation");
 			
@@ -254,6 +299,130 @@ public class JMXMBeanServerInvocationHandler extends SimpleChannelHandler {
 	}
 	
 	
+	/**
+	 * Fans out a batch of getAttributes calls
+	 * @param mbeanServer The target MBeanServer
+	 * @param objectNames The ObjectNames of the MBeans to read from
+	 * @param attributeNames The attribute names to read for each ObjectName
+	 * @return an array with the AttributeList, or the exception thrown, for each ObjectName. Errors are not caught and fail the whole batch.
+	 */
+	protected Object[] getAttributesBatch(final MBeanServerConnection mbeanServer, final ObjectName[] objectNames, final String[][] attributeNames) {
+		if(objectNames.length!=attributeNames.length) throw new IllegalArgumentException("ObjectName count [" + objectNames.length + "] does not match attribute name set count [" + attributeNames.length + "]");
+		final Object[] results = new Object[objectNames.length];
+		for(int i = 0; i < objectNames.length; i++) {
+			try {
+				results[i] = mbeanServer.getAttributes(objectNames[i], attributeNames[i]);
+			} catch (Exception ex) {
+				results[i] = ex;
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Pushes a {@link JMXResponseType#CACHE_OP} callback carrying the MBeanServerDelegate's notification to the passed channel
+	 * whenever an MBean is registered or unregistered, until the channel closes. Repeated subscriptions from the same channel
+	 * to the same MBeanServer are ignored so each cache op is pushed once.
+	 * @param channel The subscribing channel
+	 * @param mbeanServer The MBeanServer to relay registration events from
+	 * @throws InstanceNotFoundException thrown if the MBeanServerDelegate is not found
+	 * @throws IOException thrown on an IO remoting error
+	 */
+	protected void subscribeCacheOps(final Channel channel, final MBeanServerConnection mbeanServer) throws InstanceNotFoundException, IOException {
+		final Set<MBeanServerConnection> subscribed = cacheOpSubscriptions.get(channel);
+		if(!subscribed.add(mbeanServer)) return;
+		final MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+		filter.enableAllObjectNames();
+		final NotificationListener listener = new NotificationListener() {
+			@Override
+			public void handleNotification(Notification notification, Object handback) {
+				if(channel.isOpen()) {
+					channel.write(new JMXCallback(JMXResponseType.CACHE_OP, notification, 0));
+				}
+			}
+		};
+		try {
+			mbeanServer.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener, filter, null);
+		} catch (InstanceNotFoundException ex) {
+			subscribed.remove(mbeanServer);
+			throw ex;
+		} catch (IOException ex) {
+			subscribed.remove(mbeanServer);
+			throw ex;
+		}
+		removeOnClose(channel, mbeanServer, listener, filter);
+	}
+	
+	/**
+	 * Streams the registration and unregistration notifications for ObjectNames matching the passed pattern to the client's listener
+	 * registration until the channel closes, and returns the currently matching ObjectNames. The listener is registered before the
+	 * names are queried so no registration can fall between the two; the client replays deltas that overlap the returned set.
+	 * @param channel The subscribing channel
+	 * @param pattern The ObjectName pattern to mirror, null for all
+	 * @param listener The client's {@link ListenerRegistration}
+	 * @param mbeanServer The MBeanServer to mirror
+	 * @return the ObjectNames matching the pattern
+	 * @throws InstanceNotFoundException thrown if the MBeanServerDelegate is not found
+	 * @throws IOException thrown on an IO remoting error
+	 */
+	protected Set<ObjectName> subscribeNames(final Channel channel, final ObjectName pattern, final NotificationListener listener, final MBeanServerConnection mbeanServer) throws InstanceNotFoundException, IOException {
+		if(!(listener instanceof ListenerRegistration)) throw new IllegalArgumentException("Name subscriptions require a ListenerRegistration but got [" + listener + "]");
+		final int registrationId = ((ListenerRegistration)listener).getRegistrationId();
+		final MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+		filter.enableAllObjectNames();
+		final NotificationListener relay = new NotificationListener() {
+			@Override
+			public void handleNotification(Notification notification, Object handback) {
+				if(channel.isOpen() && (pattern==null || pattern.apply(((MBeanServerNotification)notification).getMBeanName()))) {
+					channel.write(new JMXCallback(JMXResponseType.JMX_NOTIFICATION, notification, registrationId));
+				}
+			}
+		};
+		mbeanServer.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, relay, filter, null);
+		removeOnClose(channel, mbeanServer, relay, filter);
+		boolean queried = false;
+		try {
+			final Set<ObjectName> names = mbeanServer.queryNames(pattern, null);
+			queried = true;
+			return names;
+		} finally {
+			if(!queried) removeDelegateListener(mbeanServer, relay, filter);
+		}
+	}
+	
+	/**
+	 * Removes the passed MBeanServerDelegate listener when the passed channel closes. Must be called after the listener has been added
+	 * so that, if the channel has already closed, the listener is removed at once rather than left registered.
+	 * @param channel The subscribing channel
+	 * @param mbeanServer The MBeanServer the listener is registered in
+	 * @param listener The listener to remove
+	 * @param filter The filter the listener was registered with
+	 */
+	protected void removeOnClose(final Channel channel, final MBeanServerConnection mbeanServer, final NotificationListener listener, final NotificationFilter filter) {
+		channel.getCloseFuture().addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				removeDelegateListener(mbeanServer, listener, filter);
+			}
+		});
+	}
+	
+	/**
+	 * Removes an MBeanServerDelegate listener, ignoring a listener that has already been removed
+	 * @param mbeanServer The MBeanServer the listener is registered in
+	 * @param listener The listener to remove
+	 * @param filter The filter the listener was registered with
+	 */
+	protected void removeDelegateListener(final MBeanServerConnection mbeanServer, final NotificationListener listener, final NotificationFilter filter) {
+		try {
+			mbeanServer.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener, filter, null);
+		} catch (ListenerNotFoundException lnfe) {
+			/* No Op */
+		} catch (Exception ex) {
+			log.warn("Failed to remove MBeanServerDelegate listener [%s]: %s", listener, ex.toString());
+		}
+	}
+	
 	/**
 	 * Invokes a notification listener registration
 	 * @param channel The channel on which the registration is being executed
@@ -39,7 +39,6 @@ import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.ChannelUpstreamHandler;
 import org.jboss.netty.channel.Channels;
 import org.jboss.netty.handler.execution.ExecutionHandler;
-import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
 import org.jboss.netty.handler.logging.LoggingHandler;
 import org.jboss.netty.handler.ssl.SslBufferPool;
 import org.jboss.netty.handler.ssl.SslHandler;
@@ -47,9 +46,11 @@ import org.jboss.netty.logging.InternalLogLevel;
 import org.jboss.netty.util.HashedWheelTimer;
 import org.jboss.netty.util.Timer;
 
+import com.heliosapm.asyncjmx.server.JMXInvocationExecutor.InvocationMode;
 import com.heliosapm.asyncjmx.server.serialization.JMXOpDecoder;
 import com.heliosapm.asyncjmx.server.serialization.JMXResponseEncoder;
 import com.heliosapm.asyncjmx.server.ssl.SecureJMXSslContextFactory;
+import com.heliosapm.asyncjmx.shared.WriteCoalescingHandler;
 
 /**
  * <p>Title: JMXServerPipelineFactory</p>
@@ -63,9 +64,9 @@ public class JMXServerPipelineFactory implements ChannelPipelineFactory {
 
 	/*
 	 * SSL Handler
-	 * Executor Handler
 	 * Logging Handler
 	 * Deserialization Handler
+	 * Executor Handler
 	 * JMX Auth Handler
 	 * JMX Invoker Handler
 	 */
@@ -80,10 +81,14 @@ public class JMXServerPipelineFactory implements ChannelPipelineFactory {
 	protected final AtomicReference<String> loggingConfigName = new AtomicReference<String>(LOGGER_INFO);
 	/** Instance logger for handling log requests from the logging handler */
 	protected final Logger log;
-	/** The async execution handler */
+	/** The async execution handler, null if invocations run on the I/O threads */
 	protected final ExecutionHandler executionHandler;
+	/** The invocation stage executor, null if invocations run on the I/O threads */
+	protected final JMXInvocationExecutor invocationExecutor;
 	/** The JMX Op Response Encoder */
 	protected final JMXResponseEncoder responseEncoder;
+	/** Indicates if outbound frames should be coalesced */
+	protected final boolean coalesceWrites;
 	/** New connection handler */
 	protected final ChannelUpstreamHandler connHandler;
 	/** The JMX invocation handler */
@@ -144,6 +149,8 @@ public class JMXServerPipelineFactory implements ChannelPipelineFactory {
 	public static final String JMXRERSPONSE_ENCODER_NAME = "jmxresenconder";
 	/** The name that the connectiuon handler is registered with the pipeline under */
 	public static final String CONN_HANDLER_NAME = "connhandler";	
+	/** The name that the write coalescing handler is registered with the pipeline under */
+	public static final String COALESCE_HANDLER_NAME = "coalescer";	
 	
 	
 	// ==================================================================================================================
@@ -173,8 +180,16 @@ public class JMXServerPipelineFactory implements ChannelPipelineFactory {
 		LOG_NAME = SSL ? SSL_SERVER_NAME : TCP_SERVER_NAME;
 		log = Logger.getLogger(LOG_NAME);
 		loggingHandlers = initLogHandlers();
-		executionHandler = new ExecutionHandler(new OrderedMemoryAwareThreadPoolExecutor(16, 1048576, 1048576));
+		InvocationMode mode = JMXInvocationExecutor.getConfiguredMode();
+		if(mode==InvocationMode.IO) {
+			invocationExecutor = null;
+			executionHandler = null;
+		} else {
+			invocationExecutor = new JMXInvocationExecutor(mode);
+			executionHandler = new ExecutionHandler(invocationExecutor);
+		}
 		responseEncoder = new JMXResponseEncoder();
+		coalesceWrites = WriteCoalescingHandler.isEnabled();
 		jmxInvocationHandler = JMXMBeanServerInvocationHandler.getInstance();
 		this.connHandler = connHandler;
 		if(SSL) {
@@ -207,10 +222,16 @@ public class JMXServerPipelineFactory implements ChannelPipelineFactory {
 		if(loggingHandler!=null) {
 			pipeline.addLast(LOGGING_HANDLER_NAME, loggingHandler);
 		}
+		if(coalesceWrites) {
+			pipeline.addLast(COALESCE_HANDLER_NAME, new WriteCoalescingHandler());
+		}
 		pipeline.addLast(CONN_HANDLER_NAME, connHandler);
-		//pipeline.addLast(EXEC_HANDLER_NAME, executionHandler);
 		pipeline.addLast(JMXOPDECODE_HANDLER_NAME, new JMXOpDecoder());
 		pipeline.addLast(JMXRERSPONSE_ENCODER_NAME, this.responseEncoder);
+		// decoding stays on the I/O thread, only the invocation is handed off
+		if(executionHandler!=null) {
+			pipeline.addLast(EXEC_HANDLER_NAME, executionHandler);
+		}
 		pipeline.addLast(JMXINVOCATION_HANDLER_NAME, jmxInvocationHandler);
 		// <-----  and back down again ------ >
 		
@@ -0,0 +1,185 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.server;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.IntrospectionException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.relation.MBeanServerNotificationFilter;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.heliosapm.asyncjmx.shared.KryoFactory;
+import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
+import com.heliosapm.asyncjmx.shared.serialization.EncodedResult;
+import com.heliosapm.asyncjmx.shared.util.ConfigurationHelper;
+
+/**
+ * <p>Title: MBeanInfoCache</p>
+ * <p>Description: A bounded, least recently used cache of the encoded {@link MBeanInfo}s of one MBeanServer, keyed by ObjectName.
+ * Entries are dropped when the MBeanServerDelegate reports the MBean registered or unregistered.</p>
+ * <p>Infos are encoded by a kryo with no channel dictionaries so the cached bytes can be sent on any channel. The trade-off is that a 
+ * cache hit always sends the full OpenType graphs of the info's descriptors, and any ObjectNames, which an uncached response would send 
+ * as dictionary references once the channel has seen them. The cache saves the introspection and encoding on the server, not bytes on 
+ * the wire. Clients that repeatedly read the same info should enable the client side {@link com.heliosapm.asyncjmx.client.MetadataCache}, which avoids the request altogether.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.server.MBeanInfoCache</code></p>
+ */
+
+public class MBeanInfoCache implements NotificationListener {
+	/** The conf property name for the maximum number of MBeanInfos cached per MBeanServer. Zero or less disables the cache. */
+	public static final String CONFIG_CACHE_SIZE = "com.heliosapm.asyncjmx.server.mbeaninfo.cache.size";
+	/** The default maximum number of MBeanInfos cached per MBeanServer */
+	public static final int DEFAULT_CACHE_SIZE = 1024;
+	
+	/** Static class logger */
+	private static final JMXLogger log = JMXLogger.getLogger(MBeanInfoCache.class);
+	
+	/** The MBeanServer the infos are read from */
+	protected final MBeanServerConnection mbeanServer;
+	/** The maximum number of cached infos */
+	protected final int maxSize;
+	/** The encoded infos in access order, guarded by itself */
+	protected final LinkedHashMap<ObjectName, EncodedResult> cache;
+	/** Incremented on every invalidation so infos read concurrently with one are not cached */
+	protected final AtomicLong invalidations = new AtomicLong(0L);
+	/** The kryo the infos are encoded with, guarded by itself */
+	protected final Kryo kryo = KryoFactory.getInstance().newKryo();
+	
+	/**
+	 * Creates a new MBeanInfoCache for the passed MBeanServer, if the cache is enabled and the MBeanServer's 
+	 * registration notifications can be subscribed to
+	 * @param mbeanServer The MBeanServer to cache infos for
+	 * @return the new cache or null if infos should not be cached
+	 */
+	public static MBeanInfoCache newCache(MBeanServerConnection mbeanServer) {
+		final int maxSize = ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_CACHE_SIZE, DEFAULT_CACHE_SIZE);
+		if(maxSize < 1) return null;
+		final MBeanInfoCache cache = new MBeanInfoCache(mbeanServer, maxSize);
+		final MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+		filter.enableAllObjectNames();
+		try {
+			mbeanServer.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, cache, filter, null);
+			return cache;
+		} catch (Exception ex) {
+			log.warn("Failed to subscribe to MBeanServer registration events. MBeanInfos will not be cached: %s", ex.toString());
+			return null;
+		}
+	}
+	
+	/**
+	 * Creates a new MBeanInfoCache
+	 * @param mbeanServer The MBeanServer the infos are read from
+	 * @param maxSize The maximum number of cached infos
+	 */
+	protected MBeanInfoCache(MBeanServerConnection mbeanServer, final int maxSize) {
+		this.mbeanServer = mbeanServer;
+		this.maxSize = maxSize;
+		cache = new LinkedHashMap<ObjectName, EncodedResult>(Math.min(maxSize, 1024), 0.75f, true) {
+			private static final long serialVersionUID = -3585337434924938463L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ObjectName, EncodedResult> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the encoded MBeanInfo of the passed MBean, reading and caching it on a miss
+	 * @param objectName The ObjectName of the MBean
+	 * @return the encoded MBeanInfo, or the MBeanInfo itself if it could not be encoded
+	 * @throws InstanceNotFoundException thrown if the MBean is not registered
+	 * @throws IntrospectionException thrown if the MBean's info could not be introspected
+	 * @throws ReflectionException thrown on a reflection failure reading the MBean's info
+	 * @throws IOException thrown on an IO remoting error
+	 */
+	public Object getMBeanInfo(ObjectName objectName) throws InstanceNotFoundException, IntrospectionException, ReflectionException, IOException {
+		synchronized(cache) {
+			final EncodedResult cached = cache.get(objectName);
+			if(cached!=null) return cached;
+		}
+		final long invalidation = invalidations.get();
+		final MBeanInfo info = mbeanServer.getMBeanInfo(objectName);
+		final EncodedResult encoded;
+		try {
+			synchronized(kryo) {
+				encoded = EncodedResult.encode(kryo, info);
+			}
+		} catch (Exception ex) {
+			log.warn("Failed to encode MBeanInfo for [%s]: %s", objectName, ex.toString());
+			return info;
+		}
+		synchronized(cache) {
+			if(invalidations.get()==invalidation) cache.put(objectName, encoded);
+		}
+		return encoded;
+	}
+	
+	/**
+	 * Drops the cached info of MBeans registered or unregistered in the MBeanServer
+	 * {@inheritDoc}
+	 * @see javax.management.NotificationListener#handleNotification(javax.management.Notification, java.lang.Object)
+	 */
+	@Override
+	public void handleNotification(Notification notification, Object handback) {
+		if(notification instanceof MBeanServerNotification) {
+			final ObjectName objectName = ((MBeanServerNotification)notification).getMBeanName();
+			synchronized(cache) {
+				invalidations.incrementAndGet();
+				cache.remove(objectName);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of cached infos
+	 * @return the number of cached infos
+	 */
+	public int size() {
+		synchronized(cache) {
+			return cache.size();
+		}
+	}
+	
+	/**
+	 * Returns the maximum number of cached infos
+	 * @return the maximum number of cached infos
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+}
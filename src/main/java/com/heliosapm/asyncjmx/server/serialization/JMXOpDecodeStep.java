@@ -1,50 +0,0 @@
-/**
- * Helios, OpenSource Monitoring
- * Brought to you by the Helios Development Group
- *
- * Copyright 2007, Helios Development Group and individual contributors
- * as indicated by the @author tags. See the copyright.txt file in the
- * distribution for a full listing of individual contributors.
- *
- * This is free software; you can redistribute it and/or modify it
- * under the terms of the GNU Lesser General Public License as
- * published by the Free Software Foundation; either version 2.1 of
- * the License, or (at your option) any later version.
- *
- * This software is distributed in the hope that it will be useful,
- * but WITHOUT ANY WARRANTY; without even the implied warranty of
- * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
- * Lesser General Public License for more details.
- *
- * You should have received a copy of the GNU Lesser General Public
- * License along with this software; if not, write to the Free
- * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
- * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
- *
- */
-package com.heliosapm.asyncjmx.server.serialization;
-
-
-/**
- * <p>Title: JMXOpDecodeStep</p>
- * <p>Description: Replay decoder enum for JMX Op Decodes</p> 
- * <p>Company: Helios Development Group LLC</p>
- * @author Whitehead (nwhitehead AT heliosdev DOT org)
- * <p><code>com.heliosapm.asyncjmx.server.serialization.JMXOpDecodeStep</code></p>
- */
-
-public enum JMXOpDecodeStep {
-	/** The total byte size of the entire op */
-	BYTESIZE,
-	/** The one int request id */
-	REQUESTID,
-	/** The one byte op code */
-	OPCODE,
-	/** The number of args */
-	ARGCOUNT,
-	/** The op args */
-	ARGS,
-	/** The op args 2 */
-	ARGS2;
-	
-}
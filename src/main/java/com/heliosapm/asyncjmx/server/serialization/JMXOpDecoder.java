@@ -4,108 +4,66 @@
 package com.heliosapm.asyncjmx.server.serialization;
 
 import org.jboss.netty.buffer.ChannelBuffer;
-import org.jboss.netty.buffer.ChannelBufferFactory;
-import org.jboss.netty.buffer.ChannelBufferInputStream;
-import org.jboss.netty.buffer.DirectChannelBufferFactory;
-import org.jboss.netty.buffer.HeapChannelBufferFactory;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
-import org.jboss.netty.handler.codec.replay.ReplayingDecoder;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
 
-import com.esotericsoftware.kryo.io.Input;
-import com.esotericsoftware.kryo.io.UnsafeInput;
 import com.heliosapm.asyncjmx.shared.JMXOp;
 import com.heliosapm.asyncjmx.shared.KryoFactory;
 import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
-import com.heliosapm.asyncjmx.shared.util.ConfigurationHelper;
+import com.heliosapm.asyncjmx.shared.serialization.FrameInput;
 
 
 
 /**
  * <p>Title: JMXOpDecoder</p>
- * <p>Description:   </p>
+ * <p>Description: Length prefixed frame decoder for inbound {@link JMXOp}s. Nothing is decoded until the whole frame
+ * has been accumulated, at which point the channel's Kryo reads the op straight out of the cumulation buffer
+ * through a reused {@link FrameInput}.</p>
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><b><code>com.heliosapm.asyncjmx.server.serialization.JMXOpDecoder</code></b>
  */
 
-public class JMXOpDecoder extends ReplayingDecoder<JMXOpDecodeStep> {
-	/** The channel buffer factory for decoding JMXOp buffers */
-	protected static final ChannelBufferFactory bufferFactory;
-	
-	static {
-		boolean directBuffer = ConfigurationHelper.getBooleanSystemThenEnvProperty("com.heliosapm.asyncjmx.server.buffers.direct", false);
-		if(directBuffer) {
-			bufferFactory = new DirectChannelBufferFactory();
-		} else {
-			bufferFactory = new HeapChannelBufferFactory();
-		}
-	}
+public class JMXOpDecoder extends FrameDecoder {
 	/** Instance logger */
 	protected final JMXLogger log = JMXLogger.getLogger(getClass());
-	/** The JMXOp kryo replaying deserializer */
-	protected JMXOp.JMXOpSerializer ser = new JMXOp.JMXOpSerializer(this);
-	/** The kryo input */
-	protected Input input = null;
-	/** The payload size allocated channel buffer */
-	protected ChannelBuffer buff = null;
-	/** The number of bytes read from the replay buffer */
-	protected int replayBytesRead = 0;
-	/** The payload size of the currently processing decode */
-	int payloadSize = -1;
+	/** The JMXOp kryo deserializer */
+	protected final JMXOp.JMXOpSerializer ser = new JMXOp.JMXOpSerializer();
+	/** The kryo input, re-pointed at each frame */
+	protected final FrameInput input = new FrameInput();
+	
+	/** The length of the frame size prefix */
+	public static final int LENGTH_FIELD_SIZE = 4;
 	
 	/**
 	 * Creates a new JMXOpDecoder
 	 */
 	public JMXOpDecoder() {
-		super(JMXOpDecodeStep.BYTESIZE);
-	}
-	
-	
-	@Override
-	protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer, JMXOpDecodeStep state) throws Exception {
-		
-		if(state==JMXOpDecodeStep.BYTESIZE) {
-			payloadSize = buffer.readInt();
-			log.debug("JMXOp Decode Starting. Payload Size: [%s] bytes", payloadSize);
-			checkpoint(JMXOpDecodeStep.REQUESTID);
-			replayBytesRead += 4;
-			buff = bufferFactory.getBuffer(payloadSize);						
-		}
-		
-		int readableBytesAvailable = super.actualReadableBytes();
-		log.debug("PRE: Payload Size: [%s], Replay Bytes Available: [%s]", payloadSize, readableBytesAvailable);
-		buff.writeBytes(buffer, Math.min(readableBytesAvailable, payloadSize));
-		input = new UnsafeInput(new ChannelBufferInputStream(buff));
-		log.debug("POST: Buff Bytes Available: [%s], Input Available: [%s]",buff.readableBytes(), input.available());
-		return ser.read(KryoFactory.getInstance().getKryo(channel), input, JMXOp.class);
+		super();
 	}
 	
-	/**
-	 * {@inheritDoc}
-	 * @see org.jboss.netty.handler.codec.replay.ReplayingDecoder#getState()
-	 */
-	@Override
-	public JMXOpDecodeStep getState() {
-		return super.getState();
-	}
 	
 	/**
 	 * {@inheritDoc}
-	 * @see org.jboss.netty.handler.codec.replay.ReplayingDecoder#checkpoint(java.lang.Enum)
+	 * @see org.jboss.netty.handler.codec.frame.FrameDecoder#decode(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.Channel, org.jboss.netty.buffer.ChannelBuffer)
 	 */
 	@Override
-	public void checkpoint(JMXOpDecodeStep state) {
-		super.checkpoint(state);
-	}
-
-
-	/**
-	 * Returns the replaying decoder's managed buffer
-	 * @return the replaying decoder's managed buffer
-	 */
-	public ChannelBuffer getBuff() {
-		return buff;
+	protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+		if(buffer.readableBytes() < LENGTH_FIELD_SIZE) return null;
+		final int frameStart = buffer.readerIndex();
+		final int payloadSize = buffer.getInt(frameStart);
+		if(payloadSize < 0) {
+			buffer.skipBytes(buffer.readableBytes());
+			throw new CorruptedFrameException("Negative JMXOp payload size [" + payloadSize + "]");
+		}
+		if(buffer.readableBytes() - LENGTH_FIELD_SIZE < payloadSize) return null;
+		final int payloadStart = frameStart + LENGTH_FIELD_SIZE;
+		// the whole frame is consumed up front so a failed decode cannot stall the stream
+		buffer.readerIndex(payloadStart + payloadSize);
+		log.debug("JMXOp Decode Starting. Payload Size: [%s] bytes", payloadSize);
+		return ser.read(KryoFactory.getInstance().getKryo(channel), input.setFrame(buffer, payloadStart, payloadSize), JMXOp.class);
 	}
 
 }
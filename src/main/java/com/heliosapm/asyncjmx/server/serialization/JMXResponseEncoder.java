@@ -30,7 +30,10 @@ import org.jboss.netty.buffer.ChannelBufferOutputStream;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.buffer.HeapChannelBufferFactory;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
 
 import com.esotericsoftware.kryo.Kryo;
@@ -41,6 +44,10 @@ import com.heliosapm.asyncjmx.shared.JMXCallback;
 import com.heliosapm.asyncjmx.shared.JMXResponseType;
 import com.heliosapm.asyncjmx.shared.KryoFactory;
 import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
+import com.heliosapm.asyncjmx.shared.serialization.ChannelDictionary;
+import com.heliosapm.asyncjmx.shared.serialization.DirectFrameEncoder;
+import com.heliosapm.asyncjmx.shared.serialization.DirectFrameEncoder.EncodedFrame;
+import com.heliosapm.asyncjmx.shared.serialization.HistogramKeyProvider;
 import com.heliosapm.asyncjmx.shared.serialization.PayloadSizeHistogram;
 
 /**
@@ -58,6 +65,56 @@ public class JMXResponseEncoder extends OneToOneEncoder {
 	private final JMXLogger log = JMXLogger.getLogger(getClass());
 	/** The JMX Op payload size estimator */
 	protected final PayloadSizeHistogram<Class<?>> payloadSizeEstimator = new PayloadSizeHistogram<Class<?>>(); 
+	/** The pooled direct memory frame encoder */
+	protected final DirectFrameEncoder directEncoder = DirectFrameEncoder.getInstance();
+	
+	/**
+	 * Encodes responses and callbacks expected to fit in a pooled direct slab straight into the slab, falling back to 
+	 * {@link #encode(ChannelHandlerContext, Channel, Object)} for everything else.
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.handler.codec.oneone.OneToOneEncoder#handleDownstream(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelEvent)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public void handleDownstream(ChannelHandlerContext ctx, ChannelEvent evt) throws Exception {
+		if(evt instanceof MessageEvent) {
+			final MessageEvent e = (MessageEvent)evt;
+			final Object msg = e.getMessage();
+			final JMXResponseType responseType = msg instanceof JMXOpResponse ? JMXResponseType.JMX_RESPONSE 
+					: msg instanceof JMXCallback ? ((JMXCallback)msg).getTypeCode() : null;
+			if(responseType!=null) {
+				// held until the frame is passed downstream so frames reach the wire in the order their dictionary ids were assigned
+				synchronized(KryoFactory.getInstance().getWriteKryo(ctx.getChannel())) {
+					if(!writeDirect(ctx, e, (HistogramKeyProvider<Class<?>>)msg, responseType)) {
+						super.handleDownstream(ctx, evt);
+					}
+				}
+				return;
+			}
+		}
+		super.handleDownstream(ctx, evt);
+	}
+	
+	/**
+	 * Attempts to encode the passed message into a pooled direct slab and write it downstream
+	 * @param ctx The channel handler context
+	 * @param e The message event being encoded
+	 * @param msg The message to encode
+	 * @param responseType The response type written as the first header byte
+	 * @return true if the message was written, false if it should be encoded on the heap path
+	 */
+	protected boolean writeDirect(ChannelHandlerContext ctx, MessageEvent e, HistogramKeyProvider<Class<?>> msg, JMXResponseType responseType) {
+		if(!directEncoder.accepts(payloadSizeEstimator.estimateSize(msg))) return false;
+		final EncodedFrame frame = directEncoder.encode(ctx.getChannel(), msg, 5);
+		if(frame==null) return false;
+		final ChannelBuffer body = frame.getBuffer();
+		body.setByte(0, responseType.opCode);
+		log.info("Sending Direct Encoded %s with [%s] bytes.  Total Payload: [%s].  Op: %s", responseType, body.writerIndex() - 5, body.writerIndex(), msg);
+		payloadSizeEstimator.sample(msg, body.writerIndex());
+		e.getFuture().addListener(frame);
+		Channels.write(ctx, e.getFuture(), body, e.getRemoteAddress());
+		return true;
+	}
 	
 
 	/**
@@ -75,9 +132,17 @@ public class JMXResponseEncoder extends OneToOneEncoder {
 				body.writeByte(JMXResponseType.JMX_RESPONSE.opCode);
 				body.writeInt(0);
 				out = new ChannelBufferOutputStream(body);			
-				Kryo kryo = KryoFactory.getInstance().getKryo(channel);			
+				Kryo kryo = KryoFactory.getInstance().getWriteKryo(channel);			
 				kout = new UnsafeOutput(out);
-				kryo.writeObject(kout, jmxOpResponse);
+				synchronized(kryo) {
+					ChannelDictionary.markAll(kryo);
+					try {
+						kryo.writeObject(kout, jmxOpResponse);
+					} catch (RuntimeException rex) {
+						ChannelDictionary.rollbackAll(kryo);
+						throw rex;
+					}
+				}
 				kout.flush();
 				int payloadSize = body.writerIndex() - 5;
 				body.setInt(1, payloadSize);
@@ -98,12 +163,20 @@ public class JMXResponseEncoder extends OneToOneEncoder {
 			ChannelBufferOutputStream out = null;
 			try {
 				ChannelBuffer body = ChannelBuffers.dynamicBuffer(payloadSizeEstimator.estimateSize(jmxCallback), bufferFactory);
-				body.writeByte(JMXResponseType.JMX_NOTIFICATION.opCode);
+				body.writeByte(jmxCallback.getTypeCode().opCode);
 				body.writeInt(0);
 				out = new ChannelBufferOutputStream(body);			
-				Kryo kryo = KryoFactory.getInstance().getKryo(channel);			
+				Kryo kryo = KryoFactory.getInstance().getWriteKryo(channel);			
 				kout = new UnsafeOutput(out);
-				kryo.writeObject(kout, jmxCallback);
+				synchronized(kryo) {
+					ChannelDictionary.markAll(kryo);
+					try {
+						kryo.writeObject(kout, jmxCallback);
+					} catch (RuntimeException rex) {
+						ChannelDictionary.rollbackAll(kryo);
+						throw rex;
+					}
+				}
 				kout.flush();
 				int payloadSize = body.writerIndex() - 5;
 				body.setInt(1, payloadSize);
@@ -14,13 +14,10 @@ import com.esotericsoftware.kryo.DefaultSerializer;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
-import com.heliosapm.asyncjmx.server.serialization.JMXOpDecodeStep;
-import com.heliosapm.asyncjmx.server.serialization.JMXOpDecoder;
 import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
 import com.heliosapm.asyncjmx.shared.serialization.BaseSerializer;
 import com.heliosapm.asyncjmx.shared.serialization.HistogramKeyProvider;
 import com.heliosapm.asyncjmx.shared.serialization.PlaceHolder;
-import com.heliosapm.asyncjmx.unsafe.UnsafeAdapter;
 
 /**
  * <p>Title: JMXOp</p>
@@ -39,9 +36,6 @@ public class JMXOp implements HistogramKeyProvider<JMXOpCode> {
 	private Object[] opArguments;
 	/** The JMX Server Domain override */
 	private String jmxDomain = null;
-	
-	/** The number of arguments read so far */
-	private transient int argsRead = 0; 
 
 	/** The JMX Op sequence */
 	private int opSeq;
@@ -245,35 +239,11 @@ public class JMXOp implements HistogramKeyProvider<JMXOpCode> {
 		/** Static class logger */
 		protected static final JMXLogger log = JMXLogger.getLogger(JMXOpSerializer.class);
 		
-		/** A replay error instance */
-		protected static final Error REPLAY_ERROR;
-		
-		static {
-			try {
-				Class<Error> clazz = (Class<Error>) Class.forName("org.jboss.netty.handler.codec.replay.ReplayError");			
-				REPLAY_ERROR = (Error)UnsafeAdapter.allocateInstance(clazz);
-			} catch (Exception ex) {
-				throw new RuntimeException("Failed to initialize replay error", ex);
-			}
-		}
-		
-		private final JMXOpDecoder replay;
-		
-		/**
-		 * Creates a new JMXOpSerializer with a reference to the currently running replaying decoder
-		 * @param replay The replaying decoder to callback on as a step is complete
-		 */
-		public JMXOpSerializer(JMXOpDecoder replay) {
-			super();
-			this.replay = replay;
-		}
-		
 		/**
 		 * Creates a new JMXOpSerializer 
 		 */
 		public JMXOpSerializer() {
 			super();
-			this.replay = null;
 		}
 		
 		@Override
@@ -297,83 +267,7 @@ public class JMXOp implements HistogramKeyProvider<JMXOpCode> {
 		 * @see com.heliosapm.asyncjmx.shared.serialization.BaseSerializer#doRead(com.esotericsoftware.kryo.Kryo, com.esotericsoftware.kryo.io.Input, java.lang.Class)
 		 */
 		@Override
-		protected JMXOp doRead(Kryo kryo, Input input, Class<JMXOp> type) {
-			if(replay==null) {
-				return doReadNoReplay(kryo, input, type);
-			}
-			return doReadWithReplay(kryo, input, type);
-		}
-		
-		/**
-		 * Reads a JMXOp using the parent replaying decoder
-		 * @param kryo The kryo instance
-		 * @param input THe kryo input stream
-		 * @param type The decoding type
-		 * @return the decoded JMXOp
-		 */
-		protected JMXOp doReadWithReplay(Kryo kryo, Input input, Class<JMXOp> type) {
-			JMXOp state = (JMXOp)kryo.getContext().get("JMXOp");
-			if(state==null) {
-				state = new JMXOp();
-				kryo.getContext().put("JMXOp", state);
-			}
-			try {
-				log.info("Readable Bytes: [%s]", replay.getBuff().readableBytes());
-				switch(replay.getState()) {
-					case REQUESTID:					
-						state.opSeq = input.readInt();
-						replay.checkpoint(JMXOpDecodeStep.OPCODE);					
-					//$FALL-THROUGH$
-					case OPCODE:
-						state.jmxOpCode = JMXOpCode.decode(input.readByte());
-						replay.checkpoint(JMXOpDecodeStep.ARGCOUNT);
-					//$FALL-THROUGH$
-					case ARGCOUNT:
-						byte argCount = input.readByte();
-						state.opArguments = new Object[argCount];
-						if(argCount==0) {
-							kryo.getContext().remove("JMXOp");
-							replay.checkpoint(JMXOpDecodeStep.BYTESIZE);
-							return state;
-						}
-						replay.checkpoint(JMXOpDecodeStep.ARGS);
-					//$FALL-THROUGH$
-					case ARGS:
-						while(state.argsRead < state.opArguments.length) {
-							state.opArguments[state.argsRead] = kryo.readClassAndObject(input);
-							state.argsRead++;
-							replay.checkpoint(JMXOpDecodeStep.ARGS2);
-						}					
-						kryo.getContext().remove("JMXOp");
-						replay.checkpoint(JMXOpDecodeStep.BYTESIZE);
-						return state;
-					case ARGS2:
-						while(state.argsRead < state.opArguments.length) {
-							state.opArguments[state.argsRead] = kryo.readClassAndObject(input);
-							state.argsRead++;
-							replay.checkpoint(JMXOpDecodeStep.ARGS);
-						}					
-						kryo.getContext().remove("JMXOp");
-						replay.checkpoint(JMXOpDecodeStep.BYTESIZE);
-						return state;
-						
-					default:
-						throw new Error("Should not reach here");
-				}
-			} catch (Throwable ex) {
-				log.warn("Kryo decode failed: [%s]", ex.toString(), ex);				
-				throw REPLAY_ERROR;
-			}
-		}
-		
-		/**
-		 * Reads a JMXOp
-		 * @param kryo The kryo instance
-		 * @param input THe kryo input stream
-		 * @param type The decoding type
-		 * @return the decoded JMXOp
-		 */
-		protected JMXOp doReadNoReplay(Kryo kryo, Input input, Class<JMXOp> type) {			
+		protected JMXOp doRead(Kryo kryo, Input input, Class<JMXOp> type) {			
 			int opSeq = input.readInt();
 			JMXOpCode opCode = JMXOpCode.decode(input.readByte());
 			byte argCount = input.readByte();
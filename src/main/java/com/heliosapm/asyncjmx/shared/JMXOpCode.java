@@ -106,7 +106,15 @@ public enum JMXOpCode {
 	/** JMX Op enum member for {@link MBeanServerConnection#isInstanceOf(javax.management.ObjectName,java.lang.String)} */
 	ISINSTANCEOF((byte)23, boolean.class, ObjectName.class, String.class),
 	/** JMX Op enum member for {@link MBeanServerConnection#setAttributes(javax.management.ObjectName,javax.management.AttributeList)} */
-	SETATTRIBUTES((byte)24, javax.management.AttributeList.class, ObjectName.class, AttributeList.class);	
+	SETATTRIBUTES((byte)24, javax.management.AttributeList.class, ObjectName.class, AttributeList.class),
+	/** Batched {@link MBeanServerConnection#getAttributes(javax.management.ObjectName,java.lang.String[])} returning an {@link AttributeList} or the thrown exception for each (ObjectName, String[]) pair */
+	GETATTRIBUTES_BATCH((byte)25, Object[].class, ObjectName[].class, String[][].class),
+	/** Server side query plus getAttributes returning a map of attribute values keyed by attribute name, keyed by the ObjectName of each matching MBean. See {@link com.heliosapm.asyncjmx.shared.util.JMXHelper#getMBeanAttributeMap(MBeanServerConnection, ObjectName, QueryExp, String, String...)} */
+	GETATTRIBUTES_QUERY((byte)26, java.util.HashMap.class, ObjectName.class, QueryExp.class, String[].class),
+	/** Subscribes the issuing channel to the {@link JMXResponseType#CACHE_OP} callbacks the server pushes when MBeans are registered or unregistered */
+	SUBSCRIBE_CACHE((byte)27, void.class),
+	/** Returns the ObjectNames matching a pattern once, then streams registration and unregistration deltas for the pattern to the passed listener registration */
+	SUBSCRIBE_NAMES((byte)28, java.util.HashSet.class, ObjectName.class, NotificationListener.class);	
 	
 	/** A map of JMXOpCode keyed by the byte op code */
 	public static final Map<Byte, JMXOpCode> CODE2OP;
@@ -109,6 +109,7 @@ import javax.management.modelmbean.ModelMBeanNotificationInfo;
 import javax.management.modelmbean.ModelMBeanOperationInfo;
 import javax.management.modelmbean.RequiredModelMBean;
 import javax.management.openmbean.ArrayType;
+import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.CompositeDataInvocationHandler;
 import javax.management.openmbean.CompositeDataSupport;
 import javax.management.openmbean.CompositeType;
@@ -155,6 +156,7 @@ import com.heliosapm.asyncjmx.shared.serialization.NonSerializable;
 import com.heliosapm.asyncjmx.shared.serialization.NullResult;
 import com.heliosapm.asyncjmx.shared.serialization.ObjectInstanceSerializer;
 import com.heliosapm.asyncjmx.shared.serialization.ObjectNameSerializer;
+import com.heliosapm.asyncjmx.shared.serialization.OpenTypeCodec;
 import com.heliosapm.asyncjmx.shared.serialization.SimpleTypeSerializer;
 import com.heliosapm.asyncjmx.shared.serialization.TabularDataSupportSerializer;
 import com.heliosapm.asyncjmx.shared.serialization.TabularTypeSerializer;
@@ -185,11 +187,18 @@ public class KryoFactory {
 	private final ChannelBuffer nullResultBuffer;
 	
 	
-	/** A channel local for channel dedicated Kryo instances */
+	/** A channel local for channel dedicated Kryo instances used by the decoders */
 	protected final ChannelLocal<Kryo> channelKryo = new ChannelLocal<Kryo>(true){
 		@Override
 		protected Kryo initialValue(Channel channel) {
-			return newKryo();
+			return newChannelKryo();
+		}
+	};	
+	/** A channel local for channel dedicated Kryo instances used by the encoders */
+	protected final ChannelLocal<Kryo> channelWriteKryo = new ChannelLocal<Kryo>(true){
+		@Override
+		protected Kryo initialValue(Channel channel) {
+			return newChannelKryo();
 		}
 	};	
 	
@@ -251,6 +260,18 @@ public class KryoFactory {
 		return channelKryo.get(channel);
 	}
 	
+	/**
+	 * Returns a Kryo uniquely associated with the passed channel for encoding outbound messages.
+	 * Writes can be issued from any thread, so callers must hold the returned instance's monitor while using it, 
+	 * and until the encoded frame has been passed downstream so frames reach the wire in the order their dictionary ids were assigned.
+	 * @param channel The channel to get a Kryo for
+	 * @return an initialized Kryo instance
+	 */
+	public Kryo getWriteKryo(Channel channel) {
+		if(channel==null) throw new IllegalArgumentException("The passed channel was null");
+		return channelWriteKryo.get(channel);
+	}
+	
 	/**
 	 * Returns a serialized VoidResult instance
 	 * @return a ChannelBuffer containing a serialized VoidResult instance
@@ -286,6 +307,17 @@ public class KryoFactory {
 		return getNonSerializable(null, obj);
 	}
 	
+	/**
+	 * Returns a new initialized Kryo instance for one direction of one channel, with the per-channel dictionaries installed
+	 * @return a new initialized Kryo instance
+	 */
+	public Kryo newChannelKryo() {
+		Kryo kryo = newKryo();
+		ObjectNameSerializer.installDictionary(kryo);
+		OpenTypeCodec.installDictionary(kryo);
+		return kryo;
+	}
+	
 	/**
 	 * Returns a new initialized Kryo instance
 	 * @return a new initialized Kryo instance
@@ -296,6 +328,11 @@ public class KryoFactory {
 		kryo.setAsmEnabled(true);
 		kryo.setReferences(false);
 		kryo.setInstantiatorStrategy(new StdInstantiatorStrategy());
+		// Throwables are self referencing (cause==this) which recurses without kryo references
+		kryo.addDefaultSerializer(Throwable.class, JavaSerializer.class);
+		kryo.addDefaultSerializer(QueryExp.class, JavaSerializer.class);
+		// platform composites such as GcInfoCompositeData are read back as CompositeDataSupport
+		kryo.addDefaultSerializer(CompositeData.class, CompositeDataSupportSerializer.class);
 		for(Class<?> clazz: REG_CLASSES) {
 			kryo.register(clazz);
 		}
@@ -309,24 +346,15 @@ public class KryoFactory {
 		kryo.register(MBeanServerNotification.class, new MBeanServerNotificationSerializer());
 		kryo.register(MBeanInfo.class, new MBeanInfoSerializer());
 		kryo.register(JMXOp.class, new JMXOp.JMXOpSerializer());
+		kryo.register(ObjectName[].class);
+		kryo.register(String[][].class);
 		
-		/* ===  Having trouble with these
 		kryo.register(ArrayType.class, new ArrayTypeSerializer());
 		kryo.register(SimpleType.class, new SimpleTypeSerializer());
 		kryo.register(TabularType.class, new TabularTypeSerializer());
 		kryo.register(CompositeType.class, new CompositeTypeSerializer());
-		*/
 		kryo.register(TabularDataSupport.class, new TabularDataSupportSerializer());		
 		kryo.register(CompositeDataSupport.class, new CompositeDataSupportSerializer());		
-		
-		JavaSerializer javaSer = new JavaSerializer();
-		
-		kryo.register(ArrayType.class, javaSer);
-		kryo.register(SimpleType.class, javaSer);
-		kryo.register(TabularType.class, javaSer);
-		kryo.register(CompositeType.class, javaSer);
-//		kryo.register(TabularDataSupport.class, javaSer);		
-//		kryo.register(CompositeDataSupport.class, javaSer);
 
 		return kryo;
 	}
@@ -22,34 +22,28 @@
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
  *
  */
-package com.heliosapm.asyncjmx.client;
+package com.heliosapm.asyncjmx.shared;
+
+import java.io.IOException;
 
 /**
- * <p>Title: JMXResponseDecodeStep</p>
- * <p>Description: Enumeration of the {@link JMXOpResponse} replaying decoder steps.</p> 
+ * <p>Title: ServerBusyException</p>
+ * <p>Description: Exception returned by the server in place of an op's result when the op was rejected because the executor it is assigned to is saturated.
+ * The op was not executed and may be retried.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
- * <p><code>com.heliosapm.asyncjmx.client.JMXResponseDecodeStep</code></p>
+ * <p><code>com.heliosapm.asyncjmx.shared.ServerBusyException</code></p>
  */
+public class ServerBusyException extends IOException {
 
-public enum JMXResponseDecodeStep {
-	/** The JMX Response Type */
-	RESPTYPE(0),
-	/** The total byte size of the entire response wrapper */
-	BYTESIZE(0),
-	/** The one byte op code that a repsonse is responding to */
-	OPCODE(0),
-	/** The one int originating request id */
-	REQUESTID(1),
-	/** The op response value */
-	RESPONSE(5);
-	
-	
-	private JMXResponseDecodeStep(int offset) {
-		this.offset = offset;
-	}
-	
-	/** The logical offset in the ChannelBuffer when this checkpoint is called */
-	public final int offset;
+	/**  */
+	private static final long serialVersionUID = -2753374105542270938L;
 
+	/**
+	 * Creates a new ServerBusyException
+	 * @param message The exception message
+	 */
+	public ServerBusyException(String message) {
+		super(message);
+	}
 }
@@ -0,0 +1,362 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.shared;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelDownstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioSocketChannel;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
+
+import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
+import com.heliosapm.asyncjmx.shared.util.ConfigurationHelper;
+
+/**
+ * <p>Title: WriteCoalescingHandler</p>
+ * <p>Description: Downstream handler that collects the encoded frames written to a channel and flushes them as a single gathering write.
+ * Pending frames are flushed at the end of the current I/O event loop turn (or after the configured delay), or immediately once the pending
+ * byte or frame budget is reached. Instances hold per-channel state so one must be created per pipeline.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.shared.WriteCoalescingHandler</code></p>
+ */
+
+public class WriteCoalescingHandler extends SimpleChannelDownstreamHandler {
+	/** The conf property name to enable write coalescing */
+	public static final String CONFIG_ENABLED = "com.heliosapm.asyncjmx.coalesce.enabled";
+	/** The default write coalescing enablement */
+	public static final boolean DEFAULT_ENABLED = true;
+	/** The conf property name for the number of pending bytes that triggers an immediate flush */
+	public static final String CONFIG_MAX_BYTES = "com.heliosapm.asyncjmx.coalesce.maxbytes";
+	/** The default number of pending bytes that triggers an immediate flush */
+	public static final int DEFAULT_MAX_BYTES = 16384;
+	/** The conf property name for the number of pending frames that triggers an immediate flush */
+	public static final String CONFIG_MAX_FRAMES = "com.heliosapm.asyncjmx.coalesce.maxframes";
+	/** The default number of pending frames that triggers an immediate flush */
+	public static final int DEFAULT_MAX_FRAMES = 64;
+	/** The conf property name for the maximum time in ms a frame may be held before it is flushed. Zero flushes at the end of the current event loop turn */
+	public static final String CONFIG_DELAY = "com.heliosapm.asyncjmx.coalesce.delay";
+	/** The default maximum time in ms a frame may be held before it is flushed */
+	public static final long DEFAULT_DELAY = 0L;
+	
+	/** The shared timer used to schedule delayed flushes */
+	private static volatile Timer timer = null;
+	/** The timer ctor lock */
+	private static final Object lock = new Object();
+
+	/** Instance logger */
+	protected final JMXLogger log = JMXLogger.getLogger(getClass());
+	/** The number of pending bytes that triggers an immediate flush */
+	protected final int maxBytes;
+	/** The number of pending frames that triggers an immediate flush */
+	protected final int maxFrames;
+	/** The maximum time in ms a frame may be held before it is flushed */
+	protected final long delay;
+	/** The pending write events */
+	protected List<MessageEvent> pending = new ArrayList<MessageEvent>();
+	/** The write events being flushed, swapped with the pending events on each flush pass */
+	protected List<MessageEvent> draining = new ArrayList<MessageEvent>();
+	/** The number of pending bytes */
+	protected int pendingBytes = 0;
+	/** Indicates if a flush has been scheduled */
+	protected boolean flushScheduled = false;
+	/** Indicates if a thread is currently flushing */
+	protected boolean flushing = false;
+	
+	/**
+	 * Indicates if write coalescing is enabled
+	 * @return true if write coalescing is enabled
+	 */
+	public static boolean isEnabled() {
+		return ConfigurationHelper.getBooleanSystemThenEnvProperty(CONFIG_ENABLED, DEFAULT_ENABLED);
+	}
+	
+	/**
+	 * Creates a new WriteCoalescingHandler
+	 * @param maxBytes The number of pending bytes that triggers an immediate flush
+	 * @param maxFrames The number of pending frames that triggers an immediate flush
+	 * @param delay The maximum time in ms a frame may be held before it is flushed. Zero flushes at the end of the current event loop turn
+	 */
+	public WriteCoalescingHandler(int maxBytes, int maxFrames, long delay) {
+		this.maxBytes = maxBytes;
+		this.maxFrames = maxFrames;
+		this.delay = delay;
+	}
+	
+	/**
+	 * Creates a new WriteCoalescingHandler configured from system properties or the environment
+	 */
+	public WriteCoalescingHandler() {
+		this(
+				ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_MAX_BYTES, DEFAULT_MAX_BYTES),
+				ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_MAX_FRAMES, DEFAULT_MAX_FRAMES),
+				ConfigurationHelper.getLongSystemThenEnvProperty(CONFIG_DELAY, DEFAULT_DELAY)
+		);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.SimpleChannelDownstreamHandler#writeRequested(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+	 */
+	@Override
+	public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+		final boolean flushNow;
+		boolean schedule = false;
+		synchronized(this) {
+			pending.add(e);
+			if(e.getMessage() instanceof ChannelBuffer) {
+				pendingBytes += ((ChannelBuffer)e.getMessage()).readableBytes();
+				flushNow = pendingBytes >= maxBytes || pending.size() >= maxFrames;
+			} else {
+				flushNow = true;
+			}
+			if(!flushNow && !flushScheduled) {
+				flushScheduled = true;
+				schedule = true;
+			}
+		}
+		// scheduled outside the monitor since the fallback pipeline execute may run the flush inline 
+		if(schedule) scheduleFlush(ctx);
+		if(flushNow) flush(ctx);
+	}
+	
+	/**
+	 * Flushes any pending frames before the close request is passed downstream
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.SimpleChannelDownstreamHandler#closeRequested(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelStateEvent)
+	 */
+	@Override
+	public void closeRequested(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		flush(ctx);
+		super.closeRequested(ctx, e);
+	}
+	
+	/**
+	 * Flushes any pending frames before the disconnect request is passed downstream
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.channel.SimpleChannelDownstreamHandler#disconnectRequested(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelStateEvent)
+	 */
+	@Override
+	public void disconnectRequested(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		flush(ctx);
+		super.disconnectRequested(ctx, e);
+	}
+	
+	/**
+	 * Schedules a flush of the pending frames, either after the configured delay or at the end of the channel's current I/O event loop turn.
+	 * NIO socket channels always queue the flush task to their worker, even when called on the worker thread, so frames 
+	 * written during the current turn are coalesced. Other channels fall back to the pipeline's executor.
+	 * @param ctx The channel handler context
+	 */
+	protected void scheduleFlush(final ChannelHandlerContext ctx) {
+		final FlushTask task = new FlushTask(ctx);
+		if(delay > 0) {
+			getTimer().newTimeout(task, delay, TimeUnit.MILLISECONDS);
+		} else if(ctx.getChannel() instanceof NioSocketChannel) {
+			((NioSocketChannel)ctx.getChannel()).getWorker().executeInIoThread(task, true);
+		} else {
+			ctx.getPipeline().execute(task);
+		}
+	}
+	
+	/**
+	 * Writes all pending frames downstream. Only one thread flushes at a time so frames reach the sink in the order they were written.
+	 * If another thread is already flushing, it picks up the frames pending now before it finishes. The monitor is not held while 
+	 * writing downstream, since the sink may complete write futures whose listeners write again.
+	 * @param ctx The channel handler context
+	 */
+	protected void flush(ChannelHandlerContext ctx) {
+		synchronized(this) {
+			if(flushing) return;
+			flushing = true;
+		}
+		try {
+			for(;;) {
+				final List<MessageEvent> batch;
+				synchronized(this) {
+					if(pending.isEmpty()) {
+						flushing = false;
+						return;
+					}
+					batch = pending;
+					pending = draining;
+					draining = batch;
+					pendingBytes = 0;
+				}
+				write(ctx, batch);
+				batch.clear();
+			}
+		} catch (RuntimeException ex) {
+			synchronized(this) {
+				draining.clear();
+				flushing = false;
+			}
+			throw ex;
+		}
+	}
+	
+	/**
+	 * Writes a batch of frames downstream. Runs of several channel buffers are combined into one gathering buffer
+	 * whose write completion is propagated to each frame's future. Single frames and other messages are passed on as is.
+	 * @param ctx The channel handler context
+	 * @param batch The batch of write events to send
+	 */
+	protected void write(ChannelHandlerContext ctx, List<MessageEvent> batch) {
+		final int size = batch.size();
+		int start = 0;
+		while(start < size) {
+			int end = start;
+			while(end < size && batch.get(end).getMessage() instanceof ChannelBuffer) end++;
+			final int frames = end - start;
+			if(frames > 1) {
+				final ChannelBuffer[] buffers = new ChannelBuffer[frames];
+				final ChannelFuture[] futures = new ChannelFuture[frames];
+				for(int i = 0; i < frames; i++) {
+					MessageEvent e = batch.get(start + i);
+					buffers[i] = (ChannelBuffer)e.getMessage();
+					futures[i] = e.getFuture();
+				}
+				final ChannelFuture batchFuture = Channels.future(ctx.getChannel());
+				batchFuture.addListener(new BatchListener(futures));
+				log.debug("Flushing [%s] coalesced frames", frames);
+				Channels.write(ctx, batchFuture, ChannelBuffers.wrappedBuffer(true, buffers));
+				start = end;
+			} else {
+				ctx.sendDownstream(batch.get(start));
+				start++;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the shared timer used to schedule delayed flushes, creating it if necessary
+	 * @return the shared timer
+	 */
+	protected static Timer getTimer() {
+		if(timer==null) {
+			synchronized(lock) {
+				if(timer==null) {
+					timer = new HashedWheelTimer(new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "WriteCoalescingTimer");
+							t.setDaemon(true);
+							return t;
+						}
+					}, 1, TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+		return timer;
+	}
+	
+	/**
+	 * <p>Title: FlushTask</p>
+	 * <p>Description: Flushes the pending frames when run on the I/O thread or fired by the timer</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.asyncjmx.shared.WriteCoalescingHandler.FlushTask</code></p>
+	 */
+	protected class FlushTask implements Runnable, TimerTask {
+		/** The channel handler context */
+		protected final ChannelHandlerContext ctx;
+
+		/**
+		 * Creates a new FlushTask
+		 * @param ctx The channel handler context
+		 */
+		protected FlushTask(ChannelHandlerContext ctx) {
+			this.ctx = ctx;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			synchronized(WriteCoalescingHandler.this) {
+				flushScheduled = false;
+			}
+			flush(ctx);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.util.TimerTask#run(org.jboss.netty.util.Timeout)
+		 */
+		@Override
+		public void run(Timeout timeout) throws Exception {
+			run();
+		}
+	}
+	
+	/**
+	 * <p>Title: BatchListener</p>
+	 * <p>Description: Propagates the completion of a coalesced write to the futures of the frames it contained</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.asyncjmx.shared.WriteCoalescingHandler.BatchListener</code></p>
+	 */
+	protected static class BatchListener implements ChannelFutureListener {
+		/** The futures of the coalesced frames */
+		protected final ChannelFuture[] futures;
+
+		/**
+		 * Creates a new BatchListener
+		 * @param futures The futures of the coalesced frames
+		 */
+		protected BatchListener(ChannelFuture[] futures) {
+			this.futures = futures;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.channel.ChannelFutureListener#operationComplete(org.jboss.netty.channel.ChannelFuture)
+		 */
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			if(future.isSuccess()) {
+				for(ChannelFuture f: futures) f.setSuccess();
+			} else {
+				for(ChannelFuture f: futures) f.setFailure(future.getCause());
+			}
+		}
+	}
+}
@@ -229,7 +229,7 @@ public class JMXLogger implements PropertyChangeListener {
 	
 	/**
 	 * Logs a message created using the passed format and arguments.
-	 * If the last argument is a {@link Throwable}, an extra <b><code>:%s</code></b> is appended to the format
+	 * If the last argument is a {@link Throwable} not consumed by the format, an extra <b><code>:%s</code></b> is appended to the format
 	 * and the argument is replaced with a formatted stack trace of the throwable
 	 * @param level The level to log at. If the associated logger is not enabled for this level, the call is a No Op.
 	 * @param format The format specified for the log message
@@ -240,7 +240,7 @@ public class JMXLogger implements PropertyChangeListener {
 		boolean hasThrowable = false;
 		if(args!=null && args.length>0) {
 			Object last = args[args.length-1];
-			if(last!=null && last instanceof Throwable) {
+			if(last!=null && last instanceof Throwable && countSpecifiers(format) < args.length) {
 				hasThrowable = true;
 				format = format + ":%s";
 				args[args.length-1] = stackTrace((Throwable)last);
@@ -249,6 +249,44 @@ public class JMXLogger implements PropertyChangeListener {
 		log.log(level, String.format(format, args));		
 	}
 	
+	/**
+	 * Counts the number of arguments consumed by the specifiers in the passed format.
+	 * Ordinary specifiers consume the next argument, explicitly indexed specifiers such as <code>%2$s</code> consume up to their index,
+	 * and relative specifiers such as <code>%&lt;s</code>, <code>%%</code> and <code>%n</code> consume none.
+	 * @param format The format to count
+	 * @return the number of arguments the format consumes
+	 */
+	protected static int countSpecifiers(String format) {
+		int ordinary = 0, maxIndex = 0;
+		final int len = format.length();
+		for(int i = 0; i < len-1; i++) {
+			if(format.charAt(i)!='%') continue;
+			int j = i + 1;
+			char c = format.charAt(j);
+			if(c=='%' || c=='n') {
+				i = j;
+				continue;
+			}
+			int index = 0;
+			while(j < len && (c = format.charAt(j)) >= '0' && c <= '9') {
+				index = index * 10 + (c - '0');
+				j++;
+			}
+			if(j < len && c=='$' && j > i + 1) {
+				if(index > maxIndex) maxIndex = index;
+				j++;
+			} else if(c=='<') {
+				j++;
+			} else {
+				ordinary++;
+			}
+			// skip the remaining flags, width and precision up to the conversion
+			while(j < len && "-#+ 0,(<.123456789".indexOf(format.charAt(j)) != -1) j++;
+			i = j;
+		}
+		return Math.max(ordinary, maxIndex);
+	}
+	
 	/**
 	 * Returns a throwable's stack trace as a string
 	 * @param t The throwable to print
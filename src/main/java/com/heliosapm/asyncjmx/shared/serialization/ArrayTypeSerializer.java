@@ -25,9 +25,6 @@
 package com.heliosapm.asyncjmx.shared.serialization;
 
 import javax.management.openmbean.ArrayType;
-import javax.management.openmbean.OpenDataException;
-import javax.management.openmbean.OpenType;
-import javax.management.openmbean.SimpleType;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
@@ -35,49 +32,22 @@ import com.esotericsoftware.kryo.io.Output;
 
 /**
  * <p>Title: ArrayTypeSerializer</p>
- * <p>Description: Serializer for {@link ArrayType} instances</p> 
+ * <p>Description: Serializer for {@link ArrayType} instances. The element type is written through the {@link OpenTypeCodec}.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>com.heliosapm.asyncjmx.shared.serialization.ArrayTypeSerializer</code></p>
  */
-
 @SuppressWarnings("rawtypes")
 public class ArrayTypeSerializer extends BaseSerializer<ArrayType> {
 
 	@Override
-	protected void doWrite(Kryo kryo, Output output, ArrayType at) {		
-		if(at.isPrimitiveArray()) {
-			output.writeByte(0);
-			 
-		} else {
-			output.writeByte(1);
-			output.writeInt(at.getDimension());
-		}
-		kryo.writeClassAndObject(output, at.getElementOpenType());		
+	protected void doWrite(Kryo kryo, Output output, ArrayType at) {
+		OpenTypeCodec.writeArrayType(kryo, output, at);
 	}
 
 	@Override
 	protected ArrayType doRead(Kryo kryo, Input input, Class<ArrayType> type) {
-		boolean primitive = input.readByte()==0;
-		int dimension = -1;
-		OpenType otype = null;
-		if(!primitive) {
-			dimension = input.readInt();
-		}
-		otype = (OpenType)kryo.readClassAndObject(input);
-		if(primitive) {
-			try {
-				return new ArrayType((SimpleType)otype, true);
-			} catch (OpenDataException e) {
-				throw new RuntimeException("OpenDataException when reading primitive ArrayType", e);
-			}
-		} else {
-			try {
-				return new ArrayType(dimension, otype);
-			} catch (OpenDataException e) {
-				throw new RuntimeException("OpenDataException when reading primitive ArrayType", e);
-			}			
-		}
+		return OpenTypeCodec.readArrayType(kryo, input);
 	}
 
 }
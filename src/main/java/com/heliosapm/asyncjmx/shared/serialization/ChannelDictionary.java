@@ -0,0 +1,200 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.shared.serialization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.esotericsoftware.kryo.Kryo;
+
+/**
+ * <p>Title: ChannelDictionary</p>
+ * <p>Description: A dictionary of values replaced by integer ids on the wire, installed in the context of a Kryo instance
+ * that only writes to, or only reads from, a single channel. The writer assigns ids sequentially from zero the first time it sends a value
+ * and the reader stores each defined value by id, so both sides stay in step as long as every frame the writer encodes is sent.
+ * Serializers call {@link #get(Kryo, Object)} to find the dictionary, encoders call {@link #markAll(Kryo)} before encoding a frame
+ * and {@link #rollbackAll(Kryo)} if the frame is abandoned.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.shared.serialization.ChannelDictionary</code></p>
+ * @param <T> The type of the dictionary values
+ */
+
+public class ChannelDictionary<T> {
+	/** The ids assigned by the writer keyed by value */
+	protected final Map<T, Integer> ids = new HashMap<T, Integer>();
+	/** The values indexed by id */
+	protected final List<T> values = new ArrayList<T>();
+	/** The maximum number of values the writer will assign ids to */
+	protected final int maxSize;
+	/** The number of values at the last mark */
+	protected int mark = 0;
+	
+	/** The kryo context key for the list of all dictionaries installed in a kryo */
+	private static final Object ALL_KEY = ChannelDictionary.class;
+	
+	/**
+	 * Creates a new ChannelDictionary and installs it in the passed kryo's context
+	 * @param kryo The kryo to install the dictionary in
+	 * @param key The kryo context key the dictionary is installed under
+	 * @param maxSize The maximum number of values the writer will assign ids to
+	 * @return the new dictionary
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ChannelDictionary<T> install(Kryo kryo, Object key, int maxSize) {
+		ChannelDictionary<T> dictionary = new ChannelDictionary<T>(maxSize);
+		kryo.getContext().put(key, dictionary);
+		List<ChannelDictionary<?>> all = (List<ChannelDictionary<?>>)kryo.getContext().get(ALL_KEY);
+		if(all==null) {
+			all = new ArrayList<ChannelDictionary<?>>();
+			kryo.getContext().put(ALL_KEY, all);
+		}
+		all.add(dictionary);
+		return dictionary;
+	}
+	
+	/**
+	 * Returns the dictionary installed in the passed kryo under the passed key
+	 * @param kryo The kryo to get the dictionary from
+	 * @param key The kryo context key the dictionary was installed under
+	 * @return the dictionary or null if the kryo has none
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ChannelDictionary<T> get(Kryo kryo, Object key) {
+		return (ChannelDictionary<T>)kryo.getContext().get(key);
+	}
+	
+	/**
+	 * Marks the current size of every dictionary installed in the passed kryo
+	 * @param kryo The kryo about to encode a frame
+	 */
+	@SuppressWarnings("unchecked")
+	public static void markAll(Kryo kryo) {
+		List<ChannelDictionary<?>> all = (List<ChannelDictionary<?>>)kryo.getContext().get(ALL_KEY);
+		if(all==null) return;
+		for(int i = 0, n = all.size(); i < n; i++) {
+			ChannelDictionary<?> d = all.get(i);
+			d.mark = d.values.size();
+		}
+	}
+	
+	/**
+	 * Discards the ids assigned since the last mark by every dictionary installed in the passed kryo
+	 * @param kryo The kryo whose frame was abandoned
+	 */
+	@SuppressWarnings("unchecked")
+	public static void rollbackAll(Kryo kryo) {
+		List<ChannelDictionary<?>> all = (List<ChannelDictionary<?>>)kryo.getContext().get(ALL_KEY);
+		if(all==null) return;
+		for(int i = 0, n = all.size(); i < n; i++) {
+			all.get(i).rollback();
+		}
+	}
+	
+	/**
+	 * Creates a new ChannelDictionary
+	 * @param maxSize The maximum number of values the writer will assign ids to
+	 */
+	protected ChannelDictionary(int maxSize) {
+		this.maxSize = maxSize;
+	}
+	
+	/**
+	 * Returns the id previously assigned to the passed value by the writer
+	 * @param value The value to look up
+	 * @return the id or null if one has not been assigned
+	 */
+	public Integer getId(T value) {
+		return ids.get(value);
+	}
+	
+	/**
+	 * Assigns the next id to the passed value
+	 * @param value The value to assign an id to
+	 * @return the assigned id or -1 if the dictionary is full
+	 */
+	public int assign(T value) {
+		final int id = values.size();
+		if(id >= maxSize) return -1;
+		ids.put(value, id);
+		values.add(value);
+		return id;
+	}
+	
+	/**
+	 * Stores a value defined by the writer
+	 * @param id The id the writer assigned
+	 * @param value The value
+	 */
+	public void define(int id, T value) {
+		if(id==values.size()) {
+			values.add(value);
+		} else if(id < values.size() && values.get(id)==null) {
+			values.set(id, value);
+		} else {
+			throw new IllegalStateException("Out of sequence dictionary id [" + id + "]. Expected [" + values.size() + "]");
+		}
+	}
+	
+	/**
+	 * Reserves an id defined by the writer whose value is built from values defined after it.
+	 * The value is stored with {@link #define(int, Object)} once it has been read.
+	 * @param id The id the writer assigned
+	 */
+	public void reserve(int id) {
+		if(id!=values.size()) throw new IllegalStateException("Out of sequence dictionary id [" + id + "]. Expected [" + values.size() + "]");
+		values.add(null);
+	}
+	
+	/**
+	 * Returns the value defined for the passed id
+	 * @param id The id to look up
+	 * @return the value
+	 */
+	public T getValue(int id) {
+		final T value = id < 0 || id >= values.size() ? null : values.get(id);
+		if(value==null) throw new IllegalStateException("Undefined dictionary id [" + id + "]");
+		return value;
+	}
+	
+	/**
+	 * Returns the number of values in the dictionary
+	 * @return the number of values in the dictionary
+	 */
+	public int size() {
+		return values.size();
+	}
+	
+	/**
+	 * Discards the ids assigned since the last mark
+	 */
+	protected void rollback() {
+		for(int i = values.size() - 1; i >= mark; i--) {
+			ids.remove(values.remove(i));
+		}
+	}
+}
@@ -24,13 +24,8 @@
  */
 package com.heliosapm.asyncjmx.shared.serialization;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Set;
-
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.CompositeDataSupport;
-import javax.management.openmbean.CompositeType;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
@@ -38,36 +33,22 @@ import com.esotericsoftware.kryo.io.Output;
 
 /**
  * <p>Title: CompositeDataSupportSerializer</p>
- * <p>Description: Serializer for {@link CompositeData} instances</p> 
+ * <p>Description: Serializer for {@link CompositeData} instances. The composite type is written through the {@link OpenTypeCodec}, 
+ * so on a channel it is only sent the first time, followed by the raw item values.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>com.heliosapm.asyncjmx.shared.serialization.CompositeDataSupportSerializer</code></p>
  */
-
 public class CompositeDataSupportSerializer extends BaseSerializer<CompositeData> {
 
 	@Override
 	protected void doWrite(Kryo kryo, Output output, CompositeData cds) {
-		kryo.writeObject(output, cds.getCompositeType());
-		Set<String> keys = cds.getCompositeType().keySet();
-		for(String key: keys) {			
-			kryo.writeClassAndObject(output, cds.get(key));
-		}
+		OpenTypeCodec.writeCompositeData(kryo, output, cds);
 	}
 
 	@Override
 	protected CompositeDataSupport doRead(Kryo kryo, Input input, Class<CompositeData> type) {
-		CompositeType ct = kryo.readObject(input, CompositeType.class);
-		Set<String> keys = ct.keySet();
-		Map<String, Object> keyValues = new LinkedHashMap<String, Object>(keys.size());
-		for(String key: keys) {
-			keyValues.put(key, kryo.readClassAndObject(input));
-		}
-		try {
-			return new CompositeDataSupport(ct, keyValues);
-		} catch (Exception ex) {
-			throw new RuntimeException("Failed to create CompositeDataSupport", ex);
-		}
+		return OpenTypeCodec.readCompositeData(kryo, input);
 	}
 
 }
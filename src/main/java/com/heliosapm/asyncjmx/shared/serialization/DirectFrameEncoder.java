@@ -0,0 +1,258 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.shared.serialization;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelLocal;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.UnsafeMemoryOutput;
+import com.heliosapm.asyncjmx.shared.KryoFactory;
+import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
+import com.heliosapm.asyncjmx.shared.util.ConfigurationHelper;
+
+/**
+ * <p>Title: DirectFrameEncoder</p>
+ * <p>Description: Encodes length prefixed frames straight into pooled, fixed size direct memory slabs.
+ * Kryo writes through a per-channel {@link UnsafeMemoryOutput} that is re-pointed at each acquired slab, the length prefix
+ * is patched in place and the slab is returned to the pool when the write completes.</p>
+ * <p>The output's maximum capacity is always pinned to the slab's capacity: Kryo 2.23's <code>UnsafeMemoryOutput</code> does not
+ * refresh its memory address when it grows its buffer, so a frame that does not fit is abandoned and the caller falls back to its heap path.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.shared.serialization.DirectFrameEncoder</code></p>
+ */
+
+public class DirectFrameEncoder {
+	/** The singleton instance */
+	private static volatile DirectFrameEncoder instance = null;
+	/** The singleton instance ctor lock */
+	private static final Object lock = new Object();
+	
+	/** The conf property name to enable the pooled direct encoding path */
+	public static final String CONFIG_POOLED = "com.heliosapm.asyncjmx.encoder.pooled";
+	/** The default pooled direct encoding path enablement */
+	public static final boolean DEFAULT_POOLED = true;
+	/** The conf property name for the size of each pooled slab in bytes */
+	public static final String CONFIG_SLAB_SIZE = "com.heliosapm.asyncjmx.encoder.slabsize";
+	/** The default size of each pooled slab in bytes */
+	public static final int DEFAULT_SLAB_SIZE = 16384;
+	/** The conf property name for the maximum number of idle slabs retained by the pool */
+	public static final String CONFIG_POOL_SIZE = "com.heliosapm.asyncjmx.encoder.poolsize";
+	/** The default maximum number of idle slabs retained by the pool */
+	public static final int DEFAULT_POOL_SIZE = 512;
+	
+	/** Instance logger */
+	protected final JMXLogger log = JMXLogger.getLogger(getClass());
+	/** Indicates if the pooled direct encoding path is enabled */
+	protected final boolean enabled;
+	/** The size of each slab in bytes */
+	protected final int slabSize;
+	/** The maximum number of idle slabs retained */
+	protected final int poolSize;
+	/** The idle slabs */
+	protected final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<ByteBuffer>();
+	/** The number of idle slabs */
+	protected final AtomicInteger idle = new AtomicInteger(0);
+	/** A channel local for the channel's reusable output, only used while holding the channel's write Kryo monitor */
+	protected final ChannelLocal<UnsafeMemoryOutput> channelOutput = new ChannelLocal<UnsafeMemoryOutput>(true){
+		@Override
+		protected UnsafeMemoryOutput initialValue(Channel channel) {
+			return new UnsafeMemoryOutput(16, slabSize);
+		}
+	};
+	
+	/**
+	 * Acquires the DirectFrameEncoder singleton instance
+	 * @return the DirectFrameEncoder singleton instance
+	 */
+	public static DirectFrameEncoder getInstance() {
+		if(instance==null) {
+			synchronized(lock) {
+				if(instance==null) {
+					instance = new DirectFrameEncoder();
+				}
+			}
+		}
+		return instance;
+	}
+	
+	/**
+	 * Creates a new DirectFrameEncoder
+	 */
+	private DirectFrameEncoder() {
+		enabled = ConfigurationHelper.getBooleanSystemThenEnvProperty(CONFIG_POOLED, DEFAULT_POOLED);
+		slabSize = ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_SLAB_SIZE, DEFAULT_SLAB_SIZE);
+		poolSize = ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_POOL_SIZE, DEFAULT_POOL_SIZE);
+		log.info("DirectFrameEncoder Enabled:[%s], Slab Size:[%s], Pool Size:[%s]", enabled, slabSize, poolSize);
+	}
+	
+	/**
+	 * Determines if a frame of the passed estimated size should be encoded through the pooled direct path
+	 * @param estimatedSize The estimated total frame size in bytes
+	 * @return true if the pooled path is enabled and the frame is expected to fit in a slab
+	 */
+	public boolean accepts(int estimatedSize) {
+		return enabled && estimatedSize <= slabSize;
+	}
+	
+	/**
+	 * Encodes the passed message into a pooled direct slab. The first <code>headerSize</code> bytes are reserved for the caller's
+	 * header, the last four of which are patched with the payload length. Any other header bytes are left to the caller.
+	 * @param channel The channel the frame will be written to
+	 * @param message The message to encode
+	 * @param headerSize The number of header bytes to reserve ahead of the payload
+	 * @return the encoded frame or null if the message did not fit in a slab
+	 */
+	public EncodedFrame encode(Channel channel, Object message, int headerSize) {
+		final ByteBuffer slab = acquire();
+		final int end;
+		try {
+			final Kryo kryo = KryoFactory.getInstance().getWriteKryo(channel);
+			synchronized(kryo) {
+				final UnsafeMemoryOutput output = channelOutput.get(channel);
+				output.setBuffer(slab, slab.capacity());
+				output.setPosition(headerSize);
+				ChannelDictionary.markAll(kryo);
+				try {
+					kryo.writeObject(output, message);
+				} catch (RuntimeException rex) {
+					ChannelDictionary.rollbackAll(kryo);
+					throw rex;
+				}
+				end = output.position();
+			}
+		} catch (Exception ex) {
+			release(slab);
+			log.debug("Message [%s] did not fit in a [%s] byte slab: %s", message.getClass().getSimpleName(), slabSize, ex.toString());
+			return null;
+		}
+		final ByteBuffer frame = slab.duplicate();
+		frame.clear();
+		frame.limit(end);
+		final ChannelBuffer buffer = ChannelBuffers.wrappedBuffer(frame);
+		buffer.setInt(headerSize - 4, end - headerSize);
+		return new EncodedFrame(buffer, slab);
+	}
+	
+	/**
+	 * Acquires an idle slab from the pool or allocates a new one
+	 * @return a cleared slab
+	 */
+	protected ByteBuffer acquire() {
+		final ByteBuffer slab = pool.poll();
+		if(slab==null) return ByteBuffer.allocateDirect(slabSize);
+		idle.decrementAndGet();
+		slab.clear();
+		return slab;
+	}
+	
+	/**
+	 * Returns a slab to the pool, or drops it for collection if the pool is full
+	 * @param slab The slab to release
+	 */
+	protected void release(ByteBuffer slab) {
+		if(idle.incrementAndGet() > poolSize) {
+			idle.decrementAndGet();
+			return;
+		}
+		pool.offer(slab);
+	}
+	
+	/**
+	 * Returns the number of idle slabs in the pool
+	 * @return the number of idle slabs in the pool
+	 */
+	public int getIdleSlabs() {
+		return idle.get();
+	}
+	
+	/**
+	 * Returns the size of each slab in bytes
+	 * @return the size of each slab in bytes
+	 */
+	public int getSlabSize() {
+		return slabSize;
+	}
+
+	/**
+	 * Indicates if the pooled direct encoding path is enabled
+	 * @return true if the pooled direct encoding path is enabled
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * <p>Title: EncodedFrame</p>
+	 * <p>Description: An encoded frame backed by a pooled slab. Register it with the write future so the slab is 
+	 * returned to the pool once the write completes.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.asyncjmx.shared.serialization.DirectFrameEncoder.EncodedFrame</code></p>
+	 */
+	public class EncodedFrame implements ChannelFutureListener {
+		/** The channel buffer wrapping the written region of the slab */
+		protected final ChannelBuffer buffer;
+		/** The slab backing the frame */
+		protected final ByteBuffer slab;
+		
+		/**
+		 * Creates a new EncodedFrame
+		 * @param buffer The channel buffer wrapping the written region of the slab
+		 * @param slab The slab backing the frame
+		 */
+		EncodedFrame(ChannelBuffer buffer, ByteBuffer slab) {
+			this.buffer = buffer;
+			this.slab = slab;
+		}
+
+		/**
+		 * Returns the channel buffer wrapping the encoded frame
+		 * @return the channel buffer wrapping the encoded frame
+		 */
+		public ChannelBuffer getBuffer() {
+			return buffer;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see org.jboss.netty.channel.ChannelFutureListener#operationComplete(org.jboss.netty.channel.ChannelFuture)
+		 */
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			release(slab);
+		}
+	}
+}
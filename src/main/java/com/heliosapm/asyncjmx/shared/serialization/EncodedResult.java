@@ -0,0 +1,110 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.shared.serialization;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.io.UnsafeMemoryOutput;
+import com.esotericsoftware.kryo.io.UnsafeOutput;
+import com.esotericsoftware.kryo.util.UnsafeUtil;
+
+/**
+ * <p>Title: EncodedResult</p>
+ * <p>Description: An op result held as the bytes of its <code>writeClassAndObject</code> encoding, so a cached result can be 
+ * spliced into a response frame without being serialized again.</p>
+ * <p>The bytes must be encoded by a kryo with no channel dictionaries installed so they are valid on any channel, 
+ * and they can only be written where a complete top level object graph would start, which is where 
+ * {@link com.heliosapm.asyncjmx.client.JMXOpResponse} writes its result.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.shared.serialization.EncodedResult</code></p>
+ */
+
+public class EncodedResult {
+	/** The class of the encoded value */
+	protected final Class<?> type;
+	/** The encoded value */
+	protected final byte[] bytes;
+	
+	/**
+	 * Encodes the passed value with an unsafe output, matching the byte order the frame encoders write in
+	 * @param kryo A kryo with no channel dictionaries installed. The caller must hold exclusive use of it.
+	 * @param value The value to encode
+	 * @return the encoded result
+	 */
+	public static EncodedResult encode(Kryo kryo, Object value) {
+		final Output output = new UnsafeOutput(1024, -1);
+		kryo.writeClassAndObject(output, value);
+		return new EncodedResult(value==null ? null : value.getClass(), output.toBytes());
+	}
+	
+	/**
+	 * Creates a new EncodedResult
+	 * @param type The class of the encoded value
+	 * @param bytes The encoded value
+	 */
+	public EncodedResult(Class<?> type, byte[] bytes) {
+		this.type = type;
+		this.bytes = bytes;
+	}
+	
+	/**
+	 * Writes the encoded value to the passed output
+	 * @param output The output to write to
+	 */
+	public void writeTo(Output output) {
+		if(output instanceof UnsafeMemoryOutput) {
+			// the inherited writeBytes(byte[]) writes at the nio buffer's position, which the unsafe writes do not advance
+			((UnsafeMemoryOutput)output).writeBytes(bytes, UnsafeUtil.byteArrayBaseOffset, bytes.length);
+		} else {
+			output.writeBytes(bytes);
+		}
+	}
+
+	/**
+	 * Returns the class of the encoded value
+	 * @return the class of the encoded value
+	 */
+	public Class<?> getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the size of the encoded value in bytes
+	 * @return the size of the encoded value in bytes
+	 */
+	public int getSize() {
+		return bytes.length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "EncodedResult [type=" + (type==null ? null : type.getName()) + ", size=" + bytes.length + "]";
+	}
+}
@@ -0,0 +1,76 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.shared.serialization;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.UnsafeInput;
+
+/**
+ * <p>Title: FrameInput</p>
+ * <p>Description: Wraps a reusable Kryo input that is re-pointed at each complete inbound frame. Frames in buffers with a backing array 
+ * are read in place. Frames in direct or composite buffers are copied into a scratch array that is retained and grown as needed, 
+ * so steady state decoding allocates nothing.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.shared.serialization.FrameInput</code></p>
+ */
+
+public class FrameInput {
+	/** The wrapped input */
+	protected final UnsafeInput input = new UnsafeInput();
+	/** The scratch array used for frames in buffers without a backing array */
+	protected byte[] scratch = EMPTY_BYTES;
+	
+	/** An empty byte array */
+	private static final byte[] EMPTY_BYTES = {};
+
+	/**
+	 * Creates a new FrameInput
+	 */
+	public FrameInput() {
+	}
+	
+	/**
+	 * Points the input at the passed region of a channel buffer. The buffer's indexes are not modified.
+	 * @param buffer The buffer containing the frame
+	 * @param index The index of the first byte of the frame
+	 * @param length The number of bytes in the frame
+	 * @return the input positioned at the start of the frame
+	 */
+	public Input setFrame(ChannelBuffer buffer, int index, int length) {
+		if(buffer.hasArray()) {
+			input.setBuffer(buffer.array(), buffer.arrayOffset() + index, length);
+		} else {
+			if(scratch.length < length) {
+				scratch = new byte[Math.max(length, scratch.length << 1)];
+			}
+			buffer.getBytes(index, scratch, 0, length);
+			input.setBuffer(scratch, 0, length);
+		}
+		return input;
+	}
+}
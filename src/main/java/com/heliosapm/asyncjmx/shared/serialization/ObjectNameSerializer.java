@@ -26,8 +26,6 @@ package com.heliosapm.asyncjmx.shared.serialization;
 
 import java.io.ByteArrayOutputStream;
 import java.lang.management.ManagementFactory;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.management.ObjectName;
 
@@ -38,50 +36,93 @@ import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.io.UnsafeInput;
 import com.esotericsoftware.kryo.io.UnsafeOutput;
 import com.heliosapm.asyncjmx.shared.KryoFactory;
+import com.heliosapm.asyncjmx.shared.util.ConfigurationHelper;
 
 /**
  * <p>Title: ObjectNameSerializer</p>
- * <p>Description: An optimized kryo JMX ObjectName serializer</p> 
+ * <p>Description: An optimized kryo JMX ObjectName serializer.</p>
+ * <p>When the kryo carries an ObjectName {@link ChannelDictionary} (see {@link #installDictionary(Kryo)}), the first occurrence of a name 
+ * is sent with a newly assigned id and its canonical name. Later occurrences send only the id and the reader returns the <code>ObjectName</code>
+ * it parsed the first time. Kryo instances without a dictionary always send the canonical name.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>com.heliosapm.asyncjmx.shared.serialization.ObjectNameSerializer</code></p>
  */
 
 public class ObjectNameSerializer extends BaseSerializer<ObjectName> {
-	/** A map of ObjectName encodes keyed by the ObjectName */
-	protected static final Map<ObjectName, Integer> objectNameEncodes = new ConcurrentHashMap<ObjectName, Integer>();
-	/** A map of ObjectName decodes keyed by the int */
-	protected static final Map<Integer, ObjectName> objectNameDecodes = new ConcurrentHashMap<Integer, ObjectName>();
+	/** The kryo context key for the ObjectName dictionary */
+	public static final String DICTIONARY_KEY = ObjectNameSerializer.class.getName() + ".dictionary";
+	/** The conf property name for the maximum number of names a channel's dictionary will assign ids to */
+	public static final String CONFIG_DICTIONARY_SIZE = "com.heliosapm.asyncjmx.objectname.dictionary.size";
+	/** The default maximum number of names a channel's dictionary will assign ids to */
+	public static final int DEFAULT_DICTIONARY_SIZE = 16384;
+	
+	/** Format byte for a name sent as its canonical string */
+	public static final byte FORMAT_STRING = 0;
+	/** Format byte for a name sent as a previously assigned id */
+	public static final byte FORMAT_ID = 1;
+	/** Format byte for a name sent with a newly assigned id and its canonical string */
+	public static final byte FORMAT_DEFINE = 2;
+	
+	/**
+	 * Installs a new ObjectName dictionary into the passed kryo's context.
+	 * The kryo must only be used to write to, or only to read from, a single channel.
+	 * @param kryo The kryo to install the dictionary into
+	 */
+	public static void installDictionary(Kryo kryo) {
+		ChannelDictionary.install(kryo, DICTIONARY_KEY, ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_DICTIONARY_SIZE, DEFAULT_DICTIONARY_SIZE));
+	}
 	
 	@Override
 	protected void doWrite(Kryo kryo, Output output, ObjectName object) {
-		Integer encode = objectNameEncodes.get(object);
-		if(encode==null) {
-			output.writeByte(0);
-			output.writeString(object.getCanonicalName());
-		} else {
-			output.writeByte(1);
-			output.writeInt(encode);
+		final ChannelDictionary<ObjectName> dictionary = ChannelDictionary.get(kryo, DICTIONARY_KEY);
+		if(dictionary!=null) {
+			Integer id = dictionary.getId(object);
+			if(id!=null) {
+				output.writeByte(FORMAT_ID);
+				output.writeInt(id, true);
+				return;
+			}
+			int newId = dictionary.assign(object);
+			if(newId!=-1) {
+				output.writeByte(FORMAT_DEFINE);
+				output.writeInt(newId, true);
+				output.writeString(object.getCanonicalName());
+				return;
+			}
 		}
+		output.writeByte(FORMAT_STRING);
+		output.writeString(object.getCanonicalName());
 	}
 
 	@Override
 	protected ObjectName doRead(Kryo kryo, Input input, Class<ObjectName> type) {
-		byte format = input.readByte();
-		if(format==0) {
-			String os = input.readString();
-			try {
-				return new ObjectName(os);
-			} catch (Exception ex) {
-				throw new RuntimeException("Failed to create ObjectName from string [" + os + "]", ex);
-			}
+		final byte format = input.readByte();
+		if(format==FORMAT_STRING) {
+			return objectName(input.readString());
 		}
-		int key = input.readInt();
-		ObjectName on = objectNameDecodes.get(key);
-		if(on==null) {
-			throw new RuntimeException("Failed to decode ObjectName from int [" + key + "]");
+		final ChannelDictionary<ObjectName> dictionary = ChannelDictionary.get(kryo, DICTIONARY_KEY);
+		if(dictionary==null) throw new RuntimeException("Received a dictionary encoded ObjectName but the reader has no dictionary");
+		final int id = input.readInt(true);
+		if(format==FORMAT_DEFINE) {
+			final ObjectName on = objectName(input.readString());
+			dictionary.define(id, on);
+			return on;
+		}
+		return dictionary.getValue(id);
+	}
+	
+	/**
+	 * Parses the passed string into an ObjectName
+	 * @param os The ObjectName string
+	 * @return the parsed ObjectName
+	 */
+	protected static ObjectName objectName(String os) {
+		try {
+			return new ObjectName(os);
+		} catch (Exception ex) {
+			throw new RuntimeException("Failed to create ObjectName from string [" + os + "]", ex);
 		}
-		return on;
 	}
 
 	public static void main(String[] args) {
@@ -0,0 +1,667 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.shared.serialization;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.openmbean.ArrayType;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.JavaSerializer;
+import com.heliosapm.asyncjmx.shared.util.ConfigurationHelper;
+
+/**
+ * <p>Title: OpenTypeCodec</p>
+ * <p>Description: Compact native encoding of {@link OpenType}s and of composite and tabular data values written against a known type.</p>
+ * <p>When the kryo carries an OpenType {@link ChannelDictionary} (see {@link #installDictionary(Kryo)}), each distinct type is sent once per
+ * channel with a newly assigned id, and later occurrences send only a varint. Nested item, element and row types go through the dictionary 
+ * as well. Types are prefixed with a single varint tag: <code>0</code> for an inline type, <code>2n+1</code> for the definition of id <code>n</code> 
+ * followed by the type and <code>2n+2</code> for a reference to id <code>n</code>. OpenType equality ignores descriptions, so a type that equals
+ * one already in the dictionary but has different descriptions is always sent inline rather than as a reference to the other type's id.</p>
+ * <p>Decoded SimpleTypes are always the singletons, and decoded array, composite and tabular types are interned so equal types 
+ * read on different channels share one instance.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.shared.serialization.OpenTypeCodec</code></p>
+ */
+
+public class OpenTypeCodec {
+	/** The kryo context key for the OpenType dictionary */
+	public static final String DICTIONARY_KEY = OpenTypeCodec.class.getName() + ".dictionary";
+	/** The conf property name for the maximum number of OpenTypes a channel's dictionary will assign ids to */
+	public static final String CONFIG_DICTIONARY_SIZE = "com.heliosapm.asyncjmx.opentype.dictionary.size";
+	/** The default maximum number of OpenTypes a channel's dictionary will assign ids to */
+	public static final int DEFAULT_DICTIONARY_SIZE = 4096;
+	
+	/** The SimpleType singletons in wire order. Append only. */
+	public static final SimpleType<?>[] SIMPLE_TYPES = {
+		SimpleType.VOID, SimpleType.BOOLEAN, SimpleType.CHARACTER, SimpleType.BYTE, SimpleType.SHORT, SimpleType.INTEGER, 
+		SimpleType.LONG, SimpleType.FLOAT, SimpleType.DOUBLE, SimpleType.STRING, SimpleType.BIGDECIMAL, SimpleType.BIGINTEGER,
+		SimpleType.DATE, SimpleType.OBJECTNAME
+	};
+	/** The java classes of the SimpleTypes, indexed as {@link #SIMPLE_TYPES} */
+	protected static final Class<?>[] SIMPLE_CLASSES = new Class<?>[SIMPLE_TYPES.length];
+	/** Indicates if values of the SimpleType can be written without their class, indexed as {@link #SIMPLE_TYPES} */
+	protected static final boolean[] SIMPLE_FINAL = new boolean[SIMPLE_TYPES.length];
+	/** The wire index of each SimpleType */
+	protected static final Map<SimpleType<?>, Integer> SIMPLE_INDEXES = new HashMap<SimpleType<?>, Integer>(SIMPLE_TYPES.length);
+	
+	static {
+		for(int i = 0; i < SIMPLE_TYPES.length; i++) {
+			SIMPLE_INDEXES.put(SIMPLE_TYPES[i], i);
+			try {
+				SIMPLE_CLASSES[i] = Class.forName(SIMPLE_TYPES[i].getClassName());
+			} catch (ClassNotFoundException ex) {
+				throw new RuntimeException(ex);
+			}
+			SIMPLE_FINAL[i] = java.lang.reflect.Modifier.isFinal(SIMPLE_CLASSES[i].getModifiers());
+		}
+	}
+	
+	/** Kind byte for a SimpleType */
+	public static final byte KIND_SIMPLE = 0;
+	/** Kind byte for an ArrayType */
+	public static final byte KIND_ARRAY = 1;
+	/** Kind byte for a CompositeType */
+	public static final byte KIND_COMPOSITE = 2;
+	/** Kind byte for a TabularType */
+	public static final byte KIND_TABULAR = 3;
+	/** Kind byte for any other OpenType, which is java serialized */
+	public static final byte KIND_JAVA = 4;
+	
+	/** Serializer for OpenTypes without a native encoding */
+	private static final JavaSerializer javaSerializer = new JavaSerializer();
+	
+	/** The conf property name for the maximum number of decoded OpenTypes interned for sharing across channels */
+	public static final String CONFIG_INTERN_SIZE = "com.heliosapm.asyncjmx.opentype.intern.size";
+	/** The default maximum number of decoded OpenTypes interned for sharing across channels */
+	public static final int DEFAULT_INTERN_SIZE = 2048;
+	/** The maximum number of decoded OpenTypes interned */
+	protected static final int internSize = ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_INTERN_SIZE, DEFAULT_INTERN_SIZE);
+	/** The interned decoded OpenTypes */
+	protected static final ConcurrentMap<OpenType<?>, OpenType<?>> INTERNED = new ConcurrentHashMap<OpenType<?>, OpenType<?>>();
+	
+	/**
+	 * Installs a new OpenType dictionary into the passed kryo's context.
+	 * The kryo must only be used to write to, or only to read from, a single channel.
+	 * @param kryo The kryo to install the dictionary into
+	 */
+	public static void installDictionary(Kryo kryo) {
+		ChannelDictionary.install(kryo, DICTIONARY_KEY, ConfigurationHelper.getIntSystemThenEnvProperty(CONFIG_DICTIONARY_SIZE, DEFAULT_DICTIONARY_SIZE));
+	}
+	
+	/**
+	 * Writes an OpenType, as a dictionary reference if it, with the same descriptions, has already been sent on this kryo's channel
+	 * @param kryo The kryo
+	 * @param output The output to write to
+	 * @param type The type to write
+	 */
+	public static void writeOpenType(Kryo kryo, Output output, OpenType<?> type) {
+		final ChannelDictionary<OpenType<?>> dictionary = ChannelDictionary.get(kryo, DICTIONARY_KEY);
+		if(dictionary!=null) {
+			Integer id = dictionary.getId(type);
+			if(id!=null) {
+				if(sameDescriptions(dictionary.getValue(id), type)) {
+					output.writeInt((id << 1) + 2, true);
+					return;
+				}
+			} else {
+				int newId = dictionary.assign(type);
+				if(newId!=-1) {
+					output.writeInt((newId << 1) + 1, true);
+					writeNative(kryo, output, type);
+					return;
+				}
+			}
+		}
+		output.writeInt(0, true);
+		writeNative(kryo, output, type);
+	}
+	
+	/**
+	 * Reads an OpenType written by {@link #writeOpenType(Kryo, Output, OpenType)}
+	 * @param kryo The kryo
+	 * @param input The input to read from
+	 * @return the read type
+	 */
+	public static OpenType<?> readOpenType(Kryo kryo, Input input) {
+		final int tag = input.readInt(true);
+		if(tag==0) return readNative(kryo, input);
+		final ChannelDictionary<OpenType<?>> dictionary = ChannelDictionary.get(kryo, DICTIONARY_KEY);
+		if(dictionary==null) throw new RuntimeException("Received a dictionary encoded OpenType but the reader has no dictionary");
+		if((tag & 1)==0) return dictionary.getValue((tag - 2) >>> 1);
+		// the writer assigned this id before the ids of any nested types
+		final int id = tag >>> 1;
+		dictionary.reserve(id);
+		final OpenType<?> type = readNative(kryo, input);
+		dictionary.define(id, type);
+		return type;
+	}
+	
+	/**
+	 * Writes the native encoding of an OpenType
+	 * @param kryo The kryo
+	 * @param output The output to write to
+	 * @param type The type to write
+	 */
+	protected static void writeNative(Kryo kryo, Output output, OpenType<?> type) {
+		if(type instanceof SimpleType) {
+			output.writeByte(KIND_SIMPLE);
+			writeSimpleType(output, (SimpleType<?>)type);
+		} else if(type instanceof ArrayType) {
+			output.writeByte(KIND_ARRAY);
+			writeArrayType(kryo, output, (ArrayType<?>)type);
+		} else if(type instanceof CompositeType) {
+			output.writeByte(KIND_COMPOSITE);
+			writeCompositeType(kryo, output, (CompositeType)type);
+		} else if(type instanceof TabularType) {
+			output.writeByte(KIND_TABULAR);
+			writeTabularType(kryo, output, (TabularType)type);
+		} else {
+			output.writeByte(KIND_JAVA);
+			javaSerializer.write(kryo, output, type);
+		}
+	}
+	
+	/**
+	 * Reads the native encoding of an OpenType
+	 * @param kryo The kryo
+	 * @param input The input to read from
+	 * @return the read type
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	protected static OpenType<?> readNative(Kryo kryo, Input input) {
+		final byte kind = input.readByte();
+		switch(kind) {
+			case KIND_SIMPLE:
+				return readSimpleType(input);
+			case KIND_ARRAY:
+				return readArrayType(kryo, input);
+			case KIND_COMPOSITE:
+				return readCompositeType(kryo, input);
+			case KIND_TABULAR:
+				return readTabularType(kryo, input);
+			case KIND_JAVA:
+				return (OpenType<?>)javaSerializer.read(kryo, input, (Class)OpenType.class);
+			default:
+				throw new RuntimeException("Unrecognized OpenType kind [" + kind + "]");
+		}
+	}
+	
+	/**
+	 * Writes a SimpleType as its wire index
+	 * @param output The output to write to
+	 * @param type The type to write
+	 */
+	public static void writeSimpleType(Output output, SimpleType<?> type) {
+		final Integer index = SIMPLE_INDEXES.get(type);
+		if(index==null) throw new RuntimeException("Unrecognized SimpleType [" + type + "]");
+		output.writeByte(index);
+	}
+	
+	/**
+	 * Reads a SimpleType written by {@link #writeSimpleType(Output, SimpleType)}
+	 * @param input The input to read from
+	 * @return the SimpleType singleton
+	 */
+	public static SimpleType<?> readSimpleType(Input input) {
+		final byte index = input.readByte();
+		if(index < 0 || index >= SIMPLE_TYPES.length) throw new RuntimeException("Unrecognized SimpleType index [" + index + "]");
+		return SIMPLE_TYPES[index];
+	}
+	
+	/**
+	 * Writes an ArrayType as its dimension, primitive flag and element type
+	 * @param kryo The kryo
+	 * @param output The output to write to
+	 * @param type The type to write
+	 */
+	public static void writeArrayType(Kryo kryo, Output output, ArrayType<?> type) {
+		output.writeInt(type.getDimension(), true);
+		output.writeBoolean(type.isPrimitiveArray());
+		writeOpenType(kryo, output, type.getElementOpenType());
+	}
+	
+	/**
+	 * Reads an ArrayType written by {@link #writeArrayType(Kryo, Output, ArrayType)}
+	 * @param kryo The kryo
+	 * @param input The input to read from
+	 * @return the interned ArrayType
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public static ArrayType<?> readArrayType(Kryo kryo, Input input) {
+		final int dimension = input.readInt(true);
+		final boolean primitive = input.readBoolean();
+		final OpenType<?> elementType = readOpenType(kryo, input);
+		try {
+			if(primitive) {
+				final ArrayType<?> base = new ArrayType((SimpleType<?>)elementType, true);
+				return intern(dimension==1 ? base : new ArrayType(dimension - 1, base));
+			}
+			return intern(new ArrayType(dimension, elementType));
+		} catch (OpenDataException ex) {
+			throw new RuntimeException("Failed to rebuild ArrayType", ex);
+		}
+	}
+	
+	/**
+	 * Writes a CompositeType as its name, description and items, each item being a name, description and type
+	 * @param kryo The kryo
+	 * @param output The output to write to
+	 * @param type The type to write
+	 */
+	public static void writeCompositeType(Kryo kryo, Output output, CompositeType type) {
+		final Set<String> keys = type.keySet();
+		output.writeString(type.getTypeName());
+		output.writeString(type.getDescription());
+		output.writeInt(keys.size(), true);
+		for(String key: keys) {
+			output.writeString(key);
+			output.writeString(type.getDescription(key));
+			writeOpenType(kryo, output, type.getType(key));
+		}
+	}
+	
+	/**
+	 * Reads a CompositeType written by {@link #writeCompositeType(Kryo, Output, CompositeType)}
+	 * @param kryo The kryo
+	 * @param input The input to read from
+	 * @return the interned CompositeType
+	 */
+	public static CompositeType readCompositeType(Kryo kryo, Input input) {
+		final String typeName = input.readString();
+		final String description = input.readString();
+		final int size = input.readInt(true);
+		final String[] itemNames = new String[size];
+		final String[] itemDescriptions = new String[size];
+		final OpenType<?>[] itemTypes = new OpenType<?>[size];
+		for(int i = 0; i < size; i++) {
+			itemNames[i] = input.readString();
+			itemDescriptions[i] = input.readString();
+			itemTypes[i] = readOpenType(kryo, input);
+		}
+		try {
+			return intern(new CompositeType(typeName, description, itemNames, itemDescriptions, itemTypes));
+		} catch (OpenDataException ex) {
+			throw new RuntimeException("Failed to rebuild CompositeType [" + typeName + "]", ex);
+		}
+	}
+	
+	/**
+	 * Writes a TabularType as its name, description, row type and index names
+	 * @param kryo The kryo
+	 * @param output The output to write to
+	 * @param type The type to write
+	 */
+	public static void writeTabularType(Kryo kryo, Output output, TabularType type) {
+		final List<String> indexNames = type.getIndexNames();
+		output.writeString(type.getTypeName());
+		output.writeString(type.getDescription());
+		writeOpenType(kryo, output, type.getRowType());
+		output.writeInt(indexNames.size(), true);
+		for(String indexName: indexNames) {
+			output.writeString(indexName);
+		}
+	}
+	
+	/**
+	 * Reads a TabularType written by {@link #writeTabularType(Kryo, Output, TabularType)}
+	 * @param kryo The kryo
+	 * @param input The input to read from
+	 * @return the interned TabularType
+	 */
+	public static TabularType readTabularType(Kryo kryo, Input input) {
+		final String typeName = input.readString();
+		final String description = input.readString();
+		final CompositeType rowType = (CompositeType)readOpenType(kryo, input);
+		final String[] indexNames = new String[input.readInt(true)];
+		for(int i = 0; i < indexNames.length; i++) {
+			indexNames[i] = input.readString();
+		}
+		try {
+			return intern(new TabularType(typeName, description, rowType, indexNames));
+		} catch (OpenDataException ex) {
+			throw new RuntimeException("Failed to rebuild TabularType [" + typeName + "]", ex);
+		}
+	}
+	
+	/**
+	 * Returns the interned instance of the passed type, interning it if there is room.
+	 * OpenType equality ignores descriptions, so a previously interned equal type is only returned if its descriptions match as well.
+	 * @param type The type to intern
+	 * @return the interned instance or the passed type
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends OpenType<?>> T intern(T type) {
+		final OpenType<?> interned = INTERNED.get(type);
+		if(interned!=null) {
+			return sameDescriptions(interned, type) ? (T)interned : type;
+		}
+		if(INTERNED.size() < internSize) {
+			final OpenType<?> prior = INTERNED.putIfAbsent(type, type);
+			if(prior!=null && sameDescriptions(prior, type)) return (T)prior;
+		}
+		return type;
+	}
+	
+	/**
+	 * Determines if two equal OpenTypes also have the same descriptions
+	 * @param a One type
+	 * @param b The other type
+	 * @return true if the descriptions match
+	 */
+	protected static boolean sameDescriptions(OpenType<?> a, OpenType<?> b) {
+		if(a==b) return true;
+		if(!a.getDescription().equals(b.getDescription())) return false;
+		if(a instanceof CompositeType) {
+			final CompositeType ca = (CompositeType)a, cb = (CompositeType)b;
+			for(String key: ca.keySet()) {
+				if(!ca.getDescription(key).equals(cb.getDescription(key))) return false;
+				if(!sameDescriptions(ca.getType(key), cb.getType(key))) return false;
+			}
+			return true;
+		} else if(a instanceof TabularType) {
+			return sameDescriptions(((TabularType)a).getRowType(), ((TabularType)b).getRowType());
+		} else if(a instanceof ArrayType) {
+			return sameDescriptions(((ArrayType<?>)a).getElementOpenType(), ((ArrayType<?>)b).getElementOpenType());
+		}
+		return true;
+	}
+	
+	/**
+	 * Writes a CompositeData as its type followed by its raw item values. Values of simple types with final classes are written
+	 * without their class and nested composite values recurse, everything else is written with its class.
+	 * @param kryo The kryo
+	 * @param output The output to write to
+	 * @param cd The composite data to write
+	 */
+	public static void writeCompositeData(Kryo kryo, Output output, CompositeData cd) {
+		final CompositeType ct = cd.getCompositeType();
+		writeOpenType(kryo, output, ct);
+		for(String key: ct.keySet()) {
+			writeValue(kryo, output, ct.getType(key), cd.get(key));
+		}
+	}
+	
+	/**
+	 * Reads a CompositeData written by {@link #writeCompositeData(Kryo, Output, CompositeData)}
+	 * @param kryo The kryo
+	 * @param input The input to read from
+	 * @return the read composite data
+	 */
+	public static CompositeDataSupport readCompositeData(Kryo kryo, Input input) {
+		final CompositeType ct = (CompositeType)readOpenType(kryo, input);
+		final Set<String> keys = ct.keySet();
+		final String[] names = keys.toArray(new String[keys.size()]);
+		final Object[] values = new Object[names.length];
+		for(int i = 0; i < names.length; i++) {
+			values[i] = readValue(kryo, input, ct.getType(names[i]));
+		}
+		try {
+			return new CompositeDataSupport(ct, names, values);
+		} catch (OpenDataException ex) {
+			throw new RuntimeException("Failed to create CompositeDataSupport", ex);
+		}
+	}
+	
+	/**
+	 * Writes a TabularData column major: the tabular type once, the row count, then one section per row item holding 
+	 * that item's value for every row. Numeric, boolean and character columns are written as raw primitives behind a null bitmap
+	 * and string columns as bare strings, so row types, key lists and value classes are never repeated per row.
+	 * @param kryo The kryo
+	 * @param output The output to write to
+	 * @param td The tabular data to write
+	 */
+	public static void writeTabularData(Kryo kryo, Output output, TabularData td) {
+		final TabularType tt = td.getTabularType();
+		writeOpenType(kryo, output, tt);
+		final CompositeType ct = tt.getRowType();
+		final Set<String> keys = ct.keySet();
+		final String[] names = keys.toArray(new String[keys.size()]);
+		final int rowCount = td.size();
+		final Object[][] rows = new Object[rowCount][];
+		int r = 0;
+		for(Object row: td.values()) {
+			rows[r++] = ((CompositeData)row).getAll(names);
+		}
+		output.writeInt(rowCount, true);
+		for(int c = 0; c < names.length; c++) {
+			writeColumn(kryo, output, ct.getType(names[c]), rows, c);
+		}
+	}
+	
+	/**
+	 * Reads a TabularData written by {@link #writeTabularData(Kryo, Output, TabularData)}
+	 * @param kryo The kryo
+	 * @param input The input to read from
+	 * @return the read tabular data
+	 */
+	public static TabularDataSupport readTabularData(Kryo kryo, Input input) {
+		final TabularType tt = (TabularType)readOpenType(kryo, input);
+		final CompositeType ct = tt.getRowType();
+		final Set<String> keys = ct.keySet();
+		final String[] names = keys.toArray(new String[keys.size()]);
+		final int rowCount = input.readInt(true);
+		final Object[][] rows = new Object[rowCount][names.length];
+		for(int c = 0; c < names.length; c++) {
+			readColumn(kryo, input, ct.getType(names[c]), rows, c);
+		}
+		final CompositeData[] cds = new CompositeData[rowCount];
+		try {
+			for(int r = 0; r < rowCount; r++) {
+				cds[r] = new CompositeDataSupport(ct, names, rows[r]);
+			}
+		} catch (OpenDataException ex) {
+			throw new RuntimeException("Failed to create TabularData row", ex);
+		}
+		final TabularDataSupport tds = new TabularDataSupport(tt, Math.max(16, (int)(rowCount/0.75f) + 1), 0.75f);
+		tds.putAll(cds);
+		return tds;
+	}
+	
+	/**
+	 * Writes one column of tabular rows
+	 * @param kryo The kryo
+	 * @param output The output to write to
+	 * @param type The column's item type
+	 * @param rows The row values
+	 * @param c The column index
+	 */
+	protected static void writeColumn(Kryo kryo, Output output, OpenType<?> type, Object[][] rows, int c) {
+		final int rowCount = rows.length;
+		if(SimpleType.STRING.equals(type)) {
+			for(int r = 0; r < rowCount; r++) output.writeString((String)rows[r][c]);
+			return;
+		}
+		if(!isPrimitiveColumn(type)) {
+			for(int r = 0; r < rowCount; r++) writeValue(kryo, output, type, rows[r][c]);
+			return;
+		}
+		final boolean[] nulls = new boolean[rowCount];
+		boolean anyNull = false;
+		for(int r = 0; r < rowCount; r++) {
+			if(rows[r][c]==null) nulls[r] = anyNull = true;
+		}
+		output.writeBoolean(anyNull);
+		if(anyNull) writeBits(output, nulls);
+		if(SimpleType.BOOLEAN.equals(type)) {
+			final boolean[] bits = new boolean[rowCount];
+			for(int r = 0; r < rowCount; r++) bits[r] = !nulls[r] && (Boolean)rows[r][c];
+			writeBits(output, bits);
+			return;
+		}
+		for(int r = 0; r < rowCount; r++) {
+			if(nulls[r]) continue;
+			final Object v = rows[r][c];
+			if(SimpleType.INTEGER.equals(type)) output.writeInt((Integer)v, false);
+			else if(SimpleType.LONG.equals(type)) output.writeLong((Long)v, false);
+			else if(SimpleType.DOUBLE.equals(type)) output.writeDouble((Double)v);
+			else if(SimpleType.FLOAT.equals(type)) output.writeFloat((Float)v);
+			else if(SimpleType.SHORT.equals(type)) output.writeShort((Short)v);
+			else if(SimpleType.BYTE.equals(type)) output.writeByte((Byte)v);
+			else output.writeChar((Character)v);
+		}
+	}
+	
+	/**
+	 * Reads one column of tabular rows written by {@link #writeColumn(Kryo, Output, OpenType, Object[][], int)}
+	 * @param kryo The kryo
+	 * @param input The input to read from
+	 * @param type The column's item type
+	 * @param rows The row values to fill
+	 * @param c The column index
+	 */
+	protected static void readColumn(Kryo kryo, Input input, OpenType<?> type, Object[][] rows, int c) {
+		final int rowCount = rows.length;
+		if(SimpleType.STRING.equals(type)) {
+			for(int r = 0; r < rowCount; r++) rows[r][c] = input.readString();
+			return;
+		}
+		if(!isPrimitiveColumn(type)) {
+			for(int r = 0; r < rowCount; r++) rows[r][c] = readValue(kryo, input, type);
+			return;
+		}
+		final boolean[] nulls = input.readBoolean() ? readBits(input, rowCount) : null;
+		if(SimpleType.BOOLEAN.equals(type)) {
+			final boolean[] bits = readBits(input, rowCount);
+			for(int r = 0; r < rowCount; r++) {
+				if(nulls==null || !nulls[r]) rows[r][c] = bits[r];
+			}
+			return;
+		}
+		for(int r = 0; r < rowCount; r++) {
+			if(nulls!=null && nulls[r]) continue;
+			final Object v;
+			if(SimpleType.INTEGER.equals(type)) v = input.readInt(false);
+			else if(SimpleType.LONG.equals(type)) v = input.readLong(false);
+			else if(SimpleType.DOUBLE.equals(type)) v = input.readDouble();
+			else if(SimpleType.FLOAT.equals(type)) v = input.readFloat();
+			else if(SimpleType.SHORT.equals(type)) v = input.readShort();
+			else if(SimpleType.BYTE.equals(type)) v = input.readByte();
+			else v = input.readChar();
+			rows[r][c] = v;
+		}
+	}
+	
+	/**
+	 * Determines if a column of the passed type is written as raw primitives
+	 * @param type The column's item type
+	 * @return true for boolean, character and numeric primitive wrapper types
+	 */
+	protected static boolean isPrimitiveColumn(OpenType<?> type) {
+		return SimpleType.INTEGER.equals(type) || SimpleType.LONG.equals(type) || SimpleType.DOUBLE.equals(type) 
+			|| SimpleType.FLOAT.equals(type) || SimpleType.SHORT.equals(type) || SimpleType.BYTE.equals(type) 
+			|| SimpleType.BOOLEAN.equals(type) || SimpleType.CHARACTER.equals(type);
+	}
+	
+	/**
+	 * Writes the passed flags packed 8 to a byte
+	 * @param output The output to write to
+	 * @param bits The flags to write
+	 */
+	protected static void writeBits(Output output, boolean[] bits) {
+		for(int i = 0; i < bits.length; i += 8) {
+			int b = 0;
+			for(int j = 0; j < 8 && i + j < bits.length; j++) {
+				if(bits[i + j]) b |= 1 << j;
+			}
+			output.writeByte(b);
+		}
+	}
+	
+	/**
+	 * Reads flags written by {@link #writeBits(Output, boolean[])}
+	 * @param input The input to read from
+	 * @param count The number of flags
+	 * @return the read flags
+	 */
+	protected static boolean[] readBits(Input input, int count) {
+		final boolean[] bits = new boolean[count];
+		for(int i = 0; i < count; i += 8) {
+			final int b = input.readByte();
+			for(int j = 0; j < 8 && i + j < count; j++) {
+				bits[i + j] = (b & (1 << j))!=0;
+			}
+		}
+		return bits;
+	}
+	
+	/**
+	 * Writes a composite item value of the passed type
+	 * @param kryo The kryo
+	 * @param output The output to write to
+	 * @param type The item's declared type
+	 * @param value The value to write
+	 */
+	protected static void writeValue(Kryo kryo, Output output, OpenType<?> type, Object value) {
+		if(type instanceof SimpleType) {
+			final int index = SIMPLE_INDEXES.get(type);
+			if(SIMPLE_FINAL[index]) {
+				kryo.writeObjectOrNull(output, value, SIMPLE_CLASSES[index]);
+				return;
+			}
+		} else if(type instanceof CompositeType) {
+			output.writeBoolean(value!=null);
+			if(value!=null) writeCompositeData(kryo, output, (CompositeData)value);
+			return;
+		}
+		kryo.writeClassAndObject(output, value);
+	}
+	
+	/**
+	 * Reads a composite item value of the passed type
+	 * @param kryo The kryo
+	 * @param input The input to read from
+	 * @param type The item's declared type
+	 * @return the read value
+	 */
+	protected static Object readValue(Kryo kryo, Input input, OpenType<?> type) {
+		if(type instanceof SimpleType) {
+			final int index = SIMPLE_INDEXES.get(type);
+			if(SIMPLE_FINAL[index]) {
+				return kryo.readObjectOrNull(input, SIMPLE_CLASSES[index]);
+			}
+		} else if(type instanceof CompositeType) {
+			return input.readBoolean() ? readCompositeData(kryo, input) : null;
+		}
+		return kryo.readClassAndObject(input);
+	}
+}
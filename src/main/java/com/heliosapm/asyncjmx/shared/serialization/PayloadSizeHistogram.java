@@ -26,15 +26,19 @@ package com.heliosapm.asyncjmx.shared.serialization;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 
-import com.heliosapm.asyncjmx.shared.JMXOp;
-import com.heliosapm.asyncjmx.shared.JMXOpCode;
 import com.heliosapm.asyncjmx.shared.util.ConfigurationHelper;
-import com.heliosapm.asyncjmx.unsafe.collections.ConcurrentLongSlidingWindow;
 
 /**
  * <p>Title: PayloadSizeHistogram</p>
- * <p>Description: </p> 
+ * <p>Description: Estimates the serialized size of payloads from the sizes recently sampled for the same histogram key, 
+ * so encoders can size their buffers up front.</p>
+ * <p>Each key's sizes are counted in lock-free, thread striped, log-linear buckets. The stripes are merged lazily, every few samples,
+ * by whichever sampling thread wins the merge, which recomputes the configured percentile and then decays the counts so old
+ * samples age out. {@link #estimateSize(HistogramKeyProvider)} only reads the last computed estimate, so it is O(1) and allocation free.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>com.heliosapm.asyncjmx.shared.serialization.PayloadSizeHistogram</code></p>
@@ -43,9 +47,9 @@ import com.heliosapm.asyncjmx.unsafe.collections.ConcurrentLongSlidingWindow;
 
 public class PayloadSizeHistogram<T> {
 	/** A histogram of JMXOpCode serialization sizes */
-	protected Map<T, ConcurrentLongSlidingWindow> opSizeHistory = new ConcurrentHashMap<T, ConcurrentLongSlidingWindow>();
+	protected Map<T, SizeEstimator> opSizeHistory = new ConcurrentHashMap<T, SizeEstimator>();
 	
-	/** The sampling size, or the maximum number of samples kept to sample from */
+	/** The sampling size, or the approximate number of recent samples the estimate is computed from */
 	protected final int samplingSize;
 	/** The percentile of the samples to estimate a size from */
 	protected final int samplingPercentile;
@@ -67,11 +71,13 @@ public class PayloadSizeHistogram<T> {
 	
 	/**
 	 * Creates a new PayloadSizeHistogram
-	 * @param samplingSize The sampling size, or the maximum number of samples kept to sample from 
+	 * @param samplingSize The sampling size, or the approximate number of recent samples the estimate is computed from 
 	 * @param samplingPercentile The percentile of the samples to estimate a size from
 	 * @param defaultSize The default size to estimate if insufficient samples have been recorded
 	 */
 	public PayloadSizeHistogram(int samplingSize, int samplingPercentile, int defaultSize) {
+		if(samplingSize < 3) throw new IllegalArgumentException("Invalid sampling size [" + samplingSize + "]. Must be at least 3");
+		if(samplingPercentile < 1 || samplingPercentile > 100) throw new IllegalArgumentException("Invalid sampling percentile [" + samplingPercentile + "]. Must be between 1 and 100");
 		this.samplingSize = samplingSize;
 		this.samplingPercentile = samplingPercentile;
 		this.defaultSize = defaultSize;
@@ -95,19 +101,19 @@ public class PayloadSizeHistogram<T> {
 	 * @param keyProvider The HistogramKeyProvider to get the histogram for
 	 * @return the histogram
 	 */
-	protected ConcurrentLongSlidingWindow getJMXOpHistogram(HistogramKeyProvider<T> keyProvider) {
+	protected SizeEstimator getJMXOpHistogram(HistogramKeyProvider<T> keyProvider) {
 		final T histogramKey = keyProvider.getHistogramKey();		
-		ConcurrentLongSlidingWindow csw = opSizeHistory.get(keyProvider.getHistogramKey());
-		if(csw==null) {
+		SizeEstimator estimator = opSizeHistory.get(histogramKey);
+		if(estimator==null) {
 			synchronized(opSizeHistory) {
-				csw = opSizeHistory.get(histogramKey);
-				if(csw==null) {
-					csw = new ConcurrentLongSlidingWindow(DEFAULT_HISTOGRAM_SIZE);
-					opSizeHistory.put(histogramKey, csw);
+				estimator = opSizeHistory.get(histogramKey);
+				if(estimator==null) {
+					estimator = new SizeEstimator(samplingSize, samplingPercentile, defaultSize);
+					opSizeHistory.put(histogramKey, estimator);
 				}
 			}
 		}
-		return csw;
+		return estimator;
 	}
 	
 	
@@ -117,7 +123,9 @@ public class PayloadSizeHistogram<T> {
 	 * @param size The sampled size in bytes 
 	 */
 	public void sample(HistogramKeyProvider<T> keyProvider, int size) {
-		getJMXOpHistogram(keyProvider).insert(size);
+		final T histogramKey = keyProvider.getHistogramKey();
+		if(histogramKey==null || Void.class.isInstance(histogramKey)) return;
+		getJMXOpHistogram(keyProvider).sample(size);
 	}
 	
 	/**
@@ -128,9 +136,153 @@ public class PayloadSizeHistogram<T> {
 	public int estimateSize(HistogramKeyProvider<T> keyProvider) {
 		final T histogramKey = keyProvider.getHistogramKey();
 		if(histogramKey==null || Void.class.isInstance(histogramKey)) return keyProvider.getVoidHistogramSize();
-		ConcurrentLongSlidingWindow csw = getJMXOpHistogram(keyProvider);
-		if(csw.size() < 3) return DEFAULT_SIZE_ESTIMATE;
-		return (int)csw.percentile(DEFAULT_HISTOGRAM_PERCENTILE);
+		return getJMXOpHistogram(keyProvider).estimate();
+	}
+	
+	/**
+	 * <p>Title: SizeEstimator</p>
+	 * <p>Description: A lock-free streaming percentile estimator over log-linear size buckets.</p>
+	 * <p>Sizes under 8 get a bucket each. Larger sizes are bucketed by their highest set bit and the 3 bits below it, 
+	 * so a bucket spans at most an eighth of its lower bound, and estimates are rounded up to the bucket's upper bound so a buffer
+	 * sized from one is not undersized by the bucketing. Each sampling thread counts into one of a few stripes of buckets so
+	 * concurrent encoders do not contend on the same counters.</p> 
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.asyncjmx.shared.serialization.PayloadSizeHistogram.SizeEstimator</code></p>
+	 */
+	public static class SizeEstimator {
+		/** The number of sub-bucket bits per power of two */
+		static final int SUB_BITS = 3;
+		/** The number of sub-buckets per power of two */
+		static final int SUB_BUCKETS = 1 << SUB_BITS;
+		/** The number of buckets covering all non-negative int sizes */
+		static final int BUCKETS = (31 - SUB_BITS + 1) * SUB_BUCKETS;
+		/** The number of stripes, a power of two */
+		static final int STRIPES = Math.min(8, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors())));
+		/** The stripe index mask */
+		static final int STRIPE_MASK = STRIPES - 1;
+		
+		/** The bucket counts laid out stripe by stripe */
+		protected final AtomicIntegerArray counts = new AtomicIntegerArray(STRIPES * BUCKETS);
+		/** The number of samples since the last merge */
+		protected final AtomicLong pendingSamples = new AtomicLong(0L);
+		/** Held by the thread merging the stripes */
+		protected final AtomicBoolean merging = new AtomicBoolean(false);
+		/** The merged bucket counts, only touched by the merging thread */
+		protected final int[] merged = new int[BUCKETS];
+		/** The approximate number of recent samples the estimate is computed from */
+		protected final int samplingSize;
+		/** The percentile to estimate */
+		protected final int percentile;
+		/** The number of samples between merges */
+		protected final int mergeInterval;
+		/** The current estimate, the default size until 3 samples have been merged */
+		protected volatile int estimate;
+		/** Indicates if at least 3 samples have been merged */
+		protected volatile boolean primed = false;
+		
+		/**
+		 * Creates a new SizeEstimator
+		 * @param samplingSize The approximate number of recent samples the estimate is computed from
+		 * @param percentile The percentile to estimate
+		 * @param defaultSize The estimate until 3 samples have been recorded
+		 */
+		public SizeEstimator(int samplingSize, int percentile, int defaultSize) {
+			this.samplingSize = samplingSize;
+			this.percentile = percentile;
+			this.estimate = defaultSize;
+			mergeInterval = Math.max(1, samplingSize >> 3);
+		}
+		
+		/**
+		 * Returns the bucket the passed size is counted in
+		 * @param size The size
+		 * @return the bucket index
+		 */
+		public static int bucket(int size) {
+			if(size < SUB_BUCKETS) return size < 0 ? 0 : size;
+			final int msb = 31 - Integer.numberOfLeadingZeros(size);
+			return ((msb - SUB_BITS + 1) << SUB_BITS) + ((size >>> (msb - SUB_BITS)) & (SUB_BUCKETS - 1));
+		}
+		
+		/**
+		 * Returns the largest size counted in the passed bucket
+		 * @param bucket The bucket index
+		 * @return the bucket's upper bound
+		 */
+		public static int upperBound(int bucket) {
+			if(bucket < SUB_BUCKETS) return bucket;
+			final int shift = (bucket >> SUB_BITS) - 1;
+			final long lower = ((long)(SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1)))) << shift;
+			return (int)Math.min(Integer.MAX_VALUE, lower + (1L << shift) - 1);
+		}
+		
+		/**
+		 * Records a sampled size, merging the stripes if a merge is due
+		 * @param size The sampled size in bytes
+		 */
+		public void sample(int size) {
+			final int stripe = (int)Thread.currentThread().getId() & STRIPE_MASK;
+			counts.incrementAndGet(stripe * BUCKETS + bucket(size));
+			final long pending = pendingSamples.incrementAndGet();
+			if((pending >= mergeInterval || (!primed && pending >= 3)) && merging.compareAndSet(false, true)) {
+				try {
+					merge();
+				} finally {
+					merging.set(false);
+				}
+			}
+		}
+		
+		/**
+		 * Sums the stripes, recomputes the estimate and, once the counts cover the sampling size, halves them so older samples age out.
+		 * Only called by the thread holding {@link #merging}.
+		 */
+		protected void merge() {
+			pendingSamples.set(0L);
+			long total = 0;
+			for(int b = 0; b < BUCKETS; b++) {
+				int sum = 0;
+				for(int s = 0; s < STRIPES; s++) {
+					sum += counts.get(s * BUCKETS + b);
+				}
+				merged[b] = sum;
+				total += sum;
+			}
+			if(total < 3) return;
+			final long rank = (total * percentile + 99) / 100;
+			long cumulative = 0;
+			for(int b = 0; b < BUCKETS; b++) {
+				cumulative += merged[b];
+				if(cumulative >= rank) {
+					estimate = upperBound(b);
+					break;
+				}
+			}
+			primed = true;
+			if(total >= samplingSize) {
+				for(int i = 0; i < counts.length(); i++) {
+					final int c = counts.get(i);
+					if(c > 0) counts.addAndGet(i, -((c + 1) >> 1));
+				}
+			}
+		}
+		
+		/**
+		 * Returns the current size estimate
+		 * @return the estimated size in bytes
+		 */
+		public int estimate() {
+			return estimate;
+		}
+		
+		/**
+		 * Indicates if enough samples have been recorded for the estimate to be computed from them
+		 * @return true if the estimate is computed from samples, false if it is still the default
+		 */
+		public boolean isPrimed() {
+			return primed;
+		}
 	}
 
 }
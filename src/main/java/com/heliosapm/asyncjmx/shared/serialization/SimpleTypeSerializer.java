@@ -24,11 +24,6 @@
  */
 package com.heliosapm.asyncjmx.shared.serialization;
 
-import java.lang.reflect.Field;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-
 import javax.management.openmbean.SimpleType;
 
 import com.esotericsoftware.kryo.Kryo;
@@ -37,46 +32,22 @@ import com.esotericsoftware.kryo.io.Output;
 
 /**
  * <p>Title: SimpleTypeSerializer</p>
- * <p>Description: Serializer for {@link SimpleType} instances</p> 
+ * <p>Description: Serializer for {@link SimpleType} instances. Writes the type's fixed wire index and reads back the SimpleType singleton.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>com.heliosapm.asyncjmx.shared.serialization.SimpleTypeSerializer</code></p>
  */
 @SuppressWarnings("rawtypes")
 public class SimpleTypeSerializer extends BaseSerializer<SimpleType> {
-	
-	public static final Map<Byte, SimpleType> TYPES;
-	public static final Map<SimpleType, Byte> INDEXES;
-	
-	static {
-		try {
-			Map<Byte, SimpleType> tmp = new HashMap<Byte, SimpleType>(SimpleType.ALLOWED_CLASSNAMES_LIST.size());
-			Map<SimpleType, Byte> tmp2 = new HashMap<SimpleType, Byte>(SimpleType.ALLOWED_CLASSNAMES_LIST.size());
-			byte cnt = 0;
-			for(Field f: SimpleType.class.getDeclaredFields()) {
-				if(f.getType().equals(SimpleType.class)) {
-					SimpleType st = (SimpleType)f.get(null);
-					tmp.put(cnt, st);
-					tmp2.put(st, cnt);
-					cnt++;
-				}
-			}
-			TYPES = Collections.unmodifiableMap(tmp);
-			INDEXES = Collections.unmodifiableMap(tmp2);
-		} catch (Exception x) {
-			throw new RuntimeException(x);
-		}
-	}
-	
-	
+
 	@Override
 	protected void doWrite(Kryo kryo, Output output, SimpleType st) {
-		output.writeByte(INDEXES.get(st));		
+		OpenTypeCodec.writeSimpleType(output, st);
 	}
 
 	@Override
 	protected SimpleType doRead(Kryo kryo, Input input, Class<SimpleType> type) {
-		return TYPES.get(input.readByte());
+		return OpenTypeCodec.readSimpleType(input);
 	}
 
 }
@@ -24,14 +24,7 @@
  */
 package com.heliosapm.asyncjmx.shared.serialization;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
-
 import javax.management.openmbean.TabularDataSupport;
-import javax.management.openmbean.TabularType;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.Input;
@@ -39,7 +32,7 @@ import com.esotericsoftware.kryo.io.Output;
 
 /**
  * <p>Title: TabularDataSupportSerializer</p>
- * <p>Description: Serializer for {@link TabularDataSupport} instances</p> 
+ * <p>Description: Serializer for {@link TabularDataSupport} instances, written column major by {@link OpenTypeCodec#writeTabularData(Kryo, Output, javax.management.openmbean.TabularData)}</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>com.heliosapm.asyncjmx.shared.serialization.TabularDataSupportSerializer</code></p>
@@ -49,63 +42,13 @@ public class TabularDataSupportSerializer extends BaseSerializer<TabularDataSupp
 
 	@Override
 	protected void doWrite(Kryo kryo, Output output, TabularDataSupport tds) {
-		final String ind = ind();
-		log.debug("%s Writing TabularDataSupport [%s]", ind, tds.getTabularType().getDescription());
-		kryo.writeClassAndObject(output, tds.getTabularType());		
-		int size = tds.size();
-		log.debug("%s Writing TabularDataSupport Size:[%s]", ind, size);
-		output.writeInt(size);
-		for(Map.Entry<Object, Object> entry: tds.entrySet()) {
-			List<String> keys = (List<String>)entry.getKey();
-			kryo.writeClassAndObject(output, new ArrayList<String>(keys));
-			kryo.writeClassAndObject(output, entry.getValue());
-		}
-//		output.flush();
-//		for(Object key: tds.keySet()) {
-//			String[] keys = ((List<String>)key).toArray(new String[0]);
-//			Object value = ((CompositeDataSupport)tds.get(keys)).get("value");
-//			kryo.writeClassAndObject(output, keys);
-//			kryo.writeClassAndObject(output, value);
-//			log.debug("Key/Value:[%s]--[%s]", Arrays.toString(keys), value);
-//		}
+		log.debug("%s Writing TabularDataSupport [%s] Size:[%s]", ind(), tds.getTabularType().getDescription(), tds.size());
+		OpenTypeCodec.writeTabularData(kryo, output, tds);
 	}
 
 	@Override
 	protected TabularDataSupport doRead(Kryo kryo, Input input, Class<TabularDataSupport> type) {
-		final String ind = ind();
-		try {
-//			kryo.setReferences(true);			
-			TabularType ttype = (TabularType)kryo.readClassAndObject(input);
-			int size = input.readInt();
-			log.debug("%s Read TabularDataSupport Size:[%s]", ind, size);
-			TabularDataSupport tds = new TabularDataSupport(ttype, size, 0.75f);
-			Map<Object, Object> tdsValues = new LinkedHashMap<Object, Object>(size);
-			for(int i = 0; i < size; i++) {
-				Object key = kryo.readClassAndObject(input);
-				Object value = kryo.readClassAndObject(input);
-				List<String> keys = (List<String>)key;
-				
-				tdsValues.put(Collections.unmodifiableList(keys), value);
-			}
-			tds.putAll(tdsValues);
-//			CompositeType ct = ttype.getRowType();
-//			String[] ctKeys = ct.keySet().toArray(new String[0]);
-//			for(int i = 0; i < size; i++) {
-//				String[] key = (String[])kryo.readClassAndObject(input);
-//				log.debug("Read Key [%s]", Arrays.toString(key));
-//				Object value = kryo.readClassAndObject(input);
-//				log.debug("Read Value [%s]", value);
-//				try {
-//					CompositeDataSupport cds = new CompositeDataSupport(ttype.getRowType(), ctKeys, new Object[] {key[0], value}); 
-//					tds.put(cds);
-//				} catch (Exception ex) {
-//					log.warn("Failed to process CDS for tabular type: %s", ex.toString());
-//				}
-//			}
-			return tds;
-		} finally {
-//			kryo.setReferences(false);
-		}
+		return OpenTypeCodec.readTabularData(kryo, input);
 	}
 
 }
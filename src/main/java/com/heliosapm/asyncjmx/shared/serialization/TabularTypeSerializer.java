@@ -24,8 +24,6 @@
  */
 package com.heliosapm.asyncjmx.shared.serialization;
 
-import javax.management.openmbean.CompositeType;
-import javax.management.openmbean.OpenDataException;
 import javax.management.openmbean.TabularType;
 
 import com.esotericsoftware.kryo.Kryo;
@@ -34,40 +32,21 @@ import com.esotericsoftware.kryo.io.Output;
 
 /**
  * <p>Title: TabularTypeSerializer</p>
- * <p>Description: Serializer for {@link TabularType} instances.</p> 
+ * <p>Description: Serializer for {@link TabularType} instances. The row type is written through the {@link OpenTypeCodec}.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>com.heliosapm.asyncjmx.shared.serialization.TabularTypeSerializer</code></p>
  */
-
 public class TabularTypeSerializer extends BaseSerializer<TabularType> {
+
 	@Override
 	protected void doWrite(Kryo kryo, Output output, TabularType tType) {
-		output.writeString(tType.getTypeName());
-		output.writeString(tType.getDescription());
-		int indexCount = tType.getIndexNames().size();
-		output.writeInt(indexCount);
-		for(String s: tType.getIndexNames()) {
-			output.writeString(s);
-		}
-		kryo.writeClassAndObject(output, tType.getRowType());		
+		OpenTypeCodec.writeTabularType(kryo, output, tType);
 	}
 
 	@Override
 	protected TabularType doRead(Kryo kryo, Input input, Class<TabularType> type) {
-		String typeName = input.readString();
-		String description = input.readString();
-		int indexCount = input.readInt();
-		String[] indexNames = new String[indexCount];
-		for(int i = 0; i < indexCount; i++) {
-			indexNames[i] = input.readString();
-		}
-		CompositeType ct = (CompositeType)kryo.readClassAndObject(input);
-		try {
-			return new TabularType(typeName, description, ct, indexNames);
-		} catch (OpenDataException e) {
-			throw new RuntimeException(e);
-		}
+		return OpenTypeCodec.readTabularType(kryo, input);
 	}
 
 }
@@ -64,6 +64,8 @@ public class JMXHelper {
 	/** Regex WildCard Support Pattern for ObjectName key values */
 	public static final Pattern OBJECT_NAME_KP_WILDCARD = Pattern.compile("[:|,](\\S+?)~=\\[(\\S+?)\\]");
 	
+	/** The default delimiter for composite type compound attribute names */
+	public static final String DEFAULT_COMPOUND_DELIMITER = "/";
 	/** An object name filter that maps to all registered MBeans */
 	public static final ObjectName ALL_MBEANS_FILTER = objectName("*:*");
 
@@ -846,6 +848,20 @@ while(m.find()) {
 	 * TODO: Collections / Maps / Arrays --> ref by index
 	 */
 	public static Map<ObjectName, Map<String, Object>> getMBeanAttributeMap(MBeanServerConnection server, ObjectName objectName, String delimeter, String...attributeNames) {
+		return getMBeanAttributeMap(server, objectName, null, delimeter, attributeNames);
+	}
+	
+	/**
+	 * Retrieves maps of attribute values keyed by attribute name, in turn keyed by the ObjectName of the MBean.
+	 * MBeans for which the attributes cannot be read, or which return no attributes, are omitted.
+	 * @param server An MBeanServerConnection
+	 * @param objectName An ObjectName which can be absolute or a wildcard.
+	 * @param query An optional query expression to further filter the MBeans selected by <code>objectName</code>
+	 * @param delimeter The delimeter for composite type compound names
+	 * @param attributeNames An array of absolute or compound attribute names.
+	 * @return a map of results.
+	 */
+	public static Map<ObjectName, Map<String, Object>> getMBeanAttributeMap(MBeanServerConnection server, ObjectName objectName, QueryExp query, String delimeter, String...attributeNames) {
 		if(server==null) throw new RuntimeException("MBeanServerConnection was null", new Throwable());
 		if(objectName==null) throw new RuntimeException("ObjectName was null", new Throwable());
 		if(attributeNames==null || attributeNames.length<1) throw new RuntimeException("Attribute names array was null or zero length", new Throwable());
@@ -864,7 +880,7 @@ while(m.find()) {
 		}
 		Map<ObjectName, Map<String, Object>> map = new HashMap<ObjectName, Map<String, Object>>();		
 		try {
-			for(ObjectName on: server.queryNames(objectName, null)) {
+			for(ObjectName on: server.queryNames(objectName, query)) {
 				AttributeList attrs = null;
 				try {
 					attrs = server.getAttributes(on, rootNames);
@@ -1040,7 +1056,7 @@ while(m.find()) {
 	 * @return the attribute value or null.
 	 */
 	public static Object getAttribute(MBeanServerConnection conn, ObjectName objectName, String...attrs) {
-		return getAttribute(conn, "/", objectName, attrs);
+		return getAttribute(conn, DEFAULT_COMPOUND_DELIMITER, objectName, attrs);
 	}
 	
 	/**
@@ -0,0 +1,226 @@
+/**
+ * Helios, OpenSource Monitoring
+ * Brought to you by the Helios Development Group
+ *
+ * Copyright 2014, Helios Development Group and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org. 
+ *
+ */
+package com.heliosapm.asyncjmx.shared.util;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Title: PendingRequestTable</p>
+ * <p>Description: A lock-free table of pending synchronous requests. Each request occupies the slot indexed by its request id
+ * (the op sequence) within a pre-sized power of 2 ring. Slot state transitions are made with a CAS on a tag combining the
+ * request id and the slot state, the response is handed over in place and the parked waiter is unparked directly,
+ * so a request round trip allocates nothing in the table.</p>
+ * <p>A slot is reclaimed by the waiter once it has taken the response, or when the wait times out or is interrupted,
+ * so a late response for an abandoned request is discarded rather than left behind.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.shared.util.PendingRequestTable</code></p>
+ */
+
+public class PendingRequestTable {
+	/** The slot tags, being the request id in the high int and the slot state in the low int */
+	protected final AtomicLongArray tags;
+	/** The slot waiting threads */
+	protected final Thread[] waiters;
+	/** The slot responses */
+	protected final Object[] results;
+	/** The slot index mask */
+	protected final int mask;
+	
+	/** Slot state for a free slot */
+	public static final int FREE = 0;
+	/** Slot state for a registered request waiting on a response */
+	public static final int PENDING = 1;
+	/** Slot state for a slot whose response is being handed over */
+	public static final int COMPLETING = 2;
+	/** Slot state for a slot whose response is ready to be taken */
+	public static final int COMPLETE = 3;
+	
+	/** The park time in ns. while waiting for an occupied slot to be reclaimed */
+	protected static final long SLOT_WAIT_NS = 10000;
+	
+	/**
+	 * Creates a new PendingRequestTable
+	 * @param size The number of slots, rounded up to the next power of 2
+	 */
+	public PendingRequestTable(int size) {
+		if(size<1) throw new IllegalArgumentException("Invalid size [" + size + "]");
+		int sz = Integer.highestOneBit(size);
+		if(sz<size) sz <<= 1;
+		tags = new AtomicLongArray(sz);
+		waiters = new Thread[sz];
+		results = new Object[sz];
+		mask = sz-1;
+	}
+	
+	/**
+	 * Computes a slot tag
+	 * @param requestId The request id
+	 * @param state The slot state
+	 * @return the tag
+	 */
+	protected static long tag(int requestId, int state) {
+		return ((long)requestId << 32) | state;
+	}
+	
+	/**
+	 * Registers the calling thread as the waiter for the response to the passed request id.
+	 * Must be called before the request is written so a response arriving ahead of the waiter is not dropped.
+	 * If the slot is still held by an older request, waits for it to be reclaimed.
+	 * @param requestId The request id of the response to wait for
+	 * @param timeout The maximum time to wait for the slot in ms.
+	 * @throws TimeoutException thrown if the slot is not reclaimed within the timeout
+	 */
+	public void register(int requestId, long timeout) throws TimeoutException {
+		final int slot = requestId & mask;
+		final long pending = tag(requestId, PENDING);
+		// the waiter is published after the CAS: no response can arrive before the request is written
+		if(tags.compareAndSet(slot, FREE, pending)) {
+			waiters[slot] = Thread.currentThread();
+			return;
+		}
+		final long deadline = System.nanoTime() + timeout * 1000000L;
+		while(!tags.compareAndSet(slot, FREE, pending)) {
+			if(System.nanoTime() - deadline >= 0) {
+				throw new TimeoutException("Timed out waiting for slot [" + slot + "] for request [" + requestId + "]");
+			}
+			LockSupport.parkNanos(this, SLOT_WAIT_NS);
+		}
+		waiters[slot] = Thread.currentThread();
+	}
+	
+	/**
+	 * Completes the request with the passed id and unparks the waiting thread
+	 * @param requestId The request id
+	 * @param result The response, which may be a throwable to be thrown to the waiter 
+	 * @return true if the request was pending, false if it is unknown or was abandoned
+	 */
+	public boolean complete(int requestId, Object result) {
+		final int slot = requestId & mask;
+		if(!tags.compareAndSet(slot, tag(requestId, PENDING), tag(requestId, COMPLETING))) return false;
+		results[slot] = result;
+		final Thread waiter = waiters[slot];
+		tags.set(slot, tag(requestId, COMPLETE));
+		LockSupport.unpark(waiter);
+		return true;
+	}
+	
+	/**
+	 * Completes every pending request with the passed throwable, e.g. when the underlying channel is closed
+	 * @param t The throwable to complete with
+	 * @return the number of requests completed
+	 */
+	public int completeAll(Throwable t) {
+		int cnt = 0;
+		final int size = tags.length();
+		for(int i = 0; i < size; i++) {
+			final long tag = tags.get(i);
+			if((int)tag==PENDING && complete((int)(tag >>> 32), t)) cnt++;
+		}
+		return cnt;
+	}
+	
+	/**
+	 * Waits for the response to the passed request id which must have been previously {@link #register(int, long) registered}
+	 * by the calling thread, and reclaims the slot.
+	 * @param requestId The request id of the response we're waiting for 
+	 * @param timeout The timeout in ms.
+	 * @return The response
+	 * @throws InterruptedException thrown if the waiting thread is interrupted while waiting
+	 * @throws TimeoutException thrown if the response does not arrive within the timeout
+	 */
+	public Object waitFor(int requestId, long timeout) throws InterruptedException, TimeoutException {
+		final int slot = requestId & mask;
+		final long complete = tag(requestId, COMPLETE);
+		final long deadline = System.nanoTime() + timeout * 1000000L;
+		while(true) {
+			final long tag = tags.get(slot);
+			if(tag==complete) {
+				return take(slot);
+			}
+			if(tag!=tag(requestId, COMPLETING)) {
+				if(Thread.interrupted()) {
+					if(abandon(slot, requestId)) throw new InterruptedException();
+					continue;
+				}
+				final long remaining = deadline - System.nanoTime();
+				if(remaining<=0) {
+					if(abandon(slot, requestId)) throw new TimeoutException("Timed out waiting for response to request [" + requestId + "] on thread [" + Thread.currentThread().getName() + "]");
+					continue;
+				}
+				LockSupport.parkNanos(this, remaining);
+			}
+		}
+	}
+	
+	/**
+	 * Takes the response from a completed slot and frees it
+	 * @param slot The slot index
+	 * @return the response
+	 */
+	protected Object take(final int slot) {
+		final Object result = results[slot];
+		results[slot] = null;
+		waiters[slot] = null;
+		tags.set(slot, FREE);
+		return result;		
+	}
+	
+	/**
+	 * Frees a slot whose request is still pending
+	 * @param slot The slot index
+	 * @param requestId The request id
+	 * @return true if the slot was freed, false if a response is being handed over
+	 */
+	protected boolean abandon(final int slot, final int requestId) {
+		waiters[slot] = null;
+		if(tags.compareAndSet(slot, tag(requestId, PENDING), FREE)) return true;
+		waiters[slot] = Thread.currentThread();
+		return false;
+	}
+	
+	/**
+	 * Returns the number of slots in the table
+	 * @return the number of slots
+	 */
+	public int size() {
+		return tags.length();
+	}
+	
+	/**
+	 * Returns the number of occupied slots
+	 * @return the number of occupied slots
+	 */
+	public int getPendingCount() {
+		int cnt = 0;
+		final int size = tags.length();
+		for(int i = 0; i < size; i++) {
+			if(tags.get(i)!=FREE) cnt++;
+		}
+		return cnt;
+	}
+}
@@ -0,0 +1,224 @@
+/** Helios Development Group LLC, 2013 */
+package com.heliosapm.asyncjmx.unsafe.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Title: ConcurrentIntObjectHashMap</p>
+ * <p>Description: A thread safe map of primitive int keys to non-null object values, striped over a power of two number of 
+ * {@link IntObjectHashMap} segments, each guarded by its own monitor. Keys are spread over the segments by the high bits of their hash 
+ * and over each segment's slots by the low bits, so concurrent operations on different keys rarely meet on the same monitor.
+ * Bulk reads such as {@link #values()} and {@link #size()} visit the segments one at a time and are not atomic snapshots.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.unsafe.collections.ConcurrentIntObjectHashMap</code></p>
+ * @param <V> The value type
+ */
+public class ConcurrentIntObjectHashMap<V> {
+	/** The default number of segments */
+	public static final int DEFAULT_SEGMENTS = 16;
+	
+	/** The segments */
+	protected final IntObjectHashMap<V>[] segments;
+	/** The number of bits the hash is shifted right by to select a segment */
+	protected final int segmentShift;
+	
+	/**
+	 * Creates a new ConcurrentIntObjectHashMap with {@link #DEFAULT_SEGMENTS} segments and the default segment capacity
+	 */
+	public ConcurrentIntObjectHashMap() {
+		this(DEFAULT_SEGMENTS, DEFAULT_SEGMENTS * IntObjectHashMap.DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Creates a new ConcurrentIntObjectHashMap
+	 * @param segmentCount The number of segments, rounded up to a power of two
+	 * @param initialCapacity The number of entries the map should hold before its segments start growing
+	 */
+	@SuppressWarnings({"unchecked","rawtypes"})
+	public ConcurrentIntObjectHashMap(int segmentCount, int initialCapacity) {
+		if(segmentCount < 1) throw new IllegalArgumentException("Invalid segment count [" + segmentCount + "]");
+		final int count = segmentCount==1 ? 1 : Integer.highestOneBit(segmentCount - 1) << 1;
+		segments = new IntObjectHashMap[count];
+		final int perSegment = Math.max(1, (initialCapacity + count - 1) / count);
+		for(int i = 0; i < count; i++) {
+			segments[i] = new IntObjectHashMap<V>(perSegment);
+		}
+		segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+	}
+	
+	/**
+	 * Returns the segment the passed key belongs to
+	 * @param key The key
+	 * @return the segment
+	 */
+	protected final IntObjectHashMap<V> segmentFor(int key) {
+		if(segments.length==1) return segments[0];
+		final int h = key * 0x9E3779B9;
+		return segments[h >>> segmentShift];
+	}
+	
+	/**
+	 * Returns the value mapped to the passed key
+	 * @param key The key
+	 * @return the value, or null if the key is not in the map
+	 */
+	public V get(int key) {
+		final IntObjectHashMap<V> segment = segmentFor(key);
+		synchronized(segment) {
+			return segment.get(key);
+		}
+	}
+	
+	/**
+	 * Indicates if the passed key is in the map
+	 * @param key The key
+	 * @return true if the key is in the map, false otherwise
+	 */
+	public boolean containsKey(int key) {
+		final IntObjectHashMap<V> segment = segmentFor(key);
+		synchronized(segment) {
+			return segment.containsKey(key);
+		}
+	}
+	
+	/**
+	 * Maps the passed key to the passed value
+	 * @param key The key
+	 * @param value The value, which must not be null
+	 * @return the value previously mapped to the key, or null if there was none
+	 */
+	public V put(int key, V value) {
+		final IntObjectHashMap<V> segment = segmentFor(key);
+		synchronized(segment) {
+			return segment.put(key, value);
+		}
+	}
+	
+	/**
+	 * Maps the passed key to the passed value if the key is not already in the map
+	 * @param key The key
+	 * @param value The value, which must not be null
+	 * @return the value already mapped to the key, or null if the value was put
+	 */
+	public V putIfAbsent(int key, V value) {
+		final IntObjectHashMap<V> segment = segmentFor(key);
+		synchronized(segment) {
+			return segment.putIfAbsent(key, value);
+		}
+	}
+	
+	/**
+	 * Removes the mapping for the passed key
+	 * @param key The key
+	 * @return the removed value, or null if the key was not in the map
+	 */
+	public V remove(int key) {
+		final IntObjectHashMap<V> segment = segmentFor(key);
+		synchronized(segment) {
+			return segment.remove(key);
+		}
+	}
+	
+	/**
+	 * Removes the mapping for the passed key only if it is mapped to the passed value
+	 * @param key The key
+	 * @param value The value the key must be mapped to
+	 * @return true if the mapping was removed
+	 */
+	public boolean remove(int key, V value) {
+		final IntObjectHashMap<V> segment = segmentFor(key);
+		synchronized(segment) {
+			return segment.remove(key, value);
+		}
+	}
+	
+	/**
+	 * Returns a copy of the values in the map
+	 * @return a list of the values
+	 */
+	public List<V> values() {
+		final List<V> list = new ArrayList<V>();
+		for(IntObjectHashMap<V> segment: segments) {
+			synchronized(segment) {
+				list.addAll(segment.values());
+			}
+		}
+		return list;
+	}
+	
+	/**
+	 * Removes all the entries, returning the removed values. Each value is returned by exactly one drain or remove.
+	 * @return a list of the removed values
+	 */
+	public List<V> drain() {
+		final List<V> list = new ArrayList<V>();
+		for(IntObjectHashMap<V> segment: segments) {
+			synchronized(segment) {
+				list.addAll(segment.drain());
+			}
+		}
+		return list;
+	}
+	
+	/**
+	 * Removes all the entries
+	 */
+	public void clear() {
+		for(IntObjectHashMap<V> segment: segments) {
+			synchronized(segment) {
+				segment.clear();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of entries
+	 * @return the number of entries
+	 */
+	public int size() {
+		int size = 0;
+		for(IntObjectHashMap<V> segment: segments) {
+			synchronized(segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * Indicates if the map is empty
+	 * @return true if the map is empty, false otherwise
+	 */
+	public boolean isEmpty() {
+		return size()==0;
+	}
+	
+	/**
+	 * Frees the key memory of every segment. The map must not be used afterwards.
+	 */
+	public void destroy() {
+		for(IntObjectHashMap<V> segment: segments) {
+			segment.destroy();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder b = new StringBuilder("[");
+		for(IntObjectHashMap<V> segment: segments) {
+			synchronized(segment) {
+				if(!segment.isEmpty()) {
+					if(b.length() > 1) b.append(", ");
+					b.append(segment);
+				}
+			}
+		}
+		return b.append(']').toString();
+	}
+}
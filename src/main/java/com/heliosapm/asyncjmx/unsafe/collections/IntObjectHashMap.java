@@ -0,0 +1,330 @@
+/** Helios Development Group LLC, 2013 */
+package com.heliosapm.asyncjmx.unsafe.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.heliosapm.asyncjmx.unsafe.UnsafeAdapter;
+
+/**
+ * <p>Title: IntObjectHashMap</p>
+ * <p>Description: An open addressing, linear probing hash map of primitive int keys to non-null object values. The keys are held 
+ * in direct memory and the values in a parallel object array, so lookups neither box the key nor chase an entry object.
+ * Removals shift the following entries of the probe run back rather than leaving tombstones.</p>
+ * <p><b><font color='red'>!!  NOTE !!&nbsp;&nbsp;</font>:&nbsp;&nbsp;</b>This class is not thread safe. Use {@link ConcurrentIntObjectHashMap} 
+ * for maps shared between threads.</p>
+ * <p>The key memory is freed by {@link #destroy()}, or when the map is finalized if it was never destroyed.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.unsafe.collections.IntObjectHashMap</code></p>
+ * @param <V> The value type
+ */
+public class IntObjectHashMap<V> {
+	/** The default initial capacity */
+	public static final int DEFAULT_CAPACITY = 16;
+	/** The maximum ratio of entries to slots before the map grows */
+	public static final float LOAD_FACTOR = 0.6f;
+	
+	/** The address of the key slots */
+	protected long address;
+	/** The value slots. A null value marks a free slot. */
+	protected Object[] values;
+	/** The slot index mask */
+	protected int mask;
+	/** The number of entries */
+	protected int size = 0;
+	/** The number of entries at which the map grows */
+	protected int threshold;
+	
+	/**
+	 * Creates a new IntObjectHashMap with the {@link #DEFAULT_CAPACITY}
+	 */
+	public IntObjectHashMap() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Creates a new IntObjectHashMap
+	 * @param initialCapacity The number of entries the map should hold before growing
+	 */
+	public IntObjectHashMap(int initialCapacity) {
+		if(initialCapacity < 0) throw new IllegalArgumentException("Invalid initial capacity [" + initialCapacity + "]");
+		allocate(slotsFor(initialCapacity));
+	}
+	
+	/**
+	 * Returns the power of two number of slots needed to hold the passed number of entries within the load factor
+	 * @param entries The number of entries
+	 * @return the number of slots
+	 */
+	static int slotsFor(int entries) {
+		final int needed = Math.max(4, (int)Math.ceil(entries / LOAD_FACTOR));
+		return Integer.highestOneBit(needed - 1) << 1;
+	}
+	
+	/**
+	 * Allocates empty key and value slots
+	 * @param slots The number of slots, a power of two
+	 */
+	protected void allocate(int slots) {
+		address = UnsafeAdapter.allocateMemory(((long)slots) << 2);
+		values = new Object[slots];
+		mask = slots - 1;
+		threshold = (int)(slots * LOAD_FACTOR);
+	}
+	
+	/**
+	 * Returns the home slot of the passed key
+	 * @param key The key
+	 * @return the slot index
+	 */
+	protected final int home(int key) {
+		final int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+	
+	/**
+	 * Returns the key in the passed slot
+	 * @param slot The slot index
+	 * @return the key
+	 */
+	protected final int keyAt(int slot) {
+		return UnsafeAdapter.getInt(address + (((long)slot) << 2));
+	}
+	
+	/**
+	 * Sets the key in the passed slot
+	 * @param slot The slot index
+	 * @param key The key
+	 */
+	protected final void keyAt(int slot, int key) {
+		UnsafeAdapter.putInt(address + (((long)slot) << 2), key);
+	}
+	
+	/**
+	 * Returns the slot holding the passed key
+	 * @param key The key
+	 * @return the slot index, or -1 if the key is not in the map
+	 */
+	protected int find(int key) {
+		int slot = home(key);
+		while(values[slot]!=null) {
+			if(keyAt(slot)==key) return slot;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns the value mapped to the passed key
+	 * @param key The key
+	 * @return the value, or null if the key is not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		final int slot = find(key);
+		return slot==-1 ? null : (V)values[slot];
+	}
+	
+	/**
+	 * Indicates if the passed key is in the map
+	 * @param key The key
+	 * @return true if the key is in the map, false otherwise
+	 */
+	public boolean containsKey(int key) {
+		return find(key)!=-1;
+	}
+	
+	/**
+	 * Maps the passed key to the passed value
+	 * @param key The key
+	 * @param value The value, which must not be null
+	 * @return the value previously mapped to the key, or null if there was none
+	 */
+	public V put(int key, V value) {
+		return put(key, value, false);
+	}
+	
+	/**
+	 * Maps the passed key to the passed value if the key is not already in the map
+	 * @param key The key
+	 * @param value The value, which must not be null
+	 * @return the value already mapped to the key, or null if the value was put
+	 */
+	public V putIfAbsent(int key, V value) {
+		return put(key, value, true);
+	}
+	
+	/**
+	 * Maps the passed key to the passed value
+	 * @param key The key
+	 * @param value The value, which must not be null
+	 * @param onlyIfAbsent true to leave an existing mapping in place
+	 * @return the value previously mapped to the key, or null if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	protected V put(int key, V value, boolean onlyIfAbsent) {
+		if(value==null) throw new IllegalArgumentException("The passed value was null");
+		int slot = home(key);
+		while(values[slot]!=null) {
+			if(keyAt(slot)==key) {
+				final V prior = (V)values[slot];
+				if(!onlyIfAbsent) values[slot] = value;
+				return prior;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keyAt(slot, key);
+		values[slot] = value;
+		if(++size > threshold) resize(values.length << 1);
+		return null;
+	}
+	
+	/**
+	 * Removes the mapping for the passed key
+	 * @param key The key
+	 * @return the removed value, or null if the key was not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int slot = find(key);
+		if(slot==-1) return null;
+		final V removed = (V)values[slot];
+		values[slot] = null;
+		size--;
+		// shift back entries in the probe run that would no longer be reachable from their home slot
+		int next = slot;
+		while(true) {
+			next = (next + 1) & mask;
+			if(values[next]==null) break;
+			final int home = home(keyAt(next));
+			final boolean movable = slot <= next ? (home <= slot || home > next) : (home <= slot && home > next);
+			if(movable) {
+				keyAt(slot, keyAt(next));
+				values[slot] = values[next];
+				values[next] = null;
+				slot = next;
+			}
+		}
+		return removed;
+	}
+	
+	/**
+	 * Removes the mapping for the passed key only if it is mapped to the passed value
+	 * @param key The key
+	 * @param value The value the key must be mapped to
+	 * @return true if the mapping was removed
+	 */
+	public boolean remove(int key, V value) {
+		final int slot = find(key);
+		if(slot==-1 || values[slot]!=value) return false;
+		remove(key);
+		return true;
+	}
+	
+	/**
+	 * Rehashes the entries into the passed number of slots
+	 * @param slots The new number of slots, a power of two
+	 */
+	@SuppressWarnings("unchecked")
+	protected void resize(int slots) {
+		final long oldAddress = address;
+		final Object[] oldValues = values;
+		allocate(slots);
+		size = 0;
+		for(int i = 0; i < oldValues.length; i++) {
+			if(oldValues[i]!=null) {
+				put(UnsafeAdapter.getInt(oldAddress + (((long)i) << 2)), (V)oldValues[i], false);
+			}
+		}
+		UnsafeAdapter.freeMemory(oldAddress);
+	}
+	
+	/**
+	 * Returns a copy of the values in the map
+	 * @return a list of the values
+	 */
+	@SuppressWarnings("unchecked")
+	public List<V> values() {
+		final List<V> list = new ArrayList<V>(size);
+		for(Object v: values) {
+			if(v!=null) list.add((V)v);
+		}
+		return list;
+	}
+	
+	/**
+	 * Removes all the entries, returning the removed values
+	 * @return a list of the removed values
+	 */
+	public List<V> drain() {
+		final List<V> list = values();
+		clear();
+		return list;
+	}
+	
+	/**
+	 * Removes all the entries
+	 */
+	public void clear() {
+		if(size==0) return;
+		for(int i = 0; i < values.length; i++) {
+			values[i] = null;
+		}
+		size = 0;
+	}
+	
+	/**
+	 * Returns the number of entries
+	 * @return the number of entries
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Indicates if the map is empty
+	 * @return true if the map is empty, false otherwise
+	 */
+	public boolean isEmpty() {
+		return size==0;
+	}
+	
+	/**
+	 * Frees the key memory. The map must not be used afterwards.
+	 */
+	public synchronized void destroy() {
+		if(address!=0) {
+			try { UnsafeAdapter.freeMemory(address); } catch (Throwable t) {}
+			address = 0;
+			values = new Object[0];
+			size = 0;
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#finalize()
+	 */
+	@Override
+	protected void finalize() throws Throwable {
+		destroy();
+		super.finalize();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder b = new StringBuilder("{");
+		for(int i = 0; i < values.length; i++) {
+			if(values[i]!=null) {
+				if(b.length() > 1) b.append(", ");
+				b.append(keyAt(i)).append('=').append(values[i]);
+			}
+		}
+		return b.append('}').toString();
+	}
+}
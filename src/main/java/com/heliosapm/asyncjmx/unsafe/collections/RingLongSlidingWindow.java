@@ -0,0 +1,575 @@
+/** Helios Development Group LLC, 2013 */
+package com.heliosapm.asyncjmx.unsafe.collections;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+import com.heliosapm.asyncjmx.unsafe.UnsafeAdapter;
+
+/**
+ * <p>Title: RingLongSlidingWindow</p>
+ * <p>Description: A fixed size sliding window of longs held in a ring buffer of direct memory. Index 0 is the most recently inserted value.</p>
+ * <p>Unlike {@link ConcurrentLongSlidingWindow}, an insert writes one slot and advances the head rather than shifting the whole window,
+ * and nothing takes a lock. The window supports a <b>single writer</b>: calls that modify the window must not run concurrently with each other,
+ * but never wait on readers. Each write is bracketed by a sequence counter which is odd while the write is in progress, and readers copy
+ * what they need and retry if the sequence moved underneath them, so any number of readers see consistent snapshots without blocking the writer.</p>
+ * <p>The memory is freed by {@link #destroy()}, or when the window is finalized if it was never destroyed.
+ * Any access after the window is destroyed throws an {@link IllegalStateException}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.unsafe.collections.RingLongSlidingWindow</code></p>
+ */
+public class RingLongSlidingWindow implements ILongSlidingWindow {
+	/** The number of read attempts a reader spins through before yielding */
+	protected static final int SPINS_BEFORE_YIELD = 64;
+	/** A half as a double */
+	public static final double ONE_HALF = 0.5d;
+	
+	/** The capacity of the window */
+	protected final int capacity;
+	/** The address of the ring's memory, zero once destroyed */
+	protected volatile long address;
+	/** The write sequence, odd while a write is in progress */
+	protected volatile long sequence = 0L;
+	/** The number of values inserted since the window was last cleared. The slot of the newest value is <code>(head-1) % capacity</code>. */
+	protected volatile long head = 0L;
+	/** The number of values in the window */
+	protected volatile int count = 0;
+	
+	/**
+	 * Creates a new and empty RingLongSlidingWindow
+	 * @param size The size of the sliding window
+	 */
+	public RingLongSlidingWindow(int size) {
+		if(size < 1) throw new IllegalArgumentException("Invalid window size [" + size + "]");
+		capacity = size;
+		address = UnsafeAdapter.allocateMemory(((long)size) << 3);
+		UnsafeAdapter.setMemory(address, ((long)size) << 3, (byte)0);
+	}
+	
+	/**
+	 * Creates a new RingLongSlidingWindow with the provided initial values, the last of which will be at index 0
+	 * @param size The size of the sliding window
+	 * @param values The initial values to load
+	 */
+	public RingLongSlidingWindow(int size, long[] values) {
+		this(size);
+		insert(values);
+	}
+	
+	// ==================================================================================
+	//			Writer side. Single writer only.
+	// ==================================================================================
+	
+	/**
+	 * Opens a write, making the sequence odd
+	 */
+	protected final void beginWrite() {
+		sequence = sequence + 1;
+	}
+	
+	/**
+	 * Closes a write, making the sequence even
+	 */
+	protected final void endWrite() {
+		sequence = sequence + 1;
+	}
+	
+	/**
+	 * Returns the address of the slot holding the value at the passed window index
+	 * @param h The head to resolve against
+	 * @param index The window index, 0 being the newest
+	 * @return the slot address
+	 */
+	protected final long slot(long h, int index) {
+		return base() + (((h - 1 - index) % capacity) << 3);
+	}
+	
+	/**
+	 * Returns the address of the ring's memory
+	 * @return the address
+	 */
+	protected final long base() {
+		final long a = address;
+		if(a==0) throw new IllegalStateException("This RingLongSlidingWindow has been destroyed");
+		return a;
+	}
+	
+	/**
+	 * Appends a value without opening a write
+	 * @param value The value to append
+	 * @return the dropped value or null if none was dropped
+	 */
+	protected Long append(long value) {
+		final long h = head;
+		final long target = base() + ((h % capacity) << 3);
+		Long dropped = null;
+		if(count==capacity) {
+			dropped = UnsafeAdapter.getLong(target);
+		} else {
+			count = count + 1;
+		}
+		UnsafeAdapter.putLongVolatile(null, target, value);
+		head = h + 1;
+		return dropped;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#insert(long[])
+	 */
+	@Override
+	public void insert(long... values) {
+		if(values==null || values.length==0) return;
+		beginWrite();
+		try {
+			for(long v: values) {
+				append(v);
+			}
+		} finally {
+			endWrite();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#insert(java.nio.LongBuffer)
+	 */
+	@Override
+	public void insert(LongBuffer longBuff) {
+		longBuff.position(0);
+		beginWrite();
+		try {
+			while(longBuff.remaining()>0) {
+				append(longBuff.get());
+			}
+		} finally {
+			endWrite();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#insert(long)
+	 */
+	@Override
+	public Long insert(long value) {
+		beginWrite();
+		try {
+			return append(value);
+		} finally {
+			endWrite();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#inc(int, long)
+	 */
+	@Override
+	public long inc(int index, long value) {
+		checkIndex(index, count);
+		beginWrite();
+		try {
+			final long target = slot(head, index);
+			final long v = UnsafeAdapter.getLong(target) + value;
+			UnsafeAdapter.putLongVolatile(null, target, v);
+			return v;
+		} finally {
+			endWrite();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#inc(int)
+	 */
+	@Override
+	public long inc(int index) {
+		return inc(index, 1L);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#inc(long)
+	 */
+	@Override
+	public long inc(long value) {
+		return inc(0, value);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#inc()
+	 */
+	@Override
+	public long inc() {
+		return inc(0, 1L);
+	}
+	
+	/**
+	 * Sets the value of the 0th index to the passed value, inserting it if the window is empty
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#set(long)
+	 */
+	@Override
+	public void set(long value) {
+		beginWrite();
+		try {
+			if(count==0) {
+				append(value);
+			} else {
+				UnsafeAdapter.putLongVolatile(null, slot(head, 0), value);
+			}
+		} finally {
+			endWrite();
+		}
+	}
+	
+	/**
+	 * Replaces the contents of the window with the longs in the passed byte array, as written by {@link #getBytes()}.
+	 * Values beyond the window's capacity are ignored.
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#load(byte[])
+	 */
+	@Override
+	public void load(byte[] arr) {
+		if(arr.length%8!=0) throw new IllegalArgumentException("Byte array length [" + arr.length + "] is not a multiple of 8");
+		final long[] values = new long[Math.min(arr.length >> 3, capacity)];
+		UnsafeAdapter.copyMemory(arr, UnsafeAdapter.BYTE_ARRAY_OFFSET, values, UnsafeAdapter.LONG_ARRAY_OFFSET, ((long)values.length) << 3);
+		beginWrite();
+		try {
+			head = 0L;
+			count = 0;
+			for(int i = values.length - 1; i >= 0; i--) {
+				append(values[i]);
+			}
+		} finally {
+			endWrite();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#reinitAndLoad(byte[])
+	 */
+	@Override
+	public void reinitAndLoad(byte[] arr) {
+		load(arr);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#clear()
+	 */
+	@Override
+	public void clear() {
+		beginWrite();
+		try {
+			head = 0L;
+			count = 0;
+		} finally {
+			endWrite();
+		}
+	}
+	
+	/**
+	 * Deallocates this window's memory. The window must not be used afterwards.
+	 */
+	public synchronized void destroy() {
+		final long a = address;
+		if(a!=0) {
+			address = 0;
+			try { UnsafeAdapter.freeMemory(a); } catch (Throwable t) {}
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#finalize()
+	 */
+	@Override
+	protected void finalize() throws Throwable {
+		destroy();
+		super.finalize();
+	}
+	
+	// ==================================================================================
+	//			Reader side. Any number of threads.
+	// ==================================================================================
+	
+	/**
+	 * Waits out an in-progress write and returns the even sequence a read can start from
+	 * @param attempt The number of reads attempted so far
+	 * @return the sequence
+	 */
+	protected final long readBegin(int attempt) {
+		long s;
+		while(((s = sequence) & 1L)!=0L) {
+			if(++attempt > SPINS_BEFORE_YIELD) Thread.yield();
+		}
+		if(attempt > SPINS_BEFORE_YIELD) Thread.yield();
+		return s;
+	}
+	
+	/**
+	 * Returns a consistent copy of the first <code>within</code> values of the window, newest first
+	 * @param within The maximum number of values to copy
+	 * @return the copied values
+	 */
+	public long[] snapshot(int within) {
+		for(int attempt = 0; ; attempt++) {
+			final long s = readBegin(attempt);
+			final long h = head;
+			final int n = Math.max(0, Math.min(within, count));
+			final long[] values = new long[n];
+			for(int i = 0; i < n; i++) {
+				values[i] = UnsafeAdapter.getLongVolatile(null, slot(h, i));
+			}
+			if(sequence==s) return values;
+		}
+	}
+	
+	/**
+	 * Returns a consistent copy of the window, newest first
+	 * @return the copied values
+	 */
+	public long[] snapshot() {
+		return snapshot(capacity);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#get(int)
+	 */
+	@Override
+	public long get(int index) {
+		for(int attempt = 0; ; attempt++) {
+			final long s = readBegin(attempt);
+			final long h = head;
+			final int n = count;
+			if(index < 0 || index >= n) {
+				if(sequence==s) checkIndex(index, n);
+				continue;
+			}
+			final long v = UnsafeAdapter.getLongVolatile(null, slot(h, index));
+			if(sequence==s) return v;
+		}
+	}
+	
+	/**
+	 * Returns the first (chronologically the most recent) value in the window or -1L if the window is empty
+	 * @return the first value in the window or -1L if the window is empty
+	 */
+	public long getFirst() {
+		final long[] values = snapshot(1);
+		return values.length==0 ? -1L : values[0];
+	}
+	
+	/**
+	 * Returns the last (chronologically the oldest) value in the window or -1L if the window is empty
+	 * @return the last value in the window or -1L if the window is empty
+	 */
+	public long getLast() {
+		final long[] values = snapshot();
+		return values.length==0 ? -1L : values[values.length-1];
+	}
+	
+	/**
+	 * Binary searches the window in index order, as {@link ConcurrentLongSlidingWindow#find(long)} does, so the result is only meaningful
+	 * if the values ascend by index, i.e. were inserted in descending order.
+	 * @param value The value to search for
+	 * @return the index of the value, or <code>-(insertion point)-1</code> if not found
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#find(long)
+	 */
+	@Override
+	public int find(long value) {
+		return Arrays.binarySearch(snapshot(), value);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#asDoubleArray()
+	 */
+	@Override
+	public double[] asDoubleArray() {
+		final long[] values = snapshot();
+		final double[] d = new double[values.length];
+		for(int i = 0; i < values.length; i++) {
+			d[i] = values[i];
+		}
+		return d;
+	}
+	
+	/**
+	 * Returns this sliding window as a long array, newest first
+	 * @return a long array
+	 */
+	public long[] asLongArray() {
+		return snapshot();
+	}
+	
+	/**
+	 * Returns this sliding window as a byte array, newest first, in the format read by {@link #load(byte[])}
+	 * @return the byte array
+	 */
+	public byte[] getBytes() {
+		final long[] values = snapshot();
+		final byte[] arr = new byte[values.length << 3];
+		UnsafeAdapter.copyMemory(values, UnsafeAdapter.LONG_ARRAY_OFFSET, arr, UnsafeAdapter.BYTE_ARRAY_OFFSET, arr.length);
+		return arr;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#isEmpty()
+	 */
+	@Override
+	public boolean isEmpty() {
+		return count==0;
+	}
+	
+	/**
+	 * Indicates if the window is full
+	 * @return true if the window is full, false otherwise
+	 */
+	public boolean isFull() {
+		return count==capacity;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#size()
+	 */
+	@Override
+	public int size() {
+		return count;
+	}
+	
+	/**
+	 * Returns the capacity of the window
+	 * @return the capacity of the window
+	 */
+	public int capacity() {
+		return capacity;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#sum(int)
+	 */
+	@Override
+	public long sum(int within) {
+		long total = 0;
+		for(long v: snapshot(within)) {
+			total += v;
+		}
+		return total;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#sum()
+	 */
+	@Override
+	public long sum() {
+		return sum(capacity);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#min()
+	 */
+	@Override
+	public long min() {
+		final long[] values = snapshot();
+		if(values.length==0) throw new RuntimeException("Cannot get min for empty array");
+		long min = values[0];
+		for(long v: values) {
+			if(v < min) min = v;
+		}
+		return min;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#max()
+	 */
+	@Override
+	public long max() {
+		final long[] values = snapshot();
+		if(values.length==0) throw new RuntimeException("Cannot get max for empty array");
+		long max = values[0];
+		for(long v: values) {
+			if(v > max) max = v;
+		}
+		return max;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#avg(int)
+	 */
+	@Override
+	public long avg(int within) {
+		final long[] values = snapshot(within);
+		if(values.length==0) return 0;
+		double total = 0;
+		for(long v: values) {
+			total += v;
+		}
+		return (long)(total/values.length);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see com.heliosapm.asyncjmx.unsafe.collections.ILongSlidingWindow#avg()
+	 */
+	@Override
+	public long avg() {
+		return avg(capacity);
+	}
+	
+	/**
+	 * Returns the pth percentile value from a snapshot of this window using the nearest rank formula.
+	 * @param p The percentile to get
+	 * @return the pth percentile value
+	 */
+	public long percentile(int p) {
+		if (p < 1 || p > 100) {
+			throw new IllegalArgumentException("invalid percentile: " + p);
+		}
+		final long[] values = snapshot();
+		if(values.length==0) throw new RuntimeException("Cannot get percentile for empty array");
+		Arrays.sort(values);
+		final int ix = (int)(((p/100d)*values.length)+ONE_HALF);
+		return values[Math.max(0, ix-1)];
+	}
+	
+	/**
+	 * Throws an IllegalArgumentException if the passed index is not within the populated window
+	 * @param index The index to check
+	 * @param size The populated size
+	 */
+	protected static void checkIndex(int index, int size) {
+		if(index<0 || index > (size-1)) {
+			throw new IllegalArgumentException("The passed index was invalid [" + index + "]. Valid ranges are 0 - " + (size-1));
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final long[] values = snapshot();
+		if(values.length==0) return "[]";
+		final StringBuilder b = new StringBuilder("[");
+		for(long v: values) {
+			b.append(v).append(",");
+		}
+		b.setCharAt(b.length()-1, ']');
+		return b.toString();
+	}
+}
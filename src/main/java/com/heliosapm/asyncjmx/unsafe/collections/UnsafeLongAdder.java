@@ -0,0 +1,100 @@
+/** Helios Development Group LLC, 2013 */
+package com.heliosapm.asyncjmx.unsafe.collections;
+
+/**
+ * <p>Title: UnsafeLongAdder</p>
+ * <p>Description: An off-heap, cache line padded, striped long counter. Updates from different threads land on different
+ * cache lines, so a hot counter costs an uncontended CAS rather than a lock acquisition. {@link #sum()} adds up the stripes and is
+ * not an atomic snapshot while updates are in flight.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.unsafe.collections.UnsafeLongAdder</code></p>
+ */
+public class UnsafeLongAdder extends UnsafeStripedCell {
+	
+	/**
+	 * Creates a new UnsafeLongAdder with {@link UnsafeStripedCell#DEFAULT_STRIPES} stripes
+	 */
+	public UnsafeLongAdder() {
+		this(DEFAULT_STRIPES);
+	}
+	
+	/**
+	 * Creates a new UnsafeLongAdder
+	 * @param stripes The number of stripes, rounded up to a power of two
+	 */
+	public UnsafeLongAdder(int stripes) {
+		super(stripes, 0L);
+	}
+	
+	/**
+	 * Adds the passed value
+	 * @param value The value to add
+	 */
+	public void add(long value) {
+		int index = home();
+		while(true) {
+			final long current = get(index);
+			if(cas(index, current, current + value)) return;
+			index = (index + 1) & mask;
+		}
+	}
+	
+	/**
+	 * Adds one
+	 */
+	public void increment() {
+		add(1L);
+	}
+	
+	/**
+	 * Subtracts one
+	 */
+	public void decrement() {
+		add(-1L);
+	}
+	
+	/**
+	 * Returns the sum of the stripes
+	 * @return the current sum
+	 */
+	public long sum() {
+		long sum = 0L;
+		for(int i = 0; i < stripes; i++) {
+			sum += get(i);
+		}
+		return sum;
+	}
+	
+	/**
+	 * Returns the sum of the stripes, CASing each stripe from the value read to zero so an addition racing the reset is retried rather than lost
+	 * @return the sum since the last reset
+	 */
+	public long sumThenReset() {
+		long sum = 0L;
+		for(int i = 0; i < stripes; i++) {
+			long current;
+			do {
+				current = get(i);
+			} while(!cas(i, current, 0L));
+			sum += current;
+		}
+		return sum;
+	}
+	
+	/**
+	 * Resets every stripe to zero. Additions made concurrently may be lost.
+	 */
+	public void reset() {
+		fill(0L);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return check() ? Long.toString(sum()) : "destroyed";
+	}
+}
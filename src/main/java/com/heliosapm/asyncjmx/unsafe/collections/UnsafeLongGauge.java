@@ -0,0 +1,119 @@
+/** Helios Development Group LLC, 2013 */
+package com.heliosapm.asyncjmx.unsafe.collections;
+
+/**
+ * <p>Title: UnsafeLongGauge</p>
+ * <p>Description: An off-heap, cache line padded, striped high or low water mark. Each stripe holds the extreme of the values 
+ * recorded through it, and an update only writes when it moves its stripe's mark, so recording a value that does not set a new 
+ * mark is a plain read. {@link #get()} returns the extreme across the stripes.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.unsafe.collections.UnsafeLongGauge</code></p>
+ */
+public class UnsafeLongGauge extends UnsafeStripedCell {
+	/** True if the gauge tracks the maximum, false if it tracks the minimum */
+	protected final boolean max;
+	/** The value a stripe holds before anything is recorded through it */
+	protected final long identity;
+	
+	/**
+	 * Creates a new gauge tracking the maximum recorded value
+	 * @return the new gauge
+	 */
+	public static UnsafeLongGauge newMaxGauge() {
+		return new UnsafeLongGauge(DEFAULT_STRIPES, true);
+	}
+	
+	/**
+	 * Creates a new gauge tracking the minimum recorded value
+	 * @return the new gauge
+	 */
+	public static UnsafeLongGauge newMinGauge() {
+		return new UnsafeLongGauge(DEFAULT_STRIPES, false);
+	}
+	
+	/**
+	 * Creates a new UnsafeLongGauge
+	 * @param stripes The number of stripes, rounded up to a power of two
+	 * @param max True to track the maximum, false to track the minimum
+	 */
+	public UnsafeLongGauge(int stripes, boolean max) {
+		super(stripes, max ? Long.MIN_VALUE : Long.MAX_VALUE);
+		this.max = max;
+		identity = max ? Long.MIN_VALUE : Long.MAX_VALUE;
+	}
+	
+	/**
+	 * Records a value, moving the calling thread's stripe mark if the value exceeds it
+	 * @param value The value to record
+	 */
+	public void record(long value) {
+		final int index = home();
+		while(true) {
+			final long current = get(index);
+			if(max ? value <= current : value >= current) return;
+			if(cas(index, current, value)) return;
+		}
+	}
+	
+	/**
+	 * Returns the extreme of all the recorded values
+	 * @return the maximum or minimum recorded value, or {@link Long#MIN_VALUE} / {@link Long#MAX_VALUE} if nothing has been recorded
+	 */
+	public long get() {
+		long extreme = identity;
+		for(int i = 0; i < stripes; i++) {
+			final long v = get(i);
+			if(max ? v > extreme : v < extreme) extreme = v;
+		}
+		return extreme;
+	}
+	
+	/**
+	 * Indicates if any value has been recorded since creation or the last reset
+	 * @return true if a value has been recorded, false otherwise
+	 */
+	public boolean isSet() {
+		return get()!=identity;
+	}
+	
+	/**
+	 * Returns the extreme of the recorded values and resets the gauge
+	 * @return the maximum or minimum recorded value since the last reset
+	 */
+	public long getThenReset() {
+		long extreme = identity;
+		for(int i = 0; i < stripes; i++) {
+			long v;
+			do {
+				v = get(i);
+			} while(!cas(i, v, identity));
+			if(max ? v > extreme : v < extreme) extreme = v;
+		}
+		return extreme;
+	}
+	
+	/**
+	 * Resets the gauge. Values recorded concurrently may be lost.
+	 */
+	public void reset() {
+		fill(identity);
+	}
+	
+	/**
+	 * Indicates if this gauge tracks the maximum
+	 * @return true for a maximum gauge, false for a minimum gauge
+	 */
+	public boolean isMax() {
+		return max;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return (max ? "max:" : "min:") + (check() ? Long.toString(get()) : "destroyed");
+	}
+}
@@ -0,0 +1,142 @@
+/** Helios Development Group LLC, 2013 */
+package com.heliosapm.asyncjmx.unsafe.collections;
+
+import com.heliosapm.asyncjmx.unsafe.UnsafeAdapter;
+
+/**
+ * <p>Title: UnsafeStripedCell</p>
+ * <p>Description: Base class for off-heap, striped long cells. Each stripe is a long in its own cache line of direct memory,
+ * so threads updating different stripes never share a line. A thread updates the stripe selected by its id and, if its CAS on that
+ * stripe fails, moves on to the next stripe rather than spinning on a contended one. Reads aggregate all the stripes.</p>
+ * <p>The memory is freed by {@link #destroy()}, or when the cell is finalized if it was never destroyed.
+ * Any access after the cell is destroyed throws an {@link IllegalStateException}.</p> 
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.asyncjmx.unsafe.collections.UnsafeStripedCell</code></p>
+ */
+public abstract class UnsafeStripedCell {
+	/** The assumed cache line size in bytes */
+	public static final int CACHE_LINE = 64;
+	/** The default number of stripes, the smallest power of two not less than the number of processors */
+	public static final int DEFAULT_STRIPES = nextPowerOfTwo(Runtime.getRuntime().availableProcessors());
+	
+	/** The number of stripes */
+	protected final int stripes;
+	/** The stripe index mask */
+	protected final int mask;
+	/** The address of the allocated memory block */
+	protected long allocated;
+	/** The cache line aligned address of the first stripe, zero once destroyed */
+	protected volatile long address;
+	
+	/**
+	 * Returns the smallest power of two not less than the passed value
+	 * @param value The value
+	 * @return the power of two
+	 */
+	static int nextPowerOfTwo(int value) {
+		if(value <= 1) return 1;
+		return Integer.highestOneBit(value - 1) << 1;
+	}
+	
+	/**
+	 * Creates a new UnsafeStripedCell
+	 * @param stripes The number of stripes, rounded up to a power of two
+	 * @param initialValue The initial value of each stripe
+	 */
+	protected UnsafeStripedCell(int stripes, long initialValue) {
+		if(stripes < 1) throw new IllegalArgumentException("Invalid number of stripes [" + stripes + "]");
+		this.stripes = nextPowerOfTwo(stripes);
+		mask = this.stripes - 1;
+		allocated = UnsafeAdapter.allocateMemory(((long)this.stripes + 1) * CACHE_LINE);
+		address = (allocated + CACHE_LINE - 1) & ~((long)CACHE_LINE - 1);
+		fill(initialValue);
+	}
+	
+	/**
+	 * Sets every stripe to the passed value
+	 * @param value The value to set
+	 */
+	protected void fill(long value) {
+		for(int i = 0; i < stripes; i++) {
+			UnsafeAdapter.putLongVolatile(null, stripe(i), value);
+		}
+	}
+	
+	/**
+	 * Returns the address of the stripe at the passed index
+	 * @param index The stripe index
+	 * @return the stripe address
+	 */
+	protected final long stripe(int index) {
+		final long base = address;
+		if(base==0) throw new IllegalStateException("This " + getClass().getSimpleName() + " has been destroyed");
+		return base + ((long)index * CACHE_LINE);
+	}
+	
+	/**
+	 * Returns the index of the calling thread's home stripe
+	 * @return the stripe index
+	 */
+	protected final int home() {
+		final long id = Thread.currentThread().getId();
+		return (int)(id ^ (id >>> 32)) & mask;
+	}
+	
+	/**
+	 * Reads the stripe at the passed index
+	 * @param index The stripe index
+	 * @return the stripe value
+	 */
+	protected final long get(int index) {
+		return UnsafeAdapter.getLongVolatile(null, stripe(index));
+	}
+	
+	/**
+	 * Compares and sets the stripe at the passed index
+	 * @param index The stripe index
+	 * @param expect The expected value
+	 * @param value The new value
+	 * @return true if the stripe was set, false if it did not hold the expected value
+	 */
+	protected final boolean cas(int index, long expect, long value) {
+		return UnsafeAdapter.compareAndSwapLong(null, stripe(index), expect, value);
+	}
+	
+	/**
+	 * Returns the number of stripes
+	 * @return the number of stripes
+	 */
+	public int getStripes() {
+		return stripes;
+	}
+	
+	/**
+	 * Indicates if this cell's memory is still allocated
+	 * @return true if the cell is usable, false if it has been destroyed
+	 */
+	public boolean check() {
+		return address!=0;
+	}
+	
+	/**
+	 * Frees this cell's memory. The cell must not be used afterwards.
+	 */
+	public synchronized void destroy() {
+		if(allocated!=0) {
+			address = 0;
+			try { UnsafeAdapter.freeMemory(allocated); } catch (Throwable t) {}
+			allocated = 0;
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#finalize()
+	 */
+	@Override
+	protected void finalize() throws Throwable {
+		destroy();
+		super.finalize();
+	}
+}
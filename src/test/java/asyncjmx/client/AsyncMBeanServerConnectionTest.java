@@ -0,0 +1,118 @@
+/**
+ * 
+ */
+package asyncjmx.client;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.management.ObjectName;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.local.DefaultLocalClientChannelFactory;
+import org.jboss.netty.channel.local.DefaultLocalServerChannelFactory;
+import org.jboss.netty.channel.local.LocalAddress;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import asyncjmx.base.BaseTest;
+
+import com.heliosapm.asyncjmx.client.AsyncMBeanServerConnection;
+import com.stumbleupon.async.Callback;
+
+/**
+ * <p>Title: AsyncMBeanServerConnectionTest</p>
+ * <p>Description: Tests for the pending op tracking of the async connection, against a local server that never responds</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>asyncjmx.client.AsyncMBeanServerConnectionTest</code></b>
+ */
+
+public class AsyncMBeanServerConnectionTest extends BaseTest {
+	/** The object name read */
+	static final ObjectName ON = CallbackMBeanServerConnectionTest.objectName("java.lang:type=Runtime");
+	
+	/** The silent server channel */
+	Channel serverChannel;
+	/** The client channel */
+	Channel channel;
+	
+	/**
+	 * Starts a local server which drops every op and connects the client channel
+	 */
+	@Before
+	public void connect() {
+		LocalAddress address = new LocalAddress(LocalAddress.EPHEMERAL);
+		ServerBootstrap server = new ServerBootstrap(new DefaultLocalServerChannelFactory());
+		server.setPipelineFactory(new ChannelPipelineFactory() {
+			@Override
+			public ChannelPipeline getPipeline() throws Exception {
+				return Channels.pipeline();
+			}
+		});
+		serverChannel = server.bind(address);
+		channel = new DefaultLocalClientChannelFactory().newChannel(Channels.pipeline());
+		channel.connect(address).awaitUninterruptibly();
+		assertTrue("Not connected", channel.isConnected());
+	}
+	
+	/**
+	 * Closes the channels
+	 */
+	@After
+	public void close() {
+		channel.close().awaitUninterruptibly();
+		serverChannel.close().awaitUninterruptibly();
+	}
+	
+	/**
+	 * Verifies that a deferred with no response is failed with a timeout without anyone joining on it
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testUnansweredDeferredTimesOut() throws Exception {
+		final AsyncMBeanServerConnection conn = new AsyncMBeanServerConnection(channel, 200);
+		final BlockingQueue<Object> errors = new LinkedBlockingQueue<Object>();
+		conn.getAttributeAsync(ON, "Name").addErrback(new Callback<Object, Exception>() {
+			@Override
+			public Object call(Exception ex) throws Exception {
+				errors.add(ex);
+				return null;
+			}
+		});
+		final Object error = errors.poll(5, TimeUnit.SECONDS);
+		assertNotNull("Deferred was not timed out", error);
+		assertTrue("Not a timeout: " + error, error instanceof TimeoutException);
+	}
+	
+	/**
+	 * Verifies that interrupting a blocking call throws an InterruptedIOException and preserves the interrupt
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testInterruptedJoinKeepsInterrupt() throws Exception {
+		final AsyncMBeanServerConnection conn = new AsyncMBeanServerConnection(channel, 60000);
+		final Thread caller = Thread.currentThread();
+		new Thread("AsyncMBeanServerConnectionTest#interrupter") {
+			@Override
+			public void run() {
+				try { Thread.sleep(200); } catch (InterruptedException e) {}
+				caller.interrupt();
+			}
+		}.start();
+		try {
+			conn.getAttribute(ON, "Name");
+			fail("Blocking call should have been interrupted");
+		} catch (InterruptedIOException expected) {
+			assertTrue("Interrupt flag was cleared", Thread.interrupted());
+		}
+	}
+}
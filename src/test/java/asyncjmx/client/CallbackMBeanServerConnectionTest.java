@@ -0,0 +1,155 @@
+/**
+ * 
+ */
+package asyncjmx.client;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.management.ObjectName;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.local.DefaultLocalClientChannelFactory;
+import org.jboss.netty.channel.local.DefaultLocalServerChannelFactory;
+import org.jboss.netty.channel.local.LocalAddress;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import asyncjmx.base.BaseTest;
+
+import com.heliosapm.asyncjmx.client.CallbackMBeanServerConnection;
+import com.heliosapm.asyncjmx.client.JMXOpResponse;
+import com.heliosapm.asyncjmx.client.MBeanServerConnectionCallback;
+import com.heliosapm.asyncjmx.shared.JMXOpCode;
+
+/**
+ * <p>Title: CallbackMBeanServerConnectionTest</p>
+ * <p>Description: Tests for the in-flight op tracking of the callback connection, against a local server that never responds</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>asyncjmx.client.CallbackMBeanServerConnectionTest</code></b>
+ */
+
+public class CallbackMBeanServerConnectionTest extends BaseTest {
+	/** The object name read */
+	static final ObjectName ON = objectName("java.lang:type=Runtime");
+	
+	/** The silent server channel */
+	Channel serverChannel;
+	/** The client channel */
+	Channel channel;
+	/** The callback invocations as [method name, rId, value] */
+	final BlockingQueue<Object[]> calls = new LinkedBlockingQueue<Object[]>();
+	/** The recording callback */
+	final MBeanServerConnectionCallback callback = (MBeanServerConnectionCallback)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{MBeanServerConnectionCallback.class}, new InvocationHandler() {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			calls.add(new Object[]{method.getName(), args[0], args.length > 1 ? args[1] : null});
+			return null;
+		}
+	});
+	
+	static ObjectName objectName(String name) {
+		try {
+			return new ObjectName(name);
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/**
+	 * Starts a local server which drops every op and connects the client channel
+	 */
+	@Before
+	public void connect() {
+		LocalAddress address = new LocalAddress(LocalAddress.EPHEMERAL);
+		ServerBootstrap server = new ServerBootstrap(new DefaultLocalServerChannelFactory());
+		server.setPipelineFactory(new ChannelPipelineFactory() {
+			@Override
+			public ChannelPipeline getPipeline() throws Exception {
+				return Channels.pipeline();
+			}
+		});
+		serverChannel = server.bind(address);
+		channel = new DefaultLocalClientChannelFactory().newChannel(Channels.pipeline());
+		channel.connect(address).awaitUninterruptibly();
+		assertTrue("Not connected", channel.isConnected());
+	}
+	
+	/**
+	 * Closes the channels
+	 */
+	@After
+	public void close() {
+		channel.close().awaitUninterruptibly();
+		serverChannel.close().awaitUninterruptibly();
+	}
+	
+	/**
+	 * Verifies that an op with no response is failed with a timeout and its slot reclaimed
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testUnansweredOpTimesOut() throws Exception {
+		CallbackMBeanServerConnection conn = new CallbackMBeanServerConnection(channel, 4, 200);
+		int rId = conn.getAttribute(ON, "Name", callback);
+		Object[] call = calls.poll(5, TimeUnit.SECONDS);
+		assertNotNull("No timeout dispatched", call);
+		assertEquals("onGetAttributeFail", call[0]);
+		assertEquals(rId, call[1]);
+		assertTrue("Not a timeout: " + call[2], call[2] instanceof TimeoutException);
+		assertEquals(0, conn.getInFlightCount());
+		Channels.fireMessageReceived(channel, new JMXOpResponse(JMXOpCode.GETATTRIBUTE, rId, "late"));
+		assertNull("Late response dispatched", calls.poll(100, TimeUnit.MILLISECONDS));
+	}
+	
+	/**
+	 * Verifies that a long outstanding op does not block later ops whose request ids collide with it modulo the in-flight limit
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testOutstandingOpDoesNotBlockLaterOps() throws Exception {
+		CallbackMBeanServerConnection conn = new CallbackMBeanServerConnection(channel, 2, 60000);
+		int stuck = conn.getAttribute(ON, "Name", callback);
+		for(int i = 0; i < 16; i++) {
+			int rId = conn.getAttribute(ON, "Name", callback);
+			Channels.fireMessageReceived(channel, new JMXOpResponse(JMXOpCode.GETATTRIBUTE, rId, "v" + i));
+			Object[] call = calls.poll(5, TimeUnit.SECONDS);
+			assertEquals("onGetAttribute", call[0]);
+			assertEquals(rId, call[1]);
+			assertEquals("v" + i, call[2]);
+		}
+		assertEquals(1, conn.getInFlightCount());
+		int last = conn.getAttribute(ON, "Name", callback);
+		try {
+			conn.getAttribute(ON, "Name", callback);
+			fail("Third in-flight op was not rejected");
+		} catch (IllegalStateException expected) {
+			/* expected */
+		}
+		channel.close().awaitUninterruptibly();
+		Set<Object> failed = new HashSet<Object>();
+		for(int i = 0; i < 2; i++) {
+			Object[] call = calls.poll(5, TimeUnit.SECONDS);
+			assertEquals("onGetAttributeFail", call[0]);
+			assertTrue(call[2] instanceof ClosedChannelException);
+			failed.add(call[1]);
+		}
+		assertEquals(new HashSet<Object>(Arrays.asList(stuck, last)), failed);
+		assertEquals(0, conn.getInFlightCount());
+	}
+}
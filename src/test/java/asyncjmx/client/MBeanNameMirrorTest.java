@@ -0,0 +1,124 @@
+/**
+ * 
+ */
+package asyncjmx.client;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.timer.Timer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import asyncjmx.base.BaseTest;
+
+import com.heliosapm.asyncjmx.client.AsyncJMXClient;
+import com.heliosapm.asyncjmx.client.AsyncMBeanServerConnection;
+import com.heliosapm.asyncjmx.client.SyncMBeanServerConnection;
+import com.heliosapm.asyncjmx.client.notifications.MBeanNameMirror;
+import com.heliosapm.asyncjmx.server.AsyncJMXServer;
+
+/**
+ * <p>Title: MBeanNameMirrorTest</p>
+ * <p>Description: Tests that name mirrors subscribed through a loopback server track registrations and unregistrations</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>asyncjmx.client.MBeanNameMirrorTest</code></b>
+ */
+
+public class MBeanNameMirrorTest extends BaseTest {
+	/** The loopback server */
+	static AsyncJMXServer server;
+	/** The client */
+	static AsyncJMXClient client;
+	/** The server's MBeanServer */
+	static final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+	
+	/**
+	 * Starts the loopback server and the client
+	 */
+	@BeforeClass
+	public static void start() {
+		server = new AsyncJMXServer();
+		client = new AsyncJMXClient();
+	}
+	
+	/**
+	 * Waits for the mirror to report the passed registration state for the passed name
+	 * @param mirror The mirror
+	 * @param name The name to test
+	 * @param registered The expected registration state
+	 * @throws InterruptedException thrown if interrupted while waiting
+	 */
+	static void awaitState(MBeanNameMirror mirror, ObjectName name, boolean registered) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 5000;
+		while(mirror.isRegistered(name)!=registered && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals("Mirror state for [" + name + "]", registered, mirror.isRegistered(name));
+	}
+	
+	/**
+	 * Registers and unregisters an MBean matching the mirror's pattern and one outside it, and verifies the mirror applies only the matching deltas
+	 * @param mirror The initialized mirror
+	 * @param domain The mirrored domain
+	 * @throws Exception thrown on any error
+	 */
+	static void verifyDeltas(MBeanNameMirror mirror, String domain) throws Exception {
+		assertTrue(mirror.isInitialized());
+		assertTrue(mirror.isLive());
+		final ObjectName name = new ObjectName(domain + ":type=Timer");
+		final ObjectName other = new ObjectName(domain + "other:type=Timer");
+		assertFalse(mirror.isRegistered(name));
+		final int count = mirror.getMBeanCount();
+		final long version = mirror.getVersion();
+		mbeanServer.registerMBean(new Timer(), other);
+		mbeanServer.registerMBean(new Timer(), name);
+		try {
+			awaitState(mirror, name, true);
+			assertFalse("Name outside the pattern was mirrored", mirror.isRegistered(other));
+			assertEquals(count + 1, mirror.getMBeanCount());
+			assertTrue(mirror.getVersion() > version);
+		} finally {
+			mbeanServer.unregisterMBean(name);
+			mbeanServer.unregisterMBean(other);
+		}
+		awaitState(mirror, name, false);
+		assertEquals(count, mirror.getMBeanCount());
+	}
+	
+	/**
+	 * Tests a mirror subscribed on a synchronous connection
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testSyncMirrorTracksDeltas() throws Exception {
+		final SyncMBeanServerConnection conn = (SyncMBeanServerConnection)client.connectMBeanServerConnection("localhost", 9061, false);
+		final MBeanNameMirror mirror = conn.subscribeNames(new ObjectName("mirror.sync:*"));
+		verifyDeltas(mirror, "mirror.sync");
+	}
+	
+	/**
+	 * Tests a mirror subscribed on an asynchronous connection, with a seed set containing an already registered MBean
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testAsyncMirrorTracksDeltas() throws Exception {
+		final ObjectName seeded = new ObjectName("mirror.async:type=Seeded");
+		mbeanServer.registerMBean(new Timer(), seeded);
+		try {
+			final AsyncMBeanServerConnection conn = (AsyncMBeanServerConnection)client.connectMBeanServerConnection("localhost", 9061, true);
+			final MBeanNameMirror mirror = conn.subscribeNamesAsync(new ObjectName("mirror.async:*")).join(5000);
+			assertTrue(mirror.awaitInitialized(5, TimeUnit.SECONDS));
+			assertTrue("Seed set missing registered MBean", mirror.isRegistered(seeded));
+			verifyDeltas(mirror, "mirror.async");
+			mbeanServer.unregisterMBean(seeded);
+			awaitState(mirror, seeded, false);
+		} finally {
+			if(mbeanServer.isRegistered(seeded)) mbeanServer.unregisterMBean(seeded);
+		}
+	}
+}
@@ -9,15 +9,24 @@ import java.lang.management.ManagementFactory;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.management.Attribute;
 import javax.management.AttributeList;
+import javax.management.Descriptor;
 import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
 import javax.management.ObjectName;
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
 import javax.management.openmbean.TabularData;
 import javax.management.openmbean.TabularDataSupport;
 import javax.management.openmbean.TabularType;
@@ -33,6 +42,7 @@ import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.factories.SerializerFactory;
 import com.esotericsoftware.kryo.serializers.JavaSerializer;
 import com.heliosapm.asyncjmx.shared.KryoFactory;
+import com.heliosapm.asyncjmx.shared.serialization.OpenTypeCodec;
 import com.heliosapm.asyncjmx.shared.util.JMXHelper;
 
 /**
@@ -85,6 +95,105 @@ public class CompositeDataTest extends BaseTest {
 		
 	}
 	
+	@Test
+	public void testWriteReadAllPlatformOpenTypes() {
+		Set<OpenType<?>> types = collectPlatformOpenTypes();
+		Assert.assertFalse("No platform OpenTypes found", types.isEmpty());
+		for(OpenType<?> type: types) {
+			ByteArrayOutput bao = new ByteArrayOutput();
+			K.writeClassAndObject(bao, type);
+			bao.flush();
+			ByteArrayInput in = new ByteArrayInput(bao.getBytes());
+			Object o = K.readClassAndObject(in);
+			Assert.assertEquals(type, o);
+		}
+		log("Round tripped [%s] platform OpenTypes", types.size());
+	}
+	
+	@Test
+	public void testWriteReadAllPlatformOpenTypesWithDictionary() {
+		Set<OpenType<?>> types = collectPlatformOpenTypes();
+		Assert.assertFalse("No platform OpenTypes found", types.isEmpty());
+		Kryo writer = KryoFactory.getInstance().newChannelKryo();
+		Kryo reader = KryoFactory.getInstance().newChannelKryo();
+		for(OpenType<?> type: types) {
+			ByteArrayOutput bao = new ByteArrayOutput();
+			OpenTypeCodec.writeOpenType(writer, bao, type);
+			bao.flush();
+			int first = bao.getBytes().length;
+			OpenTypeCodec.writeOpenType(writer, bao, type);
+			bao.flush();
+			int second = bao.getBytes().length - first;
+			ByteArrayInput in = new ByteArrayInput(bao.getBytes());
+			OpenType<?> firstRead = OpenTypeCodec.readOpenType(reader, in);
+			OpenType<?> secondRead = OpenTypeCodec.readOpenType(reader, in);
+			Assert.assertEquals(type, firstRead);
+			Assert.assertSame(firstRead, secondRead);
+			Assert.assertTrue("Repeated type encoded in [" + second + "] bytes", second <= 3);
+		}
+	}
+	
+	@Test
+	public void testDescriptionDistinctTypesWithDictionary() throws Exception {
+		CompositeType rowA = new CompositeType("Row", "Row A", new String[]{"key", "value"}, new String[]{"The key", "The value"}, new OpenType<?>[]{SimpleType.STRING, SimpleType.LONG});
+		CompositeType rowB = new CompositeType("Row", "Row A", new String[]{"key", "value"}, new String[]{"The key", "A different value"}, new OpenType<?>[]{SimpleType.STRING, SimpleType.LONG});
+		TabularType tableA = new TabularType("Table", "Table A", rowA, new String[]{"key"});
+		TabularType tableB = new TabularType("Table", "Table B", rowB, new String[]{"key"});
+		Assert.assertEquals(rowA, rowB);
+		Assert.assertEquals(tableA, tableB);
+		Kryo writer = KryoFactory.getInstance().newChannelKryo();
+		Kryo reader = KryoFactory.getInstance().newChannelKryo();
+		OpenType<?>[] sent = new OpenType<?>[]{tableA, tableB, tableA, tableB, rowB, rowA};
+		ByteArrayOutput bao = new ByteArrayOutput();
+		for(OpenType<?> type: sent) {
+			OpenTypeCodec.writeOpenType(writer, bao, type);
+		}
+		bao.flush();
+		ByteArrayInput in = new ByteArrayInput(bao.getBytes());
+		for(OpenType<?> type: sent) {
+			OpenType<?> read = OpenTypeCodec.readOpenType(reader, in);
+			Assert.assertEquals(type, read);
+			Assert.assertEquals(type.getDescription(), read.getDescription());
+			CompositeType row = type instanceof TabularType ? ((TabularType)type).getRowType() : (CompositeType)type;
+			CompositeType readRow = read instanceof TabularType ? ((TabularType)read).getRowType() : (CompositeType)read;
+			Assert.assertEquals(row.getDescription("value"), readRow.getDescription("value"));
+		}
+	}
+	
+	/**
+	 * Collects the distinct OpenTypes declared in the descriptors of the platform MBeans
+	 * @return the distinct OpenTypes
+	 */
+	protected Set<OpenType<?>> collectPlatformOpenTypes() {
+		Set<OpenType<?>> types = new LinkedHashSet<OpenType<?>>();
+		for(String domain: new String[]{"java.lang", "java.nio", "java.util.logging", "com.sun.management"}) {
+			for(ObjectName on: JMXHelper.query(domain + ":*")) {
+				MBeanInfo minfo = JMXHelper.getMBeanInfo(on);
+				for(MBeanAttributeInfo info: minfo.getAttributes()) {
+					addOpenType(types, info.getDescriptor());
+				}
+				for(MBeanOperationInfo info: minfo.getOperations()) {
+					addOpenType(types, info.getDescriptor());
+					for(MBeanParameterInfo pinfo: info.getSignature()) {
+						addOpenType(types, pinfo.getDescriptor());
+					}
+				}
+				for(MBeanNotificationInfo info: minfo.getNotifications()) {
+					addOpenType(types, info.getDescriptor());
+				}
+			}
+		}
+		return types;
+	}
+	
+	private static void addOpenType(Set<OpenType<?>> types, Descriptor descriptor) {
+		if(descriptor==null) return;
+		Object type = descriptor.getFieldValue("openType");
+		if(type instanceof OpenType) {
+			types.add((OpenType<?>)type);
+		}
+	}
+	
 	@Test
 	public void testWriteReadTabularData() {
 //		K.register(TabularDataSupport.class, new JavaSerializer());
@@ -102,6 +211,28 @@ public class CompositeDataTest extends BaseTest {
 		Assert.assertEquals(td, o);		
 	}
 	
+	@Test
+	public void testWriteReadColumnarTabularData() throws Exception {
+		String[] names = {"id", "count", "total", "ratio", "active", "grade", "name"};
+		OpenType<?>[] types = {SimpleType.INTEGER, SimpleType.LONG, SimpleType.DOUBLE, SimpleType.FLOAT, SimpleType.BOOLEAN, SimpleType.CHARACTER, SimpleType.STRING};
+		CompositeType rowType = new CompositeType("Row", "A row", names, names, types);
+		TabularType tt = new TabularType("Table", "A table", rowType, new String[]{"id"});
+		TabularDataSupport td = new TabularDataSupport(tt);
+		for(int i = 0; i < 100; i++) {
+			td.put(new CompositeDataSupport(rowType, names, new Object[]{
+				i, i%7==0 ? null : (long)i * 1000000L, i * 0.5d, i%5==0 ? null : (float)i, i%3==0 ? null : i%2==0, (char)('a' + i%26), i%11==0 ? null : "name" + i
+			}));
+		}
+		ByteArrayOutput bao = new ByteArrayOutput();		
+		K.writeClassAndObject(bao, td);
+		bao.flush();
+		log("Output Bytes:%s", bao.getBytes().length);
+		ByteArrayInput in = new ByteArrayInput(bao.getBytes());
+		Object o = K.readClassAndObject(in);
+		Assert.assertEquals(td, o);
+		Assert.assertEquals(bao.getBytes().length, in.getBytesRead());
+	}
+	
 	@Test
 	public void testWriteReadAllCompositeData() {
 		long kBytesOut = 0, kBytesIn = 0, jBytesOut = 0, jBytesIn = 0; 
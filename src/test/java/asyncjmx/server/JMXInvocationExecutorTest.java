@@ -0,0 +1,213 @@
+/**
+ * 
+ */
+package asyncjmx.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelDownstreamHandler;
+import org.jboss.netty.channel.UpstreamMessageEvent;
+import org.jboss.netty.channel.local.DefaultLocalClientChannelFactory;
+import org.jboss.netty.handler.execution.ChannelEventRunnable;
+import org.junit.Test;
+
+import asyncjmx.base.BaseTest;
+
+import com.heliosapm.asyncjmx.client.JMXOpResponse;
+import com.heliosapm.asyncjmx.server.JMXBulkhead;
+import com.heliosapm.asyncjmx.server.JMXInvocationExecutor;
+import com.heliosapm.asyncjmx.server.JMXInvocationExecutor.InvocationMode;
+import com.heliosapm.asyncjmx.shared.JMXOp;
+import com.heliosapm.asyncjmx.shared.JMXOpCode;
+import com.heliosapm.asyncjmx.shared.ServerBusyException;
+
+/**
+ * <p>Title: JMXInvocationExecutorTest</p>
+ * <p>Description: Tests for the routing of ops through the server's invocation stage</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>asyncjmx.server.JMXInvocationExecutorTest</code></b>
+ */
+
+public class JMXInvocationExecutorTest extends BaseTest {
+
+	/**
+	 * Verifies that the default bulkheads do not isolate any op that must be executed in channel order
+	 */
+	@Test
+	public void testDefaultBulkheadsExcludeOrderedOps() {
+		for(JMXBulkhead bulkhead: JMXInvocationExecutor.getConfiguredBulkheads()) {
+			for(JMXOpCode opCode: bulkhead.getOpCodes()) {
+				assertFalse("Ordered op [" + opCode + "] in default bulkhead [" + bulkhead.getName() + "]", JMXInvocationExecutor.ORDERED_OPS.contains(opCode));
+			}
+		}
+	}
+	
+	/**
+	 * Verifies that two INVOKEs on one channel complete in submission order in ROUTED mode,
+	 * even when INVOKE is configured into a bulkhead
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testInvokesCompleteInSubmissionOrder() throws Exception {
+		JMXBulkhead bulkhead = new JMXBulkhead("heavy", EnumSet.of(JMXOpCode.INVOKE, JMXOpCode.QUERYNAMES), 4, 16, JMXBulkhead.RejectionPolicy.BUSY);
+		JMXInvocationExecutor executor = new JMXInvocationExecutor(InvocationMode.ROUTED, 4, 1048576, 1048576 * 16, Collections.singleton(bulkhead));
+		try {
+			assertNull("INVOKE was isolated", executor.getBulkhead(JMXOpCode.INVOKE));
+			assertSame(bulkhead, executor.getBulkhead(JMXOpCode.QUERYNAMES));
+			Channel channel = new DefaultLocalClientChannelFactory().newChannel(Channels.pipeline());
+			final List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+			final CountDownLatch latch = new CountDownLatch(2);
+			executor.execute(new OpRunnable(channel, 1, 200, completed, latch));
+			executor.execute(new OpRunnable(channel, 2, 0, completed, latch));
+			assertTrue("Invokes did not complete", latch.await(5, TimeUnit.SECONDS));
+			assertEquals("Completion order", Arrays.asList(1, 2), completed);
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Verifies that an op submitted to a saturated BUSY bulkhead is not executed
+	 * and that the caller is sent a {@link ServerBusyException} response
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testSaturatedBusyBulkheadRejects() throws Exception {
+		JMXBulkhead bulkhead = new JMXBulkhead("busy", EnumSet.of(JMXOpCode.QUERYNAMES), 1, 1, JMXBulkhead.RejectionPolicy.BUSY);
+		JMXInvocationExecutor executor = new JMXInvocationExecutor(InvocationMode.ROUTED, 4, 1048576, 1048576 * 16, Collections.singleton(bulkhead));
+		final List<Object> written = Collections.synchronizedList(new ArrayList<Object>());
+		Channel channel = newCapturingChannel(written);
+		final List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch latch = new CountDownLatch(2);
+		final CountDownLatch gate = new CountDownLatch(1);
+		try {
+			OpRunnable blocker = new OpRunnable(channel, JMXOpCode.QUERYNAMES, 1, gate, completed, latch);
+			executor.execute(blocker);
+			assertTrue("Bulkhead worker did not start", blocker.started.await(5, TimeUnit.SECONDS));
+			executor.execute(new OpRunnable(channel, JMXOpCode.QUERYNAMES, 2, gate, completed, latch));
+			assertEquals("Queue depth", 1, bulkhead.getQueueDepth());
+			OpRunnable rejected = new OpRunnable(channel, JMXOpCode.QUERYNAMES, 3, gate, completed, latch);
+			executor.execute(rejected);
+			assertEquals("Rejection count", 1, bulkhead.getRejectionCount());
+			assertEquals("Written responses", 1, written.size());
+			JMXOpResponse response = (JMXOpResponse)written.get(0);
+			assertEquals(JMXOpCode.QUERYNAMES, response.getOpCode());
+			assertEquals(rejected.op.getOpSeq(), response.getRequestId());
+			assertTrue("Response was not a ServerBusyException: " + response.getResponse(), response.getResponse() instanceof ServerBusyException);
+			gate.countDown();
+			assertTrue("Accepted ops did not complete", latch.await(5, TimeUnit.SECONDS));
+			assertEquals("Completed ops", Arrays.asList(1, 2), completed);
+			assertNull("Rejected op was executed", rejected.ranOn);
+		} finally {
+			gate.countDown();
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Verifies that an op submitted to a saturated CALLER_RUNS bulkhead is executed on the submitting thread
+	 * and that no busy response is sent
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testSaturatedCallerRunsBulkheadRunsOnCaller() throws Exception {
+		JMXBulkhead bulkhead = new JMXBulkhead("callerRuns", EnumSet.of(JMXOpCode.QUERYNAMES), 1, 1, JMXBulkhead.RejectionPolicy.CALLER_RUNS);
+		JMXInvocationExecutor executor = new JMXInvocationExecutor(InvocationMode.ROUTED, 4, 1048576, 1048576 * 16, Collections.singleton(bulkhead));
+		final List<Object> written = Collections.synchronizedList(new ArrayList<Object>());
+		Channel channel = newCapturingChannel(written);
+		final List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch latch = new CountDownLatch(3);
+		final CountDownLatch gate = new CountDownLatch(1);
+		try {
+			OpRunnable blocker = new OpRunnable(channel, JMXOpCode.QUERYNAMES, 1, gate, completed, latch);
+			executor.execute(blocker);
+			assertTrue("Bulkhead worker did not start", blocker.started.await(5, TimeUnit.SECONDS));
+			executor.execute(new OpRunnable(channel, JMXOpCode.QUERYNAMES, 2, gate, completed, latch));
+			assertEquals("Queue depth", 1, bulkhead.getQueueDepth());
+			OpRunnable callerRun = new OpRunnable(channel, JMXOpCode.QUERYNAMES, 3, null, completed, latch);
+			executor.execute(callerRun);
+			assertSame("Saturated op was not run by the caller", Thread.currentThread(), callerRun.ranOn);
+			assertEquals("Completed ops", Arrays.asList(3), completed);
+			assertEquals("Rejection count", 1, bulkhead.getRejectionCount());
+			gate.countDown();
+			assertTrue("Queued ops did not complete", latch.await(5, TimeUnit.SECONDS));
+			assertEquals("Completed ops", Arrays.asList(3, 1, 2), completed);
+			assertTrue("Busy response written: " + written, written.isEmpty());
+		} finally {
+			gate.countDown();
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Creates an unconnected local channel whose pipeline captures written messages instead of sending them
+	 * @param written The list the written messages are added to
+	 * @return the channel
+	 */
+	static Channel newCapturingChannel(final List<Object> written) {
+		return new DefaultLocalClientChannelFactory().newChannel(Channels.pipeline(new SimpleChannelDownstreamHandler() {
+			@Override
+			public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) {
+				written.add(e.getMessage());
+			}
+		}));
+	}
+	
+	/**
+	 * <p>Title: OpRunnable</p>
+	 * <p>Description: A stand in for the execution handler's runnable which records when its op completes</p>
+	 */
+	static class OpRunnable extends ChannelEventRunnable {
+		final int id;
+		final long sleep;
+		final CountDownLatch gate;
+		final List<Integer> completed;
+		final CountDownLatch latch;
+		final JMXOp op;
+		final CountDownLatch started = new CountDownLatch(1);
+		volatile Thread ranOn = null;
+		
+		OpRunnable(Channel channel, int id, long sleep, List<Integer> completed, CountDownLatch latch) {
+			this(channel, JMXOp.newOp(channel, JMXOpCode.INVOKE, "invoke#" + id), id, sleep, null, completed, latch);
+		}
+		
+		OpRunnable(Channel channel, JMXOpCode opCode, int id, CountDownLatch gate, List<Integer> completed, CountDownLatch latch) {
+			this(channel, JMXOp.newOp(channel, opCode, "op#" + id), id, 0, gate, completed, latch);
+		}
+		
+		private OpRunnable(Channel channel, JMXOp op, int id, long sleep, CountDownLatch gate, List<Integer> completed, CountDownLatch latch) {
+			super(null, new UpstreamMessageEvent(channel, op, null), null);
+			this.op = op;
+			this.id = id;
+			this.sleep = sleep;
+			this.gate = gate;
+			this.completed = completed;
+			this.latch = latch;
+		}
+		
+		@Override
+		protected void doRun() {
+			ranOn = Thread.currentThread();
+			started.countDown();
+			try {
+				if(sleep>0) Thread.sleep(sleep);
+				if(gate!=null) gate.await();
+			} catch (InterruptedException iex) {
+				Thread.currentThread().interrupt();
+			}
+			completed.add(id);
+			latch.countDown();
+		}
+	}
+}
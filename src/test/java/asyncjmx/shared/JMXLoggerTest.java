@@ -0,0 +1,66 @@
+/**
+ * 
+ */
+package asyncjmx.shared;
+
+import org.junit.Test;
+
+import asyncjmx.base.BaseTest;
+
+import com.heliosapm.asyncjmx.shared.logging.JMXLogger;
+
+/**
+ * <p>Title: JMXLoggerTest</p>
+ * <p>Description: Tests the format specifier counting the logger uses to detect a trailing throwable argument</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>asyncjmx.shared.JMXLoggerTest</code></b>
+ */
+
+public class JMXLoggerTest extends BaseTest {
+	
+	/**
+	 * <p>Title: SpecifierCounter</p>
+	 * <p>Description: Exposes the logger's specifier count</p>
+	 */
+	static class SpecifierCounter extends JMXLogger {
+		SpecifierCounter() {
+			super(JMXLoggerTest.class);
+		}
+		static int count(String format) {
+			return countSpecifiers(format);
+		}
+	}
+	
+	/**
+	 * Verifies the number of arguments counted for ordinary, indexed and relative specifiers
+	 */
+	@Test
+	public void testCountSpecifiers() {
+		assertEquals(0, SpecifierCounter.count(""));
+		assertEquals(0, SpecifierCounter.count("no specifiers"));
+		assertEquals(0, SpecifierCounter.count("100%% done%n"));
+		assertEquals(2, SpecifierCounter.count("op [%s]--[%s]"));
+		assertEquals(3, SpecifierCounter.count("%-10s|%05d|%.2f"));
+		assertEquals(2, SpecifierCounter.count("%s took %,d ms%n"));
+		assertEquals(1, SpecifierCounter.count("%tY-%<tm-%<td"));
+		assertEquals(2, SpecifierCounter.count("%2$s %1$s"));
+		assertEquals(2, SpecifierCounter.count("%1$s %1$s %2$s"));
+		assertEquals(3, SpecifierCounter.count("%3$s"));
+		assertEquals(1, SpecifierCounter.count("%1$s %<s"));
+		assertEquals(2, SpecifierCounter.count("%s %s %1$s"));
+	}
+	
+	/**
+	 * Verifies that a trailing throwable is only treated as the exception when no specifier consumes it
+	 */
+	@Test
+	public void testTrailingThrowableWithIndexedSpecifiers() {
+		final Exception ex = new Exception("boom");
+		assertTrue(SpecifierCounter.count("failed [%1$s]") < new Object[]{"op", ex}.length);
+		assertFalse(SpecifierCounter.count("failed [%1$s]: %2$s") < new Object[]{"op", ex}.length);
+		// logging must not throw when an indexed specifier consumes the throwable
+		new SpecifierCounter().warn("failed [%1$s]: %2$s", "op", ex);
+		new SpecifierCounter().warn("failed [%1$s]", "op", ex);
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ * 
+ */
+package asyncjmx.shared;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import asyncjmx.base.BaseTest;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.heliosapm.asyncjmx.shared.KryoFactory;
+import com.heliosapm.asyncjmx.shared.serialization.ChannelDictionary;
+import com.heliosapm.asyncjmx.shared.serialization.ObjectNameSerializer;
+
+/**
+ * <p>Title: ObjectNameSerializerTest</p>
+ * <p>Description: Tests that the ObjectName channel dictionaries of a writer and a reader kryo stay in step</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>asyncjmx.shared.ObjectNameSerializerTest</code></b>
+ */
+
+public class ObjectNameSerializerTest extends BaseTest {
+	/** Test names */
+	static final ObjectName A = objectName("java.lang:type=Runtime"), B = objectName("java.lang:type=Threading"),
+			C = objectName("java.lang:type=Memory"), D = objectName("java.lang:type=MemoryPool,name=Metaspace");
+	
+	static ObjectName objectName(String name) {
+		try {
+			return new ObjectName(name);
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+	
+	/**
+	 * Encodes a single name as its own frame
+	 * @param writer The writer kryo
+	 * @param on The name to encode
+	 * @return the encoded bytes, the first being the format byte
+	 */
+	static byte[] encode(Kryo writer, ObjectName on) {
+		final Output output = new Output(256, -1);
+		writer.writeObject(output, on);
+		return output.toBytes();
+	}
+	
+	/**
+	 * Decodes a single name frame
+	 * @param reader The reader kryo
+	 * @param bytes The encoded bytes
+	 * @return the decoded name
+	 */
+	static ObjectName decode(Kryo reader, byte[] bytes) {
+		final Input input = new Input(bytes);
+		final ObjectName on = reader.readObject(input, ObjectName.class);
+		assertEquals("Unread bytes", bytes.length, input.position());
+		return on;
+	}
+	
+	/**
+	 * Returns the size of the passed kryo's ObjectName dictionary
+	 * @param kryo The kryo
+	 * @return the dictionary size
+	 */
+	static int dictionarySize(Kryo kryo) {
+		return ChannelDictionary.get(kryo, ObjectNameSerializer.DICTIONARY_KEY).size();
+	}
+	
+	/**
+	 * Verifies that first occurrences are defined, repeats are sent as ids and the reader returns the instance it first parsed
+	 */
+	@Test
+	public void testDefineThenIdRoundTrip() {
+		final Kryo writer = KryoFactory.getInstance().newChannelKryo();
+		final Kryo reader = KryoFactory.getInstance().newChannelKryo();
+		final ObjectName[] sent = new ObjectName[]{A, B, A, C, B, A};
+		final byte[] expectedFormats = new byte[]{ObjectNameSerializer.FORMAT_DEFINE, ObjectNameSerializer.FORMAT_DEFINE, ObjectNameSerializer.FORMAT_ID, 
+				ObjectNameSerializer.FORMAT_DEFINE, ObjectNameSerializer.FORMAT_ID, ObjectNameSerializer.FORMAT_ID};
+		final ObjectName[] firstRead = new ObjectName[3];
+		for(int i = 0; i < sent.length; i++) {
+			final byte[] bytes = encode(writer, sent[i]);
+			assertEquals("Format of name " + i, expectedFormats[i], bytes[0]);
+			if(bytes[0]==ObjectNameSerializer.FORMAT_ID) {
+				assertTrue("Id frame is [" + bytes.length + "] bytes", bytes.length <= 3);
+			}
+			final ObjectName read = decode(reader, bytes);
+			assertEquals(sent[i], read);
+			final int slot = sent[i]==A ? 0 : sent[i]==B ? 1 : 2;
+			if(firstRead[slot]==null) {
+				firstRead[slot] = read;
+			} else {
+				assertSame("Repeated name was not the dictionary instance", firstRead[slot], read);
+			}
+		}
+		assertEquals(3, dictionarySize(writer));
+		assertEquals(3, dictionarySize(reader));
+	}
+	
+	/**
+	 * Verifies that ids assigned while encoding an abandoned frame are rolled back, so the next frame defines the name again
+	 * with the id the reader expects
+	 */
+	@Test
+	public void testRollbackAfterAbortedEncode() {
+		final Kryo writer = KryoFactory.getInstance().newChannelKryo();
+		final Kryo reader = KryoFactory.getInstance().newChannelKryo();
+		decode(reader, encode(writer, A));
+		ChannelDictionary.markAll(writer);
+		// a frame defining C and D, and referencing A, is encoded but never sent
+		final Output aborted = new Output(256, -1);
+		writer.writeObject(aborted, C);
+		writer.writeObject(aborted, A);
+		writer.writeObject(aborted, D);
+		assertEquals(3, dictionarySize(writer));
+		ChannelDictionary.rollbackAll(writer);
+		assertEquals("Rollback did not discard the aborted frame's ids", 1, dictionarySize(writer));
+		// the next frame must define D and C afresh, with ids following A's
+		ChannelDictionary.markAll(writer);
+		final byte[] d = encode(writer, D);
+		assertEquals(ObjectNameSerializer.FORMAT_DEFINE, d[0]);
+		assertEquals(D, decode(reader, d));
+		final byte[] c = encode(writer, C);
+		assertEquals(ObjectNameSerializer.FORMAT_DEFINE, c[0]);
+		assertEquals(C, decode(reader, c));
+		final byte[] a = encode(writer, A);
+		assertEquals("A defined before the mark should survive the rollback", ObjectNameSerializer.FORMAT_ID, a[0]);
+		assertEquals(A, decode(reader, a));
+		assertEquals(dictionarySize(writer), dictionarySize(reader));
+	}
+	
+	/**
+	 * Verifies that once the dictionary is full, new names fall back to their canonical string while defined names keep their ids
+	 */
+	@Test
+	public void testStringFallbackWhenFull() {
+		final Kryo writer = KryoFactory.getInstance().newKryo();
+		final Kryo reader = KryoFactory.getInstance().newKryo();
+		ChannelDictionary.install(writer, ObjectNameSerializer.DICTIONARY_KEY, 2);
+		ChannelDictionary.install(reader, ObjectNameSerializer.DICTIONARY_KEY, 2);
+		final ObjectName[] sent = new ObjectName[]{A, B, C, D, A, C};
+		final byte[] expectedFormats = new byte[]{ObjectNameSerializer.FORMAT_DEFINE, ObjectNameSerializer.FORMAT_DEFINE, ObjectNameSerializer.FORMAT_STRING, 
+				ObjectNameSerializer.FORMAT_STRING, ObjectNameSerializer.FORMAT_ID, ObjectNameSerializer.FORMAT_STRING};
+		for(int i = 0; i < sent.length; i++) {
+			final byte[] bytes = encode(writer, sent[i]);
+			assertEquals("Format of name " + i, expectedFormats[i], bytes[0]);
+			assertEquals(sent[i], decode(reader, bytes));
+		}
+		assertEquals(2, dictionarySize(writer));
+		assertEquals(2, dictionarySize(reader));
+	}
+	
+	/**
+	 * Verifies that a kryo without a dictionary always sends the canonical name
+	 */
+	@Test
+	public void testNoDictionarySendsStrings() {
+		final Kryo writer = KryoFactory.getInstance().newKryo();
+		final Kryo reader = KryoFactory.getInstance().newKryo();
+		for(ObjectName on: new ObjectName[]{A, A}) {
+			final byte[] bytes = encode(writer, on);
+			assertEquals(ObjectNameSerializer.FORMAT_STRING, bytes[0]);
+			assertEquals(on, decode(reader, bytes));
+		}
+	}
+}
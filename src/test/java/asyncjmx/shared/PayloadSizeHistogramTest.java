@@ -0,0 +1,111 @@
+/**
+ * 
+ */
+package asyncjmx.shared;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import asyncjmx.base.BaseTest;
+
+import com.heliosapm.asyncjmx.shared.serialization.PayloadSizeHistogram.SizeEstimator;
+
+/**
+ * <p>Title: PayloadSizeHistogramTest</p>
+ * <p>Description: Tests for the payload size histogram's streaming percentile estimator</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>asyncjmx.shared.PayloadSizeHistogramTest</code></b>
+ */
+
+public class PayloadSizeHistogramTest extends BaseTest {
+	
+	/**
+	 * Verifies the bucket index and upper bound of sizes at the bucket boundaries
+	 */
+	@Test
+	public void testBucketBoundaries() {
+		assertEquals(0, SizeEstimator.bucket(-1));
+		assertEquals(0, SizeEstimator.bucket(Integer.MIN_VALUE));
+		for(int size = 0; size < 8; size++) {
+			assertEquals("Bucket of " + size, size, SizeEstimator.bucket(size));
+			assertEquals("Upper bound of " + size, size, SizeEstimator.upperBound(size));
+		}
+		assertEquals(8, SizeEstimator.bucket(8));
+		assertEquals(15, SizeEstimator.bucket(15));
+		assertEquals(16, SizeEstimator.bucket(16));
+		assertEquals(16, SizeEstimator.bucket(17));
+		assertEquals(17, SizeEstimator.bucket(18));
+		assertEquals(17, SizeEstimator.upperBound(16));
+		assertEquals(1023, SizeEstimator.upperBound(SizeEstimator.bucket(960)));
+		assertEquals(959, SizeEstimator.upperBound(SizeEstimator.bucket(959)));
+		assertEquals(Integer.MAX_VALUE, SizeEstimator.upperBound(SizeEstimator.bucket(Integer.MAX_VALUE)));
+		// Buckets are contiguous: each starts one past the previous upper bound and spans at most an eighth of its lower bound
+		final int last = SizeEstimator.bucket(Integer.MAX_VALUE);
+		for(int b = 1; b <= last; b++) {
+			final int lower = SizeEstimator.upperBound(b - 1) + 1;
+			final int upper = SizeEstimator.upperBound(b);
+			assertEquals("Bucket of lower bound " + lower, b, SizeEstimator.bucket(lower));
+			assertEquals("Bucket of upper bound " + upper, b, SizeEstimator.bucket(upper));
+			assertTrue("Bucket [" + b + "] too wide: " + lower + "-" + upper, upper - lower + 1 <= Math.max(1, lower / 8));
+		}
+	}
+	
+	/**
+	 * Verifies that the estimate is the default until 3 samples are recorded and then converges to the configured percentile
+	 */
+	@Test
+	public void testConvergesToPercentile() {
+		final SizeEstimator p90 = new SizeEstimator(128, 90, 777);
+		final SizeEstimator p50 = new SizeEstimator(128, 50, 777);
+		p90.sample(10);
+		p90.sample(10);
+		assertFalse(p90.isPrimed());
+		assertEquals(777, p90.estimate());
+		p90.sample(10);
+		assertTrue(p90.isPrimed());
+		assertEquals(10, p90.estimate());
+		final Random random = new Random(1024);
+		for(int i = 0; i < 10000; i++) {
+			final int size = 1 + random.nextInt(100);
+			p90.sample(size);
+			p50.sample(size);
+		}
+		log("p90: %s, p50: %s", p90.estimate(), p50.estimate());
+		assertEquals("Estimate is not a bucket upper bound", SizeEstimator.upperBound(SizeEstimator.bucket(p90.estimate())), p90.estimate());
+		assertTrue("p90 estimate " + p90.estimate(), p90.estimate() >= 80 && p90.estimate() <= 111);
+		assertTrue("p50 estimate " + p50.estimate(), p50.estimate() >= 40 && p50.estimate() <= 63);
+	}
+	
+	/**
+	 * Verifies that old samples decay so the estimate follows a shift in sizes, up and back down
+	 */
+	@Test
+	public void testDecaysAfterShift() {
+		final int samplingSize = 128;
+		final SizeEstimator estimator = new SizeEstimator(samplingSize, 90, 1);
+		final int small = SizeEstimator.upperBound(SizeEstimator.bucket(100));
+		final int large = SizeEstimator.upperBound(SizeEstimator.bucket(5000));
+		for(int i = 0; i < 10000; i++) estimator.sample(100);
+		assertEquals(small, estimator.estimate());
+		assertTrue("Estimate did not rise to " + large, samplesUntil(estimator, 5000, large, samplingSize * 4));
+		assertTrue("Estimate did not fall back to " + small, samplesUntil(estimator, 100, small, samplingSize * 4));
+	}
+	
+	/**
+	 * Samples the passed size until the estimator's estimate is the expected value
+	 * @param estimator The estimator to sample into
+	 * @param size The size to sample
+	 * @param expected The expected estimate
+	 * @param maxSamples The maximum number of samples to record
+	 * @return true if the estimate reached the expected value within the maximum number of samples
+	 */
+	static boolean samplesUntil(SizeEstimator estimator, int size, int expected, int maxSamples) {
+		for(int i = 0; i < maxSamples; i++) {
+			estimator.sample(size);
+			if(estimator.estimate()==expected) return true;
+		}
+		return false;
+	}
+}
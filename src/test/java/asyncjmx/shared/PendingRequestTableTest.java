@@ -0,0 +1,145 @@
+/**
+ * 
+ */
+package asyncjmx.shared;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import asyncjmx.base.BaseTest;
+
+import com.heliosapm.asyncjmx.shared.util.PendingRequestTable;
+
+/**
+ * <p>Title: PendingRequestTableTest</p>
+ * <p>Description: Tests for the lock-free pending synchronous request table</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>asyncjmx.shared.PendingRequestTableTest</code></b>
+ */
+
+public class PendingRequestTableTest extends BaseTest {
+	
+	/**
+	 * Verifies that a response arriving before the waiter waits is handed over
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testCompleteBeforeAwait() throws Exception {
+		final PendingRequestTable table = new PendingRequestTable(4);
+		table.register(1, 1000);
+		assertEquals(1, table.getPendingCount());
+		assertTrue(table.complete(1, "r1"));
+		assertFalse("A second completion should be dropped", table.complete(1, "again"));
+		final long start = System.currentTimeMillis();
+		assertEquals("r1", table.waitFor(1, 5000));
+		assertTrue("Waited for a completed response", System.currentTimeMillis() - start < 1000);
+		assertEquals(0, table.getPendingCount());
+	}
+	
+	/**
+	 * Verifies that a response completed by another thread unparks the waiter
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testCompleteFromAnotherThread() throws Exception {
+		final PendingRequestTable table = new PendingRequestTable(4);
+		table.register(2, 1000);
+		new Thread("PendingRequestTableTest#completer") {
+			@Override
+			public void run() {
+				try { Thread.sleep(100); } catch (InterruptedException e) {}
+				table.complete(2, "r2");
+			}
+		}.start();
+		assertEquals("r2", table.waitFor(2, 5000));
+		assertEquals(0, table.getPendingCount());
+	}
+	
+	/**
+	 * Verifies that a response arriving after its waiter timed out is dropped and the slot is safely reused
+	 * by a later request mapping to the same slot
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testLateResponseAfterTimeoutIsDropped() throws Exception {
+		final PendingRequestTable table = new PendingRequestTable(4);
+		table.register(5, 1000);
+		try {
+			table.waitFor(5, 50);
+			fail("Wait should have timed out");
+		} catch (TimeoutException expected) {}
+		assertEquals("The abandoned slot was not reclaimed", 0, table.getPendingCount());
+		assertFalse("A late response should be dropped", table.complete(5, "late"));
+		assertEquals(0, table.getPendingCount());
+		// request 9 maps to the same slot as request 5
+		table.register(9, 50);
+		assertFalse("A late response should not complete the slot's new request", table.complete(5, "late"));
+		assertTrue(table.complete(9, "r9"));
+		assertEquals("r9", table.waitFor(9, 1000));
+		assertEquals(0, table.getPendingCount());
+	}
+	
+	/**
+	 * Verifies that registering for a slot still held by an older request times out
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testRegisterOnOccupiedSlotTimesOut() throws Exception {
+		final PendingRequestTable table = new PendingRequestTable(4);
+		table.register(3, 1000);
+		try {
+			table.register(7, 50);
+			fail("Register should have timed out");
+		} catch (TimeoutException expected) {}
+		assertTrue(table.complete(3, "r3"));
+		assertEquals("r3", table.waitFor(3, 1000));
+		table.register(7, 50);
+		assertTrue(table.complete(7, "r7"));
+		assertEquals("r7", table.waitFor(7, 1000));
+	}
+	
+	/**
+	 * Verifies that completing all pending requests, as on channel close, hands every waiter the failure
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testCompleteAllOnClose() throws Exception {
+		final PendingRequestTable table = new PendingRequestTable(8);
+		assertEquals(0, table.completeAll(new ClosedChannelException()));
+		final int waiters = 3;
+		final CountDownLatch registered = new CountDownLatch(waiters);
+		final Object[] results = new Object[waiters];
+		final Thread[] threads = new Thread[waiters];
+		for(int i = 0; i < waiters; i++) {
+			final int index = i;
+			threads[i] = new Thread("PendingRequestTableTest#" + i) {
+				@Override
+				public void run() {
+					try {
+						table.register(10 + index, 1000);
+						registered.countDown();
+						results[index] = table.waitFor(10 + index, 10000);
+					} catch (Throwable t) {
+						results[index] = t;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		assertTrue("Waiters did not register", registered.await(5000, TimeUnit.MILLISECONDS));
+		final ClosedChannelException closed = new ClosedChannelException();
+		assertEquals(waiters, table.completeAll(closed));
+		for(int i = 0; i < waiters; i++) {
+			threads[i].join(5000);
+			assertSame("Waiter " + i + " got " + results[i], closed, results[i]);
+		}
+		assertEquals(0, table.getPendingCount());
+		assertFalse("A response after close should be dropped", table.complete(10, "late"));
+		assertEquals(0, table.completeAll(closed));
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * 
+ */
+package asyncjmx.shared;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelDownstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.junit.Test;
+
+import asyncjmx.base.BaseTest;
+
+import com.heliosapm.asyncjmx.shared.WriteCoalescingHandler;
+
+/**
+ * <p>Title: WriteCoalescingHandlerTest</p>
+ * <p>Description: Tests for the coalescing of frames written to a channel</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>asyncjmx.shared.WriteCoalescingHandlerTest</code></b>
+ */
+
+public class WriteCoalescingHandlerTest extends BaseTest {
+	/** The number of frames written */
+	static final int FRAMES = 50;
+
+	/**
+	 * Verifies that frames written on the I/O thread are coalesced into fewer downstream writes and stay in order
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testIoThreadWritesAreCoalesced() throws Exception {
+		final NioServerSocketChannelFactory serverFactory = new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
+		final NioClientSocketChannelFactory clientFactory = new NioClientSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
+		try {
+			Channel serverChannel = new ServerBootstrap(serverFactory).bind(new InetSocketAddress("127.0.0.1", 0));
+			final List<ChannelBuffer> downstream = Collections.synchronizedList(new ArrayList<ChannelBuffer>());
+			ChannelPipeline pipeline = Channels.pipeline();
+			pipeline.addLast("counter", new SimpleChannelDownstreamHandler() {
+				@Override
+				public void writeRequested(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+					downstream.add(((ChannelBuffer)e.getMessage()).duplicate());
+					super.writeRequested(ctx, e);
+				}
+			});
+			pipeline.addLast("coalesce", new WriteCoalescingHandler(1048576, FRAMES * 2, 0L));
+			final Channel channel = clientFactory.newChannel(pipeline);
+			channel.connect(serverChannel.getLocalAddress()).awaitUninterruptibly();
+			assertTrue("Not connected", channel.isConnected());
+			final CountDownLatch written = new CountDownLatch(FRAMES);
+			channel.getPipeline().execute(new Runnable() {
+				@Override
+				public void run() {
+					for(int i = 0; i < FRAMES; i++) {
+						ChannelBuffer frame = ChannelBuffers.buffer(4);
+						frame.writeInt(i);
+						channel.write(frame).addListener(new ChannelFutureListener() {
+							@Override
+							public void operationComplete(ChannelFuture future) throws Exception {
+								if(future.isSuccess()) written.countDown();
+							}
+						});
+					}
+				}
+			});
+			assertTrue("Frames not written", written.await(5, TimeUnit.SECONDS));
+			log("[%s] frames written in [%s] downstream writes", FRAMES, downstream.size());
+			assertTrue("Frames not coalesced: " + downstream.size() + " downstream writes", downstream.size() < FRAMES);
+			int expected = 0;
+			for(ChannelBuffer buffer: downstream) {
+				while(buffer.readable()) {
+					assertEquals("Frame order", expected++, buffer.readInt());
+				}
+			}
+			assertEquals("Frame count", FRAMES, expected);
+			channel.close().awaitUninterruptibly();
+			serverChannel.close().awaitUninterruptibly();
+		} finally {
+			clientFactory.releaseExternalResources();
+			serverFactory.releaseExternalResources();
+		}
+	}
+}
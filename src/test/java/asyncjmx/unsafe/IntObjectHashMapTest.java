@@ -0,0 +1,292 @@
+/**
+ * 
+ */
+package asyncjmx.unsafe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import asyncjmx.base.BaseTest;
+
+import com.heliosapm.asyncjmx.unsafe.collections.ConcurrentIntObjectHashMap;
+import com.heliosapm.asyncjmx.unsafe.collections.IntObjectHashMap;
+
+/**
+ * <p>Title: IntObjectHashMapTest</p>
+ * <p>Description: Tests for the off-heap keyed int to object hash maps</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>asyncjmx.unsafe.IntObjectHashMapTest</code></b>
+ */
+
+public class IntObjectHashMapTest extends BaseTest {
+	
+	/**
+	 * <p>Title: ProbedMap</p>
+	 * <p>Description: Exposes the slot layout of the map under test</p>
+	 */
+	static class ProbedMap extends IntObjectHashMap<String> {
+		ProbedMap(int initialCapacity) {
+			super(initialCapacity);
+		}
+		/** Returns the number of slots */
+		int slots() {
+			return mask + 1;
+		}
+		/** Returns the home slot of the passed key */
+		int homeOf(int key) {
+			return home(key);
+		}
+		/** Indicates if the passed slot is occupied */
+		boolean occupied(int slot) {
+			return values[slot]!=null;
+		}
+		/** Returns the slot holding the passed key, or -1 */
+		int slotOf(int key) {
+			return find(key);
+		}
+		/**
+		 * Returns the passed number of distinct keys whose home is the passed slot
+		 * @param slot The home slot
+		 * @param count The number of keys
+		 * @param exclude Keys not to return
+		 * @return the keys
+		 */
+		int[] keysHomedAt(int slot, int count, Set<Integer> exclude) {
+			final int[] keys = new int[count];
+			int found = 0;
+			for(int k = 1; found < count; k++) {
+				if(home(k)==slot && !exclude.contains(k)) {
+					keys[found++] = k;
+					exclude.add(k);
+				}
+			}
+			return keys;
+		}
+	}
+	
+	/**
+	 * Tests basic puts, gets, replacement and removal, including key zero and the extreme keys
+	 */
+	@Test
+	public void testInsertAndDelete() {
+		final IntObjectHashMap<String> map = new IntObjectHashMap<String>();
+		try {
+			final int[] keys = new int[] {0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE};
+			for(int k: keys) {
+				assertFalse(map.containsKey(k));
+				assertNull(map.get(k));
+				assertNull(map.put(k, "v" + k));
+			}
+			assertEquals(keys.length, map.size());
+			for(int k: keys) {
+				assertTrue("Missing " + k, map.containsKey(k));
+				assertEquals("v" + k, map.get(k));
+			}
+			assertEquals("v0", map.put(0, "zero"));
+			assertEquals("zero", map.putIfAbsent(0, "ignored"));
+			assertEquals("zero", map.get(0));
+			assertEquals(keys.length, map.size());
+			assertEquals("zero", map.remove(0));
+			assertNull(map.remove(0));
+			assertFalse(map.containsKey(0));
+			assertNull(map.putIfAbsent(0, "again"));
+			assertEquals("again", map.get(0));
+			assertFalse("Removed a mapping to a different value", map.remove(0, new String("again")));
+			assertEquals("again", map.get(0));
+			final String again = map.get(0);
+			assertTrue(map.remove(0, again));
+			assertFalse(map.containsKey(0));
+			map.put(0, again);
+			for(int k: keys) {
+				assertNotNull(map.remove(k));
+			}
+			assertTrue(map.isEmpty());
+			assertEquals("{}", map.toString());
+		} finally {
+			map.destroy();
+		}
+	}
+	
+	/**
+	 * Verifies that null values, which mark free slots, are rejected
+	 */
+	@Test
+	public void testNullValueRejected() {
+		final IntObjectHashMap<String> map = new IntObjectHashMap<String>();
+		try {
+			try {
+				map.put(0, null);
+				fail("Null value should be rejected");
+			} catch (IllegalArgumentException expected) {}
+			assertTrue(map.isEmpty());
+			assertFalse(map.containsKey(0));
+		} finally {
+			map.destroy();
+		}
+	}
+	
+	/**
+	 * Builds probe runs that wrap from the end of the table to the start and verifies
+	 * that removals within them keep every remaining key reachable
+	 */
+	@Test
+	public void testWrapAroundDeletionClusters() {
+		for(int victim = 0; victim < 5; victim++) {
+			final ProbedMap map = new ProbedMap(5);
+			try {
+				final int last = map.slots() - 1;
+				final Set<Integer> used = new HashSet<Integer>();
+				// three keys homed at the last slot wrap into slots 0 and 1
+				final int[] endKeys = map.keysHomedAt(last, 3, used);
+				// a key homed at slot 0 is displaced behind the wrapped run
+				final int[] startKeys = map.keysHomedAt(0, 1, used);
+				// a key homed at the second last slot precedes the run
+				final int[] beforeKeys = map.keysHomedAt(last - 1, 1, used);
+				final List<Integer> all = new ArrayList<Integer>();
+				for(int k: beforeKeys) all.add(k);
+				for(int k: endKeys) all.add(k);
+				for(int k: startKeys) all.add(k);
+				for(int k: all) map.put(k, "v" + k);
+				assertEquals("Map resized, test layout is invalid", last + 1, map.slots());
+				assertEquals(1, map.slotOf(endKeys[2]));
+				assertEquals(2, map.slotOf(startKeys[0]));
+				final int removed = all.get(victim);
+				assertEquals("v" + removed, map.remove(removed));
+				for(int k: all) {
+					if(k==removed) {
+						assertFalse(map.containsKey(k));
+					} else {
+						assertEquals("Lost " + k + " after removing " + removed, "v" + k, map.get(k));
+					}
+				}
+				assertEquals(all.size() - 1, map.size());
+				// no entry may be left stranded behind a free slot on its probe path
+				for(int k: all) {
+					if(k==removed) continue;
+					final int slot = map.slotOf(k);
+					for(int s = map.homeOf(k); s != slot; s = (s + 1) & last) {
+						assertTrue("Gap at slot " + s + " on the probe path of " + k, map.occupied(s));
+					}
+				}
+			} finally {
+				map.destroy();
+			}
+		}
+	}
+	
+	/**
+	 * Verifies that the map grows and keeps all its entries
+	 */
+	@Test
+	public void testResize() {
+		final ProbedMap map = new ProbedMap(4);
+		try {
+			final int initialSlots = map.slots();
+			for(int i = -500; i < 500; i++) {
+				map.put(i * 7919, "v" + i);
+			}
+			assertTrue(map.slots() > initialSlots);
+			assertEquals(1000, map.size());
+			for(int i = -500; i < 500; i++) {
+				assertEquals("v" + i, map.get(i * 7919));
+			}
+			final List<String> values = map.drain();
+			assertEquals(1000, values.size());
+			assertTrue(map.isEmpty());
+			assertNull(map.get(0));
+		} finally {
+			map.destroy();
+		}
+	}
+	
+	/**
+	 * Compares random operations against a {@link HashMap}
+	 */
+	@Test
+	public void testMatchesHashMap() {
+		final Random r = new Random(24);
+		final IntObjectHashMap<String> map = new IntObjectHashMap<String>(2);
+		final Map<Integer, String> ref = new HashMap<Integer, String>();
+		try {
+			for(int i = 0; i < 200000; i++) {
+				// a small key range forces long probe runs and frequent shift backs
+				final int key = r.nextInt(256) - 128;
+				switch(r.nextInt(3)) {
+					case 0:
+						assertEquals(ref.put(key, "v" + i), map.put(key, "v" + i));
+						break;
+					case 1:
+						assertEquals(ref.remove(key), map.remove(key));
+						break;
+					default:
+						assertEquals(ref.get(key), map.get(key));
+				}
+				assertEquals(ref.size(), map.size());
+			}
+			for(Map.Entry<Integer, String> e: ref.entrySet()) {
+				assertEquals(e.getValue(), map.get(e.getKey()));
+			}
+			final List<String> expected = new ArrayList<String>(ref.values());
+			final List<String> actual = map.values();
+			Collections.sort(expected);
+			Collections.sort(actual);
+			assertEquals(expected, actual);
+		} finally {
+			map.destroy();
+		}
+	}
+	
+	/**
+	 * Tests the segmented map across segments, including key zero
+	 */
+	@Test
+	public void testConcurrentMap() throws Exception {
+		final ConcurrentIntObjectHashMap<String> map = new ConcurrentIntObjectHashMap<String>(4, 8);
+		try {
+			final int threads = 4, perThread = 5000;
+			final Thread[] workers = new Thread[threads];
+			final Throwable[] errors = new Throwable[1];
+			for(int t = 0; t < threads; t++) {
+				final int base = t * perThread;
+				workers[t] = new Thread("IntObjectHashMapTest#" + t) {
+					@Override
+					public void run() {
+						try {
+							for(int i = 0; i < perThread; i++) {
+								assertNull(map.putIfAbsent(base + i, "v" + (base + i)));
+							}
+							for(int i = 0; i < perThread; i += 2) {
+								assertEquals("v" + (base + i), map.remove(base + i));
+							}
+						} catch (Throwable ex) {
+							synchronized(errors) { if(errors[0]==null) errors[0] = ex; }
+						}
+					}
+				};
+				workers[t].start();
+			}
+			for(Thread t: workers) t.join();
+			if(errors[0]!=null) throw new AssertionError(errors[0]);
+			assertEquals(threads * perThread / 2, map.size());
+			for(int k = 0; k < threads * perThread; k++) {
+				assertEquals(k % 2 == 1, map.containsKey(k));
+			}
+			assertFalse(map.containsKey(0));
+			map.put(0, "zero");
+			assertEquals("zero", map.get(0));
+			assertEquals(threads * perThread / 2 + 1, map.drain().size());
+			assertTrue(map.isEmpty());
+		} finally {
+			map.destroy();
+		}
+	}
+}
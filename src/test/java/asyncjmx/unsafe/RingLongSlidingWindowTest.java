@@ -0,0 +1,179 @@
+/**
+ * 
+ */
+package asyncjmx.unsafe;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import asyncjmx.base.BaseTest;
+
+import com.heliosapm.asyncjmx.unsafe.collections.ConcurrentLongSlidingWindow;
+import com.heliosapm.asyncjmx.unsafe.collections.RingLongSlidingWindow;
+
+/**
+ * <p>Title: RingLongSlidingWindowTest</p>
+ * <p>Description: Tests the off-heap ring sliding window against {@link ConcurrentLongSlidingWindow}</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>asyncjmx.unsafe.RingLongSlidingWindowTest</code></b>
+ */
+
+public class RingLongSlidingWindowTest extends BaseTest {
+	/** The window size */
+	static final int SIZE = 16;
+
+	/**
+	 * Asserts that the ring and the reference window agree
+	 * @param ring The ring window
+	 * @param ref The reference window
+	 */
+	static void assertSame(RingLongSlidingWindow ring, ConcurrentLongSlidingWindow ref) {
+		assertEquals("size", ref.size(), ring.size());
+		assertEquals("toString", ref.toString(), ring.toString());
+		for(int i = 0; i < ref.size(); i++) {
+			assertEquals("get(" + i + ")", ref.get(i), ring.get(i));
+		}
+		if(ref.isEmpty()) return;
+		assertEquals("sum", ref.sum(), ring.sum());
+		assertEquals("avg", ref.avg(), ring.avg());
+		assertEquals("min", ref.min(), ring.min());
+		assertEquals("max", ref.max(), ring.max());
+		for(int within = 1; within <= ref.size(); within++) {
+			assertEquals("sum(" + within + ")", ref.sum(within), ring.sum(within));
+			assertEquals("avg(" + within + ")", ref.avg(within), ring.avg(within));
+		}
+	}
+	
+	/**
+	 * Compares random inserts against the reference window
+	 */
+	@Test
+	public void testMatchesConcurrentLongSlidingWindow() {
+		final Random r = new Random(23);
+		final RingLongSlidingWindow ring = new RingLongSlidingWindow(SIZE);
+		final ConcurrentLongSlidingWindow ref = new ConcurrentLongSlidingWindow(SIZE);
+		try {
+			assertEquals("[]", ring.toString());
+			assertSame(ring, ref);
+			for(int i = 0; i < SIZE * 5; i++) {
+				final long v = r.nextInt(1000);
+				assertEquals("dropped at " + i, ref.insert(v), ring.insert(v));
+				assertSame(ring, ref);
+			}
+			final long[] batch = new long[] {r.nextInt(1000), r.nextInt(1000), r.nextInt(1000)};
+			ring.insert(batch);
+			ref.insert(batch);
+			assertSame(ring, ref);
+		} finally {
+			ring.destroy();
+		}
+	}
+	
+	/**
+	 * Verifies that find has the same binary search semantics as the reference window
+	 */
+	@Test
+	public void testFindMatchesConcurrentLongSlidingWindow() {
+		final RingLongSlidingWindow ring = new RingLongSlidingWindow(SIZE);
+		final ConcurrentLongSlidingWindow ref = new ConcurrentLongSlidingWindow(SIZE);
+		try {
+			ring.insert(3, 6, 9);
+			ref.insert(3, 6, 9);
+			assertEquals("[9,6,3]", ring.toString());
+			for(long v = 0; v <= 10; v++) {
+				assertEquals("find(" + v + ") newest first", ref.find(v), ring.find(v));
+			}
+			ring.clear(); ref.clear();
+			ring.insert(9, 6, 3);
+			ref.insert(9, 6, 3);
+			for(long v = 0; v <= 10; v++) {
+				assertEquals("find(" + v + ") ascending", ref.find(v), ring.find(v));
+			}
+			assertEquals(1, ring.find(6));
+			assertTrue(ring.find(5) < 0);
+		} finally {
+			ring.destroy();
+		}
+	}
+	
+	/**
+	 * Verifies that readers never see a partially applied write
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testReadersNeverSeeTornWrites() throws Exception {
+		final RingLongSlidingWindow ring = new RingLongSlidingWindow(SIZE);
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final AtomicLong reads = new AtomicLong();
+		final Throwable[] errors = new Throwable[1];
+		final Thread[] readers = new Thread[4];
+		try {
+			for(int i = 0; i < readers.length; i++) {
+				readers[i] = new Thread("RingReader#" + i) {
+					@Override
+					public void run() {
+						try {
+							while(!done.get()) {
+								final long[] values = ring.snapshot();
+								for(int x = 1; x < values.length; x++) {
+									if(values[x-1]!=values[x] + 1) {
+										throw new AssertionError("Torn read at " + x + ": " + java.util.Arrays.toString(values));
+									}
+								}
+								if(values.length>0) {
+									final long sum = ring.sum();
+									if(sum < 0) throw new AssertionError("Negative sum " + sum);
+								}
+								reads.incrementAndGet();
+							}
+						} catch (Throwable t) {
+							synchronized(errors) { if(errors[0]==null) errors[0] = t; }
+						}
+					}
+				};
+				readers[i].start();
+			}
+			final long[] batch = new long[4];
+			long next = 1;
+			for(int i = 0; i < 200000; i++) {
+				if((i & 1)==0) {
+					ring.insert(next++);
+				} else {
+					for(int b = 0; b < batch.length; b++) batch[b] = next++;
+					ring.insert(batch);
+				}
+			}
+			done.set(true);
+			for(Thread t: readers) t.join(10000);
+			if(errors[0]!=null) throw new AssertionError(errors[0]);
+			log("Completed %s snapshot reads", reads.get());
+			assertTrue("No reads were made", reads.get() > 0);
+		} finally {
+			done.set(true);
+			ring.destroy();
+		}
+	}
+	
+	/**
+	 * Verifies that access after destroy fails cleanly
+	 */
+	@Test
+	public void testAccessAfterDestroyFails() {
+		final RingLongSlidingWindow ring = new RingLongSlidingWindow(SIZE);
+		ring.insert(1, 2, 3);
+		ring.destroy();
+		ring.destroy();
+		try {
+			ring.insert(4);
+			fail("Insert after destroy should fail");
+		} catch (IllegalStateException expected) {}
+		try {
+			ring.sum();
+			fail("Sum after destroy should fail");
+		} catch (IllegalStateException expected) {}
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * 
+ */
+package asyncjmx.unsafe;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import asyncjmx.base.BaseTest;
+
+import com.heliosapm.asyncjmx.unsafe.collections.UnsafeLongAdder;
+import com.heliosapm.asyncjmx.unsafe.collections.UnsafeLongGauge;
+
+/**
+ * <p>Title: UnsafeStripedCellTest</p>
+ * <p>Description: Tests for the off-heap striped adder and gauges</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><b><code>asyncjmx.unsafe.UnsafeStripedCellTest</code></b>
+ */
+
+public class UnsafeStripedCellTest extends BaseTest {
+	/** The number of updating threads */
+	static final int THREADS = 8;
+	/** The number of updates per thread */
+	static final int UPDATES = 100000;
+	
+	/**
+	 * Runs the passed task on {@link #THREADS} threads started together, passing each its thread index
+	 * @param task The task to run
+	 * @throws Exception thrown on any error
+	 */
+	static void runConcurrently(final IndexedTask task) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		final Thread[] threads = new Thread[THREADS];
+		final Throwable[] errors = new Throwable[1];
+		for(int i = 0; i < THREADS; i++) {
+			final int index = i;
+			threads[i] = new Thread("UnsafeStripedCellTest#" + i) {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						task.run(index);
+					} catch (Throwable t) {
+						errors[0] = t;
+					}
+				}
+			};
+			threads[i].start();
+		}
+		start.countDown();
+		for(Thread t: threads) t.join();
+		if(errors[0]!=null) throw new Exception("Task failed", errors[0]);
+	}
+	
+	/** A task run by one of several threads */
+	interface IndexedTask {
+		void run(int index);
+	}
+	
+	/**
+	 * Verifies that concurrent adds sum correctly and that sumThenReset and reset clear the adder
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testConcurrentAdds() throws Exception {
+		final UnsafeLongAdder adder = new UnsafeLongAdder(4);
+		try {
+			runConcurrently(new IndexedTask() {
+				@Override
+				public void run(int index) {
+					for(int i = 0; i < UPDATES; i++) {
+						adder.add(2);
+						adder.decrement();
+					}
+				}
+			});
+			assertEquals((long)THREADS * UPDATES, adder.sum());
+			assertEquals((long)THREADS * UPDATES, adder.sumThenReset());
+			assertEquals(0L, adder.sum());
+			adder.add(-5);
+			assertEquals(-5L, adder.sum());
+			adder.reset();
+			assertEquals(0L, adder.sum());
+		} finally {
+			adder.destroy();
+		}
+	}
+	
+	/**
+	 * Verifies the high and low water marks recorded from several threads
+	 * @throws Exception thrown on any error
+	 */
+	@Test
+	public void testWaterMarks() throws Exception {
+		final UnsafeLongGauge max = UnsafeLongGauge.newMaxGauge();
+		final UnsafeLongGauge min = UnsafeLongGauge.newMinGauge();
+		try {
+			assertTrue(max.isMax());
+			assertFalse(min.isMax());
+			assertFalse(max.isSet());
+			assertFalse(min.isSet());
+			runConcurrently(new IndexedTask() {
+				@Override
+				public void run(int index) {
+					for(int i = 0; i < UPDATES; i++) {
+						long value = (long)index * UPDATES + i - 1000;
+						max.record(value);
+						min.record(value);
+					}
+				}
+			});
+			assertEquals((long)THREADS * UPDATES - 1001, max.get());
+			assertEquals(-1000L, min.get());
+			assertEquals((long)THREADS * UPDATES - 1001, max.getThenReset());
+			assertFalse(max.isSet());
+			max.record(7);
+			max.record(3);
+			assertEquals(7L, max.get());
+			min.reset();
+			assertFalse(min.isSet());
+			min.record(3);
+			min.record(7);
+			assertEquals(3L, min.get());
+		} finally {
+			max.destroy();
+			min.destroy();
+		}
+	}
+	
+	/**
+	 * Verifies that a destroyed cell throws rather than accessing freed memory
+	 */
+	@Test
+	public void testAccessAfterDestroyFails() {
+		UnsafeLongAdder adder = new UnsafeLongAdder();
+		UnsafeLongGauge gauge = UnsafeLongGauge.newMaxGauge();
+		adder.increment();
+		gauge.record(1);
+		adder.destroy();
+		gauge.destroy();
+		adder.destroy();
+		assertFalse(adder.check());
+		assertFalse(gauge.check());
+		assertEquals("destroyed", adder.toString());
+		try { adder.add(1); fail("add after destroy"); } catch (IllegalStateException expected) {}
+		try { adder.sum(); fail("sum after destroy"); } catch (IllegalStateException expected) {}
+		try { adder.reset(); fail("reset after destroy"); } catch (IllegalStateException expected) {}
+		try { gauge.record(2); fail("record after destroy"); } catch (IllegalStateException expected) {}
+		try { gauge.get(); fail("get after destroy"); } catch (IllegalStateException expected) {}
+	}
+}